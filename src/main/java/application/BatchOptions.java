@@ -0,0 +1,80 @@
+package application;
+
+import java.util.function.Consumer;
+
+import domain.entity.OCRResult;
+
+/**
+ * Options for batch OCR: how many images may be in flight at once, who is told about
+ * each result and whether large images are split into tiles.
+ */
+public final class BatchOptions {
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final Consumer<OCRResult> NO_LISTENER = result -> { };
+
+    private final int parallelism;
+    private final Consumer<OCRResult> listener;
+    private final TilingOptions tiling;
+
+    private BatchOptions(int parallelism, Consumer<OCRResult> listener, TilingOptions tiling) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        this.listener = listener == null ? NO_LISTENER : listener;
+        this.tiling = tiling;
+    }
+
+    /**
+     * Default options: {@link #DEFAULT_PARALLELISM} concurrent calls, no listener.
+     * @return the defaults
+     */
+    public static BatchOptions defaults() {
+        return new BatchOptions(DEFAULT_PARALLELISM, NO_LISTENER, null);
+    }
+
+    /**
+     * Copy of these options with a different concurrency limit.
+     * @param newParallelism maximum OCR calls in flight
+     * @return the new options
+     */
+    public BatchOptions withParallelism(int newParallelism) {
+        return new BatchOptions(newParallelism, listener, tiling);
+    }
+
+    /**
+     * Copy of these options with a result listener. The listener is called in input
+     * order, as soon as a result and every result before it are available.
+     * @param newListener the listener
+     * @return the new options
+     */
+    public BatchOptions onResult(Consumer<OCRResult> newListener) {
+        return new BatchOptions(parallelism, newListener, tiling);
+    }
+
+    /**
+     * Copy of these options that OCRs images larger than a tile as tiles, one tile at a time
+     * per image so the concurrency limit still holds. Documents are read page by page as before.
+     * @param newTiling tile size and overlap; null to send images whole
+     * @return the new options
+     */
+    public BatchOptions withTiling(TilingOptions newTiling) {
+        return new BatchOptions(parallelism, listener, newTiling);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Consumer<OCRResult> getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the tiling for images, or null to send them whole
+     */
+    public TilingOptions getTiling() {
+        return tiling;
+    }
+}
@@ -2,7 +2,10 @@ package application;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
 import domain.port.HistoryRepository;
 
 /**
@@ -21,25 +24,28 @@ public final class HistoryService {
      * @param imageFilename the file
      * @param textContent the text output
      * @param timestamp the time of request
+     * @return the new item's historyId
      * @throws IOException error
      */
-    public void saveHistory(String username,
+    public String saveHistory(String username,
                             String imageFilename,
                             String textContent,
                             long timestamp) throws IOException {
-        historyRepository.saveHistory(username, imageFilename, textContent, timestamp);
+        return historyRepository.saveHistory(username, imageFilename, textContent, timestamp);
     }
 
     /**
      * Adds an OCR request to the user history.
      * @param username the user
      * @param textContent the test output
+     * @return the new item's historyId, or null if the text was blank and nothing was saved
      * @throws IOException error
      */
-    public void addHistory(String username, String textContent) throws IOException {
+    public String addHistory(String username, String textContent) throws IOException {
         if (textContent != null && !textContent.isBlank()) {
-            historyRepository.saveHistory(username, "", textContent, System.currentTimeMillis());
+            return historyRepository.saveHistory(username, "", textContent, System.currentTimeMillis());
         }
+        return null;
     }
 
     /**
@@ -47,27 +53,33 @@ public final class HistoryService {
      * @param username the user
      * @param imageFilename the file
      * @param textContent the test output
+     * @return the new item's historyId, or null if the text was blank and nothing was saved
      * @throws IOException error
      */
-    public void addHistory(String username, String imageFilename, String textContent) throws IOException {
+    public String addHistory(String username, String imageFilename, String textContent) throws IOException {
         if (textContent != null && !textContent.isBlank()) {
-            historyRepository.saveHistory(
+            return historyRepository.saveHistory(
                     username,
                     imageFilename,
                     textContent,
                     System.currentTimeMillis()
             );
         }
+        return null;
     }
 
     /**
-     * Getter for the user history.
+     * Getter for one page of the user history.
      * @param username the user
-     * @return list of historyId Strings
-     * @throws RuntimeException error
+     * @param sort the order
+     * @param cursor null for the first page, else the previous page's next cursor
+     * @param limit the most items on the page
+     * @return the page
+     * @throws IOException error
      */
-    public List<String> getHistoryList(String username) {
-        return historyRepository.getHistoryList(username);
+    public HistoryPage getHistoryPage(String username, HistorySort sort, String cursor, int limit)
+            throws IOException {
+        return historyRepository.getHistoryPage(username, sort, cursor, limit);
     }
 
     /**
@@ -81,6 +93,17 @@ public final class HistoryService {
         return historyRepository.getHistoryItem(username, historyId);
     }
 
+    /**
+     * Getter for several items in the user history at once.
+     * @param username the user
+     * @param historyIds the items
+     * @return each item's text by id; ids not in the history are left out
+     * @throws IOException error
+     */
+    public Map<String, String> getHistoryItems(String username, List<String> historyIds) throws IOException {
+        return historyRepository.getHistoryItems(username, historyIds);
+    }
+
     /**
      * Deletes an item from the user history.
      * @param username the user
@@ -0,0 +1,101 @@
+package application;
+
+import java.util.function.Consumer;
+
+import domain.entity.OCRResult;
+
+/**
+ * Options for hot-folder ingestion: how many files are OCR'd at once, how many ready files
+ * may wait for a worker, how long a file must stay unchanged before it counts as fully
+ * written, and who is told about each result.
+ */
+public final class HotFolderOptions {
+    public static final long DEFAULT_SETTLE_MILLIS = 1_000L;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static final Consumer<OCRResult> NO_LISTENER = result -> { };
+
+    private final int parallelism;
+    private final int queueCapacity;
+    private final long settleMillis;
+    private final Consumer<OCRResult> listener;
+
+    private HotFolderOptions(int parallelism, int queueCapacity, long settleMillis, Consumer<OCRResult> listener) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        if (settleMillis < 0) {
+            throw new IllegalArgumentException("settleMillis must not be negative");
+        }
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+        this.settleMillis = settleMillis;
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
+    /**
+     * Default options: {@link BatchOptions#DEFAULT_PARALLELISM} workers, 64 queued files,
+     * one second to settle, no listener.
+     * @return the defaults
+     */
+    public static HotFolderOptions defaults() {
+        return new HotFolderOptions(BatchOptions.DEFAULT_PARALLELISM, DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_SETTLE_MILLIS, NO_LISTENER);
+    }
+
+    /**
+     * Copy of these options with a different number of workers.
+     * @param newParallelism maximum files OCR'd at once
+     * @return the new options
+     */
+    public HotFolderOptions withParallelism(int newParallelism) {
+        return new HotFolderOptions(newParallelism, queueCapacity, settleMillis, listener);
+    }
+
+    /**
+     * Copy of these options with a different hand-off queue. Files beyond it stay on disk and
+     * are picked up as workers free up, so this bounds memory rather than what can be ingested.
+     * @param newQueueCapacity ready files that may wait for a worker
+     * @return the new options
+     */
+    public HotFolderOptions withQueueCapacity(int newQueueCapacity) {
+        return new HotFolderOptions(parallelism, newQueueCapacity, settleMillis, listener);
+    }
+
+    /**
+     * Copy of these options with a different settle time.
+     * @param newSettleMillis how long size and modification time must stay unchanged
+     * @return the new options
+     */
+    public HotFolderOptions withSettleMillis(long newSettleMillis) {
+        return new HotFolderOptions(parallelism, queueCapacity, newSettleMillis, listener);
+    }
+
+    /**
+     * Copy of these options that reports each file's result, from a worker thread.
+     * @param newListener receives each result; its index is the file's sequence number
+     * @return the new options
+     */
+    public HotFolderOptions onResult(Consumer<OCRResult> newListener) {
+        return new HotFolderOptions(parallelism, queueCapacity, settleMillis, newListener);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getSettleMillis() {
+        return settleMillis;
+    }
+
+    public Consumer<OCRResult> getListener() {
+        return listener;
+    }
+}
@@ -0,0 +1,328 @@
+package application;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import domain.entity.OCRResult;
+import shared.Threads;
+
+/**
+ * Watches a directory that scanners drop files into and OCRs each new image or document once
+ * it has been fully written. Each file's text is saved to the user's history, then the file is
+ * moved into {@code done/}, or into {@code error/} next to a {@code .error.txt} explaining why.
+ * <p>
+ * Files found on start-up are processed too. A file counts as written once its size and
+ * modification time have stayed unchanged for the settle time. Only paths are held while files
+ * wait; a fixed number of workers and a bounded hand-off queue cap threads and memory however
+ * many files arrive at once.
+ */
+public final class HotFolderService implements AutoCloseable {
+    public static final String DONE_DIR = "done";
+    public static final String ERROR_DIR = "error";
+
+    private final OCRUseCase ocrUseCase;
+    private final HistoryService historyService;
+    private final Path inbox;
+    private final Path doneDir;
+    private final Path errorDir;
+    private final String username;
+    private final HotFolderOptions options;
+
+    private final Map<Path, FileState> pending = new ConcurrentHashMap<>();
+    private final Set<Path> claimed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private WatchService watchService;
+    private Thread watcher;
+    private ScheduledExecutorService ticker;
+    private ThreadPoolExecutor workers;
+
+    /**
+     * Creates a service; call {@link #start()} to begin watching.
+     * @param ocrUseCase does the OCR
+     * @param historyService stores results
+     * @param inbox the watched directory
+     * @param username whose history results are saved to
+     * @param options concurrency, queue and settle time
+     */
+    public HotFolderService(OCRUseCase ocrUseCase, HistoryService historyService, Path inbox,
+                            String username, HotFolderOptions options) {
+        this.ocrUseCase = ocrUseCase;
+        this.historyService = historyService;
+        this.inbox = inbox.toAbsolutePath();
+        this.doneDir = this.inbox.resolve(DONE_DIR);
+        this.errorDir = this.inbox.resolve(ERROR_DIR);
+        this.username = username;
+        this.options = options;
+    }
+
+    /**
+     * Creates the output folders, registers the watch and queues files already in the inbox.
+     * @throws IOException if the inbox cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        Files.createDirectories(doneDir);
+        Files.createDirectories(errorDir);
+        watchService = inbox.getFileSystem().newWatchService();
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        workers = new ThreadPoolExecutor(options.getParallelism(), options.getParallelism(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(options.getQueueCapacity()), Threads.daemon("hotfolder-ocr"));
+        ticker = Executors.newSingleThreadScheduledExecutor(Threads.daemon("hotfolder-settle"));
+        long period = Math.max(50L, options.getSettleMillis() / 2);
+        ticker.scheduleWithFixedDelay(this::dispatchSettled, period, period, TimeUnit.MILLISECONDS);
+
+        watcher = Threads.daemon("hotfolder-watch").newThread(this::watch);
+        watcher.start();
+        scan();
+    }
+
+    /**
+     * Stops watching. Files being OCR'd are abandoned and stay in the inbox for the next start.
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        }
+        catch (IOException ignored) {
+        }
+        watcher.interrupt();
+        ticker.shutdownNow();
+        workers.shutdownNow();
+        watchService = null;
+    }
+
+    /**
+     * @return files moved to done/
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return files moved to error/
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return files seen but not yet handed to a worker
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        scan();
+                    }
+                    else {
+                        track(inbox.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    System.err.println("Warning: hot folder is no longer accessible: " + inbox);
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException ex) {
+            // closed
+        }
+    }
+
+    // Events can be lost (OVERFLOW) and files may predate the watch, so listings back events up.
+    private void scan() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox)) {
+            for (Path file : files) {
+                track(file);
+            }
+        }
+        catch (IOException ex) {
+            System.err.println("Warning: could not list hot folder: " + ex.getMessage());
+        }
+    }
+
+    private void track(Path file) {
+        if (OCRUseCase.isSupportedFile(file) && !claimed.contains(file)) {
+            pending.putIfAbsent(file, new FileState());
+        }
+    }
+
+    // A throw would silently stop the schedule, so nothing may escape.
+    private void dispatchSettled() {
+        try {
+            dispatchSettledFiles();
+        }
+        catch (RuntimeException ex) {
+            System.err.println("Warning: hot folder dispatch failed: " + ex.getMessage());
+        }
+    }
+
+    private void dispatchSettledFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, FileState>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, FileState> entry = entries.next();
+            Path file = entry.getKey();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            }
+            catch (IOException ex) {
+                entries.remove();
+                continue;
+            }
+            if (!attributes.isRegularFile()) {
+                entries.remove();
+                continue;
+            }
+            if (!entry.getValue().isSettled(attributes, now, options.getSettleMillis())) {
+                continue;
+            }
+            claimed.add(file);
+            try {
+                workers.execute(() -> process(file));
+            }
+            catch (RejectedExecutionException ex) {
+                // Queue full: leave the file pending and try again next tick.
+                claimed.remove(file);
+                return;
+            }
+            entries.remove();
+        }
+    }
+
+    private void process(Path file) {
+        int index = sequence.getAndIncrement();
+        String name = file.getFileName().toString();
+        long start = System.nanoTime();
+        Path current = file;
+        OCRResult result;
+        try {
+            // Documents run one page at a time; the worker count already bounds concurrency.
+            String text = ocrUseCase.extractFileText(file.toFile());
+            // Moved before saving: a file the move left in the inbox would be read, and saved, again.
+            // If the save fails it goes on from done/ to error/.
+            current = moveInto(doneDir, file);
+            historyService.addHistory(username, name, text);
+            processed.incrementAndGet();
+            result = OCRResult.success(index, name, text, elapsedSince(start));
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch (Exception ex) {
+            fail(current, ex);
+            result = OCRResult.failure(index, name, ex, elapsedSince(start));
+        }
+        finally {
+            claimed.remove(file);
+        }
+        try {
+            options.getListener().accept(result);
+        }
+        catch (RuntimeException ex) {
+            System.err.println("Warning: hot folder listener failed: " + ex.getMessage());
+        }
+    }
+
+    private void fail(Path file, Exception error) {
+        failed.incrementAndGet();
+        try {
+            Path moved = moveInto(errorDir, file);
+            String message = error.getClass().getSimpleName() + ": " + error.getMessage() + System.lineSeparator();
+            Files.writeString(moved.resolveSibling(moved.getFileName() + ".error.txt"), message, StandardCharsets.UTF_8);
+        }
+        catch (IOException ex) {
+            System.err.println("Warning: could not move failed file " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Moves a file into a folder atomically, adding "-1", "-2", ... to the name if taken.
+     */
+    static Path moveInto(Path dir, Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int attempt = 0; ; attempt++) {
+            Path target = dir.resolve(attempt == 0 ? name : stem + "-" + attempt + extension);
+            if (Files.exists(target)) {
+                continue;
+            }
+            try {
+                return Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                return Files.move(file, target);
+            }
+            catch (FileAlreadyExistsException ex) {
+                // lost a race for the name; try the next one
+            }
+        }
+    }
+
+    private static long elapsedSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    /** Last observed size and modification time, and since when they have held. */
+    private static final class FileState {
+        private long size = -1;
+        private long modified = -1;
+        private long unchangedSince;
+
+        boolean isSettled(BasicFileAttributes attributes, long now, long settleMillis) {
+            long newSize = attributes.size();
+            long newModified = attributes.lastModifiedTime().toMillis();
+            if (newSize != size || newModified != modified) {
+                size = newSize;
+                modified = newModified;
+                unchangedSince = now;
+                return false;
+            }
+            return now - unchangedSince >= settleMillis;
+        }
+    }
+}
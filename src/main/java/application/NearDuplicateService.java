@@ -0,0 +1,166 @@
+package application;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import shared.Config;
+import shared.ContentHash;
+import shared.HammingIndex;
+import shared.PerceptualHash;
+import shared.PerceptualHashIndex;
+
+/**
+ * Spots images that look like ones a user already read (a re-taken screenshot, a slightly
+ * different crop, a recompressed copy) so the earlier text can be offered instead of another
+ * OCR call. Images are compared by {@link PerceptualHash}; the hashes of saved results live in
+ * a per-user {@link PerceptualHashIndex} pointing at their history items.
+ */
+public final class NearDuplicateService implements Closeable {
+    private final PerceptualHashIndex index;
+    private final HistoryService historyService;
+    private final String username;
+    private final int maxDistance;
+
+    /** An earlier result for a similar image. */
+    public static final class Duplicate {
+        private final PerceptualHashIndex.Entry entry;
+        private final int distance;
+        private final String text;
+
+        private Duplicate(PerceptualHashIndex.Entry entry, int distance, String text) {
+            this.entry = entry;
+            this.distance = distance;
+            this.text = text;
+        }
+
+        public String getHistoryId() {
+            return entry.getId();
+        }
+
+        public String getImageFilename() {
+            return entry.getLabel();
+        }
+
+        public long getTimestamp() {
+            return entry.getTimestamp();
+        }
+
+        /**
+         * @return differing hash bits; 0 means the images look the same
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Creates a service.
+     * @param index the user's hash index
+     * @param historyService where the earlier results are read from
+     * @param username the user
+     * @param maxDistance the largest Hamming distance still treated as the same image; negative disables
+     */
+    public NearDuplicateService(PerceptualHashIndex index, HistoryService historyService, String username,
+                                int maxDistance) {
+        this.index = index;
+        this.historyService = historyService;
+        this.username = username;
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Opens the user's index under the data directory, with the distance from config.properties
+     * ({@code ocr.duplicate.max.distance}, default 10 of 64 bits; negative turns lookups off).
+     * @param historyService where the earlier results are read from
+     * @param username the user
+     * @return the service
+     * @throws IOException if the index cannot be opened
+     */
+    public static NearDuplicateService fromConfig(HistoryService historyService, String username)
+            throws IOException {
+        String file = ContentHash.of(ByteBuffer.wrap(username.getBytes(StandardCharsets.UTF_8))) + ".idx";
+        return new NearDuplicateService(
+                PerceptualHashIndex.open(Paths.get(Config.getDataDir(), "duplicates", file)),
+                historyService, username, Config.getInt("ocr.duplicate.max.distance", 10));
+    }
+
+    public boolean isEnabled() {
+        return maxDistance >= 0;
+    }
+
+    /**
+     * @param image the image
+     * @return its perceptual hash, for {@link #find} and {@link #remember}
+     */
+    public long fingerprint(BufferedImage image) {
+        return PerceptualHash.of(image);
+    }
+
+    /**
+     * Looks for the closest earlier result that is still in the user's history. Every candidate is
+     * read in one history call, and those whose item has been deleted are dropped from the index.
+     * Reads history, so call it off the UI thread.
+     * @param hash the new image's fingerprint
+     * @return the earlier result, if any
+     * @throws IOException if the history cannot be read
+     */
+    public Optional<Duplicate> find(long hash) throws IOException {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        List<HammingIndex.Match<PerceptualHashIndex.Entry>> matches = index.find(hash, maxDistance);
+        if (matches.isEmpty()) {
+            return Optional.empty();
+        }
+        List<String> ids = new ArrayList<>(matches.size());
+        for (HammingIndex.Match<PerceptualHashIndex.Entry> match : matches) {
+            ids.add(match.getValue().getId());
+        }
+        Map<String, String> texts = historyService.getHistoryItems(username, ids);
+        Duplicate nearest = null;
+        for (HammingIndex.Match<PerceptualHashIndex.Entry> match : matches) {
+            String text = texts.get(match.getValue().getId());
+            if (text == null) {
+                index.remove(match.getValue().getId());
+            }
+            else if (nearest == null) {
+                nearest = new Duplicate(match.getValue(), match.getDistance(), text);
+            }
+        }
+        return Optional.ofNullable(nearest);
+    }
+
+    /**
+     * Records that an image's text was saved to history.
+     * @param hash the image's fingerprint
+     * @param historyId the saved item
+     * @param imageFilename the image's name
+     * @throws IOException if the index cannot be written
+     */
+    public void remember(long hash, String historyId, String imageFilename) throws IOException {
+        if (historyId != null) {
+            index.add(hash, historyId, imageFilename == null ? "" : imageFilename, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Closes the index file.
+     * @throws IOException if it cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+}
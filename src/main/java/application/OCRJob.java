@@ -0,0 +1,53 @@
+package application;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle to an OCR submission. Cancelling it cancels the work all the way down: preprocessing
+ * is interrupted and the HTTP call is abandoned.
+ * @param <T> result type
+ */
+public final class OCRJob<T> {
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final long id = IDS.incrementAndGet();
+    private final String name;
+    private final CompletableFuture<T> result;
+
+    OCRJob(String name, CompletableFuture<T> result) {
+        this.name = name;
+        this.result = result;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the job's outcome; completes with a CancellationException if the job is cancelled
+     */
+    public CompletableFuture<T> getResult() {
+        return result;
+    }
+
+    /**
+     * Cancels the job if it hasn't finished.
+     * @return true if this call cancelled it
+     */
+    public boolean cancel() {
+        return result.cancel(true);
+    }
+
+    public boolean isCancelled() {
+        return result.isCancelled();
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+}
@@ -1,18 +1,54 @@
 package application;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import javax.imageio.ImageIO;
+
+import domain.entity.OCRResult;
+import domain.port.DocumentReader;
 import domain.port.OCRProcessor;
+import domain.port.PageSource;
+import shared.Futures;
+import shared.Threads;
 
 /**
  * Use case for OCR operations.
  * @null
  */
 public class OCRUseCase {
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of(
+            "png", "jpg", "jpeg", "gif", "bmp", "webp", "tif", "tiff", "pdf");
+    private static final ExecutorService DOCUMENT_POOL = Executors.newCachedThreadPool(Threads.daemon("ocr-document"));
+
     private final OCRProcessor ocrProcessor;
+    private final DocumentReader documentReader;
+    private final AtomicReference<OCRJob<?>> latestJob = new AtomicReference<>();
 
     public OCRUseCase(OCRProcessor ocrProcessor) {
+        this(ocrProcessor, null);
+    }
+
+    public OCRUseCase(OCRProcessor ocrProcessor, DocumentReader documentReader) {
         this.ocrProcessor = ocrProcessor;
+        this.documentReader = documentReader;
     }
 
     /**
@@ -34,4 +70,456 @@ public class OCRUseCase {
     public String runOcr(File imageFile) throws Exception {
         return extractText(imageFile);
     }
+
+    /**
+     * OCR encoded image bytes held in memory, without writing a temp file.
+     * @param imageData the encoded image
+     * @param filename name of the image
+     * @return text output
+     * @throws Exception error
+     */
+    public String extractText(byte[] imageData, String filename) throws Exception {
+        return ocrProcessor.extractTextFromBytes(ByteBuffer.wrap(imageData), filename);
+    }
+
+    /**
+     * OCR encoded image bytes held in a buffer (heap, direct or mapped); the buffer's position is not changed.
+     * @param imageData the encoded image
+     * @param filename name of the image
+     * @return text output
+     * @throws Exception error
+     */
+    public String extractText(ByteBuffer imageData, String filename) throws Exception {
+        return ocrProcessor.extractTextFromBytes(imageData, filename);
+    }
+
+    /**
+     * OCR a decoded image such as a clipboard paste or screen capture.
+     * @param image the image
+     * @param filename name of the image
+     * @return text output
+     * @throws Exception error
+     */
+    public String extractText(BufferedImage image, String filename) throws Exception {
+        return ocrProcessor.extractTextFromImage(image, filename);
+    }
+
+    /**
+     * Non-blocking variant of {@link #extractText(BufferedImage, String)}.
+     * @param image the image
+     * @param filename name of the image
+     * @return future text output
+     */
+    public CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        return ocrProcessor.extractTextAsync(image, filename);
+    }
+
+    /**
+     * Non-blocking variant of {@link #extractText(ByteBuffer, String)}.
+     * @param imageData the encoded image
+     * @param filename name of the image
+     * @return future text output
+     */
+    public CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        return ocrProcessor.extractTextAsync(imageData, filename);
+    }
+
+    /**
+     * Non-blocking variant of {@link #extractText(File)}; cancelling the future cancels the request.
+     * @param imageFile the image
+     * @return future text output
+     */
+    public CompletableFuture<String> extractTextAsync(File imageFile) {
+        return ocrProcessor.extractTextAsync(imageFile);
+    }
+
+    /**
+     * Starts an interactive OCR job. Interactive jobs supersede each other: submitting one
+     * cancels the previous job if it is still running, so a stale upload stops and its result
+     * never arrives after the newer one.
+     * @param imageFile the image
+     * @return the job
+     */
+    public OCRJob<String> submit(File imageFile) {
+        return supersede(new OCRJob<>(imageFile.getName(), extractTextAsync(imageFile)));
+    }
+
+    /**
+     * Interactive variant of {@link #extractTextAsync(BufferedImage, String)}; see {@link #submit(File)}.
+     * @param image the image
+     * @param filename name of the image
+     * @return the job
+     */
+    public OCRJob<String> submit(BufferedImage image, String filename) {
+        return supersede(new OCRJob<>(filename, extractTextAsync(image, filename)));
+    }
+
+    /**
+     * Interactive variant of {@link #extractDocument(File, BatchOptions)}; see {@link #submit(File)}.
+     * Cancelling the job interrupts page rendering and cancels the pages in flight.
+     * @param document the PDF or TIFF
+     * @param options page concurrency and listener
+     * @return the job
+     */
+    public OCRJob<List<OCRResult>> submitDocument(File document, BatchOptions options) {
+        return supersede(new OCRJob<>(document.getName(),
+                Futures.supplyAsync(() -> extractDocument(document, options), DOCUMENT_POOL)));
+    }
+
+    /**
+     * Interactive OCR of selected parts of an image; see {@link #submit(File)}. Each region is
+     * cropped (a view, not a copy) and sent as its own request, so only the selected pixels are
+     * encoded and uploaded and the regions run in parallel. Regions are clipped to the image and
+     * empty ones are dropped. A failed region does not fail the others; cancelling the job
+     * cancels every region still in flight.
+     * @param image the whole image
+     * @param filename name of the image
+     * @param regions areas in image pixel coordinates
+     * @return the job, with one result per non-empty region in the order given
+     */
+    public OCRJob<List<OCRResult>> submitRegions(BufferedImage image, String filename, List<Rectangle> regions) {
+        Rectangle bounds = new Rectangle(image.getWidth(), image.getHeight());
+        String base = baseName(filename);
+        List<CompletableFuture<String>> requests = new ArrayList<>(regions.size());
+        List<CompletableFuture<OCRResult>> results = new ArrayList<>(regions.size());
+        for (Rectangle region : regions) {
+            Rectangle crop = region.intersection(bounds);
+            if (crop.isEmpty()) {
+                continue;
+            }
+            int index = results.size();
+            String name = base + "-region" + index + ".png";
+            long start = System.nanoTime();
+            CompletableFuture<String> request = extractTextAsync(
+                    image.getSubimage(crop.x, crop.y, crop.width, crop.height), name);
+            requests.add(request);
+            results.add(request.handle((text, error) -> error == null
+                    ? OCRResult.success(index, name, text, elapsedSince(start))
+                    : OCRResult.failure(index, name, Futures.asException(error), elapsedSince(start))));
+        }
+        CompletableFuture<List<OCRResult>> all = new CompletableFuture<>();
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            List<OCRResult> done = new ArrayList<>(results.size());
+            for (CompletableFuture<OCRResult> result : results) {
+                done.add(result.join());
+            }
+            all.complete(done);
+        });
+        all.whenComplete((done, error) -> {
+            if (all.isCancelled()) {
+                requests.forEach(request -> request.cancel(true));
+            }
+        });
+        return supersede(new OCRJob<>(filename, all));
+    }
+
+    /**
+     * Whether the job is the most recent interactive submission; results of older jobs are stale.
+     * @param job the job
+     * @return true if no newer job was submitted
+     */
+    public boolean isLatest(OCRJob<?> job) {
+        return latestJob.get() == job;
+    }
+
+    /**
+     * Cancels the most recent interactive job, if it is still running.
+     */
+    public void cancelLatest() {
+        OCRJob<?> job = latestJob.get();
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * OCRs many images with at most {@code options.getParallelism()} calls in flight.
+     * A failure is reported as a failed result for that image and does not stop the batch.
+     * Documents among the files are read through {@link #extractFileText(File)}; with
+     * {@link BatchOptions#withTiling} images are read through
+     * {@link #extractTextTiled(File, TilingOptions)}.
+     * @param imageFiles the images
+     * @param options concurrency limit and result listener
+     * @return one result per image, in input order
+     * @throws InterruptedException if the caller is interrupted while waiting; pending work is cancelled
+     */
+    public List<OCRResult> extractTextBatch(List<File> imageFiles, BatchOptions options)
+            throws InterruptedException {
+        List<String> names = new ArrayList<>(imageFiles.size());
+        List<Callable<String>> calls = new ArrayList<>(imageFiles.size());
+        TilingOptions tiling = options.getTiling();
+        for (File imageFile : imageFiles) {
+            names.add(imageFile.getName());
+            if (tiling == null) {
+                calls.add(() -> extractFileText(imageFile));
+            }
+            else {
+                // One tile at a time per image, so the batch's limit still bounds the calls in flight.
+                TilingOptions oneAtATime = tiling.withParallelism(1);
+                calls.add(() -> isDocument(imageFile) ? extractFileText(imageFile)
+                        : extractTextTiled(imageFile, oneAtATime));
+            }
+        }
+        return runBounded(names, calls, options.getParallelism(), options.getListener(), "ocr-batch");
+    }
+
+    /**
+     * OCRs an image, or every page of a document one page at a time, for callers that already
+     * bound their own concurrency. Page texts are separated by a blank line.
+     * @param file the image or document
+     * @return text output
+     * @throws Exception error; for a document, only when no page could be read
+     */
+    public String extractFileText(File file) throws Exception {
+        if (!isDocument(file)) {
+            return ocrProcessor.extractTextFromImage(file);
+        }
+        List<OCRResult> pages = extractDocument(file, BatchOptions.defaults().withParallelism(1));
+        if (!pages.isEmpty() && pages.stream().noneMatch(OCRResult::isSuccess)) {
+            throw pages.get(0).getError();
+        }
+        return pages.stream().filter(OCRResult::isSuccess).map(OCRResult::getText)
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    /**
+     * Whether a file looks like something OCR can read: an image or a PDF/TIFF, by extension.
+     * Hidden files are skipped.
+     * @param file the file
+     * @return true for supported files
+     */
+    public static boolean isSupportedFile(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return !name.startsWith(".") && dot > 0
+                && SUPPORTED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * OCRs a large image as a grid of overlapping tiles sent concurrently, then stitches the
+     * text back together. Tiles are read left to right within a row and rows top to bottom, so
+     * lines cut by a vertical seam are rejoined in reading order; lines and words repeated in
+     * an overlap strip are kept once.
+     * Images that fit in one tile are sent whole.
+     * @param image the image
+     * @param filename name of the image
+     * @param options tile size, overlap and concurrency
+     * @return the stitched text
+     * @throws Exception the first tile failure, or an interruption
+     */
+    public String extractTextTiled(BufferedImage image, String filename, TilingOptions options) throws Exception {
+        List<Rectangle> tiles = planTiles(image.getWidth(), image.getHeight(), options);
+        if (tiles.size() == 1) {
+            return extractText(image, filename);
+        }
+        String base = baseName(filename);
+        List<String> names = new ArrayList<>(tiles.size());
+        List<Callable<String>> calls = new ArrayList<>(tiles.size());
+        for (int i = 0; i < tiles.size(); i++) {
+            Rectangle tile = tiles.get(i);
+            String tileName = base + "-tile" + i + ".png";
+            names.add(tileName);
+            calls.add(() -> ocrProcessor.extractTextFromImage(
+                    image.getSubimage(tile.x, tile.y, tile.width, tile.height), tileName));
+        }
+        List<OCRResult> results = runBounded(names, calls, options.getParallelism(), null, "ocr-tile");
+
+        TextStitcher stitcher = new TextStitcher();
+        List<String> row = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            OCRResult result = results.get(i);
+            if (!result.isSuccess()) {
+                throw result.getError();
+            }
+            if (i > 0 && tiles.get(i).y != tiles.get(i - 1).y) {
+                stitcher.appendRow(row);
+                row.clear();
+            }
+            row.add(result.getText());
+        }
+        stitcher.appendRow(row);
+        return stitcher.text();
+    }
+
+    /**
+     * Decodes an image file and OCRs it as tiles.
+     * @param imageFile the image
+     * @param options tile size, overlap and concurrency
+     * @return the stitched text
+     * @throws Exception if the file cannot be decoded or a tile fails
+     * @see #extractTextTiled(BufferedImage, String, TilingOptions)
+     */
+    public String extractTextTiled(File imageFile, TilingOptions options) throws Exception {
+        BufferedImage image = ImageIO.read(imageFile);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + imageFile.getName());
+        }
+        return extractTextTiled(image, imageFile.getName(), options);
+    }
+
+    /**
+     * Whether the file is a multi-page document (PDF, TIFF) to be read with {@link #extractDocument}.
+     * @param file the file
+     * @return true if a configured document reader supports it
+     */
+    public boolean isDocument(File file) {
+        return documentReader != null && documentReader.supports(file);
+    }
+
+    /**
+     * OCRs a multi-page document. Pages are decoded one at a time and OCR'd with at most
+     * {@code options.getParallelism()} pages in flight; a page is only decoded once a slot is
+     * free, so at most that many page images are in memory. The listener receives each page in
+     * page order as soon as it and the pages before it are done.
+     * @param document the PDF or TIFF
+     * @param options page concurrency and listener
+     * @return one result per page, in page order
+     * @throws Exception if the document cannot be opened, or on interruption
+     */
+    public List<OCRResult> extractDocument(File document, BatchOptions options) throws Exception {
+        if (documentReader == null) {
+            throw new IllegalStateException("No document reader configured");
+        }
+        try (PageSource pages = documentReader.open(document)) {
+            return extractPages(pages, document.getName(), options);
+        }
+    }
+
+    /**
+     * OCRs every page of an open document; see {@link #extractDocument(File, BatchOptions)}.
+     * @param pages the document, read from this thread only
+     * @param filename name of the document
+     * @param options page concurrency and listener
+     * @return one result per page, in page order
+     * @throws InterruptedException if interrupted while waiting; pending pages are cancelled
+     */
+    public List<OCRResult> extractPages(PageSource pages, String filename, BatchOptions options)
+            throws InterruptedException {
+        int count = pages.getPageCount();
+        OrderedEmitter<OCRResult> emitter = new OrderedEmitter<>(count, options.getListener());
+        if (count == 0) {
+            return emitter.results();
+        }
+        String base = baseName(filename);
+        int parallelism = Math.min(options.getParallelism(), count);
+        Semaphore slots = new Semaphore(parallelism);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, Threads.daemon("ocr-page"));
+        CountDownLatch remaining = new CountDownLatch(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                String pageName = base + "-p" + (i + 1) + ".png";
+                slots.acquire();
+                long start = System.nanoTime();
+                BufferedImage page;
+                try {
+                    page = pages.renderPage(index);
+                }
+                catch (Exception ex) {
+                    emitter.complete(index, OCRResult.failure(index, pageName, ex, elapsedSince(start)));
+                    slots.release();
+                    remaining.countDown();
+                    continue;
+                }
+                pool.execute(() -> {
+                    try {
+                        emitter.complete(index, runOne(index, pageName,
+                                () -> ocrProcessor.extractTextFromImage(page, pageName)));
+                    }
+                    finally {
+                        slots.release();
+                        remaining.countDown();
+                    }
+                });
+            }
+            remaining.await();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return emitter.results();
+    }
+
+    /**
+     * Splits an image into a row-major grid of tiles no larger than the options allow
+     * (plus overlap), where neighbouring tiles share {@code overlap} pixels.
+     */
+    static List<Rectangle> planTiles(int width, int height, TilingOptions options) {
+        int columns = (width + options.getMaxTileWidth() - 1) / options.getMaxTileWidth();
+        int rows = (height + options.getMaxTileHeight() - 1) / options.getMaxTileHeight();
+        int overlap = Math.min(options.getOverlap(),
+                (Math.min(options.getMaxTileWidth(), options.getMaxTileHeight()) - 1) / 2);
+        int before = overlap / 2;
+        int after = overlap - before;
+        List<Rectangle> tiles = new ArrayList<>(columns * rows);
+        for (int r = 0; r < rows; r++) {
+            int y0 = Math.max(0, (int) ((long) r * height / rows) - before);
+            int y1 = Math.min(height, (int) ((long) (r + 1) * height / rows) + after);
+            for (int c = 0; c < columns; c++) {
+                int x0 = Math.max(0, (int) ((long) c * width / columns) - before);
+                int x1 = Math.min(width, (int) ((long) (c + 1) * width / columns) + after);
+                tiles.add(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+            }
+        }
+        return tiles;
+    }
+
+    private <T> OCRJob<T> supersede(OCRJob<T> job) {
+        OCRJob<?> previous = latestJob.getAndSet(job);
+        if (previous != null) {
+            previous.cancel();
+        }
+        return job;
+    }
+
+    private static List<OCRResult> runBounded(List<String> names, List<Callable<String>> calls, int parallelism,
+                                              Consumer<OCRResult> listener, String threadName)
+            throws InterruptedException {
+        int count = calls.size();
+        OrderedEmitter<OCRResult> emitter = new OrderedEmitter<>(count, listener == null ? r -> { } : listener);
+        if (count == 0) {
+            return emitter.results();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, count), Threads.daemon(threadName));
+        CountDownLatch remaining = new CountDownLatch(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                pool.execute(() -> {
+                    try {
+                        emitter.complete(index, runOne(index, names.get(index), calls.get(index)));
+                    }
+                    finally {
+                        remaining.countDown();
+                    }
+                });
+            }
+            remaining.await();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return emitter.results();
+    }
+
+    private static OCRResult runOne(int index, String name, Callable<String> call) {
+        long start = System.nanoTime();
+        try {
+            return OCRResult.success(index, name, call.call(), elapsedSince(start));
+        }
+        catch (Exception ex) {
+            return OCRResult.failure(index, name, ex, elapsedSince(start));
+        }
+    }
+
+    private static String baseName(String filename) {
+        String base = filename == null || filename.isEmpty() ? "image" : filename;
+        int dot = base.lastIndexOf('.');
+        return dot > 0 ? base.substring(0, dot) : base;
+    }
+
+    private static long elapsedSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
 }
@@ -0,0 +1,58 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects results that finish out of order and hands them to a listener in input order,
+ * releasing each one as soon as everything before it has arrived.
+ * @param <T> result type
+ */
+final class OrderedEmitter<T> {
+    private final Object[] slots;
+    private final Consumer<? super T> listener;
+    private int next;
+
+    OrderedEmitter(int size, Consumer<? super T> listener) {
+        this.slots = new Object[size];
+        this.listener = listener;
+    }
+
+    /**
+     * Records the result at the given position and emits every result now in order.
+     * @param index input position
+     * @param result the result
+     */
+    synchronized void complete(int index, T result) {
+        slots[index] = result;
+        while (next < slots.length && slots[next] != null) {
+            T ready = get(next++);
+            try {
+                listener.accept(ready);
+            }
+            catch (RuntimeException ex) {
+                System.err.println("Result listener failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Snapshot of every result received so far, in input order.
+     * @return the results; unfinished positions are skipped
+     */
+    synchronized List<T> results() {
+        List<T> out = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                out.add(get(i));
+            }
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        return (T) slots[index];
+    }
+}
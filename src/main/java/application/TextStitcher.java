@@ -0,0 +1,164 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Joins OCR text from a grid of overlapping tiles read row by row: the tiles of a row are put
+ * side by side, and each row is appended below the last, dropping the lines both rows saw.
+ */
+final class TextStitcher {
+    /** Upper bound on lines an overlap strip can contain; keeps matching cheap. */
+    static final int MAX_OVERLAP_LINES = 8;
+    private static final double MAX_EDIT_RATIO = 0.2;
+    private static final int MAX_SEAM_WORDS = 3;
+
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * Appends one row of tiles, given left to right. When the tiles have the same number of
+     * lines they are taken to hold the left and right parts of the same lines, which are
+     * rejoined with the words repeated across the seam kept once; otherwise each tile's lines
+     * follow the previous tile's.
+     * @param tileTexts OCR output of the row's tiles
+     */
+    void appendRow(List<String> tileTexts) {
+        List<String> row = new ArrayList<>();
+        for (String tileText : tileTexts) {
+            List<String> incoming = splitLines(tileText);
+            if (row.isEmpty() || incoming.isEmpty()) {
+                row.addAll(incoming);
+            }
+            else if (incoming.size() == row.size()) {
+                for (int i = 0; i < row.size(); i++) {
+                    row.set(i, joinAcrossSeam(row.get(i), incoming.get(i)));
+                }
+            }
+            else {
+                row.addAll(incoming);
+            }
+        }
+        append(String.join("\n", row));
+    }
+
+    /**
+     * Appends a tile's text below the text so far. The longest run of lines at the top of
+     * the tile that matches the bottom of the text so far is treated as overlap and skipped.
+     * Lines match when they are equal ignoring case and spacing, or nearly so.
+     * @param tileText OCR output of the tile
+     */
+    void append(String tileText) {
+        List<String> incoming = splitLines(tileText);
+        List<String> tail = trailingContent();
+        int skip = 0;
+        for (int k = Math.min(MAX_OVERLAP_LINES, Math.min(tail.size(), incoming.size())); k > 0; k--) {
+            if (matches(tail.subList(tail.size() - k, tail.size()), incoming.subList(0, k))) {
+                skip = k;
+                break;
+            }
+        }
+        lines.addAll(incoming.subList(skip, incoming.size()));
+    }
+
+    String text() {
+        int end = lines.size();
+        while (end > 0 && lines.get(end - 1).isEmpty()) {
+            end--;
+        }
+        return String.join("\n", lines.subList(0, end));
+    }
+
+    // The seam's overlap strip is seen by both tiles, so the last words on the left may start
+    // the right part again.
+    static String joinAcrossSeam(String left, String right) {
+        String[] leftWords = left.split("\\s+");
+        String[] rightWords = right.split("\\s+");
+        int skip = 0;
+        for (int k = Math.min(MAX_SEAM_WORDS, Math.min(leftWords.length, rightWords.length)); k > 0; k--) {
+            String tail = String.join(" ", Arrays.copyOfRange(leftWords, leftWords.length - k, leftWords.length));
+            String head = String.join(" ", Arrays.copyOfRange(rightWords, 0, k));
+            // A repeated short word ("a a") is too likely to be real text.
+            if (tail.length() >= 3 && normalize(tail).equals(normalize(head))) {
+                skip = k;
+                break;
+            }
+        }
+        if (skip == rightWords.length) {
+            return left;
+        }
+        return left + " " + String.join(" ", Arrays.copyOfRange(rightWords, skip, rightWords.length));
+    }
+
+    // Lines seen so far, blank lines excluded.
+    private List<String> trailingContent() {
+        List<String> tail = new ArrayList<>();
+        for (int i = lines.size() - 1; i >= 0 && tail.size() < MAX_OVERLAP_LINES; i--) {
+            String line = lines.get(i);
+            if (line.isEmpty()) {
+                break;
+            }
+            tail.add(0, line);
+        }
+        return tail;
+    }
+
+    private static List<String> splitLines(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) {
+            return out;
+        }
+        for (String line : text.split("\\r?\\n")) {
+            String trimmed = line.strip();
+            if (!trimmed.isEmpty()) {
+                out.add(trimmed);
+            }
+        }
+        return out;
+    }
+
+    private static boolean matches(List<String> a, List<String> b) {
+        for (int i = 0; i < a.size(); i++) {
+            if (!similar(normalize(a.get(i)), normalize(b.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String normalize(String line) {
+        return line.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+    }
+
+    static boolean similar(String a, String b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        int longest = Math.max(a.length(), b.length());
+        if (longest < 4) {
+            return false;
+        }
+        int budget = (int) (longest * MAX_EDIT_RATIO);
+        return Math.abs(a.length() - b.length()) <= budget && editDistance(a, b) <= budget;
+    }
+
+    private static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,87 @@
+package application;
+
+/**
+ * Options for tiled OCR of very large images: maximum tile size, overlap between
+ * neighbouring tiles and how many tiles may be in flight at once.
+ */
+public final class TilingOptions {
+    public static final int DEFAULT_MAX_TILE_WIDTH = 2000;
+    public static final int DEFAULT_MAX_TILE_HEIGHT = 2000;
+    public static final int DEFAULT_OVERLAP = 96;
+
+    private final int maxTileWidth;
+    private final int maxTileHeight;
+    private final int overlap;
+    private final int parallelism;
+
+    private TilingOptions(int maxTileWidth, int maxTileHeight, int overlap, int parallelism) {
+        if (maxTileWidth < 1 || maxTileHeight < 1) {
+            throw new IllegalArgumentException("tile size must be positive");
+        }
+        if (overlap < 0) {
+            throw new IllegalArgumentException("overlap must not be negative");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.maxTileWidth = maxTileWidth;
+        this.maxTileHeight = maxTileHeight;
+        this.overlap = overlap;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Default options: 2000x2000 tiles overlapping by 96 pixels, {@link BatchOptions#DEFAULT_PARALLELISM} at once.
+     * @return the defaults
+     */
+    public static TilingOptions defaults() {
+        return new TilingOptions(DEFAULT_MAX_TILE_WIDTH, DEFAULT_MAX_TILE_HEIGHT, DEFAULT_OVERLAP,
+                BatchOptions.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Copy of these options with a different maximum tile size.
+     * @param width maximum tile width in pixels
+     * @param height maximum tile height in pixels
+     * @return the new options
+     */
+    public TilingOptions withMaxTileSize(int width, int height) {
+        return new TilingOptions(width, height, overlap, parallelism);
+    }
+
+    /**
+     * Copy of these options with a different overlap. The overlap should exceed the height
+     * of a text line so every line is whole in at least one tile; it is capped below half
+     * a tile when tiles are planned.
+     * @param newOverlap overlap in pixels
+     * @return the new options
+     */
+    public TilingOptions withOverlap(int newOverlap) {
+        return new TilingOptions(maxTileWidth, maxTileHeight, newOverlap, parallelism);
+    }
+
+    /**
+     * Copy of these options with a different concurrency limit.
+     * @param newParallelism maximum tiles in flight
+     * @return the new options
+     */
+    public TilingOptions withParallelism(int newParallelism) {
+        return new TilingOptions(maxTileWidth, maxTileHeight, overlap, newParallelism);
+    }
+
+    public int getMaxTileWidth() {
+        return maxTileWidth;
+    }
+
+    public int getMaxTileHeight() {
+        return maxTileHeight;
+    }
+
+    public int getOverlap() {
+        return overlap;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+}
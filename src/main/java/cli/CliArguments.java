@@ -0,0 +1,215 @@
+package cli;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import application.BatchOptions;
+import application.TilingOptions;
+
+/**
+ * Parsed command line of {@link VisionTextCli}.
+ */
+public final class CliArguments {
+    /** Output formats. */
+    public enum Format {
+        /** One {@code <file>.txt} per input, under the output directory. */
+        TXT,
+        /** One JSON object per input, one per line, to a file or stdout. */
+        JSONL
+    }
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: visiontext-cli [options] <dir|glob>...",
+            "  -p, --parallelism <n>   OCR calls in flight (default " + BatchOptions.DEFAULT_PARALLELISM + ")",
+            "  -f, --format <txt|jsonl> output format (default txt)",
+            "  -o, --out <path>        txt: output directory (default ./ocr-output);",
+            "                          jsonl: output file (default stdout)",
+            "  -r, --recursive         include subdirectories of directory inputs",
+            "  -u, --user <email>      also save each result to this user's history",
+            "  -t, --tile              OCR images larger than " + TilingOptions.DEFAULT_MAX_TILE_WIDTH + "x"
+                    + TilingOptions.DEFAULT_MAX_TILE_HEIGHT + " as overlapping tiles",
+            "  -j, --journal <dir>     record progress there; a rerun after a crash or Ctrl-C",
+            "                          resumes the unfinished files and needs no inputs",
+            "  -m, --metrics           print per-stage OCR timings and counters at the end",
+            "  -h, --help              show this help",
+            "Globs are matched relative to their fixed prefix, e.g. 'scans/**/*.tif'.");
+
+    private final List<String> inputs;
+    private final int parallelism;
+    private final Format format;
+    private final Path output;
+    private final boolean recursive;
+    private final String user;
+    private final boolean tile;
+    private final Path journal;
+    private final boolean metrics;
+    private final boolean help;
+
+    private CliArguments(List<String> inputs, int parallelism, Format format, Path output,
+                         boolean recursive, String user, boolean tile, Path journal, boolean metrics, boolean help) {
+        this.inputs = Collections.unmodifiableList(inputs);
+        this.parallelism = parallelism;
+        this.format = format;
+        this.output = output;
+        this.recursive = recursive;
+        this.user = user;
+        this.tile = tile;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.help = help;
+    }
+
+    /**
+     * Parses arguments.
+     * @param args the command line
+     * @return the parsed arguments
+     * @throws IllegalArgumentException with a message for the user if the command line is invalid
+     */
+    public static CliArguments parse(String... args) {
+        List<String> inputs = new ArrayList<>();
+        int parallelism = BatchOptions.DEFAULT_PARALLELISM;
+        Format format = Format.TXT;
+        Path output = null;
+        boolean recursive = false;
+        String user = null;
+        boolean tile = false;
+        Path journal = null;
+        boolean metrics = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-p":
+                case "--parallelism":
+                    parallelism = parsePositive(arg, value(args, ++i, arg));
+                    break;
+                case "-f":
+                case "--format":
+                    format = parseFormat(value(args, ++i, arg));
+                    break;
+                case "-o":
+                case "--out":
+                    output = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-r":
+                case "--recursive":
+                    recursive = true;
+                    break;
+                case "-u":
+                case "--user":
+                    user = value(args, ++i, arg);
+                    break;
+                case "-t":
+                case "--tile":
+                    tile = true;
+                    break;
+                case "-j":
+                case "--journal":
+                    journal = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-m":
+                case "--metrics":
+                    metrics = true;
+                    break;
+                case "-h":
+                case "--help":
+                    return new CliArguments(inputs, parallelism, format, output, recursive, user, tile, journal, metrics, true);
+                default:
+                    if (arg.startsWith("-") && arg.length() > 1) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+        if (inputs.isEmpty() && journal == null) {
+            throw new IllegalArgumentException("No input directory or glob given");
+        }
+        if (output == null && format == Format.TXT) {
+            output = Paths.get("ocr-output");
+        }
+        return new CliArguments(inputs, parallelism, format, output, recursive, user, tile, journal, metrics, false);
+    }
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the output directory (txt) or file (jsonl); null means stdout for jsonl
+     */
+    public Path getOutput() {
+        return output;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * @return the user whose history receives results, or null to skip history
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return whether large images are OCR'd as tiles
+     */
+    public boolean isTile() {
+        return tile;
+    }
+
+    /**
+     * @return the job journal directory, or null to run without one
+     */
+    public Path getJournal() {
+        return journal;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int parsePositive(String option, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 1) {
+                return parsed;
+            }
+        }
+        catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " needs a positive number, got: " + value);
+    }
+
+    private static Format parseFormat(String value) {
+        try {
+            return Format.valueOf(value.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown format: " + value + " (expected txt or jsonl)");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package cli;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import application.OCRUseCase;
+
+/**
+ * Expands directory and glob arguments into the files to OCR, each with the base
+ * directory it was found under so outputs can mirror the input layout.
+ */
+final class InputSelector {
+
+    /** A file to OCR and the directory its output path is relative to. */
+    static final class Input {
+        // Cannot occur in a path, so it safely separates the two in a journal payload.
+        private static final String SEPARATOR = "\u0000";
+
+        private final Path file;
+        private final Path base;
+
+        Input(Path file, Path base) {
+            this.file = file;
+            this.base = base;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        Path getRelativePath() {
+            return base.relativize(file);
+        }
+
+        String toPayload() {
+            return base.toAbsolutePath() + SEPARATOR + file.toAbsolutePath();
+        }
+
+        static Input fromPayload(String payload) {
+            int split = payload.indexOf(SEPARATOR);
+            return new Input(Paths.get(payload.substring(split + 1)), Paths.get(payload.substring(0, split)));
+        }
+    }
+
+    private InputSelector() {
+    }
+
+    /**
+     * Lists supported files for every argument, sorted by path within each argument.
+     * @param specs directories, files or globs
+     * @param recursive whether directory arguments include subdirectories
+     * @return the inputs, without duplicates
+     * @throws IOException if a directory cannot be listed
+     */
+    static List<Input> select(List<String> specs, boolean recursive) throws IOException {
+        List<Input> inputs = new ArrayList<>();
+        List<Path> seen = new ArrayList<>();
+        for (String spec : specs) {
+            for (Input input : select(spec, recursive)) {
+                Path normalized = input.getFile().toAbsolutePath().normalize();
+                if (!seen.contains(normalized)) {
+                    seen.add(normalized);
+                    inputs.add(input);
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private static List<Input> select(String spec, boolean recursive) throws IOException {
+        int glob = firstGlobChar(spec);
+        if (glob < 0) {
+            Path path = Paths.get(spec);
+            if (Files.isRegularFile(path)) {
+                return List.of(new Input(path, path.toAbsolutePath().getParent()));
+            }
+            if (!Files.isDirectory(path)) {
+                throw new IOException("No such file or directory: " + spec);
+            }
+            return list(path, recursive ? Integer.MAX_VALUE : 1, file -> true);
+        }
+        int slash = Math.max(spec.lastIndexOf('/', glob), spec.lastIndexOf('\\', glob));
+        Path base = slash < 0 ? Paths.get(".") : Paths.get(spec.substring(0, slash + 1));
+        String pattern = spec.substring(slash + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("[/\\\\]").length;
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        return list(base, depth, relative -> matcher.matches(relative));
+    }
+
+    private static List<Input> list(Path base, int depth, PathMatcher accept) throws IOException {
+        try (Stream<Path> files = Files.walk(base, depth)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(OCRUseCase::isSupportedFile)
+                    .filter(file -> accept.matches(base.relativize(file)))
+                    .sorted()
+                    .map(file -> new Input(file, base))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int firstGlobChar(String spec) {
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,126 @@
+package cli;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.gson.stream.JsonWriter;
+
+import domain.entity.OCRResult;
+
+/**
+ * Where the CLI puts each file's text. Results arrive one at a time in input order.
+ */
+abstract class ResultWriter implements Closeable {
+
+    /**
+     * Writes one result.
+     * @param relativePath the input's path relative to its base directory
+     * @param result the OCR outcome
+     * @throws IOException if the output cannot be written
+     */
+    abstract void write(Path relativePath, OCRResult result) throws IOException;
+
+    /**
+     * One UTF-8 {@code <input>.txt} per successful input, mirroring the input layout under a directory.
+     * @param dir the output directory, created if missing
+     * @return the writer
+     */
+    static ResultWriter textFiles(Path dir) {
+        return new TextFiles(dir);
+    }
+
+    /**
+     * One JSON object per line: {@code source}, {@code ok}, {@code text} or {@code error}, {@code elapsedMillis}.
+     * @param out the stream; closed with the writer
+     * @return the writer
+     */
+    static ResultWriter jsonLines(OutputStream out) {
+        return new JsonLines(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    private static final class TextFiles extends ResultWriter {
+        private final Path dir;
+
+        private TextFiles(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        void write(Path relativePath, OCRResult result) throws IOException {
+            if (!result.isSuccess()) {
+                return;
+            }
+            Path target = dir.resolve(relativePath.toString() + ".txt");
+            Files.createDirectories(target.getParent());
+            Files.writeString(target, result.getText(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class JsonLines extends ResultWriter {
+        private final Writer out;
+
+        private JsonLines(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        void write(Path relativePath, OCRResult result) throws IOException {
+            // JsonWriter would close the underlying stream, so each line gets its own over a shield.
+            JsonWriter json = new JsonWriter(new NonClosingWriter(out));
+            json.beginObject()
+                    .name("source").value(relativePath.toString().replace('\\', '/'))
+                    .name("ok").value(result.isSuccess());
+            if (result.isSuccess()) {
+                json.name("text").value(result.getText());
+            }
+            else {
+                json.name("error").value(describe(result.getError()));
+            }
+            json.name("elapsedMillis").value(result.getElapsedMillis()).endObject();
+            json.close();
+            out.write('\n');
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static String describe(Exception error) {
+        return error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+    }
+
+    private static final class NonClosingWriter extends Writer {
+        private final Writer delegate;
+
+        private NonClosingWriter(Writer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            delegate.write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cli;
+
+import java.util.Locale;
+
+import domain.entity.OCRResult;
+import shared.LatencyWindow;
+
+/**
+ * Counts and per-file latencies of one CLI run, printed when it ends.
+ */
+final class RunSummary {
+    private final LatencyWindow latency;
+    private int succeeded;
+    private int failed;
+
+    /**
+     * @param files how many files the run will process
+     */
+    RunSummary(int files) {
+        this.latency = new LatencyWindow(Math.max(1, files));
+    }
+
+    void record(OCRResult result) {
+        latency.record(result.getElapsedMillis());
+        if (result.isSuccess()) {
+            succeeded++;
+        }
+        else {
+            failed++;
+        }
+    }
+
+    int getSucceeded() {
+        return succeeded;
+    }
+
+    int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @param wallMillis how long the whole run took
+     * @return a few lines of totals, throughput and latency percentiles
+     */
+    String format(long wallMillis) {
+        int files = succeeded + failed;
+        double seconds = wallMillis / 1000.0;
+        String nl = System.lineSeparator();
+        return String.format(Locale.ROOT, "Files: %d  succeeded: %d  failed: %d%s", files, succeeded, failed, nl)
+                + String.format(Locale.ROOT, "Wall time: %.1f s  throughput: %.2f files/s%s",
+                        seconds, seconds > 0 ? files / seconds : 0.0, nl)
+                + String.format(Locale.ROOT, "Latency ms: p50 %d  p95 %d  p99 %d  max %d",
+                        latency.percentile(50), latency.percentile(95), latency.percentile(99), latency.percentile(100));
+    }
+}
@@ -0,0 +1,286 @@
+package cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import application.BatchOptions;
+import application.HistoryService;
+import application.OCRUseCase;
+import application.TilingOptions;
+import domain.entity.OCRResult;
+import infrastructure.CachingOCRProcessor;
+import infrastructure.FirebaseHistoryRepository;
+import infrastructure.InstrumentedOCRProcessor;
+import infrastructure.OCRSpaceService;
+import infrastructure.PagedDocumentReader;
+import infrastructure.ResilientOCRProcessor;
+import shared.Config;
+import shared.JobJournal;
+import shared.MetricsRegistry;
+
+/**
+ * Headless batch OCR: runs a directory or glob of images and documents through the same
+ * OCR stack as the desktop app and writes text files or a JSON Lines stream. No Swing classes
+ * are loaded, so it runs on servers and in scheduled jobs.
+ * <p>
+ * Exit status is 0 when every file succeeded, 1 when some failed and 2 on a usage error.
+ */
+public final class VisionTextCli {
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILURES = 1;
+    static final int EXIT_USAGE = 2;
+
+    private VisionTextCli() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Config.load();
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        OCRSpaceService ocrService = new OCRSpaceService();
+        ResilientOCRProcessor resilient = ResilientOCRProcessor.fromConfig(ocrService);
+        CachingOCRProcessor cache = CachingOCRProcessor.fromConfig(resilient);
+        ocrService.registerMetrics(metrics);
+        resilient.registerMetrics(metrics);
+        cache.registerMetrics(metrics);
+        OCRUseCase ocrUseCase = new OCRUseCase(new InstrumentedOCRProcessor(cache, metrics, "cli"),
+                new PagedDocumentReader());
+        int status = run(args, ocrUseCase, () -> new HistoryService(new FirebaseHistoryRepository()),
+                System.out, System.err);
+        System.exit(status);
+    }
+
+    /**
+     * Runs one batch.
+     * @param args the command line
+     * @param ocrUseCase does the OCR
+     * @param history creates the history service, only called when {@code --user} is given
+     * @param out standard output, for JSON Lines without {@code --out}
+     * @param err progress, failures and the summary
+     * @return the exit status
+     */
+    static int run(String[] args, OCRUseCase ocrUseCase, Supplier<HistoryService> history,
+                   PrintStream out, PrintStream err) {
+        CliArguments arguments;
+        try {
+            arguments = CliArguments.parse(args);
+        }
+        catch (IllegalArgumentException ex) {
+            return usageError(ex.getMessage(), err);
+        }
+        if (arguments.isHelp()) {
+            out.println(CliArguments.USAGE);
+            return EXIT_OK;
+        }
+        JobJournal journal = null;
+        try {
+            if (arguments.getJournal() != null) {
+                journal = JobJournal.open(arguments.getJournal(), Boolean.parseBoolean(Config.get("jobs.journal.fsync")));
+            }
+            return run(arguments, journal, ocrUseCase, history, out, err);
+        }
+        catch (IOException ex) {
+            err.println("Error: " + ex.getMessage());
+            return EXIT_FAILURES;
+        }
+        finally {
+            close(journal, err);
+        }
+    }
+
+    private static int run(CliArguments arguments, JobJournal journal, OCRUseCase ocrUseCase,
+                           Supplier<HistoryService> history, PrintStream out, PrintStream err) throws IOException {
+        List<JobJournal.Job> jobs = new ArrayList<>();
+        List<InputSelector.Input> inputs = new ArrayList<>();
+        boolean resuming = journal != null && journal.queued() > 0;
+        if (resuming) {
+            // Queueing the inputs behind it would redo any already finished, so they are refused.
+            if (!arguments.getInputs().isEmpty()) {
+                return usageError(arguments.getJournal() + " has " + journal.queued() + " unfinished file(s);"
+                        + " run with --journal and no inputs to finish them first", err);
+            }
+            err.println("Resuming " + journal.queued() + " unfinished file(s) from " + arguments.getJournal());
+            for (JobJournal.Job job = journal.poll(); job != null; job = journal.poll()) {
+                jobs.add(job);
+                inputs.add(InputSelector.Input.fromPayload(job.getPayload()));
+            }
+        }
+        else {
+            try {
+                inputs = InputSelector.select(arguments.getInputs(), arguments.isRecursive());
+            }
+            catch (IOException ex) {
+                return usageError(ex.getMessage(), err);
+            }
+            if (journal != null) {
+                List<String> payloads = new ArrayList<>(inputs.size());
+                for (InputSelector.Input input : inputs) {
+                    payloads.add(input.toPayload());
+                }
+                journal.enqueueAll(payloads);
+                for (JobJournal.Job job = journal.poll(); job != null; job = journal.poll()) {
+                    jobs.add(job);
+                }
+            }
+        }
+        if (inputs.isEmpty()) {
+            err.println("No supported files found.");
+            return EXIT_USAGE;
+        }
+        List<InputSelector.Input> batch = inputs;
+
+        HistoryService historyService = arguments.getUser() == null ? null : history.get();
+        RunSummary summary = new RunSummary(batch.size());
+        // Results that OCR'd but could not be written or saved; guarded by the in-order listener.
+        int[] unsaved = new int[1];
+        long start = System.nanoTime();
+        try (ResultWriter writer = openWriter(arguments, resuming, out)) {
+            List<File> files = new ArrayList<>(batch.size());
+            for (InputSelector.Input input : batch) {
+                files.add(input.getFile().toFile());
+            }
+            err.println("OCR " + files.size() + " file(s), " + arguments.getParallelism() + " at a time");
+            BatchOptions options = BatchOptions.defaults()
+                    .withParallelism(arguments.getParallelism())
+                    .withTiling(arguments.isTile() ? TilingOptions.defaults() : null)
+                    .onResult(result -> {
+                        // Called in input order, one result at a time.
+                        summary.record(result);
+                        Path relative = batch.get(result.getIndex()).getRelativePath();
+                        if (!result.isSuccess()) {
+                            err.println("Failed: " + relative + ": " + ResultWriter.describe(result.getError()));
+                        }
+                        else if (historyService != null && !save(historyService, arguments.getUser(), result, err)) {
+                            unsaved[0]++;
+                        }
+                        try {
+                            writer.write(relative, result);
+                            if (journal != null) {
+                                journal.complete(jobs.get(result.getIndex()));
+                            }
+                        }
+                        catch (IOException ex) {
+                            err.println("Error: could not record output for " + relative + ": " + ex.getMessage());
+                            unsaved[0]++;
+                        }
+                    });
+            ocrUseCase.extractTextBatch(files, options);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            err.println(journal == null ? "Interrupted." : "Interrupted; run again with --journal "
+                    + arguments.getJournal() + " to resume.");
+            return EXIT_FAILURES;
+        }
+        err.println(summary.format((System.nanoTime() - start) / 1_000_000L));
+        if (arguments.isMetrics()) {
+            err.println("Metrics:");
+            err.print(MetricsRegistry.getDefault().format("ocr."));
+        }
+        return summary.getFailed() == 0 && unsaved[0] == 0 ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    private static void close(JobJournal journal, PrintStream err) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        }
+        catch (IOException ex) {
+            err.println("Warning: could not compact job journal: " + ex.getMessage());
+        }
+    }
+
+    private static int usageError(String message, PrintStream err) {
+        err.println("Error: " + message);
+        err.println(CliArguments.USAGE);
+        return EXIT_USAGE;
+    }
+
+    // A resumed run appends: the lines of files finished before the crash are not redone.
+    private static ResultWriter openWriter(CliArguments arguments, boolean resuming, PrintStream out)
+            throws IOException {
+        Path output = arguments.getOutput();
+        if (arguments.getFormat() == CliArguments.Format.TXT) {
+            Files.createDirectories(output);
+            return ResultWriter.textFiles(output);
+        }
+        if (output == null || "-".equals(output.toString())) {
+            return ResultWriter.jsonLines(new UnclosedStream(out));
+        }
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (!resuming) {
+            return ResultWriter.jsonLines(Files.newOutputStream(output));
+        }
+        boolean tornLine = endsMidLine(output);
+        OutputStream stream = Files.newOutputStream(output, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (tornLine) {
+            // The crash cut the last line short; it stays, unreadable, on a line of its own.
+            stream.write('\n');
+        }
+        return ResultWriter.jsonLines(stream);
+    }
+
+    private static boolean endsMidLine(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+            in.seek(in.length() - 1);
+            return in.read() != '\n';
+        }
+    }
+
+    private static boolean save(HistoryService historyService, String user, OCRResult result, PrintStream err) {
+        try {
+            historyService.addHistory(user, result.getSource(), result.getText());
+            return true;
+        }
+        catch (IOException ex) {
+            err.println("Warning: could not save " + result.getSource() + " to history: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /** Standard output stays open for whoever else writes to it. */
+    private static final class UnclosedStream extends OutputStream {
+        private final PrintStream out;
+
+        private UnclosedStream(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package domain.entity;
+
+/**
+ * A history item's metadata, without its text.
+ */
+public final class HistoryEntry {
+    private final String id;
+    private final String imageFilename;
+    private final long timestamp;
+    private final String contentHash;
+
+    public HistoryEntry(String id, String imageFilename, long timestamp) {
+        this(id, imageFilename, timestamp, null);
+    }
+
+    public HistoryEntry(String id, String imageFilename, long timestamp, String contentHash) {
+        this.id = id;
+        this.imageFilename = imageFilename;
+        this.timestamp = timestamp;
+        this.contentHash = contentHash;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getImageFilename() {
+        return imageFilename;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the hash of the text's UTF-8 bytes, or null where it is not stored
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+}
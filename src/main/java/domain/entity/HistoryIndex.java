@@ -0,0 +1,209 @@
+package domain.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An immutable, column-wise snapshot of history metadata for listing it in memory. Entries are
+ * stored in id order next to a {@code long[]} of timestamps and a {@code long[]} of name keys
+ * (four UTF-16 units of each {@link HistorySort#fold folded} name, taken after the prefix every
+ * name shares, so most name
+ * comparisons are one primitive compare). Each sorted field's order is worked out once, without
+ * boxing, and kept as an {@code int[]} permutation; a descending listing reads it
+ * backwards, so changing order or direction is a lookup. Orders match {@link HistorySort}.
+ */
+public final class HistoryIndex {
+    private static final Comparator<HistoryEntry> BY_ID = Comparator.comparing(HistoryEntry::getId);
+
+    private final HistoryEntry[] entries;
+    private final long[] timestamps;
+    private final String[] names;
+    private final long[] nameKeys;
+    // Ascending positions by field, built on first use.
+    private volatile int[] byTimestamp;
+    private volatile int[] byName;
+
+    private HistoryIndex(HistoryEntry[] entries) {
+        this.entries = entries;
+        timestamps = new long[entries.length];
+        names = new String[entries.length];
+        nameKeys = new long[entries.length];
+        int shared = 0;
+        for (int i = 0; i < entries.length; i++) {
+            timestamps[i] = entries[i].getTimestamp();
+            names[i] = HistorySort.fold(entries[i].getImageFilename());
+            shared = i == 0 ? names[0].length() : sharedPrefix(names[0], names[i], shared);
+        }
+        for (int i = 0; i < entries.length; i++) {
+            nameKeys[i] = nameKey(names[i], shared);
+        }
+    }
+
+    /**
+     * @param entries the entries, in any order, with distinct ids
+     * @return the index
+     */
+    public static HistoryIndex of(Collection<HistoryEntry> entries) {
+        HistoryEntry[] sorted = entries.toArray(new HistoryEntry[0]);
+        Arrays.parallelSort(sorted, BY_ID);
+        return new HistoryIndex(sorted);
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @param sort the listing order
+     * @param position 0 for the first entry listed
+     * @return the entry listed there
+     */
+    public HistoryEntry get(HistorySort sort, int position) {
+        int[] order = order(sort);
+        return entries[order[sort.isDescending() ? order.length - 1 - position : position]];
+    }
+
+    /**
+     * Pages through the index like {@link HistoryPage#of}.
+     * @param sort the listing order
+     * @param cursor null for the first page, else a previous page's next cursor
+     * @param limit the most entries per page
+     * @return the page
+     */
+    public HistoryPage page(HistorySort sort, String cursor, int limit) {
+        int start = 0;
+        if (cursor != null) {
+            String value = HistoryPage.boundOf(cursor);
+            String id = HistoryPage.idOf(cursor);
+            int low = 0;
+            int high = entries.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sort.compare(get(sort, middle), value, id) <= 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            start = low;
+        }
+        int end = (int) Math.min(entries.length, (long) start + limit + 1);
+        List<HistoryEntry> candidates = new ArrayList<>(end - start);
+        for (int position = start; position < end; position++) {
+            candidates.add(get(sort, position));
+        }
+        return HistoryPage.following(candidates, sort, cursor, limit);
+    }
+
+    private int[] order(HistorySort sort) {
+        if ("timestamp".equals(sort.getField())) {
+            int[] order = byTimestamp;
+            if (order == null) {
+                order = sortByTimestamp();
+                byTimestamp = order;
+            }
+            return order;
+        }
+        int[] order = byName;
+        if (order == null) {
+            order = sortByName();
+            byName = order;
+        }
+        return order;
+    }
+
+    // Positions are id ranks, so ties on the timestamp fall back to id order by themselves.
+    // When every timestamp fits above the position bits, (timestamp, position) is packed into
+    // one long and the keys are sorted as primitives.
+    private int[] sortByTimestamp() {
+        int n = entries.length;
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+        long limit = 1L << (63 - bits);
+        boolean packable = true;
+        for (long timestamp : timestamps) {
+            if (timestamp < 0 || timestamp >= limit) {
+                packable = false;
+                break;
+            }
+        }
+        if (!packable) {
+            return sortPositions((a, b) -> Long.compare(timestamps[a], timestamps[b]));
+        }
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = timestamps[i] << bits | i;
+        }
+        Arrays.parallelSort(keys);
+        long mask = (1L << bits) - 1;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (keys[i] & mask);
+        }
+        return order;
+    }
+
+    private int[] sortByName() {
+        return sortPositions((a, b) -> {
+            int order = Long.compareUnsigned(nameKeys[a], nameKeys[b]);
+            return order != 0 ? order : names[a].compareTo(names[b]);
+        });
+    }
+
+    // A bottom-up merge sort of the positions, unboxed. It is stable and the positions start in
+    // id order, so ties keep id order without the comparator checking.
+    private int[] sortPositions(IntBinaryOperator comparator) {
+        int n = entries.length;
+        int[] from = new int[n];
+        int[] to = new int[n];
+        for (int i = 0; i < n; i++) {
+            from[i] = i;
+        }
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n; low += 2 * width) {
+                int middle = Math.min(low + width, n);
+                int high = Math.min(low + 2 * width, n);
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    to[k++] = comparator.applyAsInt(from[j], from[i]) < 0 ? from[j++] : from[i++];
+                }
+                while (i < middle) {
+                    to[k++] = from[i++];
+                }
+                while (j < high) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    private static int sharedPrefix(String a, String b, int limit) {
+        int length = Math.min(limit, b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // Every name starts with the same 'from' units. Past them, unsigned order of the keys
+    // agrees with String.compareTo wherever the keys differ: the first differing unit decides
+    // both, and a missing unit (0) sorts first, as a shorter string does.
+    private static long nameKey(String name, int from) {
+        long key = 0;
+        for (int i = from; i < from + 4; i++) {
+            key = key << 16 | (i < name.length() ? name.charAt(i) : 0);
+        }
+        return key;
+    }
+}
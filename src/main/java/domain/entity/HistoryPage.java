@@ -0,0 +1,144 @@
+package domain.entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a history listing and the cursor for the next. Cursors are keyset positions
+ * (the last entry's sorted value and id), so inserts and deletes elsewhere in the listing do
+ * not shift later pages. They are opaque to callers.
+ */
+public final class HistoryPage {
+    private final List<HistoryEntry> entries;
+    private final String nextCursor;
+
+    public HistoryPage(List<HistoryEntry> entries, String nextCursor) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.nextCursor = nextCursor;
+    }
+
+    public List<HistoryEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the cursor for the following page, or null if this is the last
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Pages through entries held in memory. To page the same entries repeatedly, keep a
+     * {@link HistoryIndex} instead.
+     * @param all every entry, in any order
+     * @param sort the listing order
+     * @param cursor null for the first page, else a previous page's next cursor
+     * @param limit the most entries per page
+     * @return the page
+     */
+    public static HistoryPage of(Collection<HistoryEntry> all, HistorySort sort, String cursor, int limit) {
+        return HistoryIndex.of(all).page(sort, cursor, limit);
+    }
+
+    /**
+     * Makes the page that follows a cursor from candidates fetched around it, e.g. by a server
+     * query bounded at {@link #boundOf} for {@code limit + 1 + }{@link #overlapOf} entries.
+     * Candidates at or before the cursor are dropped.
+     * @param candidates entries in listing order
+     * @param sort the listing order
+     * @param cursor null for the first page, else a previous page's next cursor
+     * @param limit the most entries per page
+     * @return the page; it has a next cursor if more candidates remained
+     */
+    public static HistoryPage following(List<HistoryEntry> candidates, HistorySort sort, String cursor,
+                                        int limit) {
+        Position after = Position.parse(cursor);
+        List<HistoryEntry> page = new ArrayList<>(Math.min(limit, candidates.size()));
+        boolean more = false;
+        for (HistoryEntry entry : candidates) {
+            if (after != null && sort.compare(entry, after.value, after.id) <= 0) {
+                continue;
+            }
+            if (page.size() == limit) {
+                more = true;
+                break;
+            }
+            page.add(entry);
+        }
+        if (!more || page.isEmpty()) {
+            return new HistoryPage(page, null);
+        }
+        HistoryEntry last = page.get(page.size() - 1);
+        String value = sort.valueOf(last);
+        int ties = after != null && after.value.equals(value) ? after.ties : 0;
+        for (HistoryEntry entry : page) {
+            if (sort.valueOf(entry).equals(value)) {
+                ties++;
+            }
+        }
+        return new HistoryPage(page, ties + "|" + last.getId() + "|" + value);
+    }
+
+    /**
+     * @param cursor a next cursor, or null
+     * @return the sorted value the page after it starts from (inclusive), or null for the first page
+     */
+    public static String boundOf(String cursor) {
+        Position after = Position.parse(cursor);
+        return after == null ? null : after.value;
+    }
+
+    /**
+     * @param cursor a next cursor, or null
+     * @return the id of the entry the page before it ended on, or null for the first page
+     */
+    public static String idOf(String cursor) {
+        Position after = Position.parse(cursor);
+        return after == null ? null : after.id;
+    }
+
+    /**
+     * @param cursor a next cursor, or null
+     * @return how many entries listed before the cursor share its value; a query starting at
+     *         {@link #boundOf} returns them again
+     */
+    public static int overlapOf(String cursor) {
+        Position after = Position.parse(cursor);
+        return after == null ? 0 : after.ties;
+    }
+
+    private static final class Position {
+        private final int ties;
+        private final String id;
+        private final String value;
+
+        private Position(int ties, String id, String value) {
+            this.ties = ties;
+            this.id = id;
+            this.value = value;
+        }
+
+        private static Position parse(String cursor) {
+            if (cursor == null) {
+                return null;
+            }
+            String[] parts = cursor.split("\\|", 3);
+            try {
+                if (parts.length == 3) {
+                    return new Position(Integer.parseInt(parts[0]), parts[1], parts[2]);
+                }
+            }
+            catch (NumberFormatException ex) {
+                // Reported below.
+            }
+            throw new IllegalArgumentException("Not a history cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package domain.entity;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Orders in which history can be listed. Each sorts by one field, then by id. Timestamps
+ * compare by value; names ignore case, comparing the UTF-16 code units of the lower-cased
+ * name, which is the order of the {@link #nameKey} Firebase sorts on.
+ */
+public enum HistorySort {
+    NEWEST("timestamp", true),
+    OLDEST("timestamp", false),
+    NAME_ASC("filename", false),
+    NAME_DESC("filename", true);
+
+    private static final Comparator<HistoryEntry> BY_TIMESTAMP =
+            Comparator.comparingLong(HistoryEntry::getTimestamp).thenComparing(HistoryEntry::getId);
+    private static final Comparator<HistoryEntry> BY_NAME =
+            Comparator.comparing((HistoryEntry entry) -> fold(entry.getImageFilename()))
+                    .thenComparing(HistoryEntry::getId);
+
+    private final String field;
+    private final boolean descending;
+
+    HistorySort(String field, boolean descending) {
+        this.field = field;
+        this.descending = descending;
+    }
+
+    /**
+     * @return the stored field sorted on, "timestamp" or "filename"
+     */
+    public String getField() {
+        return field;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * @return listing order, first entry first
+     */
+    public Comparator<HistoryEntry> comparator() {
+        Comparator<HistoryEntry> ascending = "timestamp".equals(field) ? BY_TIMESTAMP : BY_NAME;
+        return descending ? ascending.reversed() : ascending;
+    }
+
+    /**
+     * @param entry an entry
+     * @return the sorted field's value, as text; for names, the lower-cased name
+     */
+    public String valueOf(HistoryEntry entry) {
+        return "timestamp".equals(field) ? Long.toString(entry.getTimestamp()) : fold(entry.getImageFilename());
+    }
+
+    /**
+     * Compares an entry with a position in the listing.
+     * @param entry the entry
+     * @param value the position's field value, as from {@link #valueOf}
+     * @param id the position's id
+     * @return negative if the entry is listed before the position, 0 if at it, positive if after
+     */
+    public int compare(HistoryEntry entry, String value, String id) {
+        int order = "timestamp".equals(field)
+                ? Long.compare(entry.getTimestamp(), Long.parseLong(value))
+                : fold(entry.getImageFilename()).compareTo(value);
+        if (order == 0) {
+            order = entry.getId().compareTo(id);
+        }
+        return descending ? -order : order;
+    }
+
+    /**
+     * The unique key name orders sort on: the lower-cased name and the id, joined by NUL. File
+     * names cannot contain NUL, so it sorts below every character that follows the name, and
+     * the keys sort as (name, id).
+     * @param filename the name, or its {@link #fold}
+     * @param id the entry's id
+     * @return the key
+     */
+    public static String nameKey(String filename, String id) {
+        return fold(filename) + '\u0000' + id;
+    }
+
+    /**
+     * @param filename a name
+     * @return the name as name orders compare it
+     */
+    public static String fold(String filename) {
+        return filename.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,69 @@
+package domain.entity;
+
+/**
+ * Outcome of OCR for a single input: either extracted text or the failure that prevented it.
+ * @null
+ */
+public final class OCRResult {
+    private final int index;
+    private final String source;
+    private final String text;
+    private final Exception error;
+    private final long elapsedMillis;
+
+    private OCRResult(int index, String source, String text, Exception error, long elapsedMillis) {
+        this.index = index;
+        this.source = source;
+        this.text = text;
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Creates a successful result.
+     * @param index position of the input in its batch
+     * @param source name of the input
+     * @param text the extracted text
+     * @param elapsedMillis time spent on the input
+     * @return the result
+     */
+    public static OCRResult success(int index, String source, String text, long elapsedMillis) {
+        return new OCRResult(index, source, text, null, elapsedMillis);
+    }
+
+    /**
+     * Creates a failed result.
+     * @param index position of the input in its batch
+     * @param source name of the input
+     * @param error the failure
+     * @param elapsedMillis time spent on the input
+     * @return the result
+     */
+    public static OCRResult failure(int index, String source, Exception error, long elapsedMillis) {
+        return new OCRResult(index, source, null, error, elapsedMillis);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
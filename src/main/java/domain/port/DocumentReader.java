@@ -0,0 +1,26 @@
+package domain.port;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Port for opening multi-page documents such as PDFs and multi-page TIFFs.
+ * @null
+ */
+public interface DocumentReader {
+
+    /**
+     * Whether the file is a document this reader splits into pages.
+     * @param file the file
+     * @return true for supported document types
+     */
+    boolean supports(File file);
+
+    /**
+     * Opens a document for page-by-page reading.
+     * @param file the file
+     * @return the pages; the caller closes it
+     * @throws IOException error
+     */
+    PageSource open(File file) throws IOException;
+}
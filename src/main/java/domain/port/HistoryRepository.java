@@ -2,6 +2,11 @@ package domain.port;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import domain.entity.TextRecord;
 
 /**
  * Repository port for user history operations.
@@ -15,16 +20,30 @@ public interface HistoryRepository {
      * @param imageFilename the file
      * @param textContent the text output
      * @param timestamp the time of request
+     * @return the new item's historyId
+     * @throws IOException error
+     */
+    String saveHistory(String username, String imageFilename, String textContent, long timestamp) throws IOException;
+
+    /**
+     * Saves several records in one request, each under its own id; a record whose id exists
+     * replaces it, so a repeated batch is harmless.
+     * @param username the user
+     * @param records the records, with ids chosen by the caller
      * @throws IOException error
      */
-    void saveHistory(String username, String imageFilename, String textContent, long timestamp) throws IOException;
+    void saveHistoryBatch(String username, List<TextRecord> records) throws IOException;
 
     /**
-     * Getter for the user history.
+     * Getter for one page of the user history, sorted on the server where it can be.
      * @param username the user
-     * @return list of historyId Strings
+     * @param sort the order
+     * @param cursor null for the first page, else the previous page's next cursor
+     * @param limit the most items on the page
+     * @return the page
+     * @throws IOException error
      */
-    List<String> getHistoryList(String username);
+    HistoryPage getHistoryPage(String username, HistorySort sort, String cursor, int limit) throws IOException;
 
     /**
      * Getter for item in the user history.
@@ -35,6 +54,15 @@ public interface HistoryRepository {
      */
     String getHistoryItem(String username, String historyId) throws IOException;
 
+    /**
+     * Getter for several items in the user history at once.
+     * @param username the user
+     * @param historyIds the items
+     * @return each item's text by id; ids not in the history are left out
+     * @throws IOException error
+     */
+    Map<String, String> getHistoryItems(String username, List<String> historyIds) throws IOException;
+
     /**
      * Deletes an item from the user history.
      * @param username the user
@@ -0,0 +1,38 @@
+package domain.port;
+
+import java.io.IOException;
+import java.util.List;
+
+import domain.entity.HistoryEntry;
+
+/**
+ * Repository port for a history that a local copy is kept in sync with. The extra reads here
+ * list the whole history or a slice of it, which only syncing needs.
+ */
+public interface HistorySyncRepository extends HistoryRepository {
+
+    /**
+     * Getter for the user history, without the items' text.
+     * @param username the user
+     * @return the entries, oldest first
+     * @throws IOException error
+     */
+    List<HistoryEntry> getHistoryEntries(String username) throws IOException;
+
+    /**
+     * Getter for the entries of the items saved at or after a time, without their text.
+     * @param username the user
+     * @param timestamp epoch millis, inclusive
+     * @return the entries, oldest first
+     * @throws IOException error
+     */
+    List<HistoryEntry> getHistoryEntriesSince(String username, long timestamp) throws IOException;
+
+    /**
+     * Getter for the ids of every item in the user history, without their data.
+     * @param username the user
+     * @return the ids
+     * @throws IOException error
+     */
+    List<String> getHistoryIds(String username) throws IOException;
+}
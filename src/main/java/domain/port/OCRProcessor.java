@@ -1,6 +1,18 @@
 package domain.port;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.imageio.ImageIO;
 
 /**
  * OCR processor port.
@@ -15,4 +27,84 @@ public interface OCRProcessor {
      * @throws Exception error
      */
     String extractTextFromImage(File imageFile) throws Exception;
+
+    /**
+     * OCR encoded image bytes held in memory. The default spools them to a temp file;
+     * implementations should override it to upload straight from memory.
+     * @param imageData the encoded image; its position is not changed
+     * @param filename name of the image, used for its type
+     * @return the text content
+     * @throws Exception error
+     */
+    default String extractTextFromBytes(ByteBuffer imageData, String filename) throws Exception {
+        int dot = filename == null ? -1 : filename.lastIndexOf('.');
+        File temp = File.createTempFile("visiontext_", dot >= 0 ? filename.substring(dot) : ".img");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                Channels.newChannel(out).write(imageData.duplicate());
+            }
+            return extractTextFromImage(temp);
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * OCR a decoded image, e.g. from the clipboard or a screen capture. The default
+     * PNG-encodes it in memory.
+     * @param image the image
+     * @param filename name of the image
+     * @return the text content
+     * @throws Exception error
+     */
+    default String extractTextFromImage(BufferedImage image, String filename) throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", png)) {
+            throw new IOException("No PNG encoder available");
+        }
+        return extractTextFromBytes(ByteBuffer.wrap(png.toByteArray()), filename);
+    }
+
+    /**
+     * OCR the image without blocking the caller. Cancelling the returned future should
+     * abandon the underlying request where the implementation supports it.
+     * The default runs the blocking call on the common pool.
+     * @param imageFile the image
+     * @return future text content
+     */
+    default CompletableFuture<String> extractTextAsync(File imageFile) {
+        return runAsync(() -> extractTextFromImage(imageFile));
+    }
+
+    /**
+     * Non-blocking variant of {@link #extractTextFromBytes(ByteBuffer, String)}.
+     * @param imageData the encoded image; its position is not changed
+     * @param filename name of the image
+     * @return future text content
+     */
+    default CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        return runAsync(() -> extractTextFromBytes(imageData, filename));
+    }
+
+    /**
+     * Non-blocking variant of {@link #extractTextFromImage(BufferedImage, String)}.
+     * @param image the image
+     * @param filename name of the image
+     * @return future text content
+     */
+    default CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        return runAsync(() -> extractTextFromImage(image, filename));
+    }
+
+    private static CompletableFuture<String> runAsync(Callable<String> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            }
+            catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
 }
@@ -0,0 +1,33 @@
+package domain.port;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * A multi-page document whose pages are decoded one at a time, so the whole
+ * document is never held in memory. Implementations need not be thread-safe.
+ * @null
+ */
+public interface PageSource extends AutoCloseable {
+
+    /**
+     * Getter for the number of pages.
+     * @return page count
+     */
+    int getPageCount();
+
+    /**
+     * Decodes a single page.
+     * @param pageIndex zero-based page index
+     * @return the page image
+     * @throws IOException error
+     */
+    BufferedImage renderPage(int pageIndex) throws IOException;
+
+    /**
+     * Releases the document.
+     * @throws IOException error
+     */
+    @Override
+    void close() throws IOException;
+}
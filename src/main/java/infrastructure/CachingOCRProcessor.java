@@ -0,0 +1,311 @@
+package infrastructure;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import domain.port.OCRProcessor;
+import shared.Config;
+import shared.ContentHash;
+import shared.Futures;
+import shared.LruCache;
+import shared.MetricsRegistry;
+import shared.SingleFlight;
+
+/**
+ * OCRProcessor decorator that remembers results by a SHA-256 of the image bytes.
+ * Lookups go to a bounded in-memory LRU first, then to an on-disk store that survives
+ * restarts; only a miss in both reaches the wrapped processor. Concurrent misses for the
+ * same bytes share a single delegate call.
+ */
+public class CachingOCRProcessor implements OCRProcessor {
+    private static final String SUFFIX = ".txt";
+
+    private final OCRProcessor delegate;
+    private final LruCache<String, String> memory;
+    private final Path diskDir;
+    private final LruCache<String, Boolean> diskIndex;
+    private final SingleFlight<String, String> flights;
+
+    private final AtomicLong memoryHits;
+    private final AtomicLong diskHits;
+    private final AtomicLong misses;
+
+    /**
+     * Creates a cache in front of another processor.
+     * @param delegate the processor doing the real work
+     * @param diskDir directory for the persistent tier, or null for memory only
+     * @param maxMemoryEntries in-memory capacity
+     * @param maxDiskEntries on-disk capacity
+     */
+    public CachingOCRProcessor(OCRProcessor delegate, Path diskDir, int maxMemoryEntries, int maxDiskEntries) {
+        this.delegate = delegate;
+        this.memory = new LruCache<>(maxMemoryEntries);
+        this.diskDir = diskDir;
+        this.diskIndex = new LruCache<>(maxDiskEntries, (key, present) -> deleteQuietly(key));
+        flights = new SingleFlight<>();
+        memoryHits = new AtomicLong();
+        diskHits = new AtomicLong();
+        misses = new AtomicLong();
+        if (diskDir != null) {
+            loadDiskIndex();
+        }
+    }
+
+    private CachingOCRProcessor(CachingOCRProcessor shared, OCRProcessor delegate) {
+        this.delegate = delegate;
+        memory = shared.memory;
+        diskDir = shared.diskDir;
+        diskIndex = shared.diskIndex;
+        flights = shared.flights;
+        memoryHits = shared.memoryHits;
+        diskHits = shared.diskHits;
+        misses = shared.misses;
+    }
+
+    /**
+     * Creates a cache sized from config.properties
+     * ({@code ocr.cache.memory.entries}, {@code ocr.cache.disk.entries}).
+     * @param delegate the processor doing the real work
+     * @return the cache
+     */
+    public static CachingOCRProcessor fromConfig(OCRProcessor delegate) {
+        return new CachingOCRProcessor(delegate,
+                Paths.get(Config.getDataDir(), "ocr-cache"),
+                Config.getInt("ocr.cache.memory.entries", 256),
+                Config.getInt("ocr.cache.disk.entries", 10_000));
+    }
+
+    /**
+     * The same cache in front of another processor, e.g. the same service under another
+     * priority. Entries, counters and in-flight misses are shared, so a miss already being
+     * read for one is joined by the other.
+     * @param delegate the processor doing the real work
+     * @return the cache
+     */
+    public CachingOCRProcessor withDelegate(OCRProcessor delegate) {
+        return new CachingOCRProcessor(this, delegate);
+    }
+
+    @Override
+    public String extractTextFromImage(File imageFile) throws Exception {
+        return cached(ContentHash.of(imageFile.toPath()), () -> delegate.extractTextFromImage(imageFile));
+    }
+
+    @Override
+    public String extractTextFromBytes(ByteBuffer imageData, String filename) throws Exception {
+        return cached(ContentHash.of(imageData), () -> delegate.extractTextFromBytes(imageData, filename));
+    }
+
+    @Override
+    public String extractTextFromImage(BufferedImage image, String filename) throws Exception {
+        return cached(ContentHash.of(image), () -> delegate.extractTextFromImage(image, filename));
+    }
+
+    /**
+     * Hashes off the caller's thread and answers hits without touching the delegate;
+     * misses go to the delegate's async path. Cancelling the result cancels the delegate call.
+     * @param imageFile the image
+     * @return future text content
+     */
+    @Override
+    public CompletableFuture<String> extractTextAsync(File imageFile) {
+        return cachedAsync(() -> ContentHash.of(imageFile.toPath()), () -> delegate.extractTextAsync(imageFile));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        return cachedAsync(() -> ContentHash.of(imageData), () -> delegate.extractTextAsync(imageData, filename));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        return cachedAsync(() -> ContentHash.of(image), () -> delegate.extractTextAsync(image, filename));
+    }
+
+    /**
+     * Publishes the hit, miss and eviction counters as {@code ocr.cache.*} gauges.
+     * @param metrics the registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        metrics.gauge("ocr.cache.memory.hits", this::getMemoryHits);
+        metrics.gauge("ocr.cache.disk.hits", this::getDiskHits);
+        metrics.gauge("ocr.cache.misses", this::getMisses);
+        metrics.gauge("ocr.cache.coalesced", this::getCoalesced);
+        metrics.gauge("ocr.cache.evictions", this::getEvictions);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return flights.coalesced();
+    }
+
+    public long getEvictions() {
+        return memory.evictions() + diskIndex.evictions();
+    }
+
+    private String cached(String key, Callable<String> compute) throws Exception {
+        String cachedText = lookup(key);
+        if (cachedText != null) {
+            return cachedText;
+        }
+        return flights.run(key, () -> {
+            misses.incrementAndGet();
+            String text = compute.call();
+            store(key, text);
+            return text;
+        });
+    }
+
+    private CompletableFuture<String> cachedAsync(Callable<String> hash,
+                                                  Supplier<CompletableFuture<String>> compute) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<String> hashing = Futures.supplyAsync(hash, ForkJoinPool.commonPool());
+        Futures.propagateCancel(result, hashing);
+        hashing.whenComplete((key, hashError) -> {
+            if (hashError != null) {
+                result.completeExceptionally(Futures.unwrap(hashError));
+                return;
+            }
+            String cachedText = lookup(key);
+            if (cachedText != null) {
+                result.complete(cachedText);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            CompletableFuture<String> shared = flights.runAsync(key, () -> {
+                misses.incrementAndGet();
+                CompletableFuture<String> call = compute.get();
+                CompletableFuture<String> stored = call.thenApply(text -> {
+                    store(key, text);
+                    return text;
+                });
+                Futures.propagateCancel(stored, call);
+                return stored;
+            });
+            Futures.propagateCancel(result, shared);
+            Futures.forward(shared, result);
+        });
+        return result;
+    }
+
+    private String lookup(String key) {
+        String text = memory.get(key);
+        if (text != null) {
+            memoryHits.incrementAndGet();
+            return text;
+        }
+        if (diskDir == null || diskIndex.get(key) == null) {
+            return null;
+        }
+        Path file = pathFor(key);
+        try {
+            text = Files.readString(file, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException ex) {
+            diskIndex.remove(key);
+            return null;
+        }
+        diskHits.incrementAndGet();
+        memory.put(key, text);
+        return text;
+    }
+
+    private void store(String key, String text) {
+        if (text == null) {
+            return;
+        }
+        memory.put(key, text);
+        if (diskDir == null) {
+            return;
+        }
+        Path file = pathFor(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            diskIndex.put(key, Boolean.TRUE);
+        }
+        catch (IOException ex) {
+            System.err.println("Warning: could not write OCR cache entry: " + ex.getMessage());
+        }
+    }
+
+    private void loadDiskIndex() {
+        if (!Files.isDirectory(diskDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(diskDir, 2)) {
+            List<Path> entries = files
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(CachingOCRProcessor::lastModified))
+                    .collect(Collectors.toList());
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                diskIndex.put(name.substring(0, name.length() - SUFFIX.length()), Boolean.TRUE);
+            }
+        }
+        catch (IOException ex) {
+            System.err.println("Warning: could not scan OCR cache: " + ex.getMessage());
+        }
+    }
+
+    // Two-character shards keep any one directory small.
+    private Path pathFor(String key) {
+        return diskDir.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            Files.deleteIfExists(pathFor(key));
+        }
+        catch (IOException ignored) {
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        }
+        catch (IOException ex) {
+            return 0L;
+        }
+    }
+}
@@ -1,26 +1,79 @@
 package infrastructure;
 
-import com.google.gson.*;
-import domain.port.HistoryRepository;
+import domain.entity.HistoryEntry;
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import domain.entity.TextRecord;
+import domain.port.HistorySyncRepository;
+import shared.Config;
+import shared.ContentHash;
+import shared.FirebaseHttpException;
+import shared.JsonCodec;
+import shared.PushIds;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static shared.Config.getFirebaseRealTmeDBURL;
 import static shared.FirebaseUtil.*;
 
-public class FirebaseHistoryRepository implements HistoryRepository {
-    private final Gson gson;
-    private final String FIREBASE_URL = getFirebaseRealTmeDBURL();
+/**
+ * History in the Firebase Realtime Database. Each item is split in two: a small metadata node
+ * under {@code users/<user>/historyMeta}, which is all that listings download, and its text
+ * under {@code users/<user>/historyContent}, read one item at a time. Both are written and
+ * deleted together in one multi-path update.
+ * <p>
+ * Users that {@link HistoryMigration} has not moved yet keep whole items under
+ * {@code users/<user>/history}; until {@code historySchema} says otherwise, listings read that
+ * node and saves write it as well as the split nodes.
+ * <p>
+ * Pages are keyset queries bounded at the previous page's last entry. Firebase orders ties on a
+ * child by key but takes no key in {@code startAt}, so metadata also carries {@code nameKey}
+ * ({@link HistorySort#nameKey}), the lower-cased filename and id joined by NUL, which is unique
+ * and sorts as name orders do. Name pages start exactly after the cursor however many items
+ * share a name.
+ */
+public class FirebaseHistoryRepository implements HistorySyncRepository {
+    static final String LEGACY = "history";
+    static final String META = "historyMeta";
+    static final String CONTENT = "historyContent";
+    static final String SCHEMA = "historySchema";
+    static final int SCHEMA_VERSION = 2;
+    static final String NAME_KEY = "nameKey";
+
+    private final String FIREBASE_URL;
+    private final long schemaRecheckNanos;
+    // Cleared once the database refuses ordered queries (no ".indexOn" rule).
+    private volatile boolean orderedQueries = true;
+    // Encoded names of users known to be migrated; a user is never moved back.
+    private final Set<String> migrated = ConcurrentHashMap.newKeySet();
+    // Encoded names of users last seen unmigrated, with when to ask again.
+    private final Map<String, Long> unmigratedUntil = new ConcurrentHashMap<>();
 
     public FirebaseHistoryRepository() {
-        this.gson = new Gson();
+        this(getFirebaseRealTmeDBURL(), Config.getLong("history.schema.recheck.seconds", 60));
+    }
+
+    /**
+     * @param baseUrl the database URL, ending in {@code /}
+     * @param schemaRecheckSeconds how long a user seen unmigrated is taken to still be so
+     */
+    public FirebaseHistoryRepository(String baseUrl, long schemaRecheckSeconds) {
+        FIREBASE_URL = baseUrl;
+        schemaRecheckNanos = TimeUnit.SECONDS.toNanos(schemaRecheckSeconds);
     }
 
-    private String encodeUsername(String username) {
+    static String encodeUsername(String username) {
         if (username == null) return null;
         // Firebase keys can't contain '.', '#', '$', '[', ']' — you already replace @ and .
         // Keep your convention for consistency:
@@ -28,7 +81,7 @@ public class FirebaseHistoryRepository implements HistoryRepository {
     }
 
     @Override
-    public void saveHistory(String username, String imageFilename, String textContent, long timestamp) throws IOException {
+    public String saveHistory(String username, String imageFilename, String textContent, long timestamp) throws IOException {
         if (username == null || username.isEmpty()) {
             throw new IllegalArgumentException("Username cannot be null or empty");
         }
@@ -37,77 +90,156 @@ public class FirebaseHistoryRepository implements HistoryRepository {
             throw new IllegalArgumentException("Text content cannot be null");
         }
 
-        String encodedUsername = encodeUsername(username);
-        String url = FIREBASE_URL + "users/" + encodedUsername + "/history.json";
+        String id = PushIds.next();
+        saveHistoryBatch(username, List.of(new TextRecord(id, imageFilename, textContent, timestamp)));
+        return id;
+    }
 
+    @Override
+    public void saveHistoryBatch(String username, List<TextRecord> records) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (records.isEmpty()) {
+            return;
+        }
         try {
-            Map<String, Object> historyItem = new LinkedHashMap<>();
-            historyItem.put("filename", imageFilename == null ? "" : imageFilename);
-            historyItem.put("content", textContent);
-            historyItem.put("timestamp", timestamp);
-
-            String jsonPayload = gson.toJson(historyItem);
-            String response = post(url, jsonPayload);
-
-            if (response == null || response.isEmpty()) {
-                throw new IOException("Empty response from Firebase");
-            }
-            JsonObject jsonResponse = gson.fromJson(response, JsonObject.class);
-            if (jsonResponse == null || !jsonResponse.has("name")) {
-                throw new IOException("Failed to save history: " + response);
+            // One PATCH on the user node writes both halves of every item, or nothing.
+            boolean split = isMigrated(username);
+            Map<String, String> paths = new LinkedHashMap<>();
+            for (TextRecord record : records) {
+                putItem(paths, record.getId(), record.getImageFilename(), record.getTextContent(), record.getTimestamp());
+                if (!split) {
+                    paths.put(LEGACY + "/" + record.getId(), JsonCodec.writeHistoryItem(
+                            record.getImageFilename(), record.getTextContent(), record.getTimestamp()));
+                }
             }
-        } catch (JsonSyntaxException e) {
-            throw new IOException("Failed to parse Firebase response", e);
-        } catch (Exception e) {
-            throw new IOException("Failed to save history", e);
+            patch(userUrl(username) + ".json", JsonCodec.writeObject(paths));
+        } catch (IOException e) {
+            throw new IOException("Failed to save " + records.size() + " history item(s)", e);
         }
     }
 
     @Override
-    public List<String> getHistoryList(String username) {
+    public List<HistoryEntry> getHistoryEntries(String username) throws IOException {
         if (username == null || username.isEmpty()) {
-            System.err.println("Username is null or empty, returning empty history list");
-            return new ArrayList<>();
+            throw new IllegalArgumentException("Username cannot be null or empty");
         }
+        // Streams the node: only key, filename and timestamp are read.
+        List<HistoryEntry> entries = readEntries(listUrl(username));
+        // Push ids sort by creation.
+        entries.sort(Comparator.comparing(HistoryEntry::getId));
+        return entries;
+    }
 
-        String encodedUsername = encodeUsername(username);
-        String url = FIREBASE_URL + "users/" + encodedUsername + "/history.json";
-        List<String> historyList = new ArrayList<>();
-
-        try {
-            String jsonResponse = shared.FirebaseUtil.get(url);
-
-            if (jsonResponse == null || jsonResponse.isEmpty() || jsonResponse.equals("null")) {
-                // no history yet
-                return historyList;
+    @Override
+    public HistoryPage getHistoryPage(String username, HistorySort sort, String cursor, int limit) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        String url = listUrl(username);
+        boolean keyed = !"timestamp".equals(sort.getField());
+        if (keyed && !isMigrated(username)) {
+            // Legacy nodes have no nameKey, and Firebase would order their filenames by case.
+            return HistoryPage.of(readEntries(url), sort, cursor, limit);
+        }
+        String bound = HistoryPage.boundOf(cursor);
+        String start;
+        int window;
+        if (keyed) {
+            start = bound == null ? null : queryValue(JsonCodec.writeString(nameKey(bound, HistoryPage.idOf(cursor))));
+            // The cursor's own entry comes back first, as startAt and endAt are inclusive.
+            window = limit + 2;
+        }
+        else {
+            // Timestamp pages start at the value and skip the ties already listed.
+            start = bound;
+            window = limit + 1 + HistoryPage.overlapOf(cursor);
+        }
+        String field = queryValue(JsonCodec.writeString(keyed ? NAME_KEY : sort.getField()));
+        int first = window;
+        return ordered(() -> {
+            for (int size = first; ; size = size * 2) {
+                StringBuilder query = new StringBuilder(url)
+                        .append("?orderBy=").append(field)
+                        .append(sort.isDescending() ? "&limitToLast=" : "&limitToFirst=").append(size);
+                if (start != null) {
+                    query.append(sort.isDescending() ? "&endAt=" : "&startAt=").append(start);
+                }
+                // The bounded window comes back as an unordered object; order it here.
+                List<HistoryEntry> candidates = readEntries(query.toString());
+                candidates.sort(sort.comparator());
+                HistoryPage page = HistoryPage.following(candidates, sort, cursor, limit);
+                // A full window with nothing past the page was crowded by ties saved before the
+                // cursor since it was made; ask for more rather than end the listing early.
+                if (page.hasMore() || candidates.size() < size) {
+                    return page;
+                }
             }
+        }, () -> HistoryPage.of(readEntries(url), sort, cursor, limit));
+    }
 
-            JsonObject response = gson.fromJson(jsonResponse, JsonObject.class);
-            if (response == null) {
-                throw new RuntimeException("Failed to parse Firebase response");
-            }
+    @Override
+    public List<HistoryEntry> getHistoryEntriesSince(String username, long timestamp) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        String url = listUrl(username);
+        List<HistoryEntry> entries = ordered(() -> readEntries(url + "?orderBy=%22timestamp%22&startAt=" + timestamp),
+                () -> readEntries(url));
+        entries.removeIf(entry -> entry.getTimestamp() < timestamp);
+        entries.sort(Comparator.comparingLong(HistoryEntry::getTimestamp));
+        return entries;
+    }
 
-            for (Map.Entry<String, JsonElement> entry : response.entrySet()) {
-                String firebaseKey = entry.getKey();
-                JsonObject item = entry.getValue().getAsJsonObject();
+    @FunctionalInterface
+    private interface Fetch<T> {
+        T fetch() throws IOException;
+    }
 
-                String filename = item.has("filename") ? item.get("filename").getAsString() : "unknown";
-                long timestamp = 0L;
-                if (item.has("timestamp")) {
-                    try { timestamp = item.get("timestamp").getAsLong(); } catch (Exception ignored) {}
+    // Ordered queries need ".indexOn" rules; without them Firebase refuses the query with a 400
+    // "Index not defined", and the whole node is downloaded and ordered here instead. Any other
+    // failure is the caller's.
+    private <T> T ordered(Fetch<T> query, Fetch<T> fallback) throws IOException {
+        if (orderedQueries) {
+            try {
+                return query.fetch();
+            } catch (FirebaseHttpException e) {
+                if (!e.isIndexNotDefined()) {
+                    throw e;
                 }
+                System.err.println("Warning: ordered query refused (" + e.getBody() + "); add "
+                        + "\".indexOn\": [\"timestamp\", \"nameKey\"] to the historyMeta rules "
+                        + "(and [\"timestamp\"] to history while users are being migrated). "
+                        + "Downloading whole histories instead.");
+                orderedQueries = false;
+            }
+        }
+        return fallback.fetch();
+    }
 
-                // What the user sees in the list
-                String displayString = filename + " (" + timestamp + ")";
+    // Legacy items carry no hash; their entries come back without one.
+    private List<HistoryEntry> readEntries(String url) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        shared.FirebaseUtil.get(url, body -> {
+            JsonCodec.readHistoryMeta(body, (key, filename, timestamp, hash) ->
+                    entries.add(new HistoryEntry(key, filename, timestamp, hash)));
+            return null;
+        });
+        return entries;
+    }
 
-                // Return with timestamp in the middle for date-sorting:
-                // format: key|||epochMillis|||display
-                historyList.add(firebaseKey + "|||" + timestamp + "|||" + displayString);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Error fetching history: " + e.getMessage(), e);
+    @Override
+    public List<String> getHistoryIds(String username) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
         }
-        return historyList;
+        // shallow=true lists the child keys only, not their contents.
+        String url = listUrl(username) + "?shallow=true";
+        return shared.FirebaseUtil.get(url, JsonCodec::readKeys);
     }
 
     @Override
@@ -119,31 +251,33 @@ public class FirebaseHistoryRepository implements HistoryRepository {
             throw new IllegalArgumentException("History ID cannot be null or empty");
         }
 
-        // Extract the actual Firebase key (historyId can be "key|||display" or "key|||epoch|||display")
-        String actualKey = historyId;
-        if (historyId.contains("|||")) {
-            actualKey = historyId.split("\\|\\|\\|")[0];
-        }
-
-        String encodedUsername = encodeUsername(username);
-        String url = FIREBASE_URL + "users/" + encodedUsername + "/history/" + actualKey + ".json";
         try {
-            String jsonResponse = shared.FirebaseUtil.get(url);
-            if (jsonResponse == null || jsonResponse.isEmpty() || "null".equals(jsonResponse)) {
-                return null;
+            String content = shared.FirebaseUtil.get(userUrl(username) + "/" + CONTENT + "/" + historyId + ".json",
+                    body -> JsonCodec.readStringField(body, "content"));
+            if (content == null && !migrated.contains(encodeUsername(username))) {
+                // Not moved yet: items older than the split live only in the old node.
+                content = shared.FirebaseUtil.get(userUrl(username) + "/" + LEGACY + "/" + historyId + ".json",
+                        body -> JsonCodec.readStringField(body, "content"));
             }
-            JsonObject item = gson.fromJson(jsonResponse, JsonObject.class);
-            if (item == null || !item.has("content")) {
-                return null;
-            }
-            return item.get("content").getAsString();
-        } catch (JsonSyntaxException e) {
-            throw new IOException("Failed to parse history item JSON", e);
+            return content;
         } catch (IllegalStateException e) {
             throw new IOException("Invalid history item data structure", e);
         }
     }
 
+    // The REST API has no multi-get, so each item is still its own request.
+    @Override
+    public Map<String, String> getHistoryItems(String username, List<String> historyIds) throws IOException {
+        Map<String, String> items = new LinkedHashMap<>();
+        for (String historyId : historyIds) {
+            String content = getHistoryItem(username, historyId);
+            if (content != null) {
+                items.put(historyId, content);
+            }
+        }
+        return items;
+    }
+
     @Override
     public void deleteHistory(String username, String historyId) throws IOException {
         if (username == null || username.isEmpty()) {
@@ -153,20 +287,71 @@ public class FirebaseHistoryRepository implements HistoryRepository {
             throw new IllegalArgumentException("History ID cannot be null or empty");
         }
 
-        // Extract firebase key if a composite id was passed
-        String actualKey = historyId;
-        if (historyId.contains("|||")) {
-            actualKey = historyId.split("\\|\\|\\|")[0];
+        // One multi-path update removes the item from every node it may be in.
+        Map<String, String> paths = new LinkedHashMap<>();
+        paths.put(LEGACY + "/" + historyId, "null");
+        paths.put(META + "/" + historyId, "null");
+        paths.put(CONTENT + "/" + historyId, "null");
+        try {
+            patch(userUrl(username) + ".json", JsonCodec.writeObject(paths));
+        } catch (Exception e) {
+            throw new IOException("Failed to delete history item", e);
         }
+    }
+
+    /**
+     * Adds the metadata and content nodes of an item to a multi-path update of the user node.
+     * @param paths the update
+     * @param id the item id
+     * @param imageFilename the file
+     * @param textContent the text
+     * @param timestamp epoch millis
+     */
+    static void putItem(Map<String, String> paths, String id, String imageFilename, String textContent, long timestamp) {
+        byte[] bytes = textContent.getBytes(StandardCharsets.UTF_8);
+        paths.put(META + "/" + id, JsonCodec.writeHistoryMeta(imageFilename, timestamp, bytes.length, ContentHash.of(bytes),
+                nameKey(imageFilename == null ? "" : imageFilename, id)));
+        paths.put(CONTENT + "/" + id, JsonCodec.writeHistoryContent(textContent));
+    }
+
+    static String nameKey(String filename, String id) {
+        return HistorySort.nameKey(filename, id);
+    }
+
+    static String queryValue(String json) {
+        return URLEncoder.encode(json, StandardCharsets.UTF_8).replace("+", "%20");
+    }
 
-        String encodedUsername = encodeUsername(username);
-        String url = FIREBASE_URL + "users/" + encodedUsername + "/history/" + actualKey + ".json";
+    private String userUrl(String username) {
+        return FIREBASE_URL + "users/" + encodeUsername(username);
+    }
 
+    private String listUrl(String username) throws IOException {
+        return userUrl(username) + "/" + (isMigrated(username) ? META : LEGACY) + ".json";
+    }
+
+    // A yes is kept for good. A no is kept for schemaRecheckNanos, so a user migrated meanwhile
+    // is noticed within that time without a request on every call before then.
+    private boolean isMigrated(String username) throws IOException {
+        String user = encodeUsername(username);
+        if (migrated.contains(user)) {
+            return true;
+        }
+        Long until = unmigratedUntil.get(user);
+        if (until != null && System.nanoTime() - until < 0) {
+            return false;
+        }
+        String version = get(userUrl(username) + "/" + SCHEMA + ".json").trim();
         try {
-            // Firebase Realtime DB: DELETE the node
-            delete(url);
-        } catch (Exception e) {
-            throw new IOException("Failed to delete history item", e);
+            if (Integer.parseInt(version) >= SCHEMA_VERSION) {
+                migrated.add(user);
+                unmigratedUntil.remove(user);
+                return true;
+            }
+        } catch (NumberFormatException ignored) {
+            // "null": not migrated
         }
+        unmigratedUntil.put(user, System.nanoTime() + schemaRecheckNanos);
+        return false;
     }
 }
@@ -0,0 +1,155 @@
+package infrastructure;
+
+import shared.Config;
+import shared.JsonCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static infrastructure.FirebaseHistoryRepository.CONTENT;
+import static infrastructure.FirebaseHistoryRepository.LEGACY;
+import static infrastructure.FirebaseHistoryRepository.META;
+import static infrastructure.FirebaseHistoryRepository.SCHEMA;
+import static infrastructure.FirebaseHistoryRepository.SCHEMA_VERSION;
+import static infrastructure.FirebaseHistoryRepository.queryValue;
+import static shared.Config.getFirebaseRealTmeDBURL;
+import static shared.FirebaseUtil.*;
+
+/**
+ * Moves users from the old history layout, whole items under {@code users/<user>/history},
+ * to the split metadata and content nodes of {@link FirebaseHistoryRepository}, while the app
+ * stays in use. Each user is done in four steps:
+ * <ol>
+ *     <li>copy the old items in key order, {@code history.migration.batch} at a time, each batch
+ *     one multi-path update;</li>
+ *     <li>set {@code historySchema}, after which the app lists and saves the new nodes only;</li>
+ *     <li>remove copies of items that were deleted from the old node while copying;</li>
+ *     <li>delete the old node.</li>
+ * </ol>
+ * Until step 2 the app saves every item to both layouts, so nothing saved meanwhile is missed.
+ * Every step can be repeated, so a failed or interrupted user is simply migrated again.
+ * Run it once every client has the split layout:
+ * {@code mvn exec:java -Dexec.mainClass=infrastructure.HistoryMigration [-Dexec.args="<email>..."]};
+ * without emails every user is migrated.
+ */
+public final class HistoryMigration {
+    private final String FIREBASE_URL;
+    private final int batchSize;
+
+    /**
+     * @param baseUrl the database URL, ending in {@code /}
+     * @param batchSize old items copied per request
+     */
+    public HistoryMigration(String baseUrl, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        FIREBASE_URL = baseUrl;
+        this.batchSize = batchSize;
+    }
+
+    public static HistoryMigration fromConfig() {
+        return new HistoryMigration(getFirebaseRealTmeDBURL(), Config.getInt("history.migration.batch", 200));
+    }
+
+    /**
+     * @return the node names of every user, as {@link #migrate} takes them
+     * @throws IOException if the list cannot be read
+     */
+    public List<String> listUsers() throws IOException {
+        return get(FIREBASE_URL + "users.json?shallow=true", JsonCodec::readKeys);
+    }
+
+    /**
+     * Migrates one user; harmless for a user already migrated.
+     * @param user the user's node name
+     * @return the number of old items moved
+     * @throws IOException if a step fails; the user can be migrated again
+     */
+    public int migrate(String user) throws IOException {
+        String userUrl = FIREBASE_URL + "users/" + user + ".json";
+        String legacyUrl = FIREBASE_URL + "users/" + user + "/" + LEGACY + ".json";
+        Set<String> copied = new HashSet<>();
+        String after = null;
+        while (true) {
+            String start = after;
+            StringBuilder query = new StringBuilder(legacyUrl)
+                    .append("?orderBy=").append(queryValue(JsonCodec.writeString("$key")))
+                    .append("&limitToFirst=").append(start == null ? batchSize : batchSize + 1);
+            if (start != null) {
+                // startAt is inclusive; the previous batch's last key comes back first.
+                query.append("&startAt=").append(queryValue(JsonCodec.writeString(start)));
+            }
+            Map<String, String> paths = new LinkedHashMap<>();
+            List<String> keys = new ArrayList<>();
+            get(query.toString(), body -> {
+                JsonCodec.readHistoryItems(body, (key, filename, content, timestamp) -> {
+                    if (!key.equals(start)) {
+                        FirebaseHistoryRepository.putItem(paths, key, filename, content, timestamp);
+                        keys.add(key);
+                    }
+                });
+                return null;
+            });
+            if (!paths.isEmpty()) {
+                patch(userUrl, JsonCodec.writeObject(paths));
+            }
+            copied.addAll(keys);
+            if (keys.size() < batchSize) {
+                break;
+            }
+            after = keys.stream().max(String::compareTo).orElseThrow();
+        }
+
+        patch(userUrl, JsonCodec.writeObject(Map.of(SCHEMA, String.valueOf(SCHEMA_VERSION))));
+
+        // From here on deletions reach the new nodes; earlier ones only removed the old item.
+        int moved = copied.size();
+        copied.removeAll(get(legacyUrl + "?shallow=true", JsonCodec::readKeys));
+        if (!copied.isEmpty()) {
+            Map<String, String> paths = new LinkedHashMap<>();
+            for (String key : copied) {
+                paths.put(META + "/" + key, "null");
+                paths.put(CONTENT + "/" + key, "null");
+            }
+            patch(userUrl, JsonCodec.writeObject(paths));
+        }
+        delete(legacyUrl);
+        return moved - copied.size();
+    }
+
+    public static void main(String[] args) {
+        Config.load();
+        HistoryMigration migration = fromConfig();
+        List<String> users = new ArrayList<>();
+        for (String email : args) {
+            users.add(FirebaseHistoryRepository.encodeUsername(email));
+        }
+        try {
+            if (users.isEmpty()) {
+                users = migration.listUsers();
+            }
+        }
+        catch (IOException ex) {
+            System.err.println("Error: could not list users: " + ex.getMessage());
+            System.exit(1);
+        }
+        int failed = 0;
+        for (String user : users) {
+            try {
+                System.out.println(user + ": moved " + migration.migrate(user) + " item(s)");
+            }
+            catch (IOException ex) {
+                failed++;
+                System.err.println("Warning: could not migrate " + user + " (" + ex.getMessage() + "); run again to retry");
+            }
+        }
+        System.out.println((users.size() - failed) + " of " + users.size() + " user(s) migrated");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
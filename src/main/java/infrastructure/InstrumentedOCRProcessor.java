@@ -0,0 +1,124 @@
+package infrastructure;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import domain.port.OCRProcessor;
+import shared.Futures;
+import shared.MetricsRegistry;
+
+/**
+ * OCRProcessor decorator that records each call's end-to-end latency, as its caller saw it,
+ * in {@code ocr.call.latency.millis} tagged with a source name and the outcome. Wrapped around
+ * the whole chain it covers cache hits, retries and queueing; OCRSpaceService breaks the
+ * remote part down by stage.
+ */
+public class InstrumentedOCRProcessor implements OCRProcessor {
+    private final OCRProcessor delegate;
+    private final MetricsRegistry metrics;
+    private final String source;
+
+    /**
+     * Wraps a processor.
+     * @param delegate the processor to measure
+     * @param metrics where latencies go
+     * @param source tag telling callers apart, e.g. "interactive" or "bulk"
+     */
+    public InstrumentedOCRProcessor(OCRProcessor delegate, MetricsRegistry metrics, String source) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.source = source;
+    }
+
+    @Override
+    public String extractTextFromImage(File imageFile) throws Exception {
+        return timed(() -> delegate.extractTextFromImage(imageFile));
+    }
+
+    @Override
+    public String extractTextFromBytes(ByteBuffer imageData, String filename) throws Exception {
+        return timed(() -> delegate.extractTextFromBytes(imageData, filename));
+    }
+
+    @Override
+    public String extractTextFromImage(BufferedImage image, String filename) throws Exception {
+        return timed(() -> delegate.extractTextFromImage(image, filename));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(File imageFile) {
+        return timedAsync(() -> delegate.extractTextAsync(imageFile));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        return timedAsync(() -> delegate.extractTextAsync(imageData, filename));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        return timedAsync(() -> delegate.extractTextAsync(image, filename));
+    }
+
+    /**
+     * Names how a call ended, for metric tags: success, cancelled, timeout, throttled,
+     * server_error, http_error, network_error or api_error.
+     * @param error the failure, possibly wrapped, or null for success
+     * @return the outcome
+     */
+    static String outcome(Throwable error) {
+        Throwable cause = error == null ? null : Futures.unwrap(error);
+        if (cause == null) {
+            return "success";
+        }
+        if (cause instanceof CancellationException || cause instanceof InterruptedException) {
+            return "cancelled";
+        }
+        if (cause instanceof OCRHttpException) {
+            int code = ((OCRHttpException) cause).getStatusCode();
+            return code == 429 ? "throttled" : code >= 500 ? "server_error" : "http_error";
+        }
+        if (cause instanceof InterruptedIOException) {
+            return cause instanceof SocketTimeoutException || "timeout".equals(cause.getMessage())
+                    ? "timeout" : "cancelled";
+        }
+        if (cause instanceof IOException) {
+            return "Canceled".equals(cause.getMessage()) ? "cancelled" : "network_error";
+        }
+        return "api_error";
+    }
+
+    private String timed(Callable<String> call) throws Exception {
+        long start = System.nanoTime();
+        try {
+            String text = call.call();
+            record(start, null);
+            return text;
+        }
+        catch (Exception ex) {
+            record(start, ex);
+            throw ex;
+        }
+    }
+
+    private CompletableFuture<String> timedAsync(Supplier<CompletableFuture<String>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<String> future = call.get();
+        future.whenComplete((text, error) -> record(start, error));
+        return future;
+    }
+
+    private void record(long startNanos, Throwable error) {
+        metrics.histogram("ocr.call.latency.millis", "source", source, "outcome", outcome(error))
+                .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+}
@@ -0,0 +1,29 @@
+package infrastructure;
+
+import java.io.IOException;
+
+/**
+ * Non-2xx response from the OCR API.
+ */
+public class OCRHttpException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public OCRHttpException(int statusCode) {
+        super("OCR API HTTP error: " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Whether the status means the service is overloaded or throttling us (429 or 5xx).
+     * @return true for overload responses
+     */
+    public boolean isOverload() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
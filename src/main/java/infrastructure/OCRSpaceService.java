@@ -1,66 +1,513 @@
 package infrastructure;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import domain.port.OCRProcessor;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.BufferedSink;
+import shared.AdaptiveConcurrencyLimiter;
+import shared.AdaptiveConcurrencyLimiter.Permit;
 import shared.Config;
+import shared.Futures;
+import shared.JsonCodec;
+import shared.ImagePreprocessor;
+import shared.MetricsRegistry;
+import shared.PreparedImage;
+import shared.Threads;
+import shared.TokenBucket;
 
 /**
- * OCR.space API service implementation.
+ * OCR.space API service implementation. Every call passes a client-side token bucket
+ * ({@code ocr.rate.per.minute}, {@code ocr.rate.burst}) and an adaptive concurrency limit
+ * ({@code ocr.limit.*}) that backs off on 429, 5xx and timeouts, shared by all instances.
+ * <p>
+ * Each request records histograms tagged by outcome: {@code ocr.http.latency.millis} end to end,
+ * {@code ocr.http.wait.millis} for preprocessing and throttling before the upload,
+ * {@code ocr.http.upload.bytes}, {@code ocr.http.upload.millis} from the request headers to the
+ * last body byte written, {@code ocr.http.ttfb.millis} from there to the response headers,
+ * {@code ocr.http.server.millis} as reported by OCR.space, and {@code ocr.http.parse.micros} for
+ * reading the body. Nothing is recorded until {@link #registerMetrics} names a registry.
  */
-public class OCRSpaceService implements OCRProcessor {
+public class OCRSpaceService implements PreparingOCRProcessor {
     private static final String OCR_URL = "https://api.ocr.space/parse/image";
-    private static final OkHttpClient CLIENT = new OkHttpClient();
-    private static final Gson GSON = new Gson();
+    private static final int MAX_REQUESTS = Config.getInt("ocr.http.max.requests", 16);
+    // Explicit timeouts: OkHttp's defaults let a stuck call hang well past the usual latency tail.
+    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+            .dispatcher(createDispatcher())
+            .eventListenerFactory(OCRSpaceService::listenerFor)
+            .connectTimeout(Config.getLong("ocr.http.connect.timeout.millis", 5_000L), TimeUnit.MILLISECONDS)
+            .writeTimeout(Config.getLong("ocr.http.write.timeout.millis", 15_000L), TimeUnit.MILLISECONDS)
+            .readTimeout(Config.getLong("ocr.http.read.timeout.millis", 20_000L), TimeUnit.MILLISECONDS)
+            .callTimeout(Config.getLong("ocr.http.call.timeout.millis", 30_000L), TimeUnit.MILLISECONDS)
+            .build();
+    private static final TokenBucket RATE = new TokenBucket(
+            Config.getInt("ocr.rate.per.minute", 60) / 60.0, Config.getInt("ocr.rate.burst", 5));
+    private static final AdaptiveConcurrencyLimiter LIMIT =
+            AdaptiveConcurrencyLimiter.fromConfig("ocr.limit", MAX_REQUESTS);
+    private static final ExecutorService PREPARE_POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), Threads.daemon("ocr-prepare"));
+
+    private final ImagePreprocessor preprocessor;
+    private volatile MetricsRegistry metrics;
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    public OCRSpaceService() {
+        this(ImagePreprocessor.fromConfig());
+    }
+
+    public OCRSpaceService(ImagePreprocessor preprocessor) {
+        this.preprocessor = preprocessor;
+    }
+
+    /**
+     * Records the request histograms above in a registry and publishes the throttle state and
+     * byte counters as {@code ocr.http.*} gauges.
+     * @param metrics the registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        metrics.gauge("ocr.http.concurrency.limit", this::getConcurrencyLimit);
+        metrics.gauge("ocr.http.in.flight", this::getInFlightRequests);
+        metrics.gauge("ocr.http.queued", this::getQueuedRequests);
+        metrics.gauge("ocr.http.rate.tokens", () -> (long) Math.floor(getRateTokens()));
+        metrics.gauge("ocr.http.throttled", this::getThrottledResponses);
+        metrics.gauge("ocr.http.original.bytes", this::getOriginalBytes);
+        metrics.gauge("ocr.http.uploaded.bytes", this::getUploadedBytes);
+    }
 
     @Override
     public String extractTextFromImage(File imageFile) throws Exception {
+        return execute(() -> buildRequest(preprocessor.prepare(imageFile.toPath())));
+    }
+
+    /**
+     * Uploads in-memory bytes directly as the multipart file part; nothing touches disk.
+     * @param imageData the encoded image
+     * @param filename name of the image
+     * @return the text content
+     * @throws Exception error
+     */
+    @Override
+    public String extractTextFromBytes(ByteBuffer imageData, String filename) throws Exception {
+        return execute(() -> buildRequest(preprocessor.prepare(imageData, filename)));
+    }
+
+    /**
+     * Encodes the image once, in memory, straight to its upload format.
+     * @param image the image
+     * @param filename name of the image
+     * @return the text content
+     * @throws Exception error
+     */
+    @Override
+    public String extractTextFromImage(BufferedImage image, String filename) throws Exception {
+        return execute(() -> buildRequest(preprocessor.prepare(image, filename)));
+    }
+
+    /**
+     * Preprocesses on a small CPU pool, then enqueues the upload on OkHttp's dispatcher;
+     * no caller thread waits on the network. Cancelling the future cancels the HTTP call.
+     * @param imageFile the image
+     * @return future text content
+     */
+    @Override
+    public CompletableFuture<String> extractTextAsync(File imageFile) {
+        return submit(() -> buildRequest(preprocessor.prepare(imageFile.toPath())));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        return submit(() -> buildRequest(preprocessor.prepare(imageData, filename)));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        return submit(() -> buildRequest(preprocessor.prepare(image, filename)));
+    }
+
+    @Override
+    public CompletableFuture<PreparedImage> prepareAsync(File imageFile) {
+        return Futures.supplyAsync(() -> preprocessor.prepare(imageFile.toPath()), PREPARE_POOL);
+    }
+
+    @Override
+    public CompletableFuture<PreparedImage> prepareAsync(ByteBuffer imageData, String filename) {
+        return Futures.supplyAsync(() -> preprocessor.prepare(imageData, filename), PREPARE_POOL);
+    }
+
+    @Override
+    public CompletableFuture<PreparedImage> prepareAsync(BufferedImage image, String filename) {
+        return Futures.supplyAsync(() -> preprocessor.prepare(image, filename), PREPARE_POOL);
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(PreparedImage image) {
+        return submit(() -> buildRequest(image));
+    }
+
+    /**
+     * Total image bytes handed to this service before preprocessing.
+     * @return bytes
+     */
+    public long getOriginalBytes() {
+        return originalBytes.get();
+    }
+
+    /**
+     * Total image bytes actually uploaded after preprocessing.
+     * @return bytes
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    /**
+     * Current adaptive concurrency limit for OCR.space calls.
+     * @return the limit
+     */
+    public int getConcurrencyLimit() {
+        return LIMIT.getLimit();
+    }
+
+    /**
+     * OCR.space calls currently holding a permit.
+     * @return in-flight calls
+     */
+    public int getInFlightRequests() {
+        return LIMIT.getInFlight();
+    }
+
+    /**
+     * Calls waiting for a concurrency permit.
+     * @return queued calls
+     */
+    public int getQueuedRequests() {
+        return LIMIT.getQueued();
+    }
+
+    /**
+     * Rate-limit tokens available now; negative while calls wait on the rate limit.
+     * @return tokens
+     */
+    public double getRateTokens() {
+        return RATE.available();
+    }
+
+    /**
+     * Responses that signalled overload (429, 5xx or timeout).
+     * @return count
+     */
+    public long getThrottledResponses() {
+        return LIMIT.getDrops();
+    }
+
+    private String execute(Callable<Request> prepare) throws Exception {
+        Exchange exchange = new Exchange();
+        try {
+            String text = send(prepare.call(), exchange);
+            exchange.finish(null);
+            return text;
+        }
+        catch (Exception ex) {
+            exchange.finish(ex);
+            throw ex;
+        }
+    }
+
+    private String send(Request request, Exchange exchange) throws Exception {
+        // The token comes first: a request waiting on the rate must not hold a concurrency slot.
+        RATE.acquire();
+        Permit permit = LIMIT.acquireBlocking();
+        try {
+            Call call = CLIENT.newCall(exchange.sending(request));
+            String text;
+            try (Response response = call.execute()) {
+                text = parseResponse(response, exchange);
+            }
+            permit.success();
+            return text;
+        }
+        catch (Exception ex) {
+            release(permit, ex);
+            throw ex;
+        }
+        finally {
+            permit.ignore();
+        }
+    }
+
+    private CompletableFuture<String> submit(Callable<Request> prepare) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Exchange exchange = new Exchange();
+        future.whenComplete((text, error) -> exchange.finish(error));
+        CompletableFuture<Request> prepared = Futures.supplyAsync(prepare, PREPARE_POOL);
+        Futures.propagateCancel(future, prepared);
+        prepared.whenComplete((request, error) -> {
+            if (error != null) {
+                future.completeExceptionally(Futures.unwrap(error));
+            }
+            else if (!future.isDone()) {
+                throttle(request, future, exchange);
+            }
+        });
+        return future;
+    }
+
+    // Waits for a rate token, then a permit, on timers and callbacks; no thread blocks.
+    private void throttle(Request request, CompletableFuture<String> future, Exchange exchange) {
+        long wait = RATE.reserve();
+        Runnable acquire = () -> {
+            if (future.isDone()) {
+                return;
+            }
+            CompletableFuture<Permit> permitFuture = LIMIT.acquire();
+            Futures.propagateCancel(future, permitFuture);
+            permitFuture.whenComplete((permit, error) -> {
+                if (error != null) {
+                    future.completeExceptionally(Futures.unwrap(error));
+                }
+                else if (future.isDone()) {
+                    permit.ignore();
+                }
+                else {
+                    enqueue(request, future, permit, exchange);
+                }
+            });
+        };
+        if (wait > 0) {
+            CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, PREPARE_POOL).execute(acquire);
+        }
+        else {
+            acquire.run();
+        }
+    }
+
+    private void enqueue(Request request, CompletableFuture<String> future, Permit permit, Exchange exchange) {
+        Call call = CLIENT.newCall(exchange.sending(request));
+        future.whenComplete((text, error) -> permit.ignore());
+        future.whenComplete((text, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException ex) {
+                release(permit, ex);
+                future.completeExceptionally(ex);
+            }
+
+            @Override
+            public void onResponse(Call completedCall, Response response) {
+                try (response) {
+                    String text = parseResponse(response, exchange);
+                    permit.success();
+                    future.complete(text);
+                }
+                catch (Exception ex) {
+                    release(permit, ex);
+                    future.completeExceptionally(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * OkHttp reports call timeouts and interrupts alike, as InterruptedIOException; a timeout
+     * is a SocketTimeoutException or says "timeout".
+     * @param error a failure
+     * @return whether it is a timeout
+     */
+    static boolean isTimeout(Throwable error) {
+        return error instanceof SocketTimeoutException
+                || error instanceof InterruptedIOException && "timeout".equals(error.getMessage());
+    }
+
+    // Only throttling, server errors and timeouts say the service is overloaded. An interrupted
+    // or cancelled call says nothing either way.
+    private static void release(Permit permit, Exception error) {
+        if (isTimeout(error) || (error instanceof OCRHttpException && ((OCRHttpException) error).isOverload())) {
+            permit.dropped();
+        }
+        else {
+            permit.ignore();
+        }
+    }
+
+    private Request buildRequest(PreparedImage image) throws Exception {
         String apiKey = Config.getOcrApiKey();
         if (apiKey.isEmpty()) {
             throw new Exception("OCR.space API key not set in config.properties");
         }
+        originalBytes.addAndGet(image.getOriginalBytes());
+        uploadedBytes.addAndGet(image.getUploadBytes());
         RequestBody requestBody = new MultipartBody.Builder()
                 .setType(MultipartBody.FORM)
                 .addFormDataPart("apikey", apiKey)
                 .addFormDataPart("language", "eng")
-                .addFormDataPart("file", imageFile.getName(),
-                        RequestBody.create(imageFile, MediaType.parse("image/*")))
+                .addFormDataPart("file", image.getFilename(),
+                        new ByteBufferBody(image.getData(), MediaType.parse(image.getMediaType())))
                 .build();
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(OCR_URL)
                 .post(requestBody)
                 .build();
-        try (Response response = CLIENT.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("OCR API HTTP error: " + response.code());
+    }
+
+    private static String parseResponse(Response response, Exchange exchange) throws Exception {
+        if (!response.isSuccessful()) {
+            throw new OCRHttpException(response.code());
+        }
+        if (response.body() == null) {
+            throw new Exception("No text found in OCR response.");
+        }
+        // Streams the body: TextOverlay and other unused fields are skipped, never built.
+        long parseStart = System.nanoTime();
+        JsonCodec.OcrResponse ocr = JsonCodec.readOcrResponse(response.body().charStream());
+        exchange.parsed(ocr, System.nanoTime() - parseStart);
+        if (ocr.isErrored()) {
+            String msg = ocr.getErrorMessage() != null ? ocr.getErrorMessage() : "Unknown error";
+            throw new Exception("OCR API error: " + msg);
+        }
+        // Multi-page uploads (PDF, TIFF) return one ParsedResult per page; the codec joins them.
+        if (ocr.getParsedText() != null) {
+            return ocr.getParsedText();
+        }
+        throw new Exception("No text found in OCR response.");
+    }
+
+    // OkHttp allows only 5 concurrent calls per host by default; async callers need more.
+    private static Dispatcher createDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS);
+        return dispatcher;
+    }
+
+    // Calls built from a request tagged with an Exchange report their network events to it.
+    private static EventListener listenerFor(Call call) {
+        Exchange exchange = call.request().tag(Exchange.class);
+        return exchange != null ? exchange : EventListener.NONE;
+    }
+
+    /**
+     * Stage timings of one request, recorded under its outcome when it ends. OkHttp reports the
+     * upload and the response headers as events, so the upload is timed apart from the wait for
+     * the first response byte.
+     */
+    private final class Exchange extends EventListener {
+        private final long startNanos = System.nanoTime();
+        private volatile long sentNanos = -1;
+        private volatile long uploadBytes = -1;
+        private volatile long headersNanos = -1;
+        private volatile long bodyEndNanos = -1;
+        private volatile long uploadMillis = -1;
+        private volatile long ttfbMillis = -1;
+        private volatile long serverMillis = -1;
+        private volatile long parseNanos = -1;
+
+        Request sending(Request request) {
+            sentNanos = System.nanoTime();
+            try {
+                uploadBytes = request.body() == null ? 0 : request.body().contentLength();
             }
-            String json = null;
-            if (response.body() != null) {
-                json = response.body().string();
+            catch (IOException ex) {
+                uploadBytes = -1;
             }
-            JsonObject obj = GSON.fromJson(json, JsonObject.class);
-            if (obj.has("IsErroredOnProcessing") && obj.get("IsErroredOnProcessing").getAsBoolean()) {
-                String msg = obj.has("ErrorMessage") ? obj.get("ErrorMessage").toString() : "Unknown error";
-                throw new Exception("OCR API error: " + msg);
+            return request.newBuilder().tag(Exchange.class, this).build();
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            headersNanos = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            bodyEndNanos = System.nanoTime();
+            uploadMillis = TimeUnit.NANOSECONDS.toMillis(bodyEndNanos - headersNanos);
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            if (bodyEndNanos >= 0) {
+                ttfbMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bodyEndNanos);
             }
-            JsonArray results = obj.getAsJsonArray("ParsedResults");
-            if (results != null && !results.isEmpty()) {
-                JsonObject first = results.get(0).getAsJsonObject();
-                if (first.has("ParsedText")) {
-                    return first.get("ParsedText").getAsString();
-                }
+        }
+
+        void parsed(JsonCodec.OcrResponse ocr, long nanos) {
+            parseNanos = nanos;
+            serverMillis = ocr.getProcessingTimeMillis();
+        }
+
+        void finish(Throwable error) {
+            String outcome = InstrumentedOCRProcessor.outcome(error);
+            long end = System.nanoTime();
+            record("ocr.http.latency.millis", TimeUnit.NANOSECONDS.toMillis(end - startNanos), outcome);
+            if (sentNanos >= 0) {
+                record("ocr.http.wait.millis", TimeUnit.NANOSECONDS.toMillis(sentNanos - startNanos), outcome);
+            }
+            record("ocr.http.upload.bytes", uploadBytes, outcome);
+            record("ocr.http.upload.millis", uploadMillis, outcome);
+            record("ocr.http.ttfb.millis", ttfbMillis, outcome);
+            record("ocr.http.server.millis", serverMillis, outcome);
+            record("ocr.http.parse.micros", parseNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(parseNanos), outcome);
+        }
+
+        private void record(String name, long value, String outcome) {
+            MetricsRegistry metrics = OCRSpaceService.this.metrics;
+            if (metrics != null && value >= 0) {
+                metrics.histogram(name, "outcome", outcome).record(value);
+            }
+        }
+    }
+
+    /** Streams a buffer into the request without copying it; repeatable for retries. */
+    private static final class ByteBufferBody extends RequestBody {
+        private final ByteBuffer data;
+        private final MediaType mediaType;
+
+        private ByteBufferBody(ByteBuffer data, MediaType mediaType) {
+            this.data = data;
+            this.mediaType = mediaType;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return data.remaining();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            ByteBuffer view = data.duplicate();
+            while (view.hasRemaining()) {
+                sink.write(view);
             }
-            throw new Exception("No text found in OCR response.");
         }
     }
 }
@@ -0,0 +1,122 @@
+package infrastructure;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import domain.port.DocumentReader;
+import domain.port.PageSource;
+import shared.Config;
+
+/**
+ * Opens PDFs (via PDFBox) and multi-page TIFFs (via ImageIO) for page-at-a-time OCR.
+ * PDFs are parsed with temp-file backed buffers and TIFF pages are decoded on demand,
+ * so only the pages currently being rendered are in memory.
+ */
+public class PagedDocumentReader implements DocumentReader {
+    private final float pdfDpi;
+
+    public PagedDocumentReader() {
+        this(Config.getInt("ocr.pdf.dpi", 300));
+    }
+
+    public PagedDocumentReader(float pdfDpi) {
+        this.pdfDpi = pdfDpi;
+    }
+
+    @Override
+    public boolean supports(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return name.endsWith(".pdf") || name.endsWith(".tif") || name.endsWith(".tiff");
+    }
+
+    @Override
+    public PageSource open(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+            return new PdfPages(PDDocument.load(file, MemoryUsageSetting.setupTempFileOnly()), pdfDpi);
+        }
+        return TiffPages.open(file);
+    }
+
+    private static final class PdfPages implements PageSource {
+        private final PDDocument document;
+        private final PDFRenderer renderer;
+        private final float dpi;
+
+        private PdfPages(PDDocument document, float dpi) {
+            this.document = document;
+            this.renderer = new PDFRenderer(document);
+            this.dpi = dpi;
+        }
+
+        @Override
+        public int getPageCount() {
+            return document.getNumberOfPages();
+        }
+
+        @Override
+        public BufferedImage renderPage(int pageIndex) throws IOException {
+            return renderer.renderImageWithDPI(pageIndex, dpi, ImageType.GRAY);
+        }
+
+        @Override
+        public void close() throws IOException {
+            document.close();
+        }
+    }
+
+    private static final class TiffPages implements PageSource {
+        private final ImageInputStream input;
+        private final ImageReader reader;
+        private final int pageCount;
+
+        private TiffPages(ImageInputStream input, ImageReader reader) throws IOException {
+            this.input = input;
+            this.reader = reader;
+            this.pageCount = reader.getNumImages(true);
+        }
+
+        static TiffPages open(File file) throws IOException {
+            ImageInputStream input = ImageIO.createImageInputStream(file);
+            if (input == null) {
+                throw new IOException("Cannot read " + file.getName());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                input.close();
+                throw new IOException("Unsupported document format: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            // Random access so pages can be read in any order; metadata is not needed.
+            reader.setInput(input, false, true);
+            return new TiffPages(input, reader);
+        }
+
+        @Override
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        @Override
+        public BufferedImage renderPage(int pageIndex) throws IOException {
+            return reader.read(pageIndex);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            input.close();
+        }
+    }
+}
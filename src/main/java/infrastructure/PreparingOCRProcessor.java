@@ -0,0 +1,43 @@
+package infrastructure;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import domain.port.OCRProcessor;
+import shared.PreparedImage;
+
+/**
+ * An OCRProcessor whose preprocessing can run apart from the upload, so a decorator that sends
+ * the same image more than once (retries, hedges) prepares it only the first time.
+ */
+public interface PreparingOCRProcessor extends OCRProcessor {
+
+    /**
+     * @param imageFile the image
+     * @return the image as it would be uploaded
+     */
+    CompletableFuture<PreparedImage> prepareAsync(File imageFile);
+
+    /**
+     * @param imageData the encoded image; its position is not changed
+     * @param filename name of the image
+     * @return the image as it would be uploaded
+     */
+    CompletableFuture<PreparedImage> prepareAsync(ByteBuffer imageData, String filename);
+
+    /**
+     * @param image the image
+     * @param filename name of the image
+     * @return the image as it would be uploaded
+     */
+    CompletableFuture<PreparedImage> prepareAsync(BufferedImage image, String filename);
+
+    /**
+     * Uploads an image that is already prepared. Cancelling the future cancels the upload.
+     * @param image from one of the {@code prepareAsync} methods; may be sent any number of times
+     * @return future text content
+     */
+    CompletableFuture<String> extractTextAsync(PreparedImage image);
+}
@@ -0,0 +1,455 @@
+package infrastructure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import domain.entity.HistoryEntry;
+import domain.entity.HistoryIndex;
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import domain.entity.TextRecord;
+import domain.port.HistoryRepository;
+import domain.port.HistorySyncRepository;
+import shared.Backoff;
+import shared.Config;
+import shared.ContentHash;
+import shared.LocalReplica;
+import shared.MetricsRegistry;
+import shared.PushIds;
+import shared.Threads;
+import shared.WriteBehindQueue;
+
+/**
+ * Offline-first HistoryRepository: every read is served from a {@link LocalReplica} of the
+ * user's history on disk, and every write lands there first. Writes wait in the replica's
+ * outbox, which survives restarts, and a background thread sends them to the remote
+ * repository in batches, retrying while offline.
+ * <p>
+ * Changes made elsewhere are pulled incrementally: the entries of items stamped at or after the
+ * replica's watermark (less an overlap, for clock skew) are listed, without their text, and the
+ * watermark moves up. Only the texts of items that are new or whose content hash changed are
+ * then downloaded, together; the first pull into an empty replica downloads none, and texts
+ * left out are fetched when first read. Now and then the remote id list is compared with the
+ * replica to pick up deletions and items stamped too far in the past. Reads start a pull when
+ * the last one is older than the sync interval; the very first read of an empty replica waits
+ * for it.
+ */
+public class ReplicatedHistoryRepository implements HistoryRepository, Closeable {
+    private static final String WATERMARK = "watermark";
+    private static final String RECONCILED = "reconciled";
+
+    private final HistorySyncRepository remote;
+    private final Path dir;
+    private final long syncIntervalMillis;
+    private final long overlapMillis;
+    private final long reconcileMillis;
+    private final long closeTimeoutMillis;
+    private final Map<String, LocalReplica> replicas = new HashMap<>();
+    private final Map<String, Long> lastSync = new ConcurrentHashMap<>();
+    private final Set<String> syncing = ConcurrentHashMap.newKeySet();
+    private final Map<String, IndexSnapshot> indexes = new ConcurrentHashMap<>();
+    private final WriteBehindQueue<String, LocalReplica.Change> outbox;
+    private final ExecutorService syncer = Executors.newSingleThreadExecutor(Threads.daemon("history-sync"));
+
+    /**
+     * Creates a repository.
+     * @param remote the repository to replicate
+     * @param dir where replicas are kept, one directory per user
+     * @param syncIntervalMillis how old the last pull may be before a read starts another
+     * @param overlapMillis how far behind the watermark each pull starts
+     * @param reconcileMillis how often the remote id list is compared with the replica
+     * @param maxBatch the most changes sent in one request
+     * @param lingerMillis how long a change may wait for others to share its request
+     * @param maxAttempts how often a batch the remote side refuses is tried in this run
+     * @param closeTimeoutMillis how long {@link #close} keeps sending; the rest goes next start
+     */
+    public ReplicatedHistoryRepository(HistorySyncRepository remote, Path dir, long syncIntervalMillis,
+                                       long overlapMillis, long reconcileMillis, int maxBatch,
+                                       long lingerMillis, int maxAttempts, long closeTimeoutMillis) {
+        this.remote = remote;
+        this.dir = dir;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.overlapMillis = overlapMillis;
+        this.reconcileMillis = reconcileMillis;
+        this.closeTimeoutMillis = closeTimeoutMillis;
+        // The queue holds the replicas' own outbox entries, so it takes no memory of its own and
+        // is left unbounded: adding never blocks.
+        // A change given up on stays in the replica's outbox on disk and is sent again next start.
+        this.outbox = new WriteBehindQueue<>(this::push, change -> 1, Long.MAX_VALUE, maxBatch, lingerMillis,
+                new Backoff(500, 30_000), WriteBehindHistoryRepository::isRetryable, maxAttempts, "history-outbox");
+    }
+
+    /**
+     * Keeps replicas under the data directory, configured by config.properties
+     * ({@code history.replica.sync.seconds}, default 60; {@code history.replica.overlap.hours},
+     * default 24; {@code history.replica.reconcile.minutes}, default 60; batching as for
+     * {@link WriteBehindHistoryRepository}).
+     * @param remote the repository to replicate
+     * @return the repository
+     */
+    public static ReplicatedHistoryRepository fromConfig(HistorySyncRepository remote) {
+        return new ReplicatedHistoryRepository(remote, Paths.get(Config.getDataDir(), "history"),
+                TimeUnit.SECONDS.toMillis(Config.getLong("history.replica.sync.seconds", 60L)),
+                TimeUnit.HOURS.toMillis(Config.getLong("history.replica.overlap.hours", 24L)),
+                TimeUnit.MINUTES.toMillis(Config.getLong("history.replica.reconcile.minutes", 60L)),
+                Config.getInt("history.writebehind.batch", 50),
+                Config.getLong("history.writebehind.linger.millis", 200L),
+                Config.getInt("history.writebehind.max.attempts", 5),
+                Config.getLong("history.writebehind.close.timeout.millis", 10_000L));
+    }
+
+    @Override
+    public String saveHistory(String username, String imageFilename, String textContent, long timestamp)
+            throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (textContent == null) {
+            throw new IllegalArgumentException("Text content cannot be null");
+        }
+        String id = PushIds.next();
+        send(username, replica(username).put(id, imageFilename == null ? "" : imageFilename,
+                textContent, timestamp));
+        return id;
+    }
+
+    @Override
+    public void saveHistoryBatch(String username, List<TextRecord> records) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        LocalReplica replica = replica(username);
+        for (TextRecord record : records) {
+            send(username, replica.put(record.getId(), record.getImageFilename(), record.getTextContent(),
+                    record.getTimestamp()));
+        }
+    }
+
+    @Override
+    public HistoryPage getHistoryPage(String username, HistorySort sort, String cursor, int limit)
+            throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        // Later pages come from the same replica state the first one started a sync for.
+        LocalReplica replica = cursor == null ? synced(username) : replica(username);
+        return index(username, replica).page(sort, cursor, limit);
+    }
+
+    @Override
+    public String getHistoryItem(String username, String historyId) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (historyId == null || historyId.isEmpty()) {
+            throw new IllegalArgumentException("History ID cannot be null or empty");
+        }
+        LocalReplica replica = replica(username);
+        String text = replica.text(historyId);
+        if (text == null && !replica.isPending(historyId)) {
+            // Newer than the last pull, perhaps, or only its metadata was pulled; the remote
+            // side has the final word.
+            text = remote.getHistoryItem(username, historyId);
+            LocalReplica.Item item = replica.item(historyId);
+            if (text != null && item != null) {
+                replica.applyRemote(historyId, item.getLabel(), text, item.getTimestamp());
+            }
+        }
+        return text;
+    }
+
+    // Local items are read in one pass; only the ones the replica cannot answer go out, together.
+    @Override
+    public Map<String, String> getHistoryItems(String username, List<String> historyIds) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        LocalReplica replica = replica(username);
+        Map<String, String> items = new LinkedHashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String historyId : historyIds) {
+            String text = replica.text(historyId);
+            if (text != null) {
+                items.put(historyId, text);
+            }
+            else if (!replica.isPending(historyId)) {
+                unknown.add(historyId);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return items;
+        }
+        Map<String, String> fetched = remote.getHistoryItems(username, unknown);
+        fill(replica, fetched);
+        items.putAll(fetched);
+        return items;
+    }
+
+    @Override
+    public void deleteHistory(String username, String historyId) throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (historyId == null || historyId.isEmpty()) {
+            throw new IllegalArgumentException("History ID cannot be null or empty");
+        }
+        send(username, replica(username).delete(historyId));
+    }
+
+    /**
+     * Pulls remote changes into the user's replica now.
+     * @param username the user
+     * @throws IOException if the remote repository cannot be reached
+     */
+    public void sync(String username) throws IOException {
+        LocalReplica replica = replica(username);
+        lastSync.put(username, System.currentTimeMillis());
+        long watermark = replica.mark(WATERMARK);
+        long newest = watermark;
+        List<HistoryEntry> entries = watermark == 0 ? remote.getHistoryEntries(username)
+                : remote.getHistoryEntriesSince(username, Math.max(0, watermark - overlapMillis));
+        List<String> changed = new ArrayList<>();
+        for (HistoryEntry entry : entries) {
+            if (replica.applyRemoteEntry(entry.getId(), entry.getImageFilename(), entry.getTimestamp(),
+                    entry.getContentHash())) {
+                changed.add(entry.getId());
+            }
+            newest = Math.max(newest, entry.getTimestamp());
+        }
+        // A whole history is left to be read lazily; recent changes are likely to be opened soon.
+        if (watermark != 0 && !changed.isEmpty()) {
+            fill(replica, remote.getHistoryItems(username, changed));
+        }
+        long now = System.currentTimeMillis();
+        if (now - replica.mark(RECONCILED) >= reconcileMillis) {
+            reconcile(username, replica);
+            replica.setMark(RECONCILED, now);
+        }
+        replica.setMark(WATERMARK, newest);
+    }
+
+    /**
+     * Publishes the outbox as {@code history.outbox.*} gauges.
+     * @param metrics the registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        outbox.registerMetrics(metrics, "history.outbox");
+    }
+
+    /**
+     * Sends what it can of the outbox within the close timeout, waits for a pull in progress
+     * to stop, and closes the replicas. Unsent changes stay on disk and go out on the next start.
+     */
+    @Override
+    public void close() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMillis);
+        syncer.shutdownNow();
+        int unsent = outbox.close(closeTimeoutMillis);
+        if (unsent > 0) {
+            System.err.println("Warning: " + unsent + " history change(s) will be sent on the next start");
+        }
+        try {
+            if (!syncer.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                // Its writes would land in unmapped logs; the process is ending, so leave them open.
+                System.err.println("Warning: history sync did not stop; replicas left open");
+                return;
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        synchronized (replicas) {
+            for (LocalReplica replica : replicas.values()) {
+                try {
+                    replica.close();
+                }
+                catch (IOException ex) {
+                    System.err.println("Warning: " + ex.getMessage());
+                }
+            }
+            replicas.clear();
+        }
+        indexes.clear();
+    }
+
+    // Deletions and items stamped before the watermark window only show up in the id list.
+    // Items missing here are stored as metadata; their text is fetched when first read.
+    private void reconcile(String username, LocalReplica replica) throws IOException {
+        // Only items the remote side had confirmed before the listing may be removed for missing from it.
+        Set<String> confirmed = new HashSet<>();
+        for (LocalReplica.Item item : replica.items()) {
+            if (!replica.isPending(item.getId())) {
+                confirmed.add(item.getId());
+            }
+        }
+        Set<String> remoteIds = new HashSet<>(remote.getHistoryIds(username));
+        for (String id : confirmed) {
+            if (!remoteIds.contains(id)) {
+                replica.removeRemote(id);
+            }
+        }
+        remoteIds.removeIf(id -> replica.item(id) != null || replica.isPending(id));
+        if (remoteIds.isEmpty()) {
+            return;
+        }
+        for (HistoryEntry entry : remote.getHistoryEntries(username)) {
+            if (remoteIds.contains(entry.getId())) {
+                replica.applyRemoteEntry(entry.getId(), entry.getImageFilename(), entry.getTimestamp(),
+                        entry.getContentHash());
+            }
+        }
+    }
+
+    // Stores fetched texts under the entries already in the replica.
+    private static void fill(LocalReplica replica, Map<String, String> texts) throws IOException {
+        for (Map.Entry<String, String> text : texts.entrySet()) {
+            LocalReplica.Item item = replica.item(text.getKey());
+            if (item != null) {
+                replica.applyRemote(text.getKey(), item.getLabel(), text.getValue(), item.getTimestamp());
+            }
+        }
+    }
+
+    // Opens the replica and starts a pull if it is due.
+    private LocalReplica synced(String username) throws IOException {
+        LocalReplica replica = replica(username);
+        maybeSync(username, replica);
+        return replica;
+    }
+
+    private void maybeSync(String username, LocalReplica replica) {
+        if (replica.mark(WATERMARK) == 0 && replica.mark(RECONCILED) == 0 && replica.size() == 0) {
+            // Nothing to show yet: worth waiting for the first download.
+            try {
+                sync(username);
+            }
+            catch (IOException ex) {
+                System.err.println("Warning: could not download history: " + ex.getMessage());
+            }
+            return;
+        }
+        long last = lastSync.getOrDefault(username, 0L);
+        if (System.currentTimeMillis() - last < syncIntervalMillis || !syncing.add(username)) {
+            return;
+        }
+        syncer.execute(() -> {
+            try {
+                sync(username);
+            }
+            catch (IOException ex) {
+                System.err.println("Warning: could not sync history: " + ex.getMessage());
+            }
+            finally {
+                syncing.remove(username);
+            }
+        });
+    }
+
+    private LocalReplica replica(String username) throws IOException {
+        synchronized (replicas) {
+            LocalReplica replica = replicas.get(username);
+            if (replica == null) {
+                String name = ContentHash.of(ByteBuffer.wrap(username.getBytes(StandardCharsets.UTF_8)));
+                replica = LocalReplica.open(dir.resolve(name));
+                replicas.put(username, replica);
+                // Changes left over from an earlier run, e.g. made offline; queued before any new ones.
+                for (LocalReplica.Change change : replica.pending()) {
+                    send(username, change);
+                }
+            }
+            return replica;
+        }
+    }
+
+    private void send(String username, LocalReplica.Change change) throws IOException {
+        try {
+            outbox.add(username, change);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a history change");
+        }
+        catch (IllegalStateException ex) {
+            // Shutting down; the change is on disk and goes out next start.
+        }
+    }
+
+    // Writes a batch of one user's changes in order: runs of saves as one request, deletions alone.
+    private void push(String username, List<LocalReplica.Change> changes) throws IOException {
+        LocalReplica replica = replica(username);
+        List<LocalReplica.Change> saves = new ArrayList<>();
+        for (LocalReplica.Change change : changes) {
+            if (change.isDelete()) {
+                pushSaves(username, replica, saves);
+                remote.deleteHistory(username, change.getId());
+                replica.acknowledge(change);
+            }
+            else {
+                saves.add(change);
+            }
+        }
+        pushSaves(username, replica, saves);
+    }
+
+    private void pushSaves(String username, LocalReplica replica, List<LocalReplica.Change> saves)
+            throws IOException {
+        if (saves.isEmpty()) {
+            return;
+        }
+        List<TextRecord> records = new ArrayList<>(saves.size());
+        for (LocalReplica.Change change : saves) {
+            records.add(new TextRecord(change.getId(), change.getLabel(), change.getText(), change.getTimestamp()));
+        }
+        remote.saveHistoryBatch(username, records);
+        for (LocalReplica.Change change : saves) {
+            replica.acknowledge(change);
+        }
+        saves.clear();
+    }
+
+    // Rebuilt only after the replica changes, so later pages and other orders reuse it.
+    private HistoryIndex index(String username, LocalReplica replica) {
+        long version = replica.version();
+        IndexSnapshot snapshot = indexes.get(username);
+        if (snapshot == null || snapshot.version != version) {
+            snapshot = new IndexSnapshot(version, HistoryIndex.of(entries(replica)));
+            indexes.put(username, snapshot);
+        }
+        return snapshot.index;
+    }
+
+    private static final class IndexSnapshot {
+        private final long version;
+        private final HistoryIndex index;
+
+        private IndexSnapshot(long version, HistoryIndex index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
+
+    private static List<HistoryEntry> entries(LocalReplica replica) {
+        List<HistoryEntry> entries = new ArrayList<>(replica.size());
+        for (LocalReplica.Item item : replica.items()) {
+            entries.add(new HistoryEntry(item.getId(), item.getLabel(), item.getTimestamp()));
+        }
+        return entries;
+    }
+}
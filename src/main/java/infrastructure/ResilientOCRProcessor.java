@@ -0,0 +1,412 @@
+package infrastructure;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import domain.port.OCRProcessor;
+import shared.Backoff;
+import shared.Config;
+import shared.Futures;
+import shared.LatencyWindow;
+import shared.MetricsRegistry;
+import shared.PreparedImage;
+
+/**
+ * OCRProcessor decorator for a remote service with a long latency tail. Retryable failures
+ * (throttling, server errors, timeouts, dropped connections) are retried after a jittered
+ * exponential backoff. With hedging on, a second request is sent once the first has taken longer
+ * than a chosen percentile of recent latencies; whichever answers first wins and the other is
+ * cancelled. A {@link PreparingOCRProcessor} prepares the image once, and every attempt uploads
+ * the same bytes.
+ */
+public class ResilientOCRProcessor implements OCRProcessor {
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    private final OCRProcessor delegate;
+    private final PreparingOCRProcessor preparing;
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final double hedgePercentile;
+    private final LatencyWindow attemptLatency;
+    private final LatencyWindow callLatency;
+
+    private final AtomicLong attempts;
+    private final AtomicLong attemptSuccesses;
+    private final AtomicLong retryableFailures;
+    private final AtomicLong fatalFailures;
+    private final AtomicLong retries;
+    private final AtomicLong hedges;
+    private final AtomicLong hedgeWins;
+    private final AtomicLong cancelledLosers;
+
+    /**
+     * Wraps a processor.
+     * @param delegate the processor making the remote call
+     * @param maxAttempts attempts per call including the first, at least 1
+     * @param backoff delay before each retry
+     * @param hedgePercentile latency percentile after which a hedge is sent, or 0 to disable hedging
+     */
+    public ResilientOCRProcessor(OCRProcessor delegate, int maxAttempts, Backoff backoff, double hedgePercentile) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.delegate = delegate;
+        this.preparing = delegate instanceof PreparingOCRProcessor ? (PreparingOCRProcessor) delegate : null;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.hedgePercentile = hedgePercentile;
+        attemptLatency = new LatencyWindow(512);
+        callLatency = new LatencyWindow(512);
+        attempts = new AtomicLong();
+        attemptSuccesses = new AtomicLong();
+        retryableFailures = new AtomicLong();
+        fatalFailures = new AtomicLong();
+        retries = new AtomicLong();
+        hedges = new AtomicLong();
+        hedgeWins = new AtomicLong();
+        cancelledLosers = new AtomicLong();
+    }
+
+    private ResilientOCRProcessor(ResilientOCRProcessor shared, OCRProcessor delegate) {
+        this.delegate = delegate;
+        this.preparing = delegate instanceof PreparingOCRProcessor ? (PreparingOCRProcessor) delegate : null;
+        maxAttempts = shared.maxAttempts;
+        backoff = shared.backoff;
+        hedgePercentile = shared.hedgePercentile;
+        attemptLatency = shared.attemptLatency;
+        callLatency = shared.callLatency;
+        attempts = shared.attempts;
+        attemptSuccesses = shared.attemptSuccesses;
+        retryableFailures = shared.retryableFailures;
+        fatalFailures = shared.fatalFailures;
+        retries = shared.retries;
+        hedges = shared.hedges;
+        hedgeWins = shared.hedgeWins;
+        cancelledLosers = shared.cancelledLosers;
+    }
+
+    /**
+     * Wraps a processor using config.properties ({@code ocr.retry.max.attempts},
+     * {@code ocr.retry.base.millis}, {@code ocr.retry.max.millis}, {@code ocr.hedge.percentile}).
+     * Hedging is off unless a percentile is configured, since every hedge costs API quota.
+     * @param delegate the processor making the remote call
+     * @return the decorator
+     */
+    public static ResilientOCRProcessor fromConfig(OCRProcessor delegate) {
+        return new ResilientOCRProcessor(delegate,
+                Config.getInt("ocr.retry.max.attempts", 3),
+                new Backoff(Config.getLong("ocr.retry.base.millis", 500L), Config.getLong("ocr.retry.max.millis", 8_000L)),
+                Config.getInt("ocr.hedge.percentile", 0));
+    }
+
+    /**
+     * The same policy sending its attempts to another processor, e.g. the same service under
+     * another priority. Counters and latencies are shared, so hedging learns from both.
+     * @param delegate the processor making the remote call
+     * @return the decorator
+     */
+    public ResilientOCRProcessor withDelegate(OCRProcessor delegate) {
+        return new ResilientOCRProcessor(this, delegate);
+    }
+
+    @Override
+    public String extractTextFromImage(File imageFile) throws Exception {
+        return await(extractTextAsync(imageFile));
+    }
+
+    @Override
+    public String extractTextFromBytes(ByteBuffer imageData, String filename) throws Exception {
+        return await(extractTextAsync(imageData, filename));
+    }
+
+    @Override
+    public String extractTextFromImage(BufferedImage image, String filename) throws Exception {
+        return await(extractTextAsync(image, filename));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(File imageFile) {
+        if (preparing != null) {
+            return callPrepared(preparing.prepareAsync(imageFile));
+        }
+        return call(() -> delegate.extractTextAsync(imageFile));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        if (preparing != null) {
+            return callPrepared(preparing.prepareAsync(imageData, filename));
+        }
+        return call(() -> delegate.extractTextAsync(imageData, filename));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        if (preparing != null) {
+            return callPrepared(preparing.prepareAsync(image, filename));
+        }
+        return call(() -> delegate.extractTextAsync(image, filename));
+    }
+
+    /**
+     * Percentile of end-to-end call latency, retries and hedges included.
+     * @param percentile between 0 and 100
+     * @return milliseconds, or -1 before any call has succeeded
+     */
+    public long getCallLatencyMillis(double percentile) {
+        return callLatency.percentile(percentile);
+    }
+
+    /**
+     * Percentile of successful single-attempt latency. Slow attempts cancelled by a winning hedge
+     * are not counted, so with hedging on this understates the raw service tail.
+     * @param percentile between 0 and 100
+     * @return milliseconds, or -1 before any attempt has succeeded
+     */
+    public long getAttemptLatencyMillis(double percentile) {
+        return attemptLatency.percentile(percentile);
+    }
+
+    /**
+     * Publishes the counters above as {@code ocr.retry.*} gauges.
+     * @param metrics the registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        metrics.gauge("ocr.retry.attempts", this::getAttempts);
+        metrics.gauge("ocr.retry.attempt.successes", this::getAttemptSuccesses);
+        metrics.gauge("ocr.retry.retryable.failures", this::getRetryableFailures);
+        metrics.gauge("ocr.retry.fatal.failures", this::getFatalFailures);
+        metrics.gauge("ocr.retry.retries", this::getRetries);
+        metrics.gauge("ocr.retry.hedges", this::getHedges);
+        metrics.gauge("ocr.retry.hedge.wins", this::getHedgeWins);
+        metrics.gauge("ocr.retry.cancelled.losers", this::getCancelledLosers);
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getAttemptSuccesses() {
+        return attemptSuccesses.get();
+    }
+
+    public long getRetryableFailures() {
+        return retryableFailures.get();
+    }
+
+    public long getFatalFailures() {
+        return fatalFailures.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getCancelledLosers() {
+        return cancelledLosers.get();
+    }
+
+    /**
+     * Whether an error is worth another attempt: throttling or server errors, timeouts and
+     * other network failures. API-level errors (bad key, unreadable image) are not.
+     * @param error the failure, possibly wrapped
+     * @return true if a retry might succeed
+     */
+    static boolean isRetryable(Throwable error) {
+        Throwable cause = Futures.unwrap(error);
+        if (cause instanceof OCRHttpException) {
+            return ((OCRHttpException) cause).isOverload();
+        }
+        if (cause instanceof InterruptedIOException) {
+            // Only timeouts are worth retrying, not interrupts.
+            return OCRSpaceService.isTimeout(cause);
+        }
+        return cause instanceof IOException && !"Canceled".equals(cause.getMessage());
+    }
+
+    private CompletableFuture<String> call(Supplier<CompletableFuture<String>> attempt) {
+        Call call = new Call(attempt);
+        call.start(0);
+        return call.result;
+    }
+
+    // A preprocessing failure is not an attempt; it fails the call as it is.
+    private CompletableFuture<String> callPrepared(CompletableFuture<PreparedImage> prepared) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Futures.propagateCancel(result, prepared);
+        prepared.whenComplete((image, error) -> {
+            if (error != null) {
+                result.completeExceptionally(Futures.unwrap(error));
+            }
+            else if (!result.isDone()) {
+                CompletableFuture<String> call = call(() -> preparing.extractTextAsync(image));
+                Futures.propagateCancel(result, call);
+                Futures.forward(call, result);
+            }
+        });
+        return result;
+    }
+
+    private static String await(CompletableFuture<String> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ex) {
+            throw Futures.asException(ex);
+        }
+        catch (InterruptedException ex) {
+            future.cancel(true);
+            throw ex;
+        }
+    }
+
+    /** One logical call: a round of one or two racing attempts, repeated on retryable failure. */
+    private final class Call {
+        private final Supplier<CompletableFuture<String>> attempt;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private final List<CompletableFuture<String>> running = new ArrayList<>();
+        private int round;
+        private int pending;
+        private Throwable lastError;
+
+        private Call(Supplier<CompletableFuture<String>> attempt) {
+            this.attempt = attempt;
+            result.whenComplete((text, error) -> cancelRunning());
+        }
+
+        private void start(int round) {
+            if (result.isDone()) {
+                return;
+            }
+            launch(round, false);
+            long hedgeAfter = hedgeDelayMillis();
+            if (hedgeAfter >= 0) {
+                Executor timer = CompletableFuture.delayedExecutor(hedgeAfter, TimeUnit.MILLISECONDS);
+                timer.execute(() -> hedge(round));
+            }
+        }
+
+        private void hedge(int round) {
+            synchronized (this) {
+                if (result.isDone() || this.round != round || pending != 1) {
+                    return;
+                }
+            }
+            hedges.incrementAndGet();
+            launch(round, true);
+        }
+
+        private void launch(int round, boolean isHedge) {
+            long attemptStart = System.nanoTime();
+            attempts.incrementAndGet();
+            CompletableFuture<String> future;
+            try {
+                future = attempt.get();
+            }
+            catch (RuntimeException ex) {
+                future = CompletableFuture.failedFuture(ex);
+            }
+            boolean late;
+            synchronized (this) {
+                if (!isHedge) {
+                    running.clear();
+                    this.round = round;
+                }
+                running.add(future);
+                pending++;
+                // The call may have ended while the attempt was starting, after cancelRunning
+                // copied the list; then the attempt is cancelled here instead.
+                late = result.isDone();
+            }
+            future.whenComplete((text, error) -> finished(round, isHedge, attemptStart, text, error));
+            if (late) {
+                future.cancel(true);
+            }
+        }
+
+        private void finished(int round, boolean isHedge, long attemptStart, String text, Throwable error) {
+            if (error == null) {
+                attemptSuccesses.incrementAndGet();
+                attemptLatency.record(millisSince(attemptStart));
+                if (result.complete(text)) {
+                    callLatency.record(millisSince(startNanos));
+                    if (isHedge) {
+                        hedgeWins.incrementAndGet();
+                    }
+                }
+                return;
+            }
+            if (result.isDone()) {
+                if (Futures.unwrap(error) instanceof CancellationException) {
+                    cancelledLosers.incrementAndGet();
+                }
+                return;
+            }
+            boolean retryable = isRetryable(error);
+            (retryable ? retryableFailures : fatalFailures).incrementAndGet();
+            boolean roundOver;
+            synchronized (this) {
+                lastError = Futures.unwrap(error);
+                roundOver = --pending == 0;
+            }
+            if (!retryable) {
+                result.completeExceptionally(Futures.unwrap(error));
+            }
+            else if (roundOver) {
+                retryOrFail(round);
+            }
+        }
+
+        private void retryOrFail(int round) {
+            if (round + 1 >= maxAttempts || result.isDone()) {
+                result.completeExceptionally(lastError);
+                return;
+            }
+            retries.incrementAndGet();
+            CompletableFuture.delayedExecutor(backoff.delayMillis(round), TimeUnit.MILLISECONDS)
+                    .execute(() -> start(round + 1));
+        }
+
+        private void cancelRunning() {
+            List<CompletableFuture<String>> losers;
+            synchronized (this) {
+                losers = new ArrayList<>(running);
+            }
+            for (CompletableFuture<String> loser : losers) {
+                loser.cancel(true);
+            }
+        }
+    }
+
+    private long hedgeDelayMillis() {
+        if (hedgePercentile <= 0 || attemptLatency.count() < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        return attemptLatency.percentile(hedgePercentile);
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
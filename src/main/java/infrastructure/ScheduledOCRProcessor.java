@@ -0,0 +1,150 @@
+package infrastructure;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import shared.Futures;
+import shared.PreparedImage;
+import shared.PriorityScheduler;
+import shared.PriorityScheduler.Permit;
+import shared.PriorityScheduler.Priority;
+
+/**
+ * OCRProcessor decorator that runs each request in a slot of a shared {@link PriorityScheduler}.
+ * Wrap the same service once per priority, e.g. one instance for the UI and one for the
+ * hot folder, so both draw on one budget and the UI goes first. It belongs directly over the
+ * service, under the cache and retries: a cache hit or a backoff wait holds no slot, and each
+ * hedge takes a slot of its own. Preparing an image uses no slot.
+ */
+public class ScheduledOCRProcessor implements PreparingOCRProcessor {
+    private final PreparingOCRProcessor delegate;
+    private final PriorityScheduler scheduler;
+    private final Priority priority;
+
+    /**
+     * Wraps a processor.
+     * @param delegate the service doing the work
+     * @param scheduler the scheduler shared by every priority
+     * @param priority the class of every request made through this instance
+     */
+    public ScheduledOCRProcessor(PreparingOCRProcessor delegate, PriorityScheduler scheduler, Priority priority) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+
+    @Override
+    public String extractTextFromImage(File imageFile) throws Exception {
+        Permit permit = scheduler.acquireBlocking(priority);
+        try {
+            return delegate.extractTextFromImage(imageFile);
+        }
+        finally {
+            permit.release();
+        }
+    }
+
+    @Override
+    public String extractTextFromBytes(ByteBuffer imageData, String filename) throws Exception {
+        Permit permit = scheduler.acquireBlocking(priority);
+        try {
+            return delegate.extractTextFromBytes(imageData, filename);
+        }
+        finally {
+            permit.release();
+        }
+    }
+
+    @Override
+    public String extractTextFromImage(BufferedImage image, String filename) throws Exception {
+        Permit permit = scheduler.acquireBlocking(priority);
+        try {
+            return delegate.extractTextFromImage(image, filename);
+        }
+        finally {
+            permit.release();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(File imageFile) {
+        return scheduled(() -> delegate.extractTextAsync(imageFile));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(ByteBuffer imageData, String filename) {
+        return scheduled(() -> delegate.extractTextAsync(imageData, filename));
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(BufferedImage image, String filename) {
+        return scheduled(() -> delegate.extractTextAsync(image, filename));
+    }
+
+    @Override
+    public CompletableFuture<PreparedImage> prepareAsync(File imageFile) {
+        return delegate.prepareAsync(imageFile);
+    }
+
+    @Override
+    public CompletableFuture<PreparedImage> prepareAsync(ByteBuffer imageData, String filename) {
+        return delegate.prepareAsync(imageData, filename);
+    }
+
+    @Override
+    public CompletableFuture<PreparedImage> prepareAsync(BufferedImage image, String filename) {
+        return delegate.prepareAsync(image, filename);
+    }
+
+    @Override
+    public CompletableFuture<String> extractTextAsync(PreparedImage image) {
+        return scheduled(() -> delegate.extractTextAsync(image));
+    }
+
+    /**
+     * Starts the call once a slot is free and frees it when the call ends. Cancelling the
+     * result leaves the queue or cancels the running call.
+     */
+    private CompletableFuture<String> scheduled(Supplier<CompletableFuture<String>> call) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<Permit> slot = scheduler.acquire(priority);
+        AtomicReference<CompletableFuture<String>> running = new AtomicReference<>();
+        slot.whenComplete((permit, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                permit.release();
+                return;
+            }
+            CompletableFuture<String> inner;
+            try {
+                inner = call.get();
+            }
+            catch (RuntimeException ex) {
+                inner = CompletableFuture.failedFuture(ex);
+            }
+            running.set(inner);
+            inner.whenComplete((text, failure) -> permit.release());
+            Futures.forward(inner, result);
+            if (result.isCancelled()) {
+                inner.cancel(true);
+            }
+        });
+        result.whenComplete((text, error) -> {
+            if (result.isCancelled()) {
+                slot.cancel(true);
+                CompletableFuture<String> inner = running.get();
+                if (inner != null) {
+                    inner.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,202 @@
+package infrastructure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import domain.entity.TextRecord;
+import domain.port.HistoryRepository;
+import shared.Backoff;
+import shared.Config;
+import shared.FirebaseHttpException;
+import shared.MetricsRegistry;
+import shared.PushIds;
+import shared.WriteBehindQueue;
+
+/**
+ * HistoryRepository decorator that saves in the background. {@link #saveHistory} names the
+ * item with a client-made push id, queues it and returns at once, so saving from the UI thread
+ * no longer waits on Firebase. A background thread writes each user's queued items in order,
+ * many per request via {@link HistoryRepository#saveHistoryBatch}, and retries failed batches:
+ * for as long as it takes while offline or the server is failing, a few times when Firebase
+ * refuses the request itself.
+ * <p>
+ * Listings and deletes first wait for the user's queued items to be written, so the history
+ * list always shows what was just saved; reading one item is served from the queue if it is
+ * still there. {@link #close} writes what is left; call it on shutdown.
+ */
+public class WriteBehindHistoryRepository implements HistoryRepository, Closeable {
+    private final HistoryRepository delegate;
+    private final WriteBehindQueue<String, TextRecord> queue;
+    private final long flushTimeoutMillis;
+    private final long closeTimeoutMillis;
+
+    /**
+     * Wraps a repository.
+     * @param delegate the repository doing the writes
+     * @param maxPendingBytes roughly how much queued text may wait before saves block
+     * @param maxBatch the most items per request
+     * @param lingerMillis how long an item may wait for others to share its request
+     * @param maxAttempts how often a batch Firebase refuses is tried before it is dropped
+     * @param flushTimeoutMillis how long a read waits for the user's queued items
+     * @param closeTimeoutMillis how long {@link #close} keeps trying to write what is left
+     */
+    public WriteBehindHistoryRepository(HistoryRepository delegate, long maxPendingBytes, int maxBatch,
+                                        long lingerMillis, int maxAttempts, long flushTimeoutMillis,
+                                        long closeTimeoutMillis) {
+        this.delegate = delegate;
+        this.flushTimeoutMillis = flushTimeoutMillis;
+        this.closeTimeoutMillis = closeTimeoutMillis;
+        this.queue = new WriteBehindQueue<>(delegate::saveHistoryBatch, WriteBehindHistoryRepository::weigh,
+                maxPendingBytes, maxBatch, lingerMillis, new Backoff(500, 30_000),
+                WriteBehindHistoryRepository::isRetryable, maxAttempts, "history-writer");
+    }
+
+    /**
+     * Wraps a repository, configured by config.properties ({@code history.writebehind.max.bytes},
+     * default 8 MB; {@code history.writebehind.batch}, default 50; {@code history.writebehind.linger.millis},
+     * default 200; {@code history.writebehind.max.attempts}, default 5;
+     * {@code history.writebehind.flush.timeout.millis}, default 15000;
+     * {@code history.writebehind.close.timeout.millis}, default 10000).
+     * @param delegate the repository doing the writes
+     * @return the decorator
+     */
+    public static WriteBehindHistoryRepository fromConfig(HistoryRepository delegate) {
+        return new WriteBehindHistoryRepository(delegate,
+                Config.getLong("history.writebehind.max.bytes", 8L << 20),
+                Config.getInt("history.writebehind.batch", 50),
+                Config.getLong("history.writebehind.linger.millis", 200L),
+                Config.getInt("history.writebehind.max.attempts", 5),
+                Config.getLong("history.writebehind.flush.timeout.millis", 15_000L),
+                Config.getLong("history.writebehind.close.timeout.millis", 10_000L));
+    }
+
+    /**
+     * Queues the item and returns its id without waiting for the write.
+     * @throws InterruptedIOException if interrupted while the queue is full
+     */
+    @Override
+    public String saveHistory(String username, String imageFilename, String textContent, long timestamp)
+            throws IOException {
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        if (textContent == null) {
+            throw new IllegalArgumentException("Text content cannot be null");
+        }
+        TextRecord record = new TextRecord(PushIds.next(), imageFilename == null ? "" : imageFilename,
+                textContent, timestamp);
+        try {
+            queue.add(username, record);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing history item");
+        }
+        return record.getId();
+    }
+
+    @Override
+    public void saveHistoryBatch(String username, List<TextRecord> records) throws IOException {
+        flush(username);
+        delegate.saveHistoryBatch(username, records);
+    }
+
+    @Override
+    public HistoryPage getHistoryPage(String username, HistorySort sort, String cursor, int limit)
+            throws IOException {
+        flush(username);
+        return delegate.getHistoryPage(username, sort, cursor, limit);
+    }
+
+    @Override
+    public String getHistoryItem(String username, String historyId) throws IOException {
+        // Nothing else queued affects this one item, so there is no need to wait for the writes.
+        TextRecord queued = username == null ? null
+                : queue.findPending(username, record -> record.getId().equals(historyId));
+        return queued != null ? queued.getTextContent() : delegate.getHistoryItem(username, historyId);
+    }
+
+    @Override
+    public Map<String, String> getHistoryItems(String username, List<String> historyIds) throws IOException {
+        Map<String, String> items = new LinkedHashMap<>();
+        List<String> saved = new ArrayList<>();
+        for (String historyId : historyIds) {
+            TextRecord queued = username == null ? null
+                    : queue.findPending(username, record -> record.getId().equals(historyId));
+            if (queued != null) {
+                items.put(historyId, queued.getTextContent());
+            }
+            else {
+                saved.add(historyId);
+            }
+        }
+        if (!saved.isEmpty()) {
+            items.putAll(delegate.getHistoryItems(username, saved));
+        }
+        return items;
+    }
+
+    @Override
+    public void deleteHistory(String username, String historyId) throws IOException {
+        flush(username);
+        delegate.deleteHistory(username, historyId);
+    }
+
+    /**
+     * Publishes the queue as {@code history.writebehind.*} gauges.
+     * @param metrics the registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        queue.registerMetrics(metrics, "history.writebehind");
+    }
+
+    /**
+     * Stops accepting items and writes the queued ones, giving up after the close timeout.
+     */
+    @Override
+    public void close() {
+        int dropped = queue.close(closeTimeoutMillis);
+        if (dropped > 0) {
+            System.err.println("Warning: " + dropped + " history item(s) could not be saved before exit");
+        }
+    }
+
+    private void flush(String username) throws IOException {
+        if (username == null || username.isEmpty()) {
+            return;
+        }
+        try {
+            queue.flush(username, flushTimeoutMillis);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving history");
+        }
+    }
+
+    // Offline, timeouts, throttling and server errors pass with time; a request Firebase refuses,
+    // or a bug, does not.
+    static boolean isRetryable(Exception error) {
+        if (error instanceof RuntimeException) {
+            return false;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FirebaseHttpException) {
+                return ((FirebaseHttpException) cause).isRetryable();
+            }
+        }
+        return true;
+    }
+
+    // Java strings are UTF-16 in the worst case; the rest is the record and its id.
+    private static long weigh(TextRecord record) {
+        return 2L * (record.getTextContent().length() + record.getImageFilename().length()) + 96;
+    }
+}
@@ -0,0 +1,218 @@
+package shared;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit that adapts to how a remote service is coping (AIMD). Each call holds a
+ * {@link Permit}; a call that completes quickly lets the limit grow by about one per window of
+ * calls, while an overload signal (throttling, server error, timeout) cuts it by a ratio.
+ * Only one cut is made per round trip, so a burst of failures from the same window counts once.
+ */
+public final class AdaptiveConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long healthyLatencyNanos;
+    private final LongSupplier clock;
+    private final ArrayDeque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long lastDecrease = Long.MIN_VALUE;
+    private long drops;
+
+    /**
+     * Creates a limiter.
+     * @param initialLimit starting limit
+     * @param minLimit the limit never drops below this
+     * @param maxLimit the limit never grows above this
+     * @param backoffRatio factor applied to the limit on overload, between 0 and 1
+     * @param healthyLatencyMillis calls slower than this do not grow the limit
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, long healthyLatencyMillis) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, healthyLatencyMillis, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                               double backoffRatio, long healthyLatencyMillis, LongSupplier clock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.healthyLatencyNanos = TimeUnit.MILLISECONDS.toNanos(healthyLatencyMillis);
+        this.clock = clock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Creates a limiter from config.properties ({@code <prefix>.initial}, {@code .min}, {@code .max},
+     * {@code .healthy.latency.millis}); the backoff ratio is 0.5.
+     * @param prefix config key prefix
+     * @param defaultMax max limit when not configured
+     * @return the limiter
+     */
+    public static AdaptiveConcurrencyLimiter fromConfig(String prefix, int defaultMax) {
+        int max = Config.getInt(prefix + ".max", defaultMax);
+        int min = Math.min(max, Config.getInt(prefix + ".min", 1));
+        return new AdaptiveConcurrencyLimiter(
+                Config.getInt(prefix + ".initial", Math.min(4, max)), min, max, 0.5,
+                Config.getLong(prefix + ".healthy.latency.millis", 8_000L));
+    }
+
+    /**
+     * Asks for a permit without blocking. Cancelling the future gives up the place in line.
+     * @return a future completed with the permit once the limit allows
+     */
+    public CompletableFuture<Permit> acquire() {
+        CompletableFuture<Permit> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                waiter.complete(new Permit(clock.getAsLong()));
+                return waiter;
+            }
+            waiters.add(waiter);
+        }
+        waiter.whenComplete((permit, error) -> {
+            if (waiter.isCancelled()) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Waits for a permit.
+     * @return the permit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquireBlocking() throws InterruptedException {
+        CompletableFuture<Permit> waiter = acquire();
+        try {
+            return waiter.get();
+        }
+        catch (InterruptedException ex) {
+            if (!waiter.cancel(true)) {
+                waiter.join().ignore();
+            }
+            throw ex;
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * @return the current limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return permits currently held
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return callers waiting for a permit
+     */
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * @return overload signals received so far
+     */
+    public synchronized long getDrops() {
+        return drops;
+    }
+
+    private void release(long acquiredAt, int outcome) {
+        long now = clock.getAsLong();
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (outcome == Permit.DROPPED) {
+                drops++;
+                if (acquiredAt > lastDecrease) {
+                    limit = Math.max(minLimit, Math.floor(limit * backoffRatio));
+                    lastDecrease = now;
+                }
+            }
+            else if (outcome == Permit.SUCCESS && now - acquiredAt <= healthyLatencyNanos
+                    && inFlight + 1 >= limit / 2) {
+                // Only grow while the limit is actually being used.
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                granted.add(waiters.poll());
+            }
+        }
+        for (CompletableFuture<Permit> waiter : granted) {
+            Permit permit = new Permit(now);
+            if (!waiter.complete(permit)) {
+                permit.ignore();
+            }
+        }
+    }
+
+    /**
+     * Permission for one call. Exactly one of the release methods should be called when the call ends;
+     * later calls are ignored.
+     */
+    public final class Permit {
+        private static final int SUCCESS = 0;
+        private static final int DROPPED = 1;
+        private static final int IGNORED = 2;
+
+        private final long acquiredAt;
+        private boolean released;
+
+        private Permit(long acquiredAt) {
+            this.acquiredAt = acquiredAt;
+        }
+
+        /** The call succeeded; its latency counts towards growing the limit. */
+        public void success() {
+            finish(SUCCESS);
+        }
+
+        /** The service signalled overload (throttled, server error or timeout). */
+        public void dropped() {
+            finish(DROPPED);
+        }
+
+        /** The call ended for a reason that says nothing about the service's capacity. */
+        public void ignore() {
+            finish(IGNORED);
+        }
+
+        private void finish(int outcome) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(acquiredAt, outcome);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package shared;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter: the n-th retry waits a random time between half and all of
+ * {@code base * 2^n}, capped at {@code max}. The random half keeps clients that failed together
+ * from retrying together.
+ */
+public final class Backoff {
+    private final long baseMillis;
+    private final long maxMillis;
+
+    /**
+     * Creates a backoff.
+     * @param baseMillis delay ceiling for the first retry
+     * @param maxMillis the most any retry waits
+     */
+    public Backoff(long baseMillis, long maxMillis) {
+        if (baseMillis < 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException("Need 0 <= baseMillis <= maxMillis");
+        }
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Picks the delay before a retry.
+     * @param retry zero for the first retry
+     * @return delay in milliseconds
+     */
+    public long delayMillis(int retry) {
+        long ceiling = ceilingMillis(retry);
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    /**
+     * @param retry zero for the first retry
+     * @return the longest delay {@link #delayMillis(int)} can return for this retry
+     */
+    public long ceilingMillis(int retry) {
+        int shift = Math.min(Math.max(retry, 0), 30);
+        return Math.min(maxMillis, baseMillis << shift);
+    }
+}
@@ -1,5 +1,6 @@
 package shared;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
@@ -35,6 +36,58 @@ public class Config {
         return PROPERTIES.getProperty(key, "");
     }
 
+    /**
+     * Retrieves an integer property, falling back when it is missing or malformed.
+     * @param key the property key
+     * @param defaultValue the fallback
+     * @return the parsed value or the fallback
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key).trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException ex) {
+            System.err.println("Warning: " + key + " is not a number, using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Retrieves a long property, falling back when it is missing or malformed.
+     * @param key the property key
+     * @param defaultValue the fallback
+     * @return the parsed value or the fallback
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key).trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException ex) {
+            System.err.println("Warning: " + key + " is not a number, using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Directory for VisionText's local state (caches, journals, indexes).
+     * @return the data directory, {@code visiontext.data.dir} or ~/.visiontext
+     */
+    public static String getDataDir() {
+        String configured = get("visiontext.data.dir");
+        if (!configured.isEmpty()) {
+            return configured;
+        }
+        return System.getProperty("user.home") + File.separator + ".visiontext";
+    }
+
     public static String getOcrApiKey() {
 
         return "K84242633888957";
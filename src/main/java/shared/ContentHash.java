@@ -0,0 +1,99 @@
+package shared;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content hashes used to key OCR work by image bytes rather than by file name.
+ */
+public final class ContentHash {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentHash() {
+    }
+
+    /**
+     * Hashes a file by streaming its contents.
+     * @param file the file
+     * @return lowercase hex digest
+     * @throws IOException if the file cannot be read
+     */
+    public static String of(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes an in-memory byte array.
+     * @param data the bytes
+     * @return lowercase hex digest
+     */
+    public static String of(byte[] data) {
+        return toHex(newDigest().digest(data));
+    }
+
+    /**
+     * Hashes the remaining bytes of a buffer without moving its position.
+     * @param data the bytes
+     * @return lowercase hex digest
+     */
+    public static String of(ByteBuffer data) {
+        MessageDigest digest = newDigest();
+        digest.update(data.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes the ARGB pixels and dimensions of a decoded image, so identical pixels hash
+     * identically regardless of how they were produced.
+     * @param image the image
+     * @return lowercase hex digest
+     */
+    public static String of(BufferedImage image) {
+        MessageDigest digest = newDigest();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer row = ByteBuffer.allocate(width * 4);
+        digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+        int[] pixels = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+            row.clear();
+            row.asIntBuffer().put(pixels);
+            digest.update(row.array());
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+}
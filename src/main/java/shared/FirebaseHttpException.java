@@ -0,0 +1,46 @@
+package shared;
+
+import java.io.IOException;
+
+/**
+ * Non-2xx response from Firebase, with the error text it sent back.
+ */
+public class FirebaseHttpException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final String body;
+
+    public FirebaseHttpException(String message, int statusCode, String body) {
+        super(message);
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the response body, e.g. {@code {"error": "Index not defined, ..."}}; empty if none
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Whether Firebase refused an ordered query because the rules have no {@code .indexOn} for it.
+     * @return true for that refusal only
+     */
+    public boolean isIndexNotDefined() {
+        return statusCode == 400 && body.contains("Index not defined");
+    }
+
+    /**
+     * Whether trying again later may succeed: timeouts, throttling and server errors.
+     * @return false for requests Firebase refuses as such, e.g. 400 or 401
+     */
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -1,6 +1,7 @@
 package shared;
 
 import java.io.IOException;
+import java.io.Reader;
 
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -14,6 +15,7 @@ import okhttp3.Response;
 public class FirebaseUtil {
     private static final OkHttpClient CLIENT = new OkHttpClient();
     private static final String UNEXPECTED_CODE = "Unexpected code ";
+    private static final long ERROR_BODY_LIMIT = 4096;
 
     /**
      * Sends a POST request to the specified URL with the given JSON body.
@@ -27,7 +29,26 @@ public class FirebaseUtil {
         Request request = new Request.Builder().url(url).post(body).build();
         try (Response response = CLIENT.newCall(request).execute()) {
             if (!response.isSuccessful()) {
-                throw new IOException(UNEXPECTED_CODE + response);
+                throw failure(response);
+            }
+            return response.body() == null ? "" : response.body().string();
+        }
+    }
+
+    /**
+     * Sends a PATCH request, which Firebase applies as one multi-path update: each top-level
+     * name in the body is written under the URL and other children are left alone.
+     * @param url the URL to send the request to
+     * @param json the JSON body to include in the request
+     * @return the response body as a string
+     * @throws IOException if an I/O error occurs
+     */
+    public static String patch(String url, String json) throws IOException {
+        RequestBody body = RequestBody.create(json, MediaType.parse("application/json; charset=utf-8"));
+        Request request = new Request.Builder().url(url).patch(body).build();
+        try (Response response = CLIENT.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw failure(response);
             }
             return response.body() == null ? "" : response.body().string();
         }
@@ -43,12 +64,47 @@ public class FirebaseUtil {
         Request request = new Request.Builder().url(url).get().build();
         try (Response response = CLIENT.newCall(request).execute()) {
             if (!response.isSuccessful()) {
-                throw new IOException(UNEXPECTED_CODE + response);
+                throw failure(response);
             }
             return response.body() == null ? "" : response.body().string();
         }
     }
 
+    /**
+     * Reads a response body as it arrives.
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        /**
+         * @param body the response body; closed by the caller
+         * @return the decoded result
+         * @throws IOException if the body cannot be read or decoded
+         */
+        T read(Reader body) throws IOException;
+    }
+
+    /**
+     * Sends a GET request and decodes the body while it streams in, without buffering it as a String.
+     * @param url the URL to send the request to
+     * @param bodyReader decodes the body
+     * @param <T> result type
+     * @return the decoded result
+     * @throws IOException if an I/O error occurs
+     */
+    public static <T> T get(String url, BodyReader<T> bodyReader) throws IOException {
+        Request request = new Request.Builder().url(url).get().build();
+        try (Response response = CLIENT.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw failure(response);
+            }
+            if (response.body() == null) {
+                return bodyReader.read(Reader.nullReader());
+            }
+            return bodyReader.read(response.body().charStream());
+        }
+    }
+
     /**
      * Sends a DELETE request to the specified URL.
      * @param url the URL to send the request to
@@ -59,9 +115,15 @@ public class FirebaseUtil {
         Request request = new Request.Builder().url(url).delete().build();
         try (Response response = CLIENT.newCall(request).execute()) {
             if (!response.isSuccessful()) {
-                throw new IOException(UNEXPECTED_CODE + response);
+                throw failure(response);
             }
             return response.body() == null ? "" : response.body().string();
         }
     }
+
+    // Error bodies are short JSON messages; a larger one is cut rather than buffered whole.
+    private static FirebaseHttpException failure(Response response) throws IOException {
+        String body = response.body() == null ? "" : response.peekBody(ERROR_BODY_LIMIT).string();
+        return new FirebaseHttpException(UNEXPECTED_CODE + response, response.code(), body);
+    }
 }
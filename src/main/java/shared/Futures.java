@@ -0,0 +1,139 @@
+package shared;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * CompletableFuture helpers for code that mixes blocking calls, checked exceptions and cancellation.
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Runs a task that may throw checked exceptions on the given executor. Cancelling the
+     * returned future interrupts the task if it is running, so interruptible work stops early.
+     * @param task the task
+     * @param executor where to run it
+     * @param <T> result type
+     * @return a future completed with the task's result or its exception (unwrapped)
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+        InterruptibleFuture<T> future = new InterruptibleFuture<>();
+        try {
+            executor.execute(() -> future.run(task));
+        }
+        catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Cancels {@code inner} whenever {@code outer} is cancelled, so cancelling a derived
+     * future reaches the work underneath it.
+     * @param outer the future handed to callers
+     * @param inner the future doing the work
+     */
+    public static void propagateCancel(CompletableFuture<?> outer, Future<?> inner) {
+        outer.whenComplete((value, error) -> {
+            if (outer.isCancelled()) {
+                inner.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * Completes {@code target} with the outcome of {@code source}, unwrapping completion wrappers.
+     * @param source the future to copy from
+     * @param target the future to complete
+     * @param <T> result type
+     */
+    public static <T> void forward(CompletableFuture<? extends T> source, CompletableFuture<T> target) {
+        source.whenComplete((value, error) -> {
+            if (error != null) {
+                target.completeExceptionally(unwrap(error));
+            }
+            else {
+                target.complete(value);
+            }
+        });
+    }
+
+    /**
+     * Strips CompletionException/ExecutionException wrappers.
+     * @param error the error
+     * @return the underlying cause
+     */
+    public static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    /**
+     * Converts a throwable into an Exception suitable for a {@code throws Exception} signature.
+     * @param error the error, possibly wrapped
+     * @return the unwrapped exception
+     */
+    public static Exception asException(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new Exception(cause);
+    }
+
+    /** Remembers the thread running its task so cancellation can interrupt it. */
+    private static final class InterruptibleFuture<T> extends CompletableFuture<T> {
+        private Thread runner;
+
+        void run(Callable<T> task) {
+            synchronized (this) {
+                if (isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                complete(task.call());
+            }
+            catch (Exception ex) {
+                completeExceptionally(ex);
+            }
+            finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // Don't leak an interrupt from a late cancel into the pool's next task.
+                if (isCancelled()) {
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                synchronized (this) {
+                    if (runner != null) {
+                        runner.interrupt();
+                    }
+                }
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Multi-index hash table over 64-bit hashes for Hamming-radius search. Each key is split into
+ * four 16-bit pieces, and each piece is a key in its own table. Two keys within distance r
+ * differ by at most r / 4 bits in at least one piece, so a search only probes, in each table,
+ * the piece values within that many bits of the query's, then checks the full distance of the
+ * keys found there. With perceptual hashes (half their bits set, unrelated images about 32
+ * apart) this is where a BK-tree degrades to visiting most of its nodes; here a radius-10
+ * search over 200k keys touches a few thousand candidates.
+ * <p>
+ * Tables are chained through parallel int arrays rather than objects, so a large index stays
+ * compact. Not thread-safe.
+ * @param <T> value type
+ */
+public final class HammingIndex<T> {
+    private static final int PIECES = 4;
+    private static final int PIECE_BITS = 16;
+    private static final int PIECE_MASK = (1 << PIECE_BITS) - 1;
+
+    private final int[][] heads = new int[PIECES][1 << PIECE_BITS];
+    private int[][] next = new int[PIECES][16];
+    private long[] keys = new long[16];
+    private Object[] values = new Object[16];
+    private int[] seen = new int[16];
+    private int search;
+    private int size;
+
+    /** A value found by {@link #search(long, int)}. */
+    public static final class Match<T> {
+        private final long key;
+        private final T value;
+        private final int distance;
+
+        private Match(long key, T value, int distance) {
+            this.key = key;
+            this.value = value;
+            this.distance = distance;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    public HammingIndex() {
+        for (int[] head : heads) {
+            Arrays.fill(head, -1);
+        }
+    }
+
+    /**
+     * Adds a value. Equal keys are kept side by side.
+     * @param key the hash
+     * @param value the value
+     */
+    public void add(long key, T value) {
+        if (size == keys.length) {
+            grow();
+        }
+        int slot = size++;
+        keys[slot] = key;
+        values[slot] = value;
+        for (int piece = 0; piece < PIECES; piece++) {
+            int code = piece(key, piece);
+            next[piece][slot] = heads[piece][code];
+            heads[piece][code] = slot;
+        }
+    }
+
+    /**
+     * Finds every value whose key is within a distance of the query.
+     * @param key the query hash
+     * @param maxDistance the largest Hamming distance to accept
+     * @return the matches, nearest first
+     */
+    public List<Match<T>> search(long key, int maxDistance) {
+        List<Match<T>> matches = new ArrayList<>();
+        if (size == 0 || maxDistance < 0) {
+            return matches;
+        }
+        if (++search == 0) {
+            Arrays.fill(seen, 0);
+            search = 1;
+        }
+        int flips = Math.min(maxDistance / PIECES, PIECE_BITS);
+        for (int piece = 0; piece < PIECES; piece++) {
+            probe(piece, piece(key, piece), 0, flips, key, maxDistance, matches);
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance));
+        return matches;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    // Visits the bucket of code and of every code reached by flipping up to flips more bits at or above from.
+    @SuppressWarnings("unchecked")
+    private void probe(int piece, int code, int from, int flips, long key, int maxDistance, List<Match<T>> matches) {
+        for (int slot = heads[piece][code]; slot >= 0; slot = next[piece][slot]) {
+            if (seen[slot] != search) {
+                seen[slot] = search;
+                int distance = PerceptualHash.distance(keys[slot], key);
+                if (distance <= maxDistance) {
+                    matches.add(new Match<>(keys[slot], (T) values[slot], distance));
+                }
+            }
+        }
+        if (flips > 0) {
+            for (int bit = from; bit < PIECE_BITS; bit++) {
+                probe(piece, code ^ (1 << bit), bit + 1, flips - 1, key, maxDistance, matches);
+            }
+        }
+    }
+
+    private static int piece(long key, int piece) {
+        return (int) (key >>> (piece * PIECE_BITS)) & PIECE_MASK;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+        for (int piece = 0; piece < PIECES; piece++) {
+            next[piece] = Arrays.copyOf(next[piece], capacity);
+        }
+    }
+}
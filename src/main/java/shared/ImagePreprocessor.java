@@ -0,0 +1,461 @@
+package shared;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.Node;
+
+/**
+ * Shrinks images to an upload byte budget before OCR.
+ * Applies EXIF orientation, converts to grayscale, caps resolution at a target DPI,
+ * then tries PNG and a quality search over JPEG, downscaling further only when
+ * neither encoding fits.
+ */
+public final class ImagePreprocessor {
+    public static final long DEFAULT_MAX_BYTES = 1_000_000L;
+    public static final int DEFAULT_TARGET_DPI = 300;
+    public static final int DEFAULT_MAX_DIMENSION = 6000;
+
+    private static final float MIN_JPEG_QUALITY = 0.35f;
+    private static final float MAX_JPEG_QUALITY = 0.95f;
+    private static final int QUALITY_STEPS = 5;
+    private static final double DOWNSCALE_STEP = 0.75;
+    private static final int MIN_DIMENSION = 400;
+    private static final double MM_PER_INCH = 25.4;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private final long maxBytes;
+    private final int targetDpi;
+    private final int maxDimension;
+
+    /**
+     * Creates a preprocessor.
+     * @param maxBytes upload budget in bytes; zero or less disables preprocessing
+     * @param targetDpi resolution cap for images that declare their DPI
+     * @param maxDimension cap on the longest edge in pixels
+     */
+    public ImagePreprocessor(long maxBytes, int targetDpi, int maxDimension) {
+        this.maxBytes = maxBytes;
+        this.targetDpi = targetDpi;
+        this.maxDimension = maxDimension;
+    }
+
+    /**
+     * Creates a preprocessor from config.properties
+     * ({@code ocr.upload.max.bytes}, {@code ocr.upload.target.dpi}, {@code ocr.upload.max.dimension}).
+     * @return the preprocessor
+     */
+    public static ImagePreprocessor fromConfig() {
+        return new ImagePreprocessor(
+                Config.getLong("ocr.upload.max.bytes", DEFAULT_MAX_BYTES),
+                Config.getInt("ocr.upload.target.dpi", DEFAULT_TARGET_DPI),
+                Config.getInt("ocr.upload.max.dimension", DEFAULT_MAX_DIMENSION));
+    }
+
+    /**
+     * Prepares a file for upload.
+     * @param file the image file
+     * @return the upload
+     * @throws IOException if the file cannot be read
+     */
+    public PreparedImage prepare(Path file) throws IOException {
+        return prepare(Files.readAllBytes(file), file.getFileName().toString());
+    }
+
+    /**
+     * Prepares encoded image bytes for upload.
+     * @param data the encoded image
+     * @param filename name reported to the OCR service
+     * @return the upload
+     * @throws IOException if decoding fails part way
+     */
+    public PreparedImage prepare(byte[] data, String filename) throws IOException {
+        return prepare(ByteBuffer.wrap(data), filename);
+    }
+
+    /**
+     * Prepares encoded image bytes for upload. Bytes that are already upright, within the
+     * resolution cap and under budget, or that ImageIO cannot decode, are passed through
+     * untouched and without copying.
+     * @param data the encoded image; its position is not changed
+     * @param filename name reported to the OCR service
+     * @return the upload
+     * @throws IOException if decoding fails part way
+     */
+    public PreparedImage prepare(ByteBuffer data, String filename) throws IOException {
+        if (maxBytes <= 0) {
+            return passThrough(data, filename);
+        }
+        Decoded decoded = decode(data);
+        if (decoded == null) {
+            return passThrough(data, filename);
+        }
+        int orientation = readExifOrientation(data);
+        double scale = scaleFor(decoded.image, decoded.dpi);
+        if (data.remaining() <= maxBytes && orientation <= 1 && scale >= 1.0) {
+            return passThrough(data, filename);
+        }
+        BufferedImage gray = toGray(decoded.image, orientation, Math.min(scale, 1.0));
+        return encodeWithinBudget(gray, filename, data.remaining());
+    }
+
+    /**
+     * Prepares an already decoded image, e.g. from the clipboard, skipping any intermediate
+     * encode. The reported original size is that of the uncompressed 24-bit raster.
+     * @param image the image
+     * @param filename name reported to the OCR service
+     * @return the upload
+     * @throws IOException if encoding fails
+     */
+    public PreparedImage prepare(BufferedImage image, String filename) throws IOException {
+        long rasterBytes = (long) image.getWidth() * image.getHeight() * 3;
+        BufferedImage gray = toGray(image, 1, Math.min(scaleFor(image, 0), 1.0));
+        if (maxBytes <= 0) {
+            return new PreparedImage(encodePng(gray), "image/png", withExtension(filename, "png"), rasterBytes);
+        }
+        return encodeWithinBudget(gray, filename, rasterBytes);
+    }
+
+    private PreparedImage encodeWithinBudget(BufferedImage gray, String filename, long originalBytes)
+            throws IOException {
+        BufferedImage current = gray;
+        byte[] smallest = null;
+        while (true) {
+            checkInterrupted();
+            byte[] png = encodePng(current);
+            if (png.length <= maxBytes) {
+                return new PreparedImage(png, "image/png", withExtension(filename, "png"), originalBytes);
+            }
+            byte[] jpeg = bestJpegUnderBudget(current);
+            if (jpeg.length <= maxBytes) {
+                return new PreparedImage(jpeg, "image/jpeg", withExtension(filename, "jpg"), originalBytes);
+            }
+            smallest = jpeg;
+            int width = (int) (current.getWidth() * DOWNSCALE_STEP);
+            int height = (int) (current.getHeight() * DOWNSCALE_STEP);
+            if (Math.max(width, height) < MIN_DIMENSION) {
+                // Budget is unreachable without destroying legibility; send the smallest attempt.
+                return new PreparedImage(smallest, "image/jpeg", withExtension(filename, "jpg"), originalBytes);
+            }
+            current = resizeGray(current, width, height);
+        }
+    }
+
+    // Highest JPEG quality that fits, or the lowest-quality encoding if none does.
+    private byte[] bestJpegUnderBudget(BufferedImage image) throws IOException {
+        byte[] lowest = encodeJpeg(image, MIN_JPEG_QUALITY);
+        if (lowest.length > maxBytes) {
+            return lowest;
+        }
+        byte[] best = lowest;
+        float low = MIN_JPEG_QUALITY;
+        float high = MAX_JPEG_QUALITY;
+        for (int i = 0; i < QUALITY_STEPS; i++) {
+            checkInterrupted();
+            float mid = (low + high) / 2f;
+            byte[] candidate = encodeJpeg(image, mid);
+            if (candidate.length <= maxBytes) {
+                best = candidate;
+                low = mid;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return best;
+    }
+
+    private double scaleFor(BufferedImage image, double dpi) {
+        double scale = 1.0;
+        if (dpi > 0 && targetDpi > 0 && dpi > targetDpi) {
+            scale = targetDpi / dpi;
+        }
+        int longest = Math.max(image.getWidth(), image.getHeight());
+        if (maxDimension > 0 && longest * scale > maxDimension) {
+            scale = (double) maxDimension / longest;
+        }
+        return scale;
+    }
+
+    private static PreparedImage passThrough(ByteBuffer data, String filename) {
+        return new PreparedImage(data, "image/*", filename, data.remaining());
+    }
+
+    /**
+     * Draws the image upright, scaled and in grayscale in a single pass.
+     * Transparent areas become white rather than black.
+     */
+    static BufferedImage toGray(BufferedImage source, int orientation, double scale) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        boolean swap = orientation >= 5 && orientation <= 8;
+        int outWidth = Math.max(1, (int) Math.round((swap ? height : width) * scale));
+        int outHeight = Math.max(1, (int) Math.round((swap ? width : height) * scale));
+
+        BufferedImage out = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2 = out.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, outWidth, outHeight);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        AffineTransform transform = AffineTransform.getScaleInstance(scale, scale);
+        transform.concatenate(orientationTransform(orientation, width, height));
+        g2.drawImage(source, transform, null);
+        g2.dispose();
+        return out;
+    }
+
+    // EXIF orientations 1-8: mirror and rotation needed to display the stored pixels upright.
+    private static AffineTransform orientationTransform(int orientation, int width, int height) {
+        switch (orientation) {
+            case 2:
+                return new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3:
+                return new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4:
+                return new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5:
+                return new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6:
+                return new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7:
+                return new AffineTransform(0, -1, -1, 0, height, width);
+            case 8:
+                return new AffineTransform(0, -1, 1, 0, 0, width);
+            default:
+                return new AffineTransform();
+        }
+    }
+
+    private static BufferedImage resizeGray(BufferedImage source, int width, int height) {
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2 = out.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(source, 0, 0, width, height, null);
+        g2.dispose();
+        return out;
+    }
+
+    /**
+     * Encodes an image as PNG in memory.
+     * @param image the image
+     * @return the PNG bytes
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("No PNG encoder available");
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG encoder available");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static Decoded decode(ByteBuffer data) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(asStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                BufferedImage image = reader.read(0);
+                return new Decoded(image, readDpi(reader.getImageMetadata(0)));
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Standard metadata reports pixel size in millimetres; 0 means the file does not say.
+    private static double readDpi(IIOMetadata metadata) {
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+            return 0;
+        }
+        Node root = metadata.getAsTree("javax_imageio_1.0");
+        for (Node dim = root.getFirstChild(); dim != null; dim = dim.getNextSibling()) {
+            if (!"Dimension".equals(dim.getNodeName())) {
+                continue;
+            }
+            for (Node child = dim.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if ("HorizontalPixelSize".equals(child.getNodeName())) {
+                    Node value = child.getAttributes().getNamedItem("value");
+                    try {
+                        double mmPerPixel = Double.parseDouble(value.getNodeValue());
+                        return mmPerPixel > 0 ? MM_PER_INCH / mmPerPixel : 0;
+                    }
+                    catch (RuntimeException ex) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    static int readExifOrientation(byte[] data) {
+        return readExifOrientation(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads the EXIF orientation tag from a JPEG's APP1 segment.
+     * @param buffer the encoded image; its position is not changed
+     * @return orientation 1-8, or 1 when absent or not a JPEG
+     */
+    static int readExifOrientation(ByteBuffer buffer) {
+        ByteBuffer data = buffer.slice();
+        int size = data.limit();
+        if (size < 4 || u8(data, 0) != 0xFF || u8(data, 1) != 0xD8) {
+            return 1;
+        }
+        int pos = 2;
+        while (pos + 4 <= size && u8(data, pos) == 0xFF) {
+            int marker = u8(data, pos + 1);
+            int length = (u8(data, pos + 2) << 8) | u8(data, pos + 3);
+            if (marker == 0xDA || length < 2) {
+                break;
+            }
+            int segment = pos + 4;
+            if (marker == 0xE1 && segment + 6 <= size
+                    && data.get(segment) == 'E' && data.get(segment + 1) == 'x'
+                    && data.get(segment + 2) == 'i' && data.get(segment + 3) == 'f') {
+                return readTiffOrientation(data, segment + 6, Math.min(size, pos + 2 + length));
+            }
+            pos += 2 + length;
+        }
+        return 1;
+    }
+
+    private static int readTiffOrientation(ByteBuffer data, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return 1;
+        }
+        boolean little = data.get(tiff) == 'I' && data.get(tiff + 1) == 'I';
+        long ifd = tiff + readInt(data, tiff + 4, little);
+        if (ifd < tiff || ifd + 2 > end) {
+            return 1;
+        }
+        int entries = readShort(data, (int) ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, little) == EXIF_ORIENTATION_TAG) {
+                int value = readShort(data, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int u8(ByteBuffer data, int index) {
+        return data.get(index) & 0xFF;
+    }
+
+    private static int readShort(ByteBuffer data, int offset, boolean little) {
+        int a = u8(data, offset);
+        int b = u8(data, offset + 1);
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static long readInt(ByteBuffer data, int offset, boolean little) {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int shift = little ? i * 8 : (3 - i) * 8;
+            value |= (long) u8(data, offset + i) << shift;
+        }
+        return value;
+    }
+
+    // Reads a buffer without copying heap arrays and without moving the caller's position.
+    private static InputStream asStream(ByteBuffer data) {
+        if (data.hasArray()) {
+            return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        ByteBuffer view = data.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(length, view.remaining());
+                view.get(bytes, offset, count);
+                return count;
+            }
+        };
+    }
+
+    private static String withExtension(String filename, String extension) {
+        String base = filename == null || filename.isEmpty() ? "image" : filename;
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) {
+            base = base.substring(0, dot);
+        }
+        return base + "." + extension;
+    }
+
+    private static void checkInterrupted() throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Image preprocessing interrupted");
+        }
+    }
+
+    private static final class Decoded {
+        private final BufferedImage image;
+        private final double dpi;
+
+        private Decoded(BufferedImage image, double dpi) {
+            this.image = image;
+            this.dpi = dpi;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Durable FIFO of jobs that survives crashes and restarts. Every change (enqueued, started,
+ * done, requeued) is appended to {@code journal.log} as a checksummed record, so each
+ * operation costs one small write. Once the log holds many more records than there are live
+ * jobs it is compacted: live jobs are written to {@code checkpoint} (via a temp file and an
+ * atomic rename) and the log is emptied.
+ * <p>
+ * Opening a journal replays the checkpoint and then the log. A torn record at the end of the
+ * log, left by a crash mid-write, is cut off. Jobs that were started but not finished go back
+ * into the queue ahead of the rest; finished jobs are gone.
+ */
+public final class JobJournal implements Closeable {
+    static final String LOG_FILE = "journal.log";
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final byte ENQUEUED = 1;
+    private static final byte STARTED = 2;
+    private static final byte DONE = 3;
+    private static final byte REQUEUED = 4;
+    private static final byte NEXT_ID = 5;
+    private static final int HEADER_BYTES = 8;
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    /** A queued or running job. */
+    public static final class Job {
+        private final long id;
+        private final String payload;
+        private boolean queued; // guarded by the journal
+
+        private Job(long id, String payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    private final Path dir;
+    private final boolean syncEachWrite;
+    private final TreeMap<Long, Job> live = new TreeMap<>();
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private FileChannel log;
+    private long nextId = 1;
+    private long logRecords;
+
+    private JobJournal(Path dir, boolean syncEachWrite) {
+        this.dir = dir;
+        this.syncEachWrite = syncEachWrite;
+    }
+
+    /**
+     * Opens or creates a journal and recovers its jobs.
+     * @param dir directory holding the journal files, created if missing
+     * @param syncEachWrite force every record to disk; without it records reach the OS on each
+     *                      call, which survives an application crash but not a power loss
+     * @return the journal
+     * @throws IOException if the files cannot be read or created
+     */
+    public static JobJournal open(Path dir, boolean syncEachWrite) throws IOException {
+        Files.createDirectories(dir);
+        JobJournal journal = new JobJournal(dir, syncEachWrite);
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * Adds a job at the back of the queue.
+     * @param payload what the job is about, e.g. a file path
+     * @return the job
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized Job enqueue(String payload) throws IOException {
+        return enqueueAll(List.of(payload)).get(0);
+    }
+
+    /**
+     * Adds jobs at the back of the queue with a single write.
+     * @param payloads what each job is about, in queue order
+     * @return the jobs
+     * @throws IOException if the records cannot be written
+     */
+    public synchronized List<Job> enqueueAll(Collection<String> payloads) throws IOException {
+        if (payloads.isEmpty()) {
+            return List.of();
+        }
+        List<Job> jobs = new ArrayList<>(payloads.size());
+        List<ByteBuffer> records = new ArrayList<>(payloads.size());
+        long id = nextId;
+        for (String payload : payloads) {
+            Job job = new Job(id++, payload);
+            jobs.add(job);
+            records.add(record(ENQUEUED, job.id, payload));
+        }
+        append(records);
+        nextId = id;
+        for (Job job : jobs) {
+            live.put(job.id, job);
+            enqueueLast(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * Takes the next queued job and records it as started.
+     * @return the job, or null if none is queued
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized Job poll() throws IOException {
+        Job job = queue.peek();
+        if (job == null) {
+            return null;
+        }
+        append(List.of(record(STARTED, job.id, null)));
+        queue.poll().queued = false;
+        return job;
+    }
+
+    /**
+     * Records a job as finished, successfully or not; it will not run again.
+     * @param job the job
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void complete(Job job) throws IOException {
+        if (!live.containsKey(job.id)) {
+            return;
+        }
+        append(List.of(record(DONE, job.id, null)));
+        live.remove(job.id);
+        if (job.queued) {
+            queue.remove(job);
+            job.queued = false;
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Puts a started job back at the front of the queue, e.g. after it was cancelled.
+     * @param job the job
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void requeue(Job job) throws IOException {
+        if (!live.containsKey(job.id) || job.queued) {
+            return;
+        }
+        append(List.of(record(REQUEUED, job.id, null)));
+        queue.addFirst(job);
+        job.queued = true;
+    }
+
+    /**
+     * @return jobs waiting to start
+     */
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * @return jobs started and not yet completed
+     */
+    public synchronized int inFlight() {
+        return live.size() - queue.size();
+    }
+
+    /**
+     * Writes the live jobs to the checkpoint and empties the log.
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        Path temp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<ByteBuffer> records = new ArrayList<>(2 * live.size() + 1);
+            records.add(record(NEXT_ID, nextId, null));
+            for (Job job : live.values()) {
+                records.add(record(ENQUEUED, job.id, job.payload));
+                if (!job.queued) {
+                    // Still running: after a crash it goes first again, as it would from the log.
+                    records.add(record(STARTED, job.id, null));
+                }
+            }
+            writeFully(out, records);
+            out.force(true);
+        }
+        try {
+            Files.move(temp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Replaying the old log over the new checkpoint is harmless, so a crash before this is fine.
+        log.truncate(0);
+        log.force(true);
+        logRecords = 0;
+    }
+
+    /**
+     * Compacts the journal and closes it. Unfinished jobs stay for the next open.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (log == null || !log.isOpen()) {
+            return;
+        }
+        try {
+            checkpoint();
+        }
+        finally {
+            log.close();
+        }
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Long, Boolean> started = new TreeMap<>();
+        Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            try (FileChannel in = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+                replay(in, started);
+            }
+            logRecords = 0;
+        }
+        log = FileChannel.open(dir.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long valid = replay(log, started);
+        if (valid < log.size()) {
+            System.err.println("Warning: discarding " + (log.size() - valid) + " torn byte(s) at the end of "
+                    + dir.resolve(LOG_FILE));
+            log.truncate(valid);
+        }
+        log.position(valid);
+        // Interrupted work first, then the rest in the order it was queued.
+        for (Job job : live.values()) {
+            if (started.containsKey(job.id)) {
+                enqueueLast(job);
+            }
+        }
+        for (Job job : live.values()) {
+            if (!started.containsKey(job.id)) {
+                enqueueLast(job);
+            }
+        }
+    }
+
+    private void enqueueLast(Job job) {
+        queue.add(job);
+        job.queued = true;
+    }
+
+    // Returns the offset just past the last intact record.
+    private long replay(FileChannel in, TreeMap<Long, Boolean> started) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        long size = in.size();
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(in, header, position);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length < 9 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(in, body, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(body, started);
+            position += HEADER_BYTES + length;
+            logRecords++;
+        }
+        return position;
+    }
+
+    private void apply(ByteBuffer body, TreeMap<Long, Boolean> started) {
+        byte type = body.get(0);
+        long id = body.getLong(1);
+        switch (type) {
+            case ENQUEUED:
+                String payload = new String(body.array(), 9, body.limit() - 9, StandardCharsets.UTF_8);
+                live.putIfAbsent(id, new Job(id, payload));
+                nextId = Math.max(nextId, id + 1);
+                break;
+            case STARTED:
+                started.put(id, Boolean.TRUE);
+                break;
+            case REQUEUED:
+                started.remove(id);
+                break;
+            case DONE:
+                live.remove(id);
+                started.remove(id);
+                break;
+            case NEXT_ID:
+                nextId = Math.max(nextId, id);
+                break;
+            default:
+                // Unknown record from a newer version; nothing to apply.
+        }
+    }
+
+    private void append(List<ByteBuffer> records) throws IOException {
+        writeFully(log, records);
+        if (syncEachWrite) {
+            log.force(false);
+        }
+        logRecords += records.size();
+    }
+
+    private void maybeCompact() throws IOException {
+        if (logRecords >= MIN_COMPACT_RECORDS && logRecords >= 4L * live.size()) {
+            checkpoint();
+        }
+    }
+
+    private ByteBuffer record(byte type, long id, String payload) {
+        byte[] text = payload == null ? new byte[0] : payload.getBytes(StandardCharsets.UTF_8);
+        int length = 9 + text.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.putInt(length).putInt(0).put(type).putLong(id).put(text);
+        crc.reset();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel out, List<ByteBuffer> records) throws IOException {
+        ByteBuffer buffer = records.get(0);
+        if (records.size() > 1) {
+            int total = 0;
+            for (ByteBuffer record : records) {
+                total += record.remaining();
+            }
+            buffer = ByteBuffer.allocate(total);
+            for (ByteBuffer record : records) {
+                buffer.put(record);
+            }
+            buffer.flip();
+        }
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+}
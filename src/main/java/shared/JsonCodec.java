@@ -0,0 +1,574 @@
+package shared;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming JSON codecs for the payloads the app exchanges with OCR.space and Firebase.
+ * Readers pull out the handful of fields the app uses and skip everything else without
+ * materialising it, so large responses never become a tree of JsonElements.
+ */
+public final class JsonCodec {
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Receives one history entry's metadata.
+     */
+    @FunctionalInterface
+    public interface HistoryEntryConsumer {
+        /**
+         * @param key the Firebase push key
+         * @param filename the image filename, "unknown" when missing
+         * @param timestamp epoch millis, 0 when missing or unreadable
+         */
+        void accept(String key, String filename, long timestamp);
+    }
+
+    /**
+     * Receives one history entry's metadata node.
+     */
+    @FunctionalInterface
+    public interface HistoryMetaConsumer {
+        /**
+         * @param key the Firebase push key
+         * @param filename the image filename, "unknown" when missing
+         * @param timestamp epoch millis, 0 when missing or unreadable
+         * @param hash the content hash, null when missing
+         */
+        void accept(String key, String filename, long timestamp, String hash);
+    }
+
+    /**
+     * Receives one whole history entry.
+     */
+    @FunctionalInterface
+    public interface HistoryItemConsumer {
+        /**
+         * @param key the Firebase push key
+         * @param filename the image filename, "unknown" when missing
+         * @param content the text, "" when missing
+         * @param timestamp epoch millis, 0 when missing or unreadable
+         */
+        void accept(String key, String filename, String content, long timestamp);
+    }
+
+    /**
+     * The fields of an OCR.space response the app uses.
+     */
+    public static final class OcrResponse {
+        private final boolean errored;
+        private final String errorMessage;
+        private final String parsedText;
+        private final long processingTimeMillis;
+
+        private OcrResponse(boolean errored, String errorMessage, String parsedText, long processingTimeMillis) {
+            this.errored = errored;
+            this.errorMessage = errorMessage;
+            this.parsedText = parsedText;
+            this.processingTimeMillis = processingTimeMillis;
+        }
+
+        public boolean isErrored() {
+            return errored;
+        }
+
+        /**
+         * @return the error message(s), joined with "; " if the API sent several, or null
+         */
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        /**
+         * @return every page's ParsedText joined with newlines, or null if there was none
+         */
+        public String getParsedText() {
+            return parsedText;
+        }
+
+        /**
+         * @return the server's own ProcessingTimeInMilliseconds, or -1 if it was not reported
+         */
+        public long getProcessingTimeMillis() {
+            return processingTimeMillis;
+        }
+    }
+
+    /**
+     * Reads an OCR.space parse response. TextOverlay and other per-result fields are skipped.
+     * @param in the response body
+     * @return the fields of interest
+     * @throws IOException if the body is not valid JSON
+     */
+    public static OcrResponse readOcrResponse(Reader in) throws IOException {
+        boolean errored = false;
+        String errorMessage = null;
+        StringBuilder text = null;
+        long processingTime = -1;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "IsErroredOnProcessing":
+                        errored = nextBoolean(reader);
+                        break;
+                    case "ErrorMessage":
+                        errorMessage = nextMessage(reader);
+                        break;
+                    case "ParsedResults":
+                        text = readParsedResults(reader);
+                        break;
+                    case "ProcessingTimeInMilliseconds":
+                        processingTime = nextLong(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return new OcrResponse(errored, errorMessage, text == null ? null : text.toString(), processingTime);
+    }
+
+    /**
+     * Reads a user's history node ({@code {key: {filename, content, timestamp}, ...}}),
+     * reporting each entry's metadata. Content is skipped, however large. An empty or null
+     * body means no history.
+     * @param in the response body
+     * @param consumer receives each entry in document order
+     * @throws IOException if the body is not valid JSON
+     */
+    public static void readHistoryIndex(Reader in, HistoryEntryConsumer consumer) throws IOException {
+        readHistory(in, false, (key, filename, content, timestamp, hash) ->
+                consumer.accept(key, filename, timestamp));
+    }
+
+    /**
+     * Reads a user's history node like {@link #readHistoryIndex}, with the content hash that
+     * metadata nodes carry.
+     * @param in the response body
+     * @param consumer receives each entry in document order
+     * @throws IOException if the body is not valid JSON
+     */
+    public static void readHistoryMeta(Reader in, HistoryMetaConsumer consumer) throws IOException {
+        readHistory(in, false, (key, filename, content, timestamp, hash) ->
+                consumer.accept(key, filename, timestamp, hash));
+    }
+
+    /**
+     * Reads a user's history node like {@link #readHistoryIndex}, content included.
+     * @param in the response body
+     * @param consumer receives each entry in document order
+     * @throws IOException if the body is not valid JSON
+     */
+    public static void readHistoryItems(Reader in, HistoryItemConsumer consumer) throws IOException {
+        readHistory(in, true, (key, filename, content, timestamp, hash) ->
+                consumer.accept(key, filename, content, timestamp));
+    }
+
+    /**
+     * Reads the member names of a top-level object, e.g. a {@code shallow=true} listing.
+     * @param in the response body
+     * @return the names in document order; empty if the body is empty or null
+     * @throws IOException if the body is not valid JSON
+     */
+    public static List<String> readKeys(Reader in) throws IOException {
+        List<String> keys = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(in)) {
+            if (isEmptyOrNull(reader)) {
+                return keys;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                keys.add(reader.nextName());
+                reader.skipValue();
+            }
+            reader.endObject();
+        }
+        return keys;
+    }
+
+    /**
+     * Reads one string field of each object in a keyed node, e.g. the {@code content} of every
+     * {@code {key: {content}}} entry, skipping the rest.
+     * @param in the response body
+     * @param field the field name
+     * @return the values by key, in document order; entries without the field are left out
+     * @throws IOException if the body is not valid JSON
+     */
+    public static Map<String, String> readStringFields(Reader in, String field) throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        try (JsonReader reader = new JsonReader(in)) {
+            if (isEmptyOrNull(reader)) {
+                return values;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (field.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                        values.put(key, reader.nextString());
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        return values;
+    }
+
+    /**
+     * Reads one top-level string field of an object, skipping the rest.
+     * @param in the response body
+     * @param field the field name, e.g. "content" or "name"
+     * @return the value, or null if the body is empty or null, or the field is absent or not a string
+     * @throws IOException if the body is not valid JSON
+     */
+    public static String readStringField(Reader in, String field) throws IOException {
+        String value = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            if (isEmptyOrNull(reader)) {
+                return null;
+            }
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                return null;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (field.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                    value = reader.nextString();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return value;
+    }
+
+    /**
+     * Reads the message of a Firebase Auth error body ({@code {"error": {"message": ...}}}).
+     * @param in the response body
+     * @return the message, or null if absent
+     * @throws IOException if the body is not valid JSON
+     */
+    public static String readAuthErrorMessage(Reader in) throws IOException {
+        String message = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("error".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("message".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                            message = reader.nextString();
+                        }
+                        else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return message;
+    }
+
+    /**
+     * Writes a history item.
+     * @param filename the image filename; null is written as ""
+     * @param content the text
+     * @param timestamp epoch millis
+     * @return the JSON
+     */
+    public static String writeHistoryItem(String filename, String content, long timestamp) {
+        StringWriter out = new StringWriter(content.length() + 96);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject()
+                    .name("filename").value(filename == null ? "" : filename)
+                    .name("content").value(content)
+                    .name("timestamp").value(timestamp)
+                    .endObject();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the metadata node of a history item, which listings read instead of the item.
+     * @param filename the image filename; null is written as ""
+     * @param timestamp epoch millis
+     * @param size the content's length in UTF-8 bytes
+     * @param hash the content's hash
+     * @param nameKey the name's unique sort key, see {@code FirebaseHistoryRepository}
+     * @return the JSON
+     */
+    public static String writeHistoryMeta(String filename, long timestamp, long size, String hash, String nameKey) {
+        StringWriter out = new StringWriter(160);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject()
+                    .name("filename").value(filename == null ? "" : filename)
+                    .name("timestamp").value(timestamp)
+                    .name("size").value(size)
+                    .name("hash").value(hash)
+                    .name("nameKey").value(nameKey)
+                    .endObject();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the content node of a history item.
+     * @param content the text
+     * @return the JSON
+     */
+    public static String writeHistoryContent(String content) {
+        StringWriter out = new StringWriter(content.length() + 16);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject().name("content").value(content).endObject();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes a JSON string literal, e.g. for a Firebase query parameter.
+     * @param value the string
+     * @return the quoted, escaped literal
+     */
+    public static String writeString(String value) {
+        StringWriter out = new StringWriter(value.length() + 2);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setLenient(true);
+            writer.value(value);
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes an object from members that are already encoded, e.g. history items keyed by id
+     * as the body of a multi-path update.
+     * @param members JSON values by member name, in the order to write them
+     * @return the JSON
+     */
+    public static String writeObject(Map<String, String> members) {
+        int size = 2;
+        for (Map.Entry<String, String> member : members.entrySet()) {
+            size += member.getKey().length() + member.getValue().length() + 4;
+        }
+        StringWriter out = new StringWriter(size);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            for (Map.Entry<String, String> member : members.entrySet()) {
+                writer.name(member.getKey()).jsonValue(member.getValue());
+            }
+            writer.endObject();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes a Firebase Auth sign-up/sign-in request.
+     * @param email the email
+     * @param password the password
+     * @return the JSON
+     */
+    public static String writeAuthRequest(String email, String password) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject()
+                    .name("email").value(email)
+                    .name("password").value(password)
+                    .name("returnSecureToken").value(true)
+                    .endObject();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+
+    @FunctionalInterface
+    private interface HistoryFieldsConsumer {
+        void accept(String key, String filename, String content, long timestamp, String hash);
+    }
+
+    private static void readHistory(Reader in, boolean withContent, HistoryFieldsConsumer consumer)
+            throws IOException {
+        try (JsonReader reader = new JsonReader(in)) {
+            if (isEmptyOrNull(reader)) {
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                String filename = "unknown";
+                String content = "";
+                long timestamp = 0L;
+                String hash = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("filename".equals(name) && reader.peek() == JsonToken.STRING) {
+                        filename = reader.nextString();
+                    }
+                    else if (withContent && "content".equals(name) && reader.peek() == JsonToken.STRING) {
+                        content = reader.nextString();
+                    }
+                    else if ("timestamp".equals(name)) {
+                        timestamp = nextLong(reader);
+                    }
+                    else if ("hash".equals(name) && reader.peek() == JsonToken.STRING) {
+                        hash = reader.nextString();
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                consumer.accept(key, filename, content, timestamp, hash);
+            }
+            reader.endObject();
+        }
+    }
+
+    private static boolean isEmptyOrNull(JsonReader reader) throws IOException {
+        try {
+            return reader.peek() == JsonToken.NULL;
+        }
+        catch (EOFException ex) {
+            return true;
+        }
+    }
+
+    private static StringBuilder readParsedResults(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        StringBuilder text = null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("ParsedText".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    else {
+                        text.append('\n');
+                    }
+                    text.append(reader.nextString());
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return text;
+    }
+
+    // OCR.space sends ErrorMessage as a string or an array of strings.
+    private static String nextMessage(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        StringBuilder message = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.STRING) {
+                if (message.length() > 0) {
+                    message.append("; ");
+                }
+                message.append(reader.nextString());
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return message.toString();
+    }
+
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(reader.nextString());
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    private static long nextLong(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            String raw = reader.nextString();
+            try {
+                return Long.parseLong(raw);
+            }
+            catch (NumberFormatException ex) {
+                try {
+                    return (long) Double.parseDouble(raw);
+                }
+                catch (NumberFormatException ignored) {
+                    return 0L;
+                }
+            }
+        }
+        reader.skipValue();
+        return 0L;
+    }
+}
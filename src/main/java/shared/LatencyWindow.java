@@ -0,0 +1,58 @@
+package shared;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window over the most recent latency samples, for percentile estimates.
+ */
+public final class LatencyWindow {
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    /**
+     * Creates a window.
+     * @param size how many recent samples to keep
+     */
+    public LatencyWindow(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        this.samples = new long[size];
+    }
+
+    /**
+     * Adds a sample, replacing the oldest once the window is full.
+     * @param millis the latency
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * @return samples currently held
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Nearest-rank percentile of the samples held.
+     * @param percentile between 0 and 100
+     * @return the latency, or -1 when there are no samples
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+}
@@ -0,0 +1,553 @@
+package shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of a remote collection of text records (id, label, text, timestamp) that can be
+ * read and written offline. Everything is kept in a {@link MappedLog}: items, deletions, named
+ * marks such as a sync watermark, and an outbox of local changes not yet confirmed by the
+ * remote side. An in-memory index maps each id to its latest record, so listing is a map walk
+ * and reading a text is one slice of the mapping.
+ * <p>
+ * Local changes ({@link #put}, {@link #delete}) are forced to disk and stay in the outbox until
+ * {@link #acknowledge}d, so they survive restarts. Changes from the remote side
+ * ({@link #applyRemote}, {@link #applyRemoteEntry}, {@link #removeRemote}) never overrule an id
+ * with local changes pending. A remote record may be stored without its text, to be filled in
+ * when it is first read. Once most of the log is dead it is compacted into a new file, on open
+ * or as soon as that happens.
+ */
+public final class LocalReplica implements Closeable {
+    private static final String PREFIX = "replica.";
+    private static final String SUFFIX = ".log";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte ACK = 3;
+    private static final byte MARK = 4;
+    private static final byte PENDING = 1;
+    private static final byte NO_TEXT = 2;
+
+    /** A stored record, without its text. */
+    public static final class Item {
+        private final String id;
+        private final String label;
+        private final long timestamp;
+        private final long offset;
+        private final boolean hasText;
+
+        private Item(String id, String label, long timestamp, long offset, boolean hasText) {
+            this.id = id;
+            this.label = label;
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.hasText = hasText;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /** A local change waiting to be sent to the remote side. */
+    public static final class Change {
+        // The record's offset; compaction moves it to the new file's.
+        private long sequence;
+        private final String id;
+        private final boolean delete;
+        private final String label;
+        private final String text;
+        private final long timestamp;
+
+        private Change(long sequence, String id, boolean delete, String label, String text, long timestamp) {
+            this.sequence = sequence;
+            this.id = id;
+            this.delete = delete;
+            this.label = label;
+            this.text = text;
+            this.timestamp = timestamp;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return true for a deletion, false for a new or replaced record
+         */
+        public boolean isDelete() {
+            return delete;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private final Path dir;
+    private int generation;
+    private MappedLog log;
+    private final LinkedHashMap<String, Item> items = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, Change> outbox = new LinkedHashMap<>();
+    private final Map<String, Integer> pendingIds = new HashMap<>();
+    private final Map<String, Long> marks = new HashMap<>();
+    private long records;
+    private long version;
+
+    private LocalReplica(Path dir, int generation, MappedLog log) {
+        this.dir = dir;
+        this.generation = generation;
+        this.log = log;
+    }
+
+    /**
+     * Opens or creates a replica.
+     * @param dir the directory holding its files, created if missing
+     * @return the replica
+     * @throws IOException if the files cannot be read or created
+     */
+    public static LocalReplica open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        int generation = latestGeneration(dir);
+        LocalReplica replica = new LocalReplica(dir, generation, MappedLog.open(file(dir, generation)));
+        try {
+            replica.load();
+        }
+        catch (IOException | RuntimeException ex) {
+            replica.close();
+            throw ex;
+        }
+        try {
+            replica.compactIfDue();
+        }
+        catch (IOException | RuntimeException ex) {
+            replica.close();
+            throw ex;
+        }
+        return replica;
+    }
+
+    /**
+     * Stores a local record, replacing any with the same id, and queues it for the remote side.
+     * @param id the record's id
+     * @param label a name to show, e.g. a file name
+     * @param text the text
+     * @param timestamp when it was made, epoch millis
+     * @return the queued change
+     * @throws IOException if it cannot be written
+     */
+    public synchronized Change put(String id, String label, String text, long timestamp) throws IOException {
+        long offset = log.append(putRecord(PENDING, id, label, text, timestamp));
+        log.force();
+        items.put(id, new Item(id, label, timestamp, offset, true));
+        version++;
+        return queue(new Change(offset, id, false, label, text, timestamp));
+    }
+
+    /**
+     * Deletes a record locally and queues the deletion for the remote side.
+     * @param id the record's id
+     * @return the queued change
+     * @throws IOException if it cannot be written
+     */
+    public synchronized Change delete(String id) throws IOException {
+        long offset = log.append(deleteRecord(PENDING, id));
+        log.force();
+        items.remove(id);
+        version++;
+        return queue(new Change(offset, id, true, null, null, 0L));
+    }
+
+    /**
+     * Records that the remote side has a change, taking it out of the outbox.
+     * @param change a change from {@link #put}, {@link #delete} or {@link #pending}
+     * @throws IOException if it cannot be written
+     */
+    public synchronized void acknowledge(Change change) throws IOException {
+        // A change replaced by a later one for the same id is gone after compaction.
+        if (outbox.get(change.sequence) != change) {
+            return;
+        }
+        // Not forced: if it is lost the change is sent again, which the remote side shrugs off.
+        log.append(ByteBuffer.allocate(9).put(0, ACK).putLong(1, change.sequence));
+        records++;
+        unqueue(change.sequence);
+        compactIfDue();
+    }
+
+    /**
+     * @return local changes not yet acknowledged, oldest first
+     */
+    public synchronized List<Change> pending() {
+        return new ArrayList<>(outbox.values());
+    }
+
+    /**
+     * @param id a record's id
+     * @return whether local changes to it are waiting in the outbox
+     */
+    public synchronized boolean isPending(String id) {
+        return pendingIds.containsKey(id);
+    }
+
+    /**
+     * Stores a record that came from the remote side, unless local changes to it are pending
+     * or the same version is already here.
+     * @param id the record's id
+     * @param label a name to show
+     * @param text the text
+     * @param timestamp when it was made, epoch millis
+     * @return whether anything changed
+     * @throws IOException if it cannot be written
+     */
+    public synchronized boolean applyRemote(String id, String label, String text, long timestamp)
+            throws IOException {
+        Item existing = items.get(id);
+        if (pendingIds.containsKey(id) || existing != null && existing.hasText
+                && existing.timestamp == timestamp && existing.label.equals(label)) {
+            return false;
+        }
+        return storeRemote(id, label, text, timestamp);
+    }
+
+    /**
+     * Stores a record that came from the remote side without its text, which {@link #text}
+     * then reports as missing until {@link #applyRemote} supplies it. Does nothing if local
+     * changes to it are pending or the record is already here; with a hash, a text here that
+     * hashes differently is dropped as stale.
+     * @param id the record's id
+     * @param label a name to show
+     * @param timestamp when it was made, epoch millis
+     * @param hash the {@link ContentHash} of the text's UTF-8 bytes, or null if unknown
+     * @return whether anything changed
+     * @throws IOException if it cannot be written
+     */
+    public synchronized boolean applyRemoteEntry(String id, String label, long timestamp, String hash)
+            throws IOException {
+        Item existing = items.get(id);
+        if (pendingIds.containsKey(id)
+                || existing != null && existing.timestamp == timestamp && existing.label.equals(label)
+                && (hash == null || !existing.hasText || hash.equals(ContentHash.of(textBytes(existing))))) {
+            return false;
+        }
+        return storeRemote(id, label, null, timestamp);
+    }
+
+    /**
+     * Deletes a record the remote side no longer has, unless local changes to it are pending.
+     * @param id the record's id
+     * @return whether anything changed
+     * @throws IOException if it cannot be written
+     */
+    public synchronized boolean removeRemote(String id) throws IOException {
+        if (pendingIds.containsKey(id) || !items.containsKey(id)) {
+            return false;
+        }
+        log.append(deleteRecord((byte) 0, id));
+        records++;
+        items.remove(id);
+        version++;
+        compactIfDue();
+        return true;
+    }
+
+    /**
+     * @return every record, in the order they were first stored
+     */
+    public synchronized List<Item> items() {
+        return new ArrayList<>(items.values());
+    }
+
+    /**
+     * @param id a record's id
+     * @return the record, or null if there is none
+     */
+    public synchronized Item item(String id) {
+        return items.get(id);
+    }
+
+    /**
+     * @param id a record's id
+     * @return its text, or null if there is no such record or it was stored without one
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized String text(String id) throws IOException {
+        Item item = items.get(id);
+        if (item == null || !item.hasText) {
+            return null;
+        }
+        return StandardCharsets.UTF_8.decode(textBytes(item)).toString();
+    }
+
+    /**
+     * @param name a mark's name, e.g. "watermark"
+     * @return its value, or 0 if never set
+     */
+    public synchronized long mark(String name) {
+        return marks.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Sets a named value, e.g. how far the replica has been synced.
+     * @param name the mark's name
+     * @param value its value
+     * @throws IOException if it cannot be written
+     */
+    public synchronized void setMark(String name, long value) throws IOException {
+        if (Long.valueOf(value).equals(marks.get(name))) {
+            return;
+        }
+        log.append(markRecord(name, value));
+        records++;
+        marks.put(name, value);
+        compactIfDue();
+    }
+
+    /**
+     * @return a number that changes whenever the records do, e.g. to know when a view of
+     *         {@link #items} is stale
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * @return the number of records
+     */
+    public synchronized int size() {
+        return items.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    private ByteBuffer textBytes(Item item) throws IOException {
+        ByteBuffer body = log.read(item.offset);
+        body.position(10);
+        skipString(body);
+        skipString(body);
+        int length = body.getInt();
+        ByteBuffer bytes = body.slice();
+        bytes.limit(length);
+        return bytes;
+    }
+
+    private boolean storeRemote(String id, String label, String text, long timestamp) throws IOException {
+        long offset = log.append(putRecord(text == null ? NO_TEXT : 0, id, label, text, timestamp));
+        records++;
+        items.put(id, new Item(id, label, timestamp, offset, text != null));
+        version++;
+        compactIfDue();
+        return true;
+    }
+
+    private Change queue(Change change) {
+        records++;
+        outbox.put(change.sequence, change);
+        pendingIds.merge(change.id, 1, Integer::sum);
+        return change;
+    }
+
+    private void unqueue(long sequence) {
+        Change change = outbox.remove(sequence);
+        if (change != null) {
+            pendingIds.computeIfPresent(change.id, (id, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private void load() throws IOException {
+        log.forEach((offset, body) -> {
+            records++;
+            byte type = body.get();
+            switch (type) {
+                case PUT: {
+                    byte flags = body.get();
+                    boolean pending = (flags & PENDING) != 0;
+                    long timestamp = body.getLong();
+                    String id = readString(body);
+                    String label = readString(body);
+                    items.put(id, new Item(id, label, timestamp, offset, (flags & NO_TEXT) == 0));
+                    if (pending) {
+                        records--;
+                        queue(new Change(offset, id, false, label, readString(body), timestamp));
+                    }
+                    break;
+                }
+                case DELETE: {
+                    boolean pending = (body.get() & PENDING) != 0;
+                    String id = readString(body);
+                    items.remove(id);
+                    if (pending) {
+                        records--;
+                        queue(new Change(offset, id, true, null, null, 0L));
+                    }
+                    break;
+                }
+                case ACK:
+                    unqueue(body.getLong());
+                    break;
+                case MARK: {
+                    long value = body.getLong();
+                    marks.put(readString(body), value);
+                    break;
+                }
+                default:
+                    // Unknown record from a newer version; nothing to apply.
+            }
+        });
+    }
+
+    private void compactIfDue() throws IOException {
+        if (records > 2L * (items.size() + outbox.size() + marks.size()) + 1024) {
+            compact();
+        }
+    }
+
+    // Writes the live state to the next generation's file and switches to it. Changes already
+    // handed out stay valid: each id's last pending change takes its new record's offset.
+    private void compact() throws IOException {
+        List<ByteBuffer> bodies = new ArrayList<>(items.size() + outbox.size() + marks.size());
+        for (Map.Entry<String, Long> mark : marks.entrySet()) {
+            bodies.add(markRecord(mark.getKey(), mark.getValue()));
+        }
+        for (Item item : items.values()) {
+            if (!pendingIds.containsKey(item.id)) {
+                bodies.add(putRecord(item.hasText ? 0 : NO_TEXT, item.id, item.label, text(item.id), item.timestamp));
+            }
+        }
+        // Only the last change per id matters: a record is replaced whole, and deleted for good.
+        Map<String, Change> last = new LinkedHashMap<>();
+        for (Change change : outbox.values()) {
+            last.remove(change.id);
+            last.put(change.id, change);
+        }
+        for (Change change : last.values()) {
+            bodies.add(change.delete ? deleteRecord(PENDING, change.id)
+                    : putRecord(PENDING, change.id, change.label, change.text, change.timestamp));
+        }
+        Path previous = file(dir, generation);
+        MappedLog.write(file(dir, generation + 1), bodies);
+        MappedLog next = MappedLog.open(file(dir, generation + 1));
+        log.close();
+        log = next;
+        generation++;
+        items.clear();
+        outbox.clear();
+        pendingIds.clear();
+        marks.clear();
+        records = 0;
+        load();
+        List<Change> reloaded = new ArrayList<>(outbox.values());
+        outbox.clear();
+        for (Change change : reloaded) {
+            Change held = last.get(change.id);
+            held.sequence = change.sequence;
+            outbox.put(held.sequence, held);
+        }
+        version++;
+        try {
+            Files.deleteIfExists(previous);
+        }
+        catch (IOException ex) {
+            // Still mapped somewhere (Windows); it goes on a later open.
+        }
+    }
+
+    private static int latestGeneration(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        int latest = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    latest = Math.max(latest, Integer.parseInt(
+                            name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                    files.add(path);
+                }
+                catch (NumberFormatException ex) {
+                    // Not one of ours.
+                }
+            }
+        }
+        for (Path path : files) {
+            if (!path.equals(file(dir, latest))) {
+                try {
+                    Files.deleteIfExists(path);
+                }
+                catch (IOException ex) {
+                    // Still mapped somewhere (Windows); it goes on a later open.
+                }
+            }
+        }
+        return latest;
+    }
+
+    private static Path file(Path dir, int generation) {
+        return dir.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    private static ByteBuffer putRecord(int flags, String id, String label, String text, long timestamp) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] labelBytes = label.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(10 + 12 + idBytes.length + labelBytes.length + textBytes.length);
+        body.put(PUT).put((byte) flags).putLong(timestamp);
+        body.putInt(idBytes.length).put(idBytes);
+        body.putInt(labelBytes.length).put(labelBytes);
+        body.putInt(textBytes.length).put(textBytes);
+        return body.flip();
+    }
+
+    private static ByteBuffer deleteRecord(byte flags, String id) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(2 + 4 + idBytes.length);
+        body.put(DELETE).put(flags).putInt(idBytes.length).put(idBytes);
+        return body.flip();
+    }
+
+    private static ByteBuffer markRecord(String name, long value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + nameBytes.length);
+        body.put(MARK).putLong(value).putInt(nameBytes.length).put(nameBytes);
+        return body.flip();
+    }
+
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        ByteBuffer bytes = body.slice();
+        bytes.limit(length);
+        body.position(body.position() + length);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    private static void skipString(ByteBuffer body) {
+        body.position(body.position() + 4 + body.getInt(body.position()));
+    }
+}
@@ -0,0 +1,88 @@
+package shared;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread-safe least-recently-used map bounded by entry count.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class LruCache<K, V> {
+    private final int maxEntries;
+    private final BiConsumer<K, V> onEvict;
+    private final LinkedHashMap<K, V> map;
+    private long evictions;
+
+    /**
+     * Creates a cache.
+     * @param maxEntries the capacity
+     */
+    public LruCache(int maxEntries) {
+        this(maxEntries, (key, value) -> { });
+    }
+
+    /**
+     * Creates a cache that reports evicted entries.
+     * @param maxEntries the capacity
+     * @param onEvict called with each entry pushed out by capacity, while the cache lock is held
+     */
+    public LruCache(int maxEntries, BiConsumer<K, V> onEvict) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.onEvict = onEvict;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxEntries) {
+                    evictions++;
+                    LruCache.this.onEvict.accept(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up a value and marks it as recently used.
+     * @param key the key
+     * @return the value, or null if absent
+     */
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * Stores a value, evicting the least recently used entry if over capacity.
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    /**
+     * Removes a value without counting it as an eviction.
+     * @param key the key
+     * @return the removed value, or null
+     */
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public int capacity() {
+        return maxEntries;
+    }
+}
@@ -0,0 +1,245 @@
+package shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of checksummed records kept in a memory-mapped file. Appending copies the
+ * record into the mapping and reading one back is a slice of it, so neither makes a system
+ * call; records are addressed by their offset. The file is mapped with room to spare and
+ * remapped at twice the size when full; unused space is zero, which marks the end.
+ * <p>
+ * Opening a log scans it and stops at the first zero length or bad checksum, so a record torn
+ * by a crash is cut off along with anything after it. Writes reach the page cache at once and
+ * survive an application crash; {@link #force} also makes them survive a power loss.
+ * Logs are limited to 2 GB.
+ */
+public final class MappedLog implements Closeable {
+    private static final int HEADER_BYTES = 8;
+    private static final long MIN_CAPACITY = 1 << 20;
+
+    /** Receives records while scanning. */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param offset the record's offset, for {@link #read}
+         * @param body the record, read-only and positioned at its start
+         * @throws IOException to stop the scan
+         */
+        void record(long offset, ByteBuffer body) throws IOException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer map;
+    private int end;
+
+    private MappedLog(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens or creates a log and finds its end, cutting off a torn last record.
+     * @param file the log file; its directory is created if missing
+     * @return the log
+     * @throws IOException if the file cannot be mapped
+     */
+    public static MappedLog open(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedLog log = new MappedLog(file, channel);
+        try {
+            log.map(Math.max(MIN_CAPACITY, channel.size()));
+            log.recover();
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        return log;
+    }
+
+    /**
+     * Writes a complete log to a temp file and moves it into place, e.g. to compact a log into
+     * a new file. The file must not be open as a log.
+     * @param file the log file to create or replace
+     * @param bodies the records, in order
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Iterable<ByteBuffer> bodies) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            for (ByteBuffer body : bodies) {
+                ByteBuffer record = body.duplicate();
+                header.clear();
+                header.putInt(checkLength(record.remaining())).putInt(checksum(crc, record.duplicate())).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Appends a record.
+     * @param body the record; its remaining bytes are copied
+     * @return the record's offset
+     * @throws IOException if the log cannot grow
+     */
+    public synchronized long append(ByteBuffer body) throws IOException {
+        ensureOpen();
+        int length = checkLength(body.remaining());
+        long needed = (long) end + HEADER_BYTES + length + HEADER_BYTES;
+        if (needed > map.capacity()) {
+            if (needed > Integer.MAX_VALUE) {
+                throw new IOException(file + " is full");
+            }
+            map(Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * map.capacity())));
+        }
+        int offset = end;
+        // Body and checksum first, length last: until the length lands the record does not exist.
+        map.putInt(offset + 4, checksum(crc, body.duplicate()));
+        ByteBuffer target = map.duplicate();
+        target.position(offset + HEADER_BYTES);
+        target.put(body.duplicate());
+        map.putInt(offset, length);
+        end = offset + HEADER_BYTES + length;
+        return offset;
+    }
+
+    /**
+     * Reads a record back. The buffer shares the mapping; it stays valid while the log is open.
+     * @param offset an offset returned by {@link #append} or passed to a {@link Visitor}
+     * @return the record, read-only
+     * @throws IOException if no record starts there
+     */
+    public synchronized ByteBuffer read(long offset) throws IOException {
+        ensureOpen();
+        if (offset < 0 || offset > end - HEADER_BYTES) {
+            throw new IOException("No record at " + offset + " in " + file);
+        }
+        int length = map.getInt((int) offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > end) {
+            throw new IOException("No record at " + offset + " in " + file);
+        }
+        return slice((int) offset + HEADER_BYTES, length);
+    }
+
+    /**
+     * Visits every record in order.
+     * @param visitor receives the records
+     * @throws IOException if the visitor throws
+     */
+    public synchronized void forEach(Visitor visitor) throws IOException {
+        ensureOpen();
+        int position = 0;
+        while (position < end) {
+            int length = map.getInt(position);
+            visitor.record(position, slice(position + HEADER_BYTES, length));
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    /**
+     * @return bytes in use, headers included
+     */
+    public synchronized long size() {
+        return end;
+    }
+
+    /**
+     * Writes the mapped pages to the storage device.
+     */
+    public synchronized void force() {
+        if (map != null) {
+            map.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (map == null) {
+            return;
+        }
+        map.force();
+        map = null;
+        channel.close();
+    }
+
+    private void recover() throws IOException {
+        int position = 0;
+        int capacity = map.capacity();
+        while (position + HEADER_BYTES <= capacity) {
+            int length = map.getInt(position);
+            if (length <= 0 || (long) position + HEADER_BYTES + length > capacity
+                    || checksum(crc, slice(position + HEADER_BYTES, length)) != map.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        end = position;
+        if (end + 4 <= capacity && map.getInt(end) != 0) {
+            // A torn record: clear the rest so nothing of it can be read as a record later.
+            System.err.println("Warning: discarding the damaged end of " + file);
+            for (int i = end; i < capacity; i++) {
+                map.put(i, (byte) 0);
+            }
+            map.force();
+        }
+    }
+
+    private void map(long capacity) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer body = map.asReadOnlyBuffer();
+        body.position(position).limit(position + length);
+        return body.slice();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (map == null) {
+            throw new IOException(file + " is closed");
+        }
+    }
+
+    private static int checkLength(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Records must not be empty");
+        }
+        return length;
+    }
+
+    private static int checksum(CRC32 crc, ByteBuffer body) {
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,102 @@
+package shared;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named histograms and gauges that components publish and the rest of the app reads.
+ * A metric is identified by its name plus optional tags, written {@code name{key=value,...}}.
+ * Histograms are created on first use; gauges are read only when someone asks.
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by the whole application
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the histogram for a name and tags, creating it if needed.
+     * @param name the metric name, e.g. "ocr.http.latency.millis"
+     * @param tags alternating keys and values, e.g. "outcome", "success"
+     * @return the histogram
+     */
+    public Histogram histogram(String name, String... tags) {
+        return histograms.computeIfAbsent(key(name, tags), k -> new Histogram());
+    }
+
+    /**
+     * Publishes a value that is read on demand, replacing any gauge with the same name and tags.
+     * @param name the metric name
+     * @param value reads the current value
+     * @param tags alternating keys and values
+     */
+    public void gauge(String name, LongSupplier value, String... tags) {
+        gauges.put(key(name, tags), value);
+    }
+
+    /**
+     * @return every histogram by key, sorted
+     */
+    public Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * @return every gauge's current value by key, sorted
+     */
+    public Map<String, Long> readGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((key, gauge) -> values.put(key, gauge.getAsLong()));
+        return values;
+    }
+
+    /**
+     * One line per metric whose key starts with a prefix: gauges with their value, histograms
+     * with count, mean and percentiles.
+     * @param prefix e.g. "ocr." or "" for everything
+     * @return the report
+     */
+    public String format(String prefix) {
+        StringBuilder out = new StringBuilder();
+        readGauges().forEach((key, value) -> {
+            if (key.startsWith(prefix)) {
+                out.append(key).append(' ').append(value).append(System.lineSeparator());
+            }
+        });
+        getHistograms().forEach((key, histogram) -> {
+            if (key.startsWith(prefix) && histogram.getCount() > 0) {
+                out.append(String.format(Locale.ROOT, "%s count=%d mean=%.1f p50=%d p95=%d p99=%d max=%d%n",
+                        key, histogram.getCount(), histogram.getMean(), histogram.percentile(50),
+                        histogram.percentile(95), histogram.percentile(99), histogram.getMax()));
+            }
+        });
+        return out.toString();
+    }
+
+    static String key(String name, String... tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be key/value pairs");
+        }
+        if (tags.length == 0) {
+            return name;
+        }
+        StringBuilder key = new StringBuilder(name).append('{');
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(tags[i]).append('=').append(tags[i + 1]);
+        }
+        return key.append('}').toString();
+    }
+}
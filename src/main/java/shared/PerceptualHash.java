@@ -0,0 +1,105 @@
+package shared;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * 64-bit perceptual hash (pHash) of how an image looks. The image is reduced to a 32x32
+ * grayscale thumbnail by averaging, the lowest 8x8 frequencies of its discrete cosine
+ * transform are kept, and each bit records whether a coefficient is above their median.
+ * Rescaling, recompression and small crops flip only a few bits while different pages of
+ * text land about half the bits apart, so the Hamming distance between two hashes says how
+ * alike two images are.
+ */
+public final class PerceptualHash {
+    private static final int SIZE = 32;
+    private static final int FREQUENCIES = 8;
+    // Samples per thumbnail cell along each axis; enough to average out strokes and JPEG noise.
+    private static final int SAMPLES = 8;
+    private static final double[][] COSINES = new double[FREQUENCIES][SIZE];
+
+    static {
+        for (int u = 0; u < FREQUENCIES; u++) {
+            for (int x = 0; x < SIZE; x++) {
+                COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SIZE));
+            }
+        }
+    }
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Hashes an image.
+     * @param image the image
+     * @return the hash
+     */
+    public static long of(BufferedImage image) {
+        double[][] thumbnail = thumbnail(image);
+        double[] coefficients = new double[FREQUENCIES * FREQUENCIES];
+        for (int u = 0; u < FREQUENCIES; u++) {
+            for (int v = 0; v < FREQUENCIES; v++) {
+                double sum = 0;
+                for (int y = 0; y < SIZE; y++) {
+                    double row = 0;
+                    for (int x = 0; x < SIZE; x++) {
+                        row += thumbnail[y][x] * COSINES[v][x];
+                    }
+                    sum += row * COSINES[u][y];
+                }
+                coefficients[u * FREQUENCIES + v] = sum;
+            }
+        }
+        // The DC term is overall brightness; it takes no part in the median and its bit stays 0.
+        double[] ac = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+        Arrays.sort(ac);
+        double median = ac[ac.length / 2];
+        long hash = 0;
+        for (int i = 0; i < coefficients.length; i++) {
+            hash <<= 1;
+            if (i > 0 && coefficients[i] > median) {
+                hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param a a hash
+     * @param b another hash
+     * @return the number of differing bits, 0 to 64
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static double[][] thumbnail(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][] cells = new double[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            int y0 = row * height / SIZE;
+            int y1 = Math.max(y0 + 1, (row + 1) * height / SIZE);
+            int stepY = Math.max(1, (y1 - y0) / SAMPLES);
+            for (int column = 0; column < SIZE; column++) {
+                int x0 = column * width / SIZE;
+                int x1 = Math.max(x0 + 1, (column + 1) * width / SIZE);
+                int stepX = Math.max(1, (x1 - x0) / SAMPLES);
+                long sum = 0;
+                int count = 0;
+                for (int y = y0; y < y1 && y < height; y += stepY) {
+                    for (int x = x0; x < x1 && x < width; x += stepX) {
+                        sum += luma(image.getRGB(x, y));
+                        count++;
+                    }
+                }
+                cells[row][column] = count == 0 ? 0 : (double) sum / count;
+            }
+        }
+        return cells;
+    }
+
+    private static int luma(int rgb) {
+        return (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+    }
+}
@@ -0,0 +1,232 @@
+package shared;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Perceptual hashes of past images, each pointing at what was made from it (e.g. a history
+ * item), with near-neighbour lookup through a {@link HammingIndex}. Additions and removals are
+ * appended to a file and replayed on open, so the index survives restarts; the file is
+ * rewritten when removals pile up or its tail is damaged. It is only a hint, so losing
+ * the file costs nothing but missed matches.
+ */
+public final class PerceptualHashIndex implements Closeable {
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    /** An indexed image. */
+    public static final class Entry {
+        private final long hash;
+        private final String id;
+        private final String label;
+        private final long timestamp;
+
+        private Entry(long hash, String id, String label, long timestamp) {
+            this.hash = hash;
+            this.id = id;
+            this.label = label;
+            this.timestamp = timestamp;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * @return what the image led to, e.g. a history item id
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return a name to show, e.g. the image's file name
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private final Path file;
+    private HammingIndex<Entry> hashes = new HammingIndex<>();
+    private final Map<String, Entry> live = new HashMap<>();
+    private DataOutputStream out;
+
+    private PerceptualHashIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens or creates an index.
+     * @param file the backing file; its directory is created if missing
+     * @return the index
+     * @throws IOException if the file cannot be read or created
+     */
+    public static PerceptualHashIndex open(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        PerceptualHashIndex index = new PerceptualHashIndex(file);
+        index.load();
+        return index;
+    }
+
+    /**
+     * Indexes an image. An id added again replaces its earlier entry.
+     * @param hash the image's {@link PerceptualHash}
+     * @param id what the image led to
+     * @param label a name to show
+     * @param timestamp when the image was seen, epoch millis
+     * @throws IOException if the entry cannot be written or the index is closed
+     */
+    public synchronized void add(long hash, String id, String label, long timestamp) throws IOException {
+        ensureOpen();
+        out.writeByte(ADD);
+        out.writeLong(hash);
+        out.writeLong(timestamp);
+        out.writeUTF(id);
+        out.writeUTF(label);
+        out.flush();
+        apply(new Entry(hash, id, label, timestamp));
+    }
+
+    /**
+     * Forgets an entry, e.g. because its history item was deleted.
+     * @param id the entry's id
+     * @throws IOException if the removal cannot be written or the index is closed
+     */
+    public synchronized void remove(String id) throws IOException {
+        ensureOpen();
+        if (live.remove(id) == null) {
+            return;
+        }
+        out.writeByte(REMOVE);
+        out.writeUTF(id);
+        out.flush();
+    }
+
+    /**
+     * Finds images that look like the given one.
+     * @param hash the image's {@link PerceptualHash}
+     * @param maxDistance the largest Hamming distance to accept
+     * @return matching entries, nearest first and newest first among equals
+     */
+    public synchronized List<HammingIndex.Match<Entry>> find(long hash, int maxDistance) {
+        List<HammingIndex.Match<Entry>> matches = new ArrayList<>();
+        for (HammingIndex.Match<Entry> match : hashes.search(hash, maxDistance)) {
+            if (live.get(match.getValue().id) == match.getValue()) {
+                matches.add(match);
+            }
+        }
+        matches.sort(Comparator.<HammingIndex.Match<Entry>>comparingInt(HammingIndex.Match::getDistance)
+                .thenComparing(match -> -match.getValue().timestamp));
+        return matches;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return live.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (out == null) {
+            throw new IOException("Index " + file + " is closed");
+        }
+    }
+
+    private void apply(Entry entry) {
+        live.put(entry.id, entry);
+        hashes.add(entry.hash, entry);
+    }
+
+    private void load() throws IOException {
+        long records = 0;
+        boolean damaged = false;
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    int type = in.read();
+                    if (type < 0) {
+                        break;
+                    }
+                    records++;
+                    if (type == ADD) {
+                        long hash = in.readLong();
+                        long timestamp = in.readLong();
+                        apply(new Entry(hash, in.readUTF(), in.readUTF(), timestamp));
+                    }
+                    else if (type == REMOVE) {
+                        live.remove(in.readUTF());
+                    }
+                    else {
+                        damaged = true;
+                        break;
+                    }
+                }
+            }
+            catch (EOFException ex) {
+                damaged = true;
+            }
+        }
+        if (damaged) {
+            System.err.println("Warning: discarding the damaged end of " + file);
+        }
+        if (damaged || records > 2L * live.size() + 1024) {
+            rewrite();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    // Writes only the live entries, via a temp file, and rebuilds the lookup without the dead ones.
+    private void rewrite() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        HammingIndex<Entry> compacted = new HammingIndex<>();
+        try (OutputStream stream = Files.newOutputStream(temp);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(stream))) {
+            for (Entry entry : live.values()) {
+                data.writeByte(ADD);
+                data.writeLong(entry.hash);
+                data.writeLong(entry.timestamp);
+                data.writeUTF(entry.id);
+                data.writeUTF(entry.label);
+                compacted.add(entry.hash, entry);
+            }
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        hashes = compacted;
+    }
+}
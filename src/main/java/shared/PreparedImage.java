@@ -0,0 +1,48 @@
+package shared;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoded image ready for upload, with the size it had before preprocessing.
+ */
+public final class PreparedImage {
+    private final ByteBuffer data;
+    private final String mediaType;
+    private final String filename;
+    private final long originalBytes;
+
+    public PreparedImage(ByteBuffer data, String mediaType, String filename, long originalBytes) {
+        this.data = data.asReadOnlyBuffer();
+        this.mediaType = mediaType;
+        this.filename = filename;
+        this.originalBytes = originalBytes;
+    }
+
+    public PreparedImage(byte[] data, String mediaType, String filename, long originalBytes) {
+        this(ByteBuffer.wrap(data), mediaType, filename, originalBytes);
+    }
+
+    /**
+     * The encoded bytes as an independent read-only view; reading it does not affect other callers.
+     * @return the bytes
+     */
+    public ByteBuffer getData() {
+        return data.duplicate();
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    public long getUploadBytes() {
+        return data.remaining();
+    }
+}
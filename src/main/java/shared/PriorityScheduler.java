@@ -0,0 +1,272 @@
+package shared;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Shares a concurrency budget between interactive and bulk work. Interactive callers may use
+ * the whole budget and always go first; bulk callers are held to the budget minus a reserve,
+ * so a user's request finds a free slot even behind hundreds of queued scans. A bulk caller
+ * that has waited longer than the starvation limit is served ahead of interactive ones
+ * (still within the bulk share), so steady interactive use cannot stall bulk work forever.
+ */
+public final class PriorityScheduler {
+    /** Scheduling classes, highest priority first. */
+    public enum Priority {
+        /** Someone is waiting on the result. */
+        INTERACTIVE,
+        /** Batch, folder or other background work. */
+        BULK
+    }
+
+    private final IntSupplier capacity;
+    private final int reservedInteractive;
+    private final long maxBulkWaitNanos;
+    private final LongSupplier clock;
+    private final Map<Priority, ClassState> classes = new EnumMap<>(Priority.class);
+
+    /**
+     * Creates a scheduler.
+     * @param capacity the current total concurrency budget, read on every decision so it may adapt
+     * @param reservedInteractive slots bulk work may not take
+     * @param maxBulkWaitMillis bulk callers waiting this long are served before interactive ones
+     */
+    public PriorityScheduler(IntSupplier capacity, int reservedInteractive, long maxBulkWaitMillis) {
+        this(capacity, reservedInteractive, maxBulkWaitMillis, System::nanoTime);
+    }
+
+    PriorityScheduler(IntSupplier capacity, int reservedInteractive, long maxBulkWaitMillis, LongSupplier clock) {
+        if (reservedInteractive < 0) {
+            throw new IllegalArgumentException("reservedInteractive must not be negative");
+        }
+        this.capacity = capacity;
+        this.reservedInteractive = reservedInteractive;
+        this.maxBulkWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxBulkWaitMillis);
+        this.clock = clock;
+        for (Priority priority : Priority.values()) {
+            classes.put(priority, new ClassState());
+        }
+    }
+
+    /**
+     * Creates a scheduler configured by config.properties
+     * ({@code ocr.priority.interactive.reserved}, default 1, and
+     * {@code ocr.priority.bulk.max.wait.millis}, default 30000).
+     * @param capacity the current total concurrency budget
+     * @return the scheduler
+     */
+    public static PriorityScheduler fromConfig(IntSupplier capacity) {
+        return new PriorityScheduler(capacity,
+                Config.getInt("ocr.priority.interactive.reserved", 1),
+                Config.getLong("ocr.priority.bulk.max.wait.millis", 30_000L));
+    }
+
+    /**
+     * Asks for a slot without blocking. Cancelling the future gives up the place in line.
+     * @param priority the caller's class
+     * @return a future completed with the permit once the caller may run
+     */
+    public CompletableFuture<Permit> acquire(Priority priority) {
+        Waiter waiter = new Waiter(priority, clock.getAsLong());
+        synchronized (this) {
+            classes.get(priority).waiters.add(waiter);
+        }
+        waiter.future.whenComplete((permit, error) -> {
+            if (waiter.future.isCancelled()) {
+                synchronized (this) {
+                    classes.get(priority).waiters.remove(waiter);
+                }
+                dispatch();
+            }
+        });
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * Waits for a slot.
+     * @param priority the caller's class
+     * @return the permit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquireBlocking(Priority priority) throws InterruptedException {
+        CompletableFuture<Permit> waiter = acquire(priority);
+        try {
+            return waiter.get();
+        }
+        catch (InterruptedException ex) {
+            if (!waiter.cancel(true)) {
+                waiter.join().release();
+            }
+            throw ex;
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Publishes per-class queue length, slots held, grants and wait times as
+     * {@code ocr.scheduler.*} gauges tagged with the class.
+     * @param metrics the registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            metrics.gauge("ocr.scheduler.queued", () -> getQueued(priority), "class", tag);
+            metrics.gauge("ocr.scheduler.in.flight", () -> getInFlight(priority), "class", tag);
+            metrics.gauge("ocr.scheduler.granted", () -> getGranted(priority), "class", tag);
+            metrics.gauge("ocr.scheduler.wait.p50.millis", () -> getWaitMillis(priority, 50), "class", tag);
+            metrics.gauge("ocr.scheduler.wait.p95.millis", () -> getWaitMillis(priority, 95), "class", tag);
+            metrics.gauge("ocr.scheduler.oldest.wait.millis", () -> getOldestWaitMillis(priority), "class", tag);
+        }
+    }
+
+    /**
+     * @param priority the class
+     * @return callers of that class waiting for a slot
+     */
+    public synchronized int getQueued(Priority priority) {
+        return classes.get(priority).waiters.size();
+    }
+
+    /**
+     * @param priority the class
+     * @return slots that class holds
+     */
+    public synchronized int getInFlight(Priority priority) {
+        return classes.get(priority).inFlight;
+    }
+
+    /**
+     * @param priority the class
+     * @return slots granted to that class so far
+     */
+    public long getGranted(Priority priority) {
+        return classes.get(priority).granted.get();
+    }
+
+    /**
+     * Percentile of recent queue waits.
+     * @param priority the class
+     * @param percentile between 0 and 100
+     * @return milliseconds, or -1 before that class has been granted a slot
+     */
+    public long getWaitMillis(Priority priority, double percentile) {
+        return classes.get(priority).waits.percentile(percentile);
+    }
+
+    /**
+     * @param priority the class
+     * @return how long the longest-waiting caller of that class has been queued, 0 if none
+     */
+    public long getOldestWaitMillis(Priority priority) {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            Waiter head = classes.get(priority).waiters.peek();
+            return head == null ? 0 : TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedAt);
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = pickNext();
+                if (next == null) {
+                    return;
+                }
+                classes.get(next.priority).waiters.poll();
+                classes.get(next.priority).inFlight++;
+            }
+            ClassState state = classes.get(next.priority);
+            long waited = clock.getAsLong() - next.enqueuedAt;
+            Permit permit = new Permit(next.priority);
+            if (next.future.complete(permit)) {
+                state.granted.incrementAndGet();
+                state.waits.record(TimeUnit.NANOSECONDS.toMillis(waited));
+            }
+            else {
+                permit.release();
+            }
+        }
+    }
+
+    // Caller holds the lock.
+    private Waiter pickNext() {
+        int limit = Math.max(1, capacity.getAsInt());
+        ClassState interactive = classes.get(Priority.INTERACTIVE);
+        ClassState bulk = classes.get(Priority.BULK);
+        if (interactive.inFlight + bulk.inFlight >= limit) {
+            return null;
+        }
+        // With a budget of one there is nothing to reserve.
+        boolean bulkMayRun = bulk.inFlight < Math.max(1, limit - reservedInteractive);
+        Waiter bulkHead = bulkMayRun ? bulk.waiters.peek() : null;
+        if (bulkHead != null && clock.getAsLong() - bulkHead.enqueuedAt >= maxBulkWaitNanos) {
+            return bulkHead;
+        }
+        Waiter interactiveHead = interactive.waiters.peek();
+        return interactiveHead != null ? interactiveHead : bulkHead;
+    }
+
+    private void release(Priority priority) {
+        synchronized (this) {
+            classes.get(priority).inFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * A held slot. Release it exactly once when the work ends; later calls are ignored.
+     */
+    public final class Permit {
+        private final Priority priority;
+        private boolean released;
+
+        private Permit(Priority priority) {
+            this.priority = priority;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /** Frees the slot for the next caller. */
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            PriorityScheduler.this.release(priority);
+        }
+    }
+
+    private static final class Waiter {
+        private final Priority priority;
+        private final long enqueuedAt;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        private Waiter(Priority priority, long enqueuedAt) {
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static final class ClassState {
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private final LatencyWindow waits = new LatencyWindow(512);
+        private final AtomicLong granted = new AtomicLong();
+        private int inFlight;
+    }
+}
@@ -0,0 +1,80 @@
+package shared;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates Firebase-style push ids on the client: 8 characters of millisecond timestamp then
+ * 12 random characters, from an alphabet whose ASCII order matches its value order. Ids sort
+ * by creation time, and ids made in the same millisecond still sort in creation order. Writing
+ * under a client-made id lets a record be named before it reaches the server.
+ */
+public final class PushIds {
+    private static final String ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int[] LAST_RANDOM = new int[12];
+    private static long lastTime = -1;
+
+    private PushIds() {
+    }
+
+    /**
+     * @return a new id for the current time
+     */
+    public static String next() {
+        return next(System.currentTimeMillis());
+    }
+
+    /**
+     * @param timeMillis the creation time to encode
+     * @return a new id
+     */
+    public static synchronized String next(long timeMillis) {
+        char[] id = new char[20];
+        long time = timeMillis;
+        for (int i = 7; i >= 0; i--) {
+            id[i] = ALPHABET.charAt((int) (time % 64));
+            time /= 64;
+        }
+        if (timeMillis == lastTime) {
+            // Same millisecond: count up from the last random part so ids keep their order.
+            int i = LAST_RANDOM.length - 1;
+            while (i >= 0 && LAST_RANDOM[i] == 63) {
+                LAST_RANDOM[i--] = 0;
+            }
+            if (i >= 0) {
+                LAST_RANDOM[i]++;
+            }
+        }
+        else {
+            lastTime = timeMillis;
+            for (int i = 0; i < LAST_RANDOM.length; i++) {
+                LAST_RANDOM[i] = RANDOM.nextInt(64);
+            }
+        }
+        for (int i = 0; i < LAST_RANDOM.length; i++) {
+            id[8 + i] = ALPHABET.charAt(LAST_RANDOM[i]);
+        }
+        return new String(id);
+    }
+
+    /**
+     * Reads the creation time back out of an id.
+     * @param id an id made by {@link #next(long)}
+     * @return epoch millis
+     * @throws IllegalArgumentException if the id is not a push id
+     */
+    public static long timeOf(String id) {
+        if (id == null || id.length() != 20) {
+            throw new IllegalArgumentException("Not a push id: " + id);
+        }
+        long time = 0;
+        for (int i = 0; i < 8; i++) {
+            int digit = ALPHABET.indexOf(id.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a push id: " + id);
+            }
+            time = time * 64 + digit;
+        }
+        return time;
+    }
+}
@@ -0,0 +1,174 @@
+package shared;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one execution. Callers that arrive
+ * while a call is in flight wait for it and share its result or error; once it finishes
+ * the key is free again, so nothing is remembered beyond the call itself.
+ * @param <K> key type
+ * @param <V> result type
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Runs {@code call} on the caller's thread unless a call for the key is already in
+     * flight, in which case this waits for that one instead.
+     * @param key the key
+     * @param call the work
+     * @return the shared result
+     * @throws Exception the shared error, or InterruptedException while waiting
+     */
+    public V run(K key, Callable<V> call) throws Exception {
+        while (true) {
+            Flight<V> created = new Flight<>();
+            Flight<V> flight = inFlight.putIfAbsent(key, created);
+            if (flight == null) {
+                return lead(key, created, call);
+            }
+            CompletableFuture<V> view = flight.join();
+            if (view == null) {
+                inFlight.remove(key, flight);
+                continue;
+            }
+            coalesced.incrementAndGet();
+            try {
+                return view.get();
+            }
+            catch (ExecutionException ex) {
+                throw Futures.asException(ex);
+            }
+            catch (InterruptedException ex) {
+                view.cancel(true);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Starts {@code call} unless a call for the key is already in flight, in which case the
+     * result follows that one. Each caller gets its own future; cancelling it only cancels
+     * the underlying call once every caller sharing it has cancelled.
+     * @param key the key
+     * @param call starts the work
+     * @return the shared result
+     */
+    public CompletableFuture<V> runAsync(K key, Supplier<CompletableFuture<V>> call) {
+        while (true) {
+            Flight<V> created = new Flight<>();
+            Flight<V> flight = inFlight.putIfAbsent(key, created);
+            if (flight == null) {
+                CompletableFuture<V> view = created.join();
+                start(key, created, call);
+                return view;
+            }
+            CompletableFuture<V> view = flight.join();
+            if (view != null) {
+                coalesced.incrementAndGet();
+                return view;
+            }
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return how many calls were answered by joining another call instead of running
+     */
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of keys currently in flight
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V lead(K key, Flight<V> flight, Callable<V> call) throws Exception {
+        // The leader never leaves, so followers cannot abandon a call running on its thread.
+        flight.join();
+        try {
+            V value = call.call();
+            flight.result.complete(value);
+            return value;
+        }
+        catch (Exception | Error ex) {
+            flight.result.completeExceptionally(ex);
+            throw ex;
+        }
+        finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private void start(K key, Flight<V> flight, Supplier<CompletableFuture<V>> call) {
+        flight.result.whenComplete((value, error) -> inFlight.remove(key, flight));
+        CompletableFuture<V> work;
+        try {
+            work = call.get();
+        }
+        catch (RuntimeException ex) {
+            flight.result.completeExceptionally(ex);
+            return;
+        }
+        flight.setWork(work);
+        Futures.forward(work, flight.result);
+    }
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private int waiters;
+        private boolean abandoned;
+        private Future<?> work;
+
+        /**
+         * Adds a waiter.
+         * @return the waiter's future, or null if every earlier waiter already gave up
+         */
+        synchronized CompletableFuture<V> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<V> view = new CompletableFuture<>();
+            Futures.forward(result, view);
+            view.whenComplete((value, error) -> {
+                if (view.isCancelled()) {
+                    leave();
+                }
+            });
+            return view;
+        }
+
+        synchronized void setWork(Future<?> work) {
+            this.work = work;
+            if (abandoned) {
+                work.cancel(true);
+            }
+        }
+
+        private void leave() {
+            Future<?> toCancel;
+            synchronized (this) {
+                if (--waiters > 0 || result.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                toCancel = work;
+            }
+            result.cancel(true);
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+}
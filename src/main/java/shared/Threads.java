@@ -0,0 +1,27 @@
+package shared;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread helpers shared by the background workers.
+ */
+public final class Threads {
+
+    private Threads() {
+    }
+
+    /**
+     * Creates a factory for named daemon threads, so background pools never keep the JVM alive.
+     * @param prefix thread name prefix, e.g. "ocr-batch"
+     * @return the factory
+     */
+    public static ThreadFactory daemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
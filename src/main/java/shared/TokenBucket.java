@@ -0,0 +1,94 @@
+package shared;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token-bucket rate limiter. Tokens refill continuously at a fixed rate up to a burst size;
+ * each call takes one. Callers that find the bucket empty reserve a future token and are told
+ * how long to wait for it, so waiting can happen on a timer instead of a blocked thread.
+ */
+public final class TokenBucket {
+    private final double tokensPerNano;
+    private final int burst;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Creates a full bucket.
+     * @param permitsPerSecond refill rate; zero or less means unlimited
+     * @param burst the most tokens that can be saved up
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.clock = clock;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token, borrowing against future refills if none is available.
+     * @return nanoseconds the caller must wait before using the token, 0 if it may go now
+     */
+    public synchronized long reserve() {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /**
+     * Takes a token only if one is available now.
+     * @return whether a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokensPerNano <= 0) {
+            return true;
+        }
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Takes a token, sleeping until it is available.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * @return tokens available now; negative while callers are waiting on reservations
+     */
+    public synchronized double available() {
+        if (tokensPerNano <= 0) {
+            return burst;
+        }
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,438 @@
+package shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Accepts writes immediately and performs them later on a background thread, in batches.
+ * Values are queued per key (e.g. per user) and each key's values are written in the order
+ * they were added, up to {@code maxBatch} per call; different keys take turns. A new value
+ * waits up to {@code lingerMillis} for company before its batch is written, so bursts share a
+ * request. A failed batch is retried with backoff, and values added behind it wait, so a key's
+ * order is never broken; meanwhile the key goes to the back of the turn order and other keys
+ * are written. Errors the caller deems retryable (e.g. being offline) are retried until the
+ * batch succeeds; any other error drops the batch after {@code maxAttempts} tries.
+ * <p>
+ * Memory is bounded by weight: {@link #add} blocks while the queue holds more than
+ * {@code maxWeight} (a single value heavier than that is still let into an empty queue).
+ * {@link #close} writes whatever is left before returning, within a time limit.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class WriteBehindQueue<K, V> implements Closeable {
+
+    /**
+     * Writes one batch.
+     * @param <K> key type
+     * @param <V> value type
+     */
+    @FunctionalInterface
+    public interface BatchWriter<K, V> {
+        /**
+         * @param key the key all values belong to
+         * @param values the values, oldest first
+         * @throws IOException if the batch was not written; it will be retried whole
+         */
+        void write(K key, List<V> values) throws IOException;
+    }
+
+    private final BatchWriter<K, V> writer;
+    private final ToLongFunction<V> weigher;
+    private final long maxWeight;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final Backoff backoff;
+    private final Predicate<Exception> retryable;
+    private final int maxAttempts;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Keys in turn order; a key leaves when its queue empties and rejoins at the back.
+    // Values stay queued while their batch is being written and leave only once it succeeded.
+    private final LinkedHashMap<K, ArrayDeque<Pending<V>>> queues = new LinkedHashMap<>();
+    // Keys whose head batch failed, until it is written or dropped.
+    private final Map<K, Retry> retries = new HashMap<>();
+    private final Thread flusher;
+    private long sequence;
+    private long weight;
+    private int count;
+    private int urgent;
+    private boolean closed;
+    private IOException lastError;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates a queue and starts its background thread.
+     * @param writer performs the writes
+     * @param weigher estimates a value's memory, e.g. in bytes
+     * @param maxWeight how much weight may wait before {@link #add} blocks
+     * @param maxBatch the most values written in one call
+     * @param lingerMillis how long a value may wait for more to batch with
+     * @param backoff delays between retries of a failed batch
+     * @param retryable whether an error may go away by itself, so the batch is retried for good
+     * @param maxAttempts how many times a batch failing with other errors is tried before it is dropped
+     * @param threadName name of the background thread
+     */
+    public WriteBehindQueue(BatchWriter<K, V> writer, ToLongFunction<V> weigher, long maxWeight, int maxBatch,
+                            long lingerMillis, Backoff backoff, Predicate<Exception> retryable, int maxAttempts,
+                            String threadName) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.writer = writer;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.backoff = backoff;
+        this.retryable = retryable;
+        this.maxAttempts = maxAttempts;
+        this.flusher = Threads.daemon(threadName).newThread(this::run);
+        flusher.start();
+    }
+
+    /**
+     * Queues a value, waiting for room if the queue is at its weight limit.
+     * @param key the key
+     * @param value the value
+     * @throws InterruptedException if interrupted while waiting for room
+     * @throws IllegalStateException if the queue is closed
+     */
+    public void add(K key, V value) throws InterruptedException {
+        long valueWeight = weigher.applyAsLong(value);
+        lock.lockInterruptibly();
+        try {
+            while (!closed && count > 0 && weight + valueWeight > maxWeight) {
+                changed.await();
+            }
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed");
+            }
+            queues.computeIfAbsent(key, k -> new ArrayDeque<>())
+                    .add(new Pending<>(value, ++sequence, valueWeight, System.nanoTime()));
+            weight += valueWeight;
+            count++;
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every value added for a key before this call has been written, skipping
+     * the linger delay. Use it before reading what was written.
+     * @param key the key
+     * @param timeoutMillis how long to wait
+     * @throws IOException if the values are still unwritten when time runs out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush(K key, long timeoutMillis) throws IOException, InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long target = sequence;
+            urgent++;
+            changed.signalAll();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (queues.containsKey(key) && queues.get(key).peek().sequence <= target) {
+                    if (remaining <= 0) {
+                        throw new IOException("Writes for " + key + " are still pending"
+                                + (lastError == null ? "" : ": " + lastError.getMessage()), lastError);
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                }
+            }
+            finally {
+                urgent--;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks for a value still waiting to be written, e.g. to read it back without a flush.
+     * @param key the key
+     * @param matcher picks the value
+     * @return the newest matching value, or null if none is waiting
+     */
+    public V findPending(K key, Predicate<V> matcher) {
+        lock.lock();
+        try {
+            ArrayDeque<Pending<V>> queue = queues.get(key);
+            if (queue != null) {
+                Iterator<Pending<V>> newestFirst = queue.descendingIterator();
+                while (newestFirst.hasNext()) {
+                    V value = newestFirst.next().value;
+                    if (matcher.test(value)) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return values waiting to be written
+     */
+    public int getPending() {
+        lock.lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return total weight of the values waiting
+     */
+    public long getPendingWeight() {
+        lock.lock();
+        try {
+            return weight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return failed write attempts
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return values given up on after non-retryable errors
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Publishes the queue length, weight and counters as gauges named {@code <prefix>.*}.
+     * @param metrics the registry
+     * @param prefix gauge name prefix, e.g. "history.writebehind"
+     */
+    public void registerMetrics(MetricsRegistry metrics, String prefix) {
+        metrics.gauge(prefix + ".pending", this::getPending);
+        metrics.gauge(prefix + ".pending.weight", this::getPendingWeight);
+        metrics.gauge(prefix + ".written", this::getWritten);
+        metrics.gauge(prefix + ".batches", this::getBatches);
+        metrics.gauge(prefix + ".failures", this::getFailures);
+        metrics.gauge(prefix + ".dropped", this::getDropped);
+    }
+
+    /**
+     * Stops accepting values and writes the rest, waiting up to the given time.
+     * @param timeoutMillis how long to keep trying
+     * @return values that could not be written in time and are dropped
+     */
+    public int close(long timeoutMillis) {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(timeoutMillis);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.interrupt();
+        return getPending();
+    }
+
+    /**
+     * Closes the queue, allowing ten seconds for the remaining writes.
+     */
+    @Override
+    public void close() {
+        int dropped = close(10_000);
+        if (dropped > 0) {
+            System.err.println("Warning: " + dropped + " queued write(s) were not saved"
+                    + (lastError == null ? "" : ": " + lastError.getMessage()));
+        }
+    }
+
+    private void run() {
+        while (true) {
+            K key;
+            List<Pending<V>> batch;
+            lock.lock();
+            try {
+                key = awaitBatch();
+                if (key == null) {
+                    return;
+                }
+                batch = new ArrayList<>(maxBatch);
+                Iterator<Pending<V>> pending = queues.get(key).iterator();
+                while (pending.hasNext() && batch.size() < maxBatch) {
+                    batch.add(pending.next());
+                }
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            finally {
+                lock.unlock();
+            }
+
+            List<V> values = new ArrayList<>(batch.size());
+            for (Pending<V> pending : batch) {
+                values.add(pending.value);
+            }
+            try {
+                writer.write(key, values);
+            }
+            catch (IOException | RuntimeException ex) {
+                failures.incrementAndGet();
+                lock.lock();
+                try {
+                    lastError = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+                    Retry retry = retries.computeIfAbsent(key, k -> new Retry());
+                    retry.attempts++;
+                    if (!retryable.test(ex) && retry.attempts >= maxAttempts) {
+                        retries.remove(key);
+                        remove(key, batch);
+                        dropped.addAndGet(batch.size());
+                        System.err.println("Warning: dropped " + batch.size() + " write(s) for " + key + " after "
+                                + retry.attempts + " attempts: " + ex.getMessage());
+                    }
+                    else {
+                        retry.due = System.nanoTime()
+                                + TimeUnit.MILLISECONDS.toNanos(backoff.delayMillis(retry.attempts - 1));
+                        // Other keys take their turns while this one backs off.
+                        queues.put(key, queues.remove(key));
+                    }
+                    changed.signalAll();
+                }
+                finally {
+                    lock.unlock();
+                }
+                continue;
+            }
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+            lock.lock();
+            try {
+                lastError = null;
+                retries.remove(key);
+                remove(key, batch);
+                changed.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Caller holds the lock. Takes a finished batch off the head of its key's queue; the key
+    // rejoins at the back of the turn order if values remain.
+    private void remove(K key, List<Pending<V>> batch) {
+        ArrayDeque<Pending<V>> queue = queues.remove(key);
+        for (Pending<V> done : batch) {
+            queue.poll();
+            weight -= done.weight;
+            count--;
+        }
+        if (!queue.isEmpty()) {
+            queues.put(key, queue);
+        }
+    }
+
+    // Caller holds the lock. Waits until some key's batch is due, taking keys in turn order;
+    // null once closed and drained. A key backing off is due at its retry time, even when
+    // closing or flushing. Each wake-up re-checks every deadline, so signals about other keys
+    // only cost a pass over the keys.
+    private K awaitBatch() throws InterruptedException {
+        while (true) {
+            if (queues.isEmpty()) {
+                if (closed) {
+                    return null;
+                }
+                changed.await();
+                continue;
+            }
+            long now = System.nanoTime();
+            long wait = Long.MAX_VALUE;
+            for (Map.Entry<K, ArrayDeque<Pending<V>>> entry : queues.entrySet()) {
+                Retry retry = retries.get(entry.getKey());
+                if (retry != null) {
+                    if (retry.due - now <= 0) {
+                        return entry.getKey();
+                    }
+                    wait = Math.min(wait, retry.due - now);
+                    continue;
+                }
+                ArrayDeque<Pending<V>> queue = entry.getValue();
+                long waited = now - queue.peek().addedAt;
+                if (closed || urgent > 0 || queue.size() >= maxBatch || waited >= lingerNanos) {
+                    return entry.getKey();
+                }
+                wait = Math.min(wait, lingerNanos - waited);
+            }
+            changed.awaitNanos(wait);
+        }
+    }
+
+    private static final class Retry {
+        private int attempts;
+        private long due;
+    }
+
+    private static final class Pending<V> {
+        private final V value;
+        private final long sequence;
+        private final long weight;
+        private final long addedAt;
+
+        private Pending(V value, long sequence, long weight, long addedAt) {
+            this.value = value;
+            this.sequence = sequence;
+            this.weight = weight;
+            this.addedAt = addedAt;
+        }
+    }
+}
@@ -13,6 +13,8 @@ import java.awt.Graphics2D;
 import java.awt.GridBagLayout;
 import java.awt.Image;
 import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
@@ -24,10 +26,26 @@ import java.awt.dnd.DropTarget;
 import java.awt.dnd.DropTargetAdapter;
 import java.awt.dnd.DropTargetDropEvent;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.imageio.ImageIO;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -37,18 +55,26 @@ import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.KeyStroke;
 import javax.swing.OverlayLayout;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
 import org.jetbrains.annotations.NotNull;
 
+import application.BatchOptions;
 import application.HistoryService;
+import application.NearDuplicateService;
+import application.NearDuplicateService.Duplicate;
+import application.OCRJob;
 import application.OCRUseCase;
+import domain.entity.OCRResult;
+import shared.Futures;
 
 /**
  * Panel for creating VisionText entries with OCR and history features.
@@ -68,6 +94,11 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
     private JPanel loadingOverlay;
     private ModernButton uploadBtn;
     private ModernButton pasteBtn;
+    private String imageName;
+    private BufferedImage regionSource;
+    private long lookups;
+    private volatile NearDuplicateService duplicates;
+    private boolean duplicatesUnavailable;
 
     public CreateVisionTextPanel(MainAppUI mainApp,
                                  OCRUseCase ocrUseCase,
@@ -158,6 +189,7 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
             new EmptyBorder(Theme.Spacing.MD, Theme.Spacing.MD, Theme.Spacing.MD, Theme.Spacing.MD)
         ));
         previewPanel.putClientProperty(FLAT_LAF_STYLE, ARC + Theme.Radius.MD);
+        previewPanel.setSelectionListener(this::onRegionsSelected);
 
         // Setup drag and drop
         new DropTarget(previewPanel, new DropTargetAdapter() {
@@ -335,7 +367,7 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
     private void onUpload(ActionEvent e) {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
-            "Image files", "jpg", "jpeg", "png", "bmp", "gif"));
+            "Images and documents", "jpg", "jpeg", "png", "bmp", "gif", "tif", "tiff", "pdf"));
 
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             loadImage(chooser.getSelectedFile());
@@ -343,9 +375,255 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
     }
 
     private void loadImage(File imageFile) {
+        if (ocrUseCase.isDocument(imageFile)) {
+            loadDocument(imageFile);
+            return;
+        }
         statusLabel.setText("Processing: " + imageFile.getName());
         previewPanel.setImage(imageFile);
-        runOCR(imageFile);
+        showingImage(imageFile.getName(), null);
+        runOcrUnlessDuplicate(imageFile.getName(), () -> ImageIO.read(imageFile), () -> ocrUseCase.submit(imageFile));
+    }
+
+    // Pages are appended as they finish, so the output stays visible (no loading overlay).
+    private void loadDocument(File document) {
+        String name = document.getName();
+        statusLabel.setText("Processing: " + name);
+        previewPanel.setImage((Image) null);
+        showingImage(null, null);
+        outputArea.setText("");
+        setProcessing(true, false);
+
+        // Listener callbacks run after this method returns, since they are queued on this thread.
+        AtomicReference<OCRJob<List<OCRResult>>> jobRef = new AtomicReference<>();
+        OCRJob<List<OCRResult>> job = ocrUseCase.submitDocument(document, BatchOptions.defaults().onResult(page ->
+                SwingUtilities.invokeLater(() -> onPageFinished(jobRef.get(), page))));
+        jobRef.set(job);
+        job.getResult().whenComplete((pages, error) ->
+                SwingUtilities.invokeLater(() -> onDocumentFinished(job, pages, error)));
+    }
+
+    private void onPageFinished(OCRJob<List<OCRResult>> job, OCRResult page) {
+        if (!ocrUseCase.isLatest(job) || job.isCancelled()) {
+            return;
+        }
+        appendPage(page);
+        statusLabel.setText("Processing: " + job.getName() + " (page " + (page.getIndex() + 1) + ")");
+    }
+
+    private void onDocumentFinished(OCRJob<List<OCRResult>> job, List<OCRResult> pages, Throwable error) {
+        if (!ocrUseCase.isLatest(job)) {
+            return;
+        }
+        setProcessing(false, false);
+        if (job.isCancelled()) {
+            return;
+        }
+        String name = job.getName();
+        if (error != null) {
+            Exception cause = Futures.asException(error);
+            statusLabel.setText("❌ Failed to process " + name);
+            ErrorHandler.showError("Failed to process document: " + cause.getMessage(), cause);
+            return;
+        }
+        try {
+            long failed = pages.stream().filter(page -> !page.isSuccess()).count();
+            // The output area also shows page headers and failure markers; history keeps the text only.
+            String text = pages.stream()
+                    .filter(OCRResult::isSuccess)
+                    .sorted(Comparator.comparingInt(OCRResult::getIndex))
+                    .map(OCRResult::getText)
+                    .collect(Collectors.joining("\n\n"));
+            if (!text.isBlank()) {
+                historyService.addHistory(username, name, text);
+            }
+            statusLabel.setText((failed == 0 ? "✅ Extracted " : "⚠️ Extracted ")
+                    + (pages.size() - failed) + " of " + pages.size() + " pages from " + name);
+        }
+        catch (Exception ex) {
+            statusLabel.setText("❌ Failed to process " + name);
+            ErrorHandler.showError("Failed to process document: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void appendPage(OCRResult page) {
+        StringBuilder block = new StringBuilder();
+        if (!outputArea.getText().isEmpty()) {
+            block.append("\n\n");
+        }
+        block.append("--- Page ").append(page.getIndex() + 1).append(" ---\n");
+        block.append(page.isSuccess() ? page.getText() : "[OCR failed: " + page.getError().getMessage() + "]");
+        outputArea.append(block.toString());
+    }
+
+    private void loadImage(BufferedImage image, String name) {
+        statusLabel.setText("Processing: " + name);
+        previewPanel.setImage(image);
+        showingImage(name, image);
+        runOcrUnlessDuplicate(name, () -> image, () -> ocrUseCase.submit(image, name));
+    }
+
+    // Hashes the image off the EDT; if it looks like one already in history, the saved text is
+    // offered instead of a new OCR call. Otherwise the hash goes along so the result is indexed.
+    // The image is decoded only for the lookup; a file still goes to OCR as a file, so its EXIF
+    // orientation and the pass-through for small uploads apply.
+    private void runOcrUnlessDuplicate(String name, Callable<BufferedImage> decode, Supplier<OCRJob<String>> ocr) {
+        setProcessing(true);
+        long lookup = ++lookups;
+        new SwingWorker<Lookup, Void>() {
+            @Override
+            protected Lookup doInBackground() throws Exception {
+                Lookup result = new Lookup();
+                NearDuplicateService service = duplicates();
+                if (service != null && service.isEnabled()) {
+                    result.image = decode.call();
+                    if (result.image != null) {
+                        result.fingerprint = service.fingerprint(result.image);
+                        result.duplicate = service.find(result.fingerprint).orElse(null);
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            protected void done() {
+                if (lookup != lookups) {
+                    return;
+                }
+                Lookup result = new Lookup();
+                try {
+                    result = get();
+                }
+                catch (Exception ex) {
+                    System.err.println("Warning: duplicate check failed for " + name + ": " + ex.getMessage());
+                }
+                if (regionSource == null) {
+                    regionSource = result.image;
+                }
+                if (result.duplicate != null && useEarlierResult(result.duplicate)) {
+                    return;
+                }
+                runOCR(ocr.get(), result.fingerprint);
+            }
+        }.execute();
+    }
+
+    private boolean useEarlierResult(Duplicate duplicate) {
+        String text = duplicate.getText();
+        String excerpt = text.length() > 300 ? text.substring(0, 300) + "…" : text;
+        String when = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)
+                .format(Instant.ofEpochMilli(duplicate.getTimestamp()).atZone(ZoneId.systemDefault()));
+        int choice = JOptionPane.showConfirmDialog(
+                this,
+                "This looks like \"" + duplicate.getImageFilename() + "\", read on " + when + ":\n\n"
+                        + excerpt + "\n\nUse the saved text instead of running OCR again?",
+                "Similar Image Found",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE
+        );
+        if (choice != JOptionPane.YES_OPTION) {
+            return false;
+        }
+        setProcessing(false);
+        outputArea.setText(text);
+        statusLabel.setText("✅ Reused the saved text of " + duplicate.getImageFilename());
+        Toast.show(this, "Reused an earlier result; no OCR call made");
+        return true;
+    }
+
+    // Opened on first use from a worker thread; a broken index only turns the check off.
+    private synchronized NearDuplicateService duplicates() {
+        if (duplicates == null && !duplicatesUnavailable) {
+            try {
+                duplicates = NearDuplicateService.fromConfig(historyService, username);
+            }
+            catch (IOException ex) {
+                duplicatesUnavailable = true;
+                System.err.println("Warning: near-duplicate index unavailable: " + ex.getMessage());
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Closes the near-duplicate index; called when the user signs out or the app exits.
+     */
+    public synchronized void close() {
+        duplicatesUnavailable = true;
+        if (duplicates != null) {
+            try {
+                duplicates.close();
+            }
+            catch (IOException ex) {
+                System.err.println("Warning: could not close the near-duplicate index: " + ex.getMessage());
+            }
+            duplicates = null;
+        }
+    }
+
+    private void showingImage(String name, BufferedImage decoded) {
+        imageName = name;
+        regionSource = decoded;
+    }
+
+    // Only the selected crops are uploaded, one request per region, all in flight together.
+    private void onRegionsSelected(List<Rectangle> regions) {
+        Image shown = previewPanel.getImage();
+        if (shown == null || imageName == null) {
+            return;
+        }
+        if (regionSource == null) {
+            regionSource = toBufferedImage(shown);
+        }
+        statusLabel.setText("Processing: " + regions.size() + " region(s) of " + imageName);
+        OCRJob<List<OCRResult>> job = ocrUseCase.submitRegions(regionSource, imageName, regions);
+        setProcessing(true);
+        job.getResult().whenComplete((results, error) -> SwingUtilities.invokeLater(() -> {
+            if (!ocrUseCase.isLatest(job)) {
+                return;
+            }
+            setProcessing(false);
+            if (!job.isCancelled()) {
+                onRegionsFinished(results, error);
+            }
+        }));
+    }
+
+    private void onRegionsFinished(List<OCRResult> regions, Throwable error) {
+        String name = imageName;
+        if (error != null) {
+            Exception cause = Futures.asException(error);
+            statusLabel.setText("❌ Failed to process " + name);
+            ErrorHandler.showError("Failed to process selection: " + cause.getMessage(), cause);
+            return;
+        }
+        try {
+            StringBuilder text = new StringBuilder();
+            long failed = 0;
+            for (OCRResult region : regions) {
+                if (regions.size() > 1) {
+                    text.append(text.length() == 0 ? "" : "\n\n")
+                            .append("--- Region ").append(region.getIndex() + 1).append(" ---\n");
+                }
+                if (region.isSuccess()) {
+                    text.append(region.getText() == null ? "" : region.getText());
+                }
+                else {
+                    failed++;
+                    text.append("[OCR failed: ").append(region.getError().getMessage()).append(']');
+                }
+            }
+            outputArea.setText(text.toString());
+            if (failed < regions.size() && !text.toString().isBlank()) {
+                historyService.addHistory(username, name + " (selection)", text.toString());
+            }
+            statusLabel.setText((failed == 0 ? "✅ Extracted " : "⚠️ Extracted ")
+                    + (regions.size() - failed) + " of " + regions.size() + " region(s) from " + name);
+        }
+        catch (Exception ex) {
+            statusLabel.setText("❌ Failed to process " + name);
+            ErrorHandler.showError("Failed to process selection: " + ex.getMessage(), ex);
+        }
     }
 
     private void pasteFromClipboard() {
@@ -355,8 +633,7 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
 
             if (transferable.isDataFlavorSupported(DataFlavor.imageFlavor)) {
                 Image image = (Image) transferable.getTransferData(DataFlavor.imageFlavor);
-                File tempFile = createTempImageFile(image);
-                loadImage(tempFile);
+                loadImage(toBufferedImage(image), "clipboard.png");
             }
             else if (transferable.isDataFlavorSupported(DataFlavor.stringFlavor)) {
                 String text = (String) transferable.getTransferData(DataFlavor.stringFlavor);
@@ -377,17 +654,17 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
         }
     }
 
-    private File createTempImageFile(Image image) throws Exception {
+    // Clipboard images are usually BufferedImages already; only other Image types are redrawn.
+    private static BufferedImage toBufferedImage(Image image) {
+        if (image instanceof BufferedImage) {
+            return (BufferedImage) image;
+        }
         BufferedImage bufferedImage = new BufferedImage(
             image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_RGB);
         Graphics2D g2 = bufferedImage.createGraphics();
         g2.drawImage(image, 0, 0, null);
         g2.dispose();
-
-        File tempFile = File.createTempFile("visiontext_", ".png");
-        javax.imageio.ImageIO.write(bufferedImage, "png", tempFile);
-        tempFile.deleteOnExit();
-        return tempFile;
+        return bufferedImage;
     }
 
     private void copyToClipboard() {
@@ -404,48 +681,66 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
     }
 
     private void clearOutput() {
+        ocrUseCase.cancelLatest();
+        lookups++;
+        setProcessing(false);
         outputArea.setText("");
-        previewPanel.setImage(null);
+        previewPanel.setImage((Image) null);
+        showingImage(null, null);
         statusLabel.setText("Upload an image or paste from clipboard to extract text");
         Toast.show(this, "Cleared");
     }
 
-    private void runOCR(File imageFile) {
+    // A newer submission cancels this job; a late result from it is dropped here.
+    private void runOCR(OCRJob<String> job, Long fingerprint) {
         setProcessing(true);
-
-        SwingWorker<String, Void> worker = new SwingWorker<>() {
-            @Override
-            protected String doInBackground() throws Exception {
-                return ocrUseCase.runOcr(imageFile);
+        job.getResult().whenComplete((text, error) -> SwingUtilities.invokeLater(() -> {
+            if (!ocrUseCase.isLatest(job)) {
+                return;
             }
-
-            @Override
-            protected void done() {
+            if (job.isCancelled()) {
                 setProcessing(false);
-                try {
-                    String text = get();
-                    outputArea.setText(text == null ? "" : text);
+                return;
+            }
+            onOcrFinished(job.getName(), text, error, fingerprint);
+        }));
+    }
 
-                    if (text != null && !text.isBlank()) {
-                        historyService.addHistory(username, imageFile.getName(), text);
-                        statusLabel.setText("✅ Text extracted successfully from " + imageFile.getName());
-                        Toast.show(CreateVisionTextPanel.this, "Text extracted and saved to history");
-                    }
-                    else {
-                        statusLabel.setText("⚠️ No text found in " + imageFile.getName());
-                    }
-                }
-                catch (Exception ex) {
-                    statusLabel.setText("❌ Failed to process " + imageFile.getName());
-                    ErrorHandler.showError("Failed to process image: " + ex.getMessage(), ex);
+    private void onOcrFinished(String imageName, String text, Throwable error, Long fingerprint) {
+        setProcessing(false);
+        if (error != null) {
+            Exception cause = Futures.asException(error);
+            statusLabel.setText("❌ Failed to process " + imageName);
+            ErrorHandler.showError("Failed to process image: " + cause.getMessage(), cause);
+            return;
+        }
+        try {
+            outputArea.setText(text == null ? "" : text);
+
+            if (text != null && !text.isBlank()) {
+                String historyId = historyService.addHistory(username, imageName, text);
+                if (fingerprint != null && duplicates != null) {
+                    duplicates.remember(fingerprint, historyId, imageName);
                 }
+                statusLabel.setText("✅ Text extracted successfully from " + imageName);
+                Toast.show(CreateVisionTextPanel.this, "Text extracted and saved to history");
+            }
+            else {
+                statusLabel.setText("⚠️ No text found in " + imageName);
             }
-        };
-        worker.execute();
+        }
+        catch (Exception ex) {
+            statusLabel.setText("❌ Failed to process " + imageName);
+            ErrorHandler.showError("Failed to process image: " + ex.getMessage(), ex);
+        }
     }
 
     private void setProcessing(boolean processing) {
-        loadingOverlay.setVisible(processing);
+        setProcessing(processing, true);
+    }
+
+    private void setProcessing(boolean processing, boolean showOverlay) {
+        loadingOverlay.setVisible(processing && showOverlay);
         uploadBtn.setEnabled(!processing);
         pasteBtn.setEnabled(!processing);
 
@@ -501,25 +796,138 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
 
     }
 
-    // Custom image preview component
+    private static final class Lookup {
+        private BufferedImage image;
+        private Long fingerprint;
+        private Duplicate duplicate;
+    }
+
+    // Custom image preview component; dragging on the image selects regions to OCR.
     private static final class ModernImagePreview extends JPanel {
+        private static final int MIN_SELECTION = 4;
+
         private Image image;
+        private final List<Rectangle> selections = new ArrayList<>();
+        private Consumer<List<Rectangle>> selectionListener = regions -> { };
+        private Point dragStart;
+        private Rectangle dragging;
+
+        ModernImagePreview() {
+            MouseAdapter mouse = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    dragStart = image == null || !SwingUtilities.isLeftMouseButton(e) ? null : e.getPoint();
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    if (dragStart != null) {
+                        dragging = span(dragStart, e.getPoint());
+                        repaint();
+                    }
+                }
+
+                @Override
+                public void mouseReleased(MouseEvent e) {
+                    if (dragStart == null) {
+                        return;
+                    }
+                    Rectangle region = toImage(span(dragStart, e.getPoint()));
+                    dragStart = null;
+                    dragging = null;
+                    if (!e.isShiftDown()) {
+                        selections.clear();
+                    }
+                    if (region != null && region.width >= MIN_SELECTION && region.height >= MIN_SELECTION) {
+                        selections.add(region);
+                        selectionListener.accept(List.copyOf(selections));
+                    }
+                    repaint();
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            setToolTipText("Drag to extract text from part of the image; Shift+drag adds another region");
+        }
 
         public void setImage(File imageFile) {
             if (imageFile != null) {
                 try {
-                    this.image = new ImageIcon(imageFile.getAbsolutePath()).getImage();
+                    setImage(new ImageIcon(imageFile.getAbsolutePath()).getImage());
                 }
                 catch (Exception ex) {
-                    this.image = null;
+                    setImage((Image) null);
                 }
             }
             else {
-                this.image = null;
+                setImage((Image) null);
             }
+        }
+
+        public void setImage(Image image) {
+            this.image = image;
+            selections.clear();
+            dragStart = null;
+            dragging = null;
             repaint();
         }
 
+        public Image getImage() {
+            return image;
+        }
+
+        /**
+         * @param listener called on the EDT with every selected region, in source pixels,
+         *                 whenever a drag adds one
+         */
+        public void setSelectionListener(Consumer<List<Rectangle>> listener) {
+            this.selectionListener = listener;
+        }
+
+        // Where the image is drawn, scaled to fit with a 10px margin; null if nothing is shown.
+        private Rectangle imageBounds() {
+            int imgWidth = image == null ? -1 : image.getWidth(null);
+            int imgHeight = image == null ? -1 : image.getHeight(null);
+            if (imgWidth <= 0 || imgHeight <= 0) {
+                return null;
+            }
+            double scale = Math.min((double) (getWidth() - 20) / imgWidth, (double) (getHeight() - 20) / imgHeight);
+            int scaledWidth = (int) (imgWidth * scale);
+            int scaledHeight = (int) (imgHeight * scale);
+            return new Rectangle((getWidth() - scaledWidth) / 2, (getHeight() - scaledHeight) / 2,
+                    scaledWidth, scaledHeight);
+        }
+
+        // Maps a rectangle on screen to the source pixels under it, clipped to the image.
+        private Rectangle toImage(Rectangle view) {
+            Rectangle shown = imageBounds();
+            if (shown == null || shown.isEmpty()) {
+                return null;
+            }
+            Rectangle clipped = view.intersection(shown);
+            if (clipped.isEmpty()) {
+                return null;
+            }
+            double sx = (double) image.getWidth(null) / shown.width;
+            double sy = (double) image.getHeight(null) / shown.height;
+            int x0 = (int) Math.floor((clipped.x - shown.x) * sx);
+            int y0 = (int) Math.floor((clipped.y - shown.y) * sy);
+            int x1 = (int) Math.ceil((clipped.x + clipped.width - shown.x) * sx);
+            int y1 = (int) Math.ceil((clipped.y + clipped.height - shown.y) * sy);
+            return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+        }
+
+        private Rectangle toView(Rectangle region, Rectangle shown) {
+            double sx = (double) shown.width / image.getWidth(null);
+            double sy = (double) shown.height / image.getHeight(null);
+            return new Rectangle(shown.x + (int) Math.round(region.x * sx), shown.y + (int) Math.round(region.y * sy),
+                    (int) Math.round(region.width * sx), (int) Math.round(region.height * sy));
+        }
+
+        private static Rectangle span(Point a, Point b) {
+            return new Rectangle(Math.min(a.x, b.x), Math.min(a.y, b.y), Math.abs(a.x - b.x), Math.abs(a.y - b.y));
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
@@ -551,22 +959,29 @@ public class CreateVisionTextPanel extends JPanel implements ThemeAware {
                 }
             }
             else {
-                // Draw image scaled to fit
-                int imgWidth = image.getWidth(null);
-                int imgHeight = image.getHeight(null);
-
-                if (imgWidth > 0 && imgHeight > 0) {
-                    double scale = Math.min((double) (width - 20) / imgWidth, (double) (height - 20) / imgHeight);
-                    int scaledWidth = (int) (imgWidth * scale);
-                    int scaledHeight = (int) (imgHeight * scale);
-                    int x = (width - scaledWidth) / 2;
-                    int y = (height - scaledHeight) / 2;
-
-                    g2.drawImage(image, x, y, scaledWidth, scaledHeight, null);
+                // Draw image scaled to fit, then the selected regions over it
+                Rectangle shown = imageBounds();
+                if (shown != null) {
+                    g2.drawImage(image, shown.x, shown.y, shown.width, shown.height, null);
+                    for (Rectangle region : selections) {
+                        paintSelection(g2, toView(region, shown));
+                    }
+                }
+                if (dragging != null) {
+                    paintSelection(g2, dragging);
                 }
             }
 
             g2.dispose();
         }
+
+        private static void paintSelection(Graphics2D g2, Rectangle area) {
+            Color primary = Theme.getPrimaryColor();
+            g2.setColor(new Color(primary.getRed(), primary.getGreen(), primary.getBlue(), 48));
+            g2.fillRect(area.x, area.y, area.width, area.height);
+            g2.setColor(primary);
+            g2.setStroke(new BasicStroke(2));
+            g2.drawRect(area.x, area.y, area.width, area.height);
+        }
     }
 }
@@ -59,6 +59,13 @@ public class DashboardPanel extends JPanel implements ThemeAware {
         Theme.addListener(this);
     }
 
+    /**
+     * Releases what the dashboard holds open for the user.
+     */
+    public void close() {
+        createVisionTextPanel.close();
+    }
+
     private void initUI() {
         setLayout(new BorderLayout());
         setBackground(Theme.getBackgroundColor());
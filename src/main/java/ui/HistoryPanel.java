@@ -12,6 +12,9 @@ import java.awt.event.MouseEvent;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -28,17 +31,24 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
 import org.jetbrains.annotations.NotNull;
 
 import application.HistoryService;
+import domain.entity.HistoryEntry;
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import shared.Config;
+import shared.Futures;
 
 /**
  * History panel for displaying and managing user OCR history.
@@ -49,12 +59,23 @@ public class HistoryPanel extends JPanel implements ThemeAware {
     private final HistoryService historyService;
     private final String username;
 
+    private final int pageSize = Config.getInt("history.page.size", 50);
+
     private JTextField searchField;
     private JComboBox<String> sortBox;
     private JList<String> historyList;
     private DefaultListModel<String> model;
-
-    private final List<String> rawItems = new ArrayList<>();
+    private JScrollPane scrollPane;
+
+    // Pages loaded so far, in server order, and the filtered entries behind the list rows.
+    private final List<HistoryEntry> loaded = new ArrayList<>();
+    // Row text and its lower-case form for each loaded entry, made once rather than per keystroke.
+    private final List<String> labels = new ArrayList<>();
+    private final List<String> searchKeys = new ArrayList<>();
+    private final List<HistoryEntry> shown = new ArrayList<>();
+    private String nextCursor;
+    private boolean loading;
+    private int listing;
 
     public HistoryPanel(MainAppUI mainApp, HistoryService historyService,
                         String username) {
@@ -143,13 +164,15 @@ public class HistoryPanel extends JPanel implements ThemeAware {
             }
         });
 
-        JScrollPane sp = new JScrollPane(historyList);
-        sp.setBorder(BorderFactory.createCompoundBorder(
+        scrollPane = new JScrollPane(historyList);
+        scrollPane.setBorder(BorderFactory.createCompoundBorder(
                 BorderFactory.createLineBorder(Theme.getBorderColor()),
                 new EmptyBorder(6, 6, 6, 6)
         ));
-        sp.setBackground(Theme.getSurfaceColor());
-        add(sp, BorderLayout.CENTER);
+        scrollPane.setBackground(Theme.getSurfaceColor());
+        // Fetch the next page as the user nears the end of what is loaded.
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> loadMoreIfNeeded());
+        add(scrollPane, BorderLayout.CENTER);
 
         // Footer buttons - Fixed: use ModernButton instead of AnimatedButton
         ModernButton viewBtn = new ModernButton("👁️ View", ModernButton.Style.PRIMARY);
@@ -185,7 +208,7 @@ public class HistoryPanel extends JPanel implements ThemeAware {
         // Wire search/sort
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             void go() {
-                applyFilterAndSort();
+                applyFilter();
             }
 
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
@@ -200,60 +223,96 @@ public class HistoryPanel extends JPanel implements ThemeAware {
                 go();
             }
         });
-        sortBox.addActionListener(e -> applyFilterAndSort());
+        // The server sorts, so a new order starts the listing over.
+        sortBox.addActionListener(e -> loadHistory());
 
         loadHistory();
     }
 
     /**
-     * Loads the user's history from the service and populates the list.
+     * Loads the first page of the user's history in the selected order; more pages follow as
+     * the list is scrolled.
      */
     public final void loadHistory() {
-        model.clear();
-        rawItems.clear();
+        listing++;
+        loaded.clear();
+        labels.clear();
+        searchKeys.clear();
+        nextCursor = null;
+        loading = false;
+        applyFilter();
+        loadPage(null);
+    }
 
-        List<String> items = historyService.getHistoryList(username);
-        if (items == null || items.isEmpty()) {
-            model.addElement("(No history yet)");
-            historyList.setEnabled(false);
-            return;
-        }
+    private void loadPage(String cursor) {
+        int current = listing;
+        HistorySort sort = HistorySort.values()[Math.max(0, sortBox.getSelectedIndex())];
+        loading = true;
+        new SwingWorker<HistoryPage, Void>() {
+            @Override
+            protected HistoryPage doInBackground() throws Exception {
+                return historyService.getHistoryPage(username, sort, cursor, pageSize);
+            }
 
-        historyList.setEnabled(true);
-        rawItems.addAll(items);
-        applyFilterAndSort();
+            @Override
+            protected void done() {
+                if (current != listing) {
+                    return;
+                }
+                loading = false;
+                try {
+                    HistoryPage page = get();
+                    for (HistoryEntry entry : page.getEntries()) {
+                        String label = display(entry);
+                        loaded.add(entry);
+                        labels.add(label);
+                        searchKeys.add(label.toLowerCase());
+                    }
+                    nextCursor = page.getNextCursor();
+                }
+                catch (Exception ex) {
+                    // Keep what is loaded; reopening the panel or changing the order tries again.
+                    nextCursor = null;
+                    ErrorHandler.showError("Failed to load history.", ex);
+                }
+                applyFilter();
+            }
+        }.execute();
     }
 
-    private void applyFilterAndSort() {
+    private void applyFilter() {
         String q = searchField.getText() == null ? "" : searchField.getText().trim().toLowerCase();
 
-        // Filter by query against the display text
-        List<String> filteredDisplays = new ArrayList<>();
-        for (String item : rawItems) {
-            String display = extractDisplay(item);
-            if (q.isEmpty() || display.toLowerCase().contains(q)) {
-                filteredDisplays.add(display);
+        // Filter by query against the display text; the pages are already in order.
+        model.clear();
+        shown.clear();
+        for (int i = 0; i < loaded.size(); i++) {
+            if (q.isEmpty() || searchKeys.get(i).contains(q)) {
+                shown.add(loaded.get(i));
+                model.addElement(labels.get(i));
             }
         }
+        if (shown.isEmpty()) {
+            model.addElement(loading || nextCursor != null ? "Loading…"
+                    : loaded.isEmpty() ? "(No history yet)" : "(No matches)");
+            historyList.setEnabled(false);
+        }
+        else {
+            historyList.setEnabled(true);
+        }
+        // Rows are laid out later; check once they are whether the list still needs filling.
+        SwingUtilities.invokeLater(this::loadMoreIfNeeded);
+    }
 
-        // Sort
-        int mode = sortBox.getSelectedIndex();
-        filteredDisplays.sort((a, b) -> {
-            if (mode <= 1) {
-                long ta = extractEpoch(findOriginalByDisplayLocal(a));
-                long tb = extractEpoch(findOriginalByDisplayLocal(b));
-                if (ta == tb) {
-                    return a.compareToIgnoreCase(b);
-                }
-                return (mode == 0) ? Long.compare(tb, ta) : Long.compare(ta, tb);
-            } else {
-                return (mode == 2) ? a.compareToIgnoreCase(b) : b.compareToIgnoreCase(a);
-            }
-        });
-
-        model.clear();
-        for (String s : filteredDisplays) {
-            model.addElement(s);
+    // Loads the next page when the last rows are in view, or the list does not fill the viewport.
+    private void loadMoreIfNeeded() {
+        if (loading || nextCursor == null) {
+            return;
+        }
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        int remaining = bar.getMaximum() - bar.getValue() - bar.getVisibleAmount();
+        if (remaining <= 3 * historyList.getFixedCellHeight()) {
+            loadPage(nextCursor);
         }
     }
 
@@ -293,24 +352,19 @@ public class HistoryPanel extends JPanel implements ThemeAware {
     }
 
     private void onView(ActionEvent e) {
-        String display = historyList.getSelectedValue();
-        if (display == null || !historyList.isEnabled()) {
+        HistoryEntry entry = selectedEntry();
+        if (entry == null) {
             Toast.show(this, "Please select a history item to view");
             return;
         }
-        String original = findOriginalByDisplay(display);
-        if (original == null) {
-            ErrorHandler.showError(COULD_NOT_FIND_THE_SELECTED_HISTORY_ITEM);
-            return;
-        }
-        try {
-            String text = historyService.getHistoryItem(username, original);
+        inBackground(() -> historyService.getHistoryItem(username, entry.getId()), text -> {
+            if (text == null) {
+                ErrorHandler.showError(COULD_NOT_FIND_THE_SELECTED_HISTORY_ITEM);
+                return;
+            }
             JScrollPane sc = getJScrollPane(text);
             JOptionPane.showMessageDialog(this, sc, "📄 History Item", JOptionPane.INFORMATION_MESSAGE);
-        }
-        catch (IOException ex) {
-            ErrorHandler.showError("Failed to load item.", ex);
-        }
+        }, "Failed to load item.");
     }
 
     @NotNull
@@ -330,47 +384,40 @@ public class HistoryPanel extends JPanel implements ThemeAware {
     }
 
     private void onDownload(ActionEvent e) {
-        String display = historyList.getSelectedValue();
-        if (display == null || !historyList.isEnabled()) {
+        HistoryEntry entry = selectedEntry();
+        if (entry == null) {
             Toast.show(this, "Please select a history item to download");
             return;
         }
-        String original = findOriginalByDisplay(display);
-        if (original == null) {
-            ErrorHandler.showError(COULD_NOT_FIND_THE_SELECTED_HISTORY_ITEM);
-            return;
-        }
-        try {
-            String text = historyService.getHistoryItem(username, original);
+        inBackground(() -> historyService.getHistoryItem(username, entry.getId()), text -> {
+            if (text == null) {
+                ErrorHandler.showError(COULD_NOT_FIND_THE_SELECTED_HISTORY_ITEM);
+                return;
+            }
             JFileChooser chooser = new JFileChooser();
             chooser.setSelectedFile(new java.io.File("history_item.txt"));
             if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
                 try (java.io.FileWriter fw = new java.io.FileWriter(chooser.getSelectedFile())) {
                     fw.write(text);
+                    Toast.show(this, "File saved successfully");
+                }
+                catch (IOException ex) {
+                    ErrorHandler.showError("Failed to save file: " + ex.getMessage(), ex);
                 }
-                Toast.show(this, "File saved successfully");
             }
-        }
-        catch (Exception ex) {
-            ErrorHandler.showError("Failed to save file: " + ex.getMessage(), ex);
-        }
+        }, "Failed to load item.");
     }
 
     private void onDelete(ActionEvent e) {
-        String display = historyList.getSelectedValue();
-        if (display == null || !historyList.isEnabled()) {
+        HistoryEntry entry = selectedEntry();
+        if (entry == null) {
             Toast.show(this, "Please select a history item to delete");
             return;
         }
-        String original = findOriginalByDisplay(display);
-        if (original == null) {
-            ErrorHandler.showError(COULD_NOT_FIND_THE_SELECTED_HISTORY_ITEM);
-            return;
-        }
 
         int confirm = JOptionPane.showConfirmDialog(
                 this,
-                "Delete this item?\n\n" + display,
+                "Delete this item?\n\n" + display(entry),
                 "Confirm Delete",
                 JOptionPane.YES_NO_OPTION,
                 JOptionPane.WARNING_MESSAGE
@@ -379,71 +426,56 @@ public class HistoryPanel extends JPanel implements ThemeAware {
             return;
         }
 
-        try {
-            historyService.deleteHistory(username, original);
+        inBackground(() -> {
+            historyService.deleteHistory(username, entry.getId());
+            return null;
+        }, done -> {
             Toast.show(this, "Item deleted successfully");
             loadHistory();
-        }
-        catch (Exception ex) {
-            ErrorHandler.showError("Failed to delete item: " + ex.getMessage(), ex);
-        }
+        }, "Failed to delete item.");
     }
 
-    /* ---------------- utils ---------------- */
-
-    /**
-     * Extracts the display text from a history item.
-     * @param item the history item string
-     * @return the display text, or the item itself if no display is found
-     */
-    private static String extractDisplay(String item) {
-        String[] parts = item.split("\\|\\|\\|", 3);
-        if (parts.length == 3) return parts[2];     // key|||epoch|||display
-        if (parts.length == 2) return parts[1];     // key|||display
-        return item;                                 // plain display
-    }
+    // History calls may wait on the network or on queued saves; they run off the EDT and the
+    // result comes back on it.
+    private <T> void inBackground(Callable<T> call, Consumer<T> onResult, String failure) {
+        new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return call.call();
+            }
 
-    private static long extractEpoch(String item) {
-        if (item == null) return 0L;
-        String[] parts = item.split("\\|\\|\\|", 3);
-        if (parts.length >= 3) {
-            try {
-                return Long.parseLong(parts[1]);
+            @Override
+            protected void done() {
+                T result;
+                try {
+                    result = get();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                catch (ExecutionException ex) {
+                    Exception cause = Futures.asException(ex);
+                    ErrorHandler.showError(failure + " " + cause.getMessage(), cause);
+                    return;
+                }
+                onResult.accept(result);
             }
-            catch (NumberFormatException ignored) {}
-        }
-        return 0L;
+        }.execute();
     }
 
-    /**
-     * Looks up the *original* raw item by its display text, using the local cache.
-     * @param displayText the display text to search for
-     * @return the original item string, or null if not found
-     */
-    private String findOriginalByDisplayLocal(String displayText) {
-        for (String item : rawItems) {
-            if (extractDisplay(item).equals(displayText)) {
-                return item;
-            }
+    /* ---------------- utils ---------------- */
+
+    private HistoryEntry selectedEntry() {
+        int index = historyList.getSelectedIndex();
+        if (!historyList.isEnabled() || index < 0 || index >= shown.size()) {
+            return null;
         }
-        return null;
+        return shown.get(index);
     }
 
-    /**
-     * Looks up the *original* raw item by its display text, using the full history service.
-     * @param displayText the display text to search for
-     * @return the original item string, or null if not found
-     */
-    private String findOriginalByDisplay(String displayText) {
-        List<String> all = historyService.getHistoryList(username);
-        if (all != null) {
-            for (String item : all) {
-                if (extractDisplay(item).equals(displayText)) {
-                    return item;
-                }
-            }
-        }
-        return null;
+    private static String display(HistoryEntry entry) {
+        return entry.getImageFilename() + " (" + entry.getTimestamp() + ")";
     }
 
     /** Striped rows + selection coloring. */
@@ -2,6 +2,7 @@ package ui;
 
 import java.awt.CardLayout;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
@@ -9,22 +10,40 @@ import java.awt.image.BufferedImage;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
 
+import application.BatchOptions;
 import application.HistoryService;
+import application.HotFolderOptions;
+import application.HotFolderService;
 import application.LoginService;
 import application.OCRUseCase;
+import domain.port.HistoryRepository;
+import infrastructure.CachingOCRProcessor;
 import infrastructure.FirebaseAuthService;
 import infrastructure.FirebaseHistoryRepository;
+import infrastructure.InstrumentedOCRProcessor;
 import infrastructure.OCRSpaceService;
+import infrastructure.PagedDocumentReader;
+import infrastructure.ReplicatedHistoryRepository;
+import infrastructure.ResilientOCRProcessor;
+import infrastructure.ScheduledOCRProcessor;
+import infrastructure.WriteBehindHistoryRepository;
 import shared.Config;
+import shared.MetricsRegistry;
+import shared.PriorityScheduler;
+import shared.PriorityScheduler.Priority;
 
 /**
  * Main application UI controller.
@@ -57,8 +76,10 @@ public class MainAppUI {
     private HistoryPanel historyPanel;
     private final LoginService loginService;
     private final OCRUseCase ocrUseCase;
+    private final OCRUseCase bulkOcrUseCase;
     private final HistoryService historyService;
     private String username;
+    private HotFolderService hotFolder;
     private String lastView = LOGIN;
 
     public JFrame frame;
@@ -67,15 +88,51 @@ public class MainAppUI {
         Config.load();
         // Compose infrastructure implementations
         var authService = new FirebaseAuthService();
-        var ocrProcessor = new OCRSpaceService();
-        var historyRepository = new FirebaseHistoryRepository();
+        var metrics = MetricsRegistry.getDefault();
+        var ocrService = new OCRSpaceService();
+        // One budget, following the service's adaptive limit; the UI goes ahead of the hot folder.
+        // Slots are taken per request, so each priority gets its own view of one retry policy
+        // and one cache over the service.
+        var scheduler = PriorityScheduler.fromConfig(ocrService::getConcurrencyLimit);
+        var resilient = ResilientOCRProcessor.fromConfig(
+                new ScheduledOCRProcessor(ocrService, scheduler, Priority.INTERACTIVE));
+        var ocrProcessor = CachingOCRProcessor.fromConfig(resilient);
+        var bulkOcrProcessor = ocrProcessor.withDelegate(
+                resilient.withDelegate(new ScheduledOCRProcessor(ocrService, scheduler, Priority.BULK)));
+        ocrService.registerMetrics(metrics);
+        resilient.registerMetrics(metrics);
+        ocrProcessor.registerMetrics(metrics);
+        scheduler.registerMetrics(metrics);
+        var historyRepository = createHistoryRepository(metrics);
         // Compose application services
         loginService = new LoginService(authService);
-        ocrUseCase = new OCRUseCase(ocrProcessor);
+        ocrUseCase = new OCRUseCase(new InstrumentedOCRProcessor(ocrProcessor, metrics, "interactive"),
+                new PagedDocumentReader());
+        bulkOcrUseCase = new OCRUseCase(new InstrumentedOCRProcessor(bulkOcrProcessor, metrics, "bulk"),
+                new PagedDocumentReader());
         historyService = new HistoryService(historyRepository);
         initUI();
     }
 
+    /**
+     * History is read from a local replica and saved through its outbox, so it works offline;
+     * with {@code history.replica.disabled=true} it goes to Firebase directly, saves write-behind.
+     * Either way, pending saves are sent on exit.
+     */
+    private static HistoryRepository createHistoryRepository(MetricsRegistry metrics) {
+        var firebase = new FirebaseHistoryRepository();
+        if (Boolean.parseBoolean(Config.get("history.replica.disabled"))) {
+            var writeBehind = WriteBehindHistoryRepository.fromConfig(firebase);
+            writeBehind.registerMetrics(metrics);
+            Runtime.getRuntime().addShutdownHook(new Thread(writeBehind::close, "history-flush"));
+            return writeBehind;
+        }
+        var replicated = ReplicatedHistoryRepository.fromConfig(firebase);
+        replicated.registerMetrics(metrics);
+        Runtime.getRuntime().addShutdownHook(new Thread(replicated::close, "history-flush"));
+        return replicated;
+    }
+
     private void initUI() {
         final String LOGIN = MainAppUI.LOGIN;
         frame = new JFrame("VisionText");
@@ -104,6 +161,8 @@ public class MainAppUI {
         frame.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override public void windowClosing(java.awt.event.WindowEvent e) {
                 saveWindowPrefs();
+                stopHotFolder();
+                closeDashboard();
             }
         });
         frame.setVisible(true);
@@ -132,6 +191,8 @@ public class MainAppUI {
         if (loginPanel != null) {
             mainPanel.remove(loginPanel);
         }
+        stopHotFolder();
+        closeDashboard();
         loginPanel = new LoginPanel(this, loginService);
         mainPanel.add(loginPanel, LOG_IN);
         cardLayout.show(mainPanel, LOG_IN);
@@ -158,6 +219,7 @@ public void showDashboard(String username, boolean showWelcomeToast) {
 
     if (dashboardPanel != null) {
         mainPanel.remove(dashboardPanel);
+        dashboardPanel.close();
     }
 
     dashboardPanel = new DashboardPanel(this, ocrUseCase, historyService, loginService, username);
@@ -166,6 +228,7 @@ public void showDashboard(String username, boolean showWelcomeToast) {
     frame.setTitle("VisionText - Welcome, " + username.split("@")[0]);
     lastView = DASHBOARD;
     refreshTheme();
+    startHotFolder(username);
 
     if (showWelcomeToast && dashboardPanel != null) {
         SwingUtilities.invokeLater(() -> new WelcomeDialog(frame).setVisible(true));
@@ -188,6 +251,39 @@ public void showDashboard(String username, boolean showWelcomeToast) {
     lastView = HISTORY;
     }
 
+    // Scanner drop folder from config.properties (hotfolder.dir); results go to this user's history.
+    private void startHotFolder(String user) {
+        stopHotFolder();
+        String dir = Config.get("hotfolder.dir");
+        if (dir == null || dir.isBlank()) {
+            return;
+        }
+        HotFolderOptions options = HotFolderOptions.defaults()
+                .withParallelism(Config.getInt("hotfolder.parallelism", BatchOptions.DEFAULT_PARALLELISM))
+                .withSettleMillis(Config.getLong("hotfolder.settle.millis", HotFolderOptions.DEFAULT_SETTLE_MILLIS));
+        hotFolder = new HotFolderService(bulkOcrUseCase, historyService, Paths.get(dir), user, options);
+        try {
+            hotFolder.start();
+        }
+        catch (IOException ex) {
+            hotFolder = null;
+            ErrorHandler.showError("Could not watch hot folder " + dir + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private void closeDashboard() {
+        if (dashboardPanel != null) {
+            dashboardPanel.close();
+        }
+    }
+
+    private void stopHotFolder() {
+        if (hotFolder != null) {
+            hotFolder.close();
+            hotFolder = null;
+        }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             // Load & apply persisted theme before creating UI
@@ -234,13 +330,24 @@ public void showDashboard(String username, boolean showWelcomeToast) {
         savePrefs.addActionListener(e -> saveWindowPrefs());
         JMenuItem settings = new JMenuItem("Settings...");
         settings.addActionListener(e -> new SettingsDialog(frame).setVisible(true));
+        JMenuItem statistics = new JMenuItem("OCR Statistics...");
+        statistics.addActionListener(e -> showStatistics());
         app.add(settings);
+        app.add(statistics);
         app.add(toggleAnim);
         app.add(savePrefs);
         bar.add(app);
         frame.setJMenuBar(bar);
     }
 
+    private void showStatistics() {
+        String report = MetricsRegistry.getDefault().format("ocr.");
+        JTextArea text = new JTextArea(report.isEmpty() ? "No OCR requests yet." : report, 20, 90);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(frame, new JScrollPane(text), "OCR Statistics", JOptionPane.PLAIN_MESSAGE);
+    }
+
     private void restoreWindowPrefs() {
         Properties p = new Properties();
         try (FileInputStream fis = new FileInputStream(UI_PREFS)) {
@@ -1,5 +1,8 @@
 package application;
 
+import domain.entity.HistoryEntry;
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
 import domain.port.HistoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,6 +11,7 @@ import org.mockito.Mockito;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -37,15 +41,24 @@ class HistoryServiceTest {
     @Test
     void addHistoryWithFilenameWritesNow() throws IOException {
         ArgumentCaptor<Long> ts = ArgumentCaptor.forClass(Long.class);
-        service.addHistory("u", "img.png", "hello");
+        when(repo.saveHistory(eq("u"), eq("img.png"), eq("hello"), anyLong())).thenReturn("key");
+        assertEquals("key", service.addHistory("u", "img.png", "hello"));
         verify(repo).saveHistory(eq("u"), eq("img.png"), eq("hello"), ts.capture());
         assertTrue(ts.getValue() > 0);
+        assertNull(service.addHistory("u", "img.png", " "));
     }
 
     @Test
-    void getHistoryListDelegates() {
-        when(repo.getHistoryList("u")).thenReturn(List.of("1","2"));
-        assertEquals(List.of("1","2"), service.getHistoryList("u"));
+    void getHistoryPageDelegates() throws IOException {
+        HistoryPage page = new HistoryPage(List.of(new HistoryEntry("-a", "a.png", 1L)), "1|-a|1");
+        when(repo.getHistoryPage("u", HistorySort.OLDEST, null, 20)).thenReturn(page);
+        assertSame(page, service.getHistoryPage("u", HistorySort.OLDEST, null, 20));
+    }
+
+    @Test
+    void getHistoryItemsDelegates() throws IOException {
+        when(repo.getHistoryItems("u", List.of("a", "b"))).thenReturn(Map.of("a", "data"));
+        assertEquals(Map.of("a", "data"), service.getHistoryItems("u", List.of("a", "b")));
     }
 
     @Test
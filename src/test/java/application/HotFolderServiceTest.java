@@ -0,0 +1,124 @@
+package application;
+
+import domain.port.HistoryRepository;
+import domain.port.OCRProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class HotFolderServiceTest {
+
+    @TempDir
+    Path inbox;
+
+    @Test
+    void ocrsNewFilesSavesHistoryAndSortsThemIntoDoneAndError() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        OCRProcessor processor = imageFile -> {
+            peak.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+                if (imageFile.getName().startsWith("bad")) {
+                    throw new IOException("unreadable");
+                }
+                return "text of " + imageFile.getName();
+            }
+            finally {
+                concurrent.decrementAndGet();
+            }
+        };
+        HistoryRepository repository = mock(HistoryRepository.class);
+        Set<String> results = Collections.synchronizedSet(new HashSet<>());
+        HotFolderOptions options = HotFolderOptions.defaults()
+                .withParallelism(3)
+                .withQueueCapacity(2)
+                .withSettleMillis(50)
+                .onResult(r -> results.add(r.getSource()));
+
+        Files.writeString(inbox.resolve("early.png"), "x");
+        try (HotFolderService service = new HotFolderService(new OCRUseCase(processor),
+                new HistoryService(repository), inbox, "user@x.com", options)) {
+            service.start();
+            for (int i = 0; i < 40; i++) {
+                Files.writeString(inbox.resolve("scan" + i + ".png"), "x");
+            }
+            Files.writeString(inbox.resolve("bad.png"), "x");
+            Files.writeString(inbox.resolve("notes.txt"), "ignored");
+
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (service.getProcessed() + service.getFailed() < 42 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(41, service.getProcessed());
+            assertEquals(1, service.getFailed());
+        }
+
+        assertEquals(41, count(inbox.resolve(HotFolderService.DONE_DIR)));
+        assertTrue(Files.exists(inbox.resolve("error").resolve("bad.png")));
+        assertTrue(Files.readString(inbox.resolve("error").resolve("bad.png.error.txt")).contains("unreadable"));
+        assertTrue(Files.exists(inbox.resolve("notes.txt")));
+        assertFalse(Files.exists(inbox.resolve("early.png")));
+        assertTrue(peak.get() <= 3, "concurrent OCR calls: " + peak.get());
+        assertEquals(42, results.size());
+        verify(repository).saveHistory(eq("user@x.com"), eq("early.png"), eq("text of early.png"), anyLong());
+        verify(repository, times(41)).saveHistory(eq("user@x.com"), any(), any(), anyLong());
+    }
+
+    @Test
+    void aFileWhoseHistoryCannotBeSavedEndsInErrorOnce() throws Exception {
+        HistoryRepository repository = mock(HistoryRepository.class);
+        when(repository.saveHistory(any(), eq("unsaved.png"), any(), anyLong())).thenThrow(new IOException("offline"));
+        HotFolderOptions options = HotFolderOptions.defaults().withSettleMillis(50);
+
+        Files.writeString(inbox.resolve("unsaved.png"), "x");
+        try (HotFolderService service = new HotFolderService(new OCRUseCase(imageFile -> "text"),
+                new HistoryService(repository), inbox, "user@x.com", options)) {
+            service.start();
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (service.getFailed() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, service.getFailed());
+            assertEquals(0, service.getProcessed());
+        }
+
+        assertTrue(Files.exists(inbox.resolve("error").resolve("unsaved.png")));
+        assertTrue(Files.readString(inbox.resolve("error").resolve("unsaved.png.error.txt")).contains("offline"));
+        assertEquals(0, count(inbox.resolve(HotFolderService.DONE_DIR)));
+        assertFalse(Files.exists(inbox.resolve("unsaved.png")));
+        verify(repository, times(1)).saveHistory(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void moveIntoNeverOverwrites() throws Exception {
+        Path done = Files.createDirectories(inbox.resolve("done"));
+        Files.writeString(done.resolve("a.png"), "old");
+        Path incoming = Files.writeString(inbox.resolve("a.png"), "new");
+
+        Path moved = HotFolderService.moveInto(done, incoming);
+
+        assertEquals("a-1.png", moved.getFileName().toString());
+        assertEquals("old", Files.readString(done.resolve("a.png")));
+    }
+
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
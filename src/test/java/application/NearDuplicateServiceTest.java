@@ -0,0 +1,85 @@
+package application;
+
+import domain.port.HistoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import shared.PerceptualHashIndex;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class NearDuplicateServiceTest {
+    @TempDir
+    Path dir;
+
+    private HistoryRepository repository;
+    private PerceptualHashIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = mock(HistoryRepository.class);
+        index = PerceptualHashIndex.open(dir.resolve("user.idx"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    void offersTheSavedTextOfASimilarImage() throws Exception {
+        when(repository.getHistoryItems("u", List.of("key-1"))).thenReturn(Map.of("key-1", "saved text"));
+        NearDuplicateService service = new NearDuplicateService(index, new HistoryService(repository), "u", 4);
+        service.remember(0xF0F0L, "key-1", "shot.png");
+        service.remember(0xF0F0L, null, "unsaved.png");
+
+        Optional<NearDuplicateService.Duplicate> duplicate = service.find(0xF0F3L);
+
+        assertTrue(duplicate.isPresent());
+        assertEquals("saved text", duplicate.get().getText());
+        assertEquals("shot.png", duplicate.get().getImageFilename());
+        assertEquals(2, duplicate.get().getDistance());
+        assertFalse(service.find(0x0F0FL).isPresent());
+    }
+
+    @Test
+    void deletedHistoryItemsAreSkippedAndForgottenInOneRead() throws Exception {
+        when(repository.getHistoryItems("u", List.of("deleted", "older", "gone")))
+                .thenReturn(Map.of("older", "older text"));
+        NearDuplicateService service = new NearDuplicateService(index, new HistoryService(repository), "u", 4);
+        service.remember(3L, "gone", "c.png");
+        service.remember(1L, "older", "a.png");
+        service.remember(0L, "deleted", "b.png");
+
+        assertEquals("older text", service.find(0L).get().getText());
+        assertEquals(1, index.size());
+        verify(repository, times(1)).getHistoryItems(anyString(), anyList());
+        verify(repository, never()).getHistoryItem(anyString(), anyString());
+    }
+
+    @Test
+    void closingClosesTheIndex() throws Exception {
+        NearDuplicateService service = new NearDuplicateService(index, new HistoryService(repository), "u", 4);
+        service.close();
+
+        assertThrows(IOException.class, () -> service.remember(0L, "key", "a.png"));
+    }
+
+    @Test
+    void negativeDistanceTurnsLookupsOff() throws Exception {
+        NearDuplicateService service = new NearDuplicateService(index, new HistoryService(repository), "u", -1);
+        service.remember(0L, "key", "a.png");
+
+        assertFalse(service.isEnabled());
+        assertFalse(service.find(0L).isPresent());
+        verifyNoInteractions(repository);
+    }
+}
@@ -3,11 +3,28 @@ package application;
 import domain.port.OCRProcessor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import domain.entity.OCRResult;
+import domain.port.DocumentReader;
+import domain.port.PageSource;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class OCRUseCaseTest {
@@ -35,4 +52,409 @@ class OCRUseCaseTest {
         assertEquals("world", ocrUseCase.runOcr(f));
         verify(ocrProcessor).extractTextFromImage(f);
     }
+
+    @Test
+    void extractTextAsyncDelegatesToAsyncPort() {
+        File f = new File("async.png");
+        when(ocrProcessor.extractTextAsync(f)).thenReturn(CompletableFuture.completedFuture("later"));
+        assertEquals("later", ocrUseCase.extractTextAsync(f).join());
+    }
+
+    @Test
+    void defaultAsyncPortWrapsBlockingCall() throws Exception {
+        File f = new File("default.png");
+        OCRProcessor blocking = imageFile -> "sync:" + imageFile.getName();
+        assertEquals("sync:default.png", blocking.extractTextAsync(f).get());
+    }
+
+    @Test
+    void inMemoryOverloadsDelegateWithoutTempFiles() throws Exception {
+        byte[] bytes = {1, 2, 3};
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        when(ocrProcessor.extractTextFromBytes(ByteBuffer.wrap(bytes), "a.png")).thenReturn("bytes");
+        when(ocrProcessor.extractTextFromImage(image, "clip.png")).thenReturn("image");
+        when(ocrProcessor.extractTextAsync(image, "clip.png")).thenReturn(CompletableFuture.completedFuture("later"));
+        when(ocrProcessor.extractTextAsync(ByteBuffer.wrap(bytes), "a.png"))
+                .thenReturn(CompletableFuture.completedFuture("buffered"));
+
+        assertEquals("bytes", ocrUseCase.extractText(bytes, "a.png"));
+        assertEquals("bytes", ocrUseCase.extractText(ByteBuffer.wrap(bytes), "a.png"));
+        assertEquals("image", ocrUseCase.extractText(image, "clip.png"));
+        assertEquals("later", ocrUseCase.extractTextAsync(image, "clip.png").join());
+        assertEquals("buffered", ocrUseCase.extractTextAsync(ByteBuffer.wrap(bytes), "a.png").join());
+        verify(ocrProcessor, never()).extractTextFromImage(any(File.class));
+    }
+
+    @Test
+    void defaultInMemoryPortFallsBackToTempFile() throws Exception {
+        List<String> seen = new ArrayList<>();
+        OCRProcessor fileOnly = imageFile -> {
+            seen.add(imageFile.getName());
+            return new String(Files.readAllBytes(imageFile.toPath()));
+        };
+        ByteBuffer data = ByteBuffer.wrap("hi".getBytes());
+
+        assertEquals("hi", fileOnly.extractTextFromBytes(data, "x.png"));
+        assertEquals(0, data.position());
+        assertTrue(seen.get(0).endsWith(".png"));
+        assertFalse(new File(System.getProperty("java.io.tmpdir"), seen.get(0)).exists());
+        assertTrue(fileOnly.extractTextFromImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "p")
+                .contains("PNG"));
+        assertEquals("hi", fileOnly.extractTextAsync(data, "y.txt").get());
+        assertNotNull(fileOnly.extractTextAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "q").get());
+    }
+
+    @Test
+    void batchReturnsResultsAndFailuresInInputOrder() throws Exception {
+        File a = new File("a.png");
+        File b = new File("b.png");
+        File c = new File("c.png");
+        when(ocrProcessor.extractTextFromImage(a)).thenReturn("A");
+        when(ocrProcessor.extractTextFromImage(b)).thenThrow(new IllegalStateException("boom"));
+        when(ocrProcessor.extractTextFromImage(c)).thenReturn("C");
+
+        List<OCRResult> results = ocrUseCase.extractTextBatch(List.of(a, b, c), BatchOptions.defaults());
+
+        assertEquals(3, results.size());
+        assertEquals("A", results.get(0).getText());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("boom", results.get(1).getError().getMessage());
+        assertEquals("c.png", results.get(2).getSource());
+        assertEquals(2, results.get(2).getIndex());
+    }
+
+    @Test
+    void batchListenerSeesInputOrderEvenWhenLaterItemsFinishFirst() throws Exception {
+        File slow = new File("slow.png");
+        File fast = new File("fast.png");
+        CountDownLatch fastDone = new CountDownLatch(1);
+        when(ocrProcessor.extractTextFromImage(slow)).thenAnswer(inv -> {
+            assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+            return "slow";
+        });
+        when(ocrProcessor.extractTextFromImage(fast)).thenAnswer(inv -> {
+            fastDone.countDown();
+            return "fast";
+        });
+
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        ocrUseCase.extractTextBatch(List.of(slow, fast),
+                BatchOptions.defaults().withParallelism(2).onResult(r -> seen.add(r.getText())));
+
+        assertEquals(List.of("slow", "fast"), seen);
+    }
+
+    @Test
+    void batchNeverExceedsParallelism() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(ocrProcessor.extractTextFromImage(any())).thenAnswer(inv -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return "ok";
+        });
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            files.add(new File("f" + i + ".png"));
+        }
+
+        List<OCRResult> results = ocrUseCase.extractTextBatch(files, BatchOptions.defaults().withParallelism(3));
+
+        assertEquals(12, results.size());
+        assertTrue(peak.get() <= 3);
+    }
+
+    @Test
+    void batchOptionsRejectNonPositiveParallelism() {
+        assertThrows(IllegalArgumentException.class, () -> BatchOptions.defaults().withParallelism(0));
+    }
+
+    @Test
+    void emptyBatchReturnsEmptyList() throws Exception {
+        assertTrue(ocrUseCase.extractTextBatch(List.of(), BatchOptions.defaults()).isEmpty());
+    }
+
+    @Test
+    void planTilesCoversImageWithOverlapInRowMajorOrder() {
+        TilingOptions options = TilingOptions.defaults().withMaxTileSize(1000, 800).withOverlap(40);
+        List<Rectangle> tiles = OCRUseCase.planTiles(2500, 1600, options);
+
+        assertEquals(6, tiles.size());
+        assertEquals(new Rectangle(0, 0, 853, 820), tiles.get(0));
+        assertEquals(new Rectangle(813, 0, 873, 820), tiles.get(1));
+        assertEquals(new Rectangle(0, 780, 853, 820), tiles.get(3));
+        Rectangle last = tiles.get(5);
+        assertEquals(2500, last.x + last.width);
+        assertEquals(1600, last.y + last.height);
+    }
+
+    @Test
+    void tiledOcrStitchesTilesAndDropsOverlapDuplicates() throws Exception {
+        BufferedImage poster = new BufferedImage(300, 400, BufferedImage.TYPE_INT_RGB);
+        when(ocrProcessor.extractTextFromImage(any(BufferedImage.class), anyString())).thenAnswer(inv -> {
+            String name = inv.getArgument(1);
+            switch (name) {
+                case "poster-tile0.png": return "title\nbody one\noverlap";
+                case "poster-tile1.png": return "overlap\nbody two";
+                default: throw new IllegalStateException(name);
+            }
+        });
+
+        String text = ocrUseCase.extractTextTiled(poster, "poster.png",
+                TilingOptions.defaults().withMaxTileSize(300, 200).withOverlap(20).withParallelism(2));
+
+        assertEquals("title\nbody one\noverlap\nbody two", text);
+        verify(ocrProcessor, times(2)).extractTextFromImage(any(BufferedImage.class), anyString());
+    }
+
+    @Test
+    void tiledOcrOfAWidePageKeepsReadingOrder(@TempDir Path dir) throws Exception {
+        Path wide = dir.resolve("wide.png");
+        javax.imageio.ImageIO.write(new BufferedImage(600, 100, BufferedImage.TYPE_INT_RGB), "png", wide.toFile());
+        when(ocrProcessor.extractTextFromImage(any(BufferedImage.class), anyString())).thenAnswer(inv -> {
+            String name = inv.getArgument(1);
+            switch (name) {
+                case "wide-tile0.png": return "first line starts\nsecond line";
+                case "wide-tile1.png": return "starts and ends\nline goes on";
+                default: throw new IllegalStateException(name);
+            }
+        });
+
+        List<OCRResult> results = ocrUseCase.extractTextBatch(List.of(wide.toFile()), BatchOptions.defaults()
+                .withTiling(TilingOptions.defaults().withMaxTileSize(300, 200).withOverlap(20)));
+
+        assertEquals("first line starts and ends\nsecond line goes on", results.get(0).getText());
+        verify(ocrProcessor, never()).extractTextFromImage(any(File.class));
+    }
+
+    @Test
+    void tiledOcrSendsSmallImagesWhole() throws Exception {
+        BufferedImage small = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        when(ocrProcessor.extractTextFromImage(small, "s.png")).thenReturn("whole");
+        assertEquals("whole", ocrUseCase.extractTextTiled(small, "s.png", TilingOptions.defaults()));
+    }
+
+    @Test
+    void tiledOcrFailsWhenAnyTileFails() throws Exception {
+        BufferedImage tall = new BufferedImage(100, 500, BufferedImage.TYPE_INT_RGB);
+        when(ocrProcessor.extractTextFromImage(any(BufferedImage.class), anyString()))
+                .thenReturn("ok")
+                .thenThrow(new IllegalStateException("tile down"));
+        TilingOptions options = TilingOptions.defaults().withMaxTileSize(100, 250).withOverlap(10).withParallelism(1);
+        assertThrows(IllegalStateException.class, () -> ocrUseCase.extractTextTiled(tall, null, options));
+    }
+
+    @Test
+    void tiledOcrRejectsUndecodableFiles(@TempDir Path dir) throws Exception {
+        Path notImage = dir.resolve("x.png");
+        Files.writeString(notImage, "nope");
+        assertThrows(java.io.IOException.class,
+                () -> ocrUseCase.extractTextTiled(notImage.toFile(), TilingOptions.defaults()));
+    }
+
+    @Test
+    void tilingOptionsValidate() {
+        assertThrows(IllegalArgumentException.class, () -> TilingOptions.defaults().withOverlap(-1));
+        assertThrows(IllegalArgumentException.class, () -> TilingOptions.defaults().withMaxTileSize(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> TilingOptions.defaults().withParallelism(0));
+    }
+
+    @Test
+    void oversizedOverlapIsCappedBelowHalfATile() {
+        TilingOptions options = TilingOptions.defaults().withMaxTileSize(100, 100).withOverlap(500);
+        List<Rectangle> tiles = OCRUseCase.planTiles(100, 200, options);
+        assertEquals(2, tiles.size());
+        assertEquals(125, tiles.get(0).height);
+    }
+
+    @Test
+    void documentPagesAreStreamedInOrderWithBoundedPagesInMemory() throws Exception {
+        AtomicInteger live = new AtomicInteger();
+        AtomicInteger peakLive = new AtomicInteger();
+        FakePages pages = new FakePages(7, live, peakLive);
+        DocumentReader reader = mock(DocumentReader.class);
+        File pdf = new File("report.pdf");
+        when(reader.supports(pdf)).thenReturn(true);
+        when(reader.open(pdf)).thenReturn(pages);
+        when(ocrProcessor.extractTextFromImage(any(BufferedImage.class), anyString())).thenAnswer(inv -> {
+            Thread.sleep(10);
+            live.decrementAndGet();
+            return inv.getArgument(1);
+        });
+        OCRUseCase documents = new OCRUseCase(ocrProcessor, reader);
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+
+        List<OCRResult> results = documents.extractDocument(pdf,
+                BatchOptions.defaults().withParallelism(2).onResult(r -> seen.add(r.getText())));
+
+        assertTrue(documents.isDocument(pdf));
+        assertEquals(7, results.size());
+        assertEquals("report-p1.png", seen.get(0));
+        assertEquals("report-p7.png", seen.get(6));
+        assertTrue(peakLive.get() <= 2, "pages in memory: " + peakLive.get());
+        assertTrue(pages.closed);
+    }
+
+    @Test
+    void unreadablePageIsReportedAndOthersContinue() throws Exception {
+        FakePages pages = new FakePages(3, new AtomicInteger(), new AtomicInteger());
+        pages.failingPage = 1;
+        when(ocrProcessor.extractTextFromImage(any(BufferedImage.class), anyString())).thenReturn("text");
+
+        List<OCRResult> results = ocrUseCase.extractPages(pages, "scan.tiff", BatchOptions.defaults());
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("scan-p2.png", results.get(1).getSource());
+        assertTrue(results.get(2).isSuccess());
+    }
+
+    @Test
+    void documentsNeedAReader() {
+        assertFalse(ocrUseCase.isDocument(new File("a.pdf")));
+        assertThrows(IllegalStateException.class,
+                () -> ocrUseCase.extractDocument(new File("a.pdf"), BatchOptions.defaults()));
+    }
+
+    @Test
+    void newSubmissionSupersedesAndCancelsThePreviousJob() {
+        File first = new File("first.png");
+        File second = new File("second.png");
+        CompletableFuture<String> firstCall = new CompletableFuture<>();
+        when(ocrProcessor.extractTextAsync(first)).thenReturn(firstCall);
+        when(ocrProcessor.extractTextAsync(second)).thenReturn(CompletableFuture.completedFuture("new"));
+
+        OCRJob<String> stale = ocrUseCase.submit(first);
+        assertTrue(ocrUseCase.isLatest(stale));
+        OCRJob<String> fresh = ocrUseCase.submit(second);
+
+        assertTrue(stale.isCancelled());
+        assertTrue(firstCall.isCancelled());
+        assertFalse(ocrUseCase.isLatest(stale));
+        assertTrue(ocrUseCase.isLatest(fresh));
+        assertEquals("new", fresh.getResult().join());
+        assertEquals("second.png", fresh.getName());
+        assertTrue(fresh.getId() > stale.getId());
+    }
+
+    @Test
+    void cancellingADocumentJobInterruptsPageWork() throws Exception {
+        CountDownLatch pageStarted = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        DocumentReader reader = mock(DocumentReader.class);
+        File pdf = new File("long.pdf");
+        when(reader.open(pdf)).thenReturn(new FakePages(50, new AtomicInteger(), new AtomicInteger()));
+        when(ocrProcessor.extractTextFromImage(any(BufferedImage.class), anyString())).thenAnswer(inv -> {
+            pageStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+            }
+            catch (InterruptedException ex) {
+                interrupted.countDown();
+                throw ex;
+            }
+            return "never";
+        });
+        OCRUseCase documents = new OCRUseCase(ocrProcessor, reader);
+
+        OCRJob<List<OCRResult>> job = documents.submitDocument(pdf, BatchOptions.defaults().withParallelism(1));
+        assertTrue(pageStarted.await(5, TimeUnit.SECONDS));
+        documents.cancelLatest();
+
+        assertTrue(job.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void supportedFilesAreImagesAndDocumentsByExtension() {
+        assertTrue(OCRUseCase.isSupportedFile(new File("Scan.JPG").toPath()));
+        assertTrue(OCRUseCase.isSupportedFile(new File("doc.pdf").toPath()));
+        assertFalse(OCRUseCase.isSupportedFile(new File(".scan.png").toPath()));
+        assertFalse(OCRUseCase.isSupportedFile(new File("scan.png.part").toPath()));
+        assertFalse(OCRUseCase.isSupportedFile(new File("done").toPath()));
+    }
+
+    @Test
+    void regionsAreCroppedClippedAndSentInParallel() {
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        List<BufferedImage> crops = new ArrayList<>();
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        when(ocrProcessor.extractTextAsync(any(BufferedImage.class), anyString())).thenAnswer(inv -> {
+            crops.add(inv.getArgument(0));
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+
+        OCRJob<List<OCRResult>> job = ocrUseCase.submitRegions(image, "shot.png", List.of(
+                new Rectangle(10, 20, 30, 40), new Rectangle(300, 0, 10, 10), new Rectangle(180, 90, 50, 50)));
+
+        assertEquals(2, calls.size(), "both regions are in flight before either finishes");
+        assertEquals(30, crops.get(0).getWidth());
+        assertEquals(40, crops.get(0).getHeight());
+        assertEquals(20, crops.get(1).getWidth());
+        assertEquals(10, crops.get(1).getHeight());
+        calls.get(1).completeExceptionally(new IllegalStateException("blank"));
+        assertFalse(job.isDone());
+        calls.get(0).complete("total");
+
+        List<OCRResult> results = job.getResult().join();
+        assertEquals("total", results.get(0).getText());
+        assertEquals("shot-region0.png", results.get(0).getSource());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("blank", results.get(1).getError().getMessage());
+    }
+
+    @Test
+    void cancellingARegionJobCancelsEveryRegion() {
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        when(ocrProcessor.extractTextAsync(any(BufferedImage.class), anyString())).thenAnswer(inv -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+
+        OCRJob<List<OCRResult>> job = ocrUseCase.submitRegions(new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB),
+                "shot.png", List.of(new Rectangle(0, 0, 10, 10), new Rectangle(20, 20, 10, 10)));
+        assertTrue(ocrUseCase.isLatest(job));
+        ocrUseCase.submitRegions(new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB), "next.png", List.of());
+
+        assertTrue(job.isCancelled());
+        assertTrue(calls.get(0).isCancelled());
+        assertTrue(calls.get(1).isCancelled());
+    }
+
+    private static final class FakePages implements PageSource {
+        private final int count;
+        private final AtomicInteger live;
+        private final AtomicInteger peakLive;
+        private int failingPage = -1;
+        private boolean closed;
+
+        private FakePages(int count, AtomicInteger live, AtomicInteger peakLive) {
+            this.count = count;
+            this.live = live;
+            this.peakLive = peakLive;
+        }
+
+        @Override
+        public int getPageCount() {
+            return count;
+        }
+
+        @Override
+        public BufferedImage renderPage(int pageIndex) throws java.io.IOException {
+            if (pageIndex == failingPage) {
+                throw new java.io.IOException("corrupt page");
+            }
+            peakLive.accumulateAndGet(live.incrementAndGet(), Math::max);
+            return new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
 }
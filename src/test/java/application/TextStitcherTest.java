@@ -0,0 +1,60 @@
+package application;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextStitcherTest {
+
+    @Test
+    void dropsLinesRepeatedInTheOverlap() {
+        TextStitcher stitcher = new TextStitcher();
+        stitcher.append("Headline\nfirst paragraph\nshared line one\nshared line two\n");
+        stitcher.append("shared line one\r\nShared  line two\nsecond paragraph");
+        assertEquals("Headline\nfirst paragraph\nshared line one\nshared line two\nsecond paragraph",
+                stitcher.text());
+    }
+
+    @Test
+    void toleratesSmallOcrDifferencesInTheOverlap() {
+        TextStitcher stitcher = new TextStitcher();
+        stitcher.append("alpha\nThe quick brown fox");
+        stitcher.append("The quick hrown fox\nomega");
+        assertEquals("alpha\nThe quick brown fox\nomega", stitcher.text());
+    }
+
+    @Test
+    void rowsJoinLinesCutByTheSeamInReadingOrder() {
+        TextStitcher stitcher = new TextStitcher();
+        stitcher.appendRow(List.of("The quick brown\njumps over", "brown fox\nthe lazy dog"));
+        stitcher.appendRow(List.of("jumps over\nSecond paragraph", "the lazy dog\ncontinues here"));
+        assertEquals("The quick brown fox\njumps over the lazy dog\nSecond paragraph continues here",
+                stitcher.text());
+    }
+
+    @Test
+    void tilesOfARowThatDoNotLineUpFollowEachOther() {
+        TextStitcher stitcher = new TextStitcher();
+        stitcher.appendRow(List.of("left one\nleft two", "right only"));
+        assertEquals("left one\nleft two\nright only", stitcher.text());
+        assertEquals("a a", TextStitcher.joinAcrossSeam("a", "a"));
+    }
+
+    @Test
+    void shortLinesMustMatchExactly() {
+        assertTrue(TextStitcher.similar("ab", "ab"));
+        assertFalse(TextStitcher.similar("ab", "ac"));
+        assertFalse(TextStitcher.similar("completely", "different text"));
+    }
+
+    @Test
+    void emptyTilesAreHarmless() {
+        TextStitcher stitcher = new TextStitcher();
+        stitcher.appendRow(List.of("", ""));
+        stitcher.append(null);
+        stitcher.append("");
+        assertEquals("", stitcher.text());
+    }
+}
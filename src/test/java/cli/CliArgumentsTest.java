@@ -0,0 +1,67 @@
+package cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CliArgumentsTest {
+
+    @Test
+    void defaultsToTextFilesUnderOcrOutput() {
+        CliArguments arguments = CliArguments.parse("scans");
+
+        assertEquals(List.of("scans"), arguments.getInputs());
+        assertEquals(CliArguments.Format.TXT, arguments.getFormat());
+        assertEquals(Paths.get("ocr-output"), arguments.getOutput());
+        assertEquals(4, arguments.getParallelism());
+        assertFalse(arguments.isRecursive());
+        assertNull(arguments.getUser());
+        assertFalse(arguments.isTile());
+    }
+
+    @Test
+    void parsesEveryOption() {
+        CliArguments arguments = CliArguments.parse("-p", "8", "--format", "JSONL", "-o", "out.jsonl",
+                "--recursive", "-u", "a@b.com", "-m", "--tile", "in/*.png", "more");
+
+        assertEquals(List.of("in/*.png", "more"), arguments.getInputs());
+        assertEquals(8, arguments.getParallelism());
+        assertEquals(CliArguments.Format.JSONL, arguments.getFormat());
+        assertEquals(Paths.get("out.jsonl"), arguments.getOutput());
+        assertTrue(arguments.isRecursive());
+        assertEquals("a@b.com", arguments.getUser());
+        assertTrue(arguments.isMetrics());
+        assertTrue(arguments.isTile());
+    }
+
+    @Test
+    void jsonLinesDefaultToStdout() {
+        assertNull(CliArguments.parse("-f", "jsonl", "scans").getOutput());
+    }
+
+    @Test
+    void aJournalAloneIsEnoughToResume() {
+        CliArguments arguments = CliArguments.parse("--journal", "jobs");
+
+        assertEquals(List.of(), arguments.getInputs());
+        assertEquals(Paths.get("jobs"), arguments.getJournal());
+    }
+
+    @Test
+    void helpNeedsNoInput() {
+        assertTrue(CliArguments.parse("--help").isHelp());
+    }
+
+    @Test
+    void rejectsBadCommandLines() {
+        assertThrows(IllegalArgumentException.class, CliArguments::parse);
+        assertThrows(IllegalArgumentException.class, () -> CliArguments.parse("-p", "0", "scans"));
+        assertThrows(IllegalArgumentException.class, () -> CliArguments.parse("-p", "many", "scans"));
+        assertThrows(IllegalArgumentException.class, () -> CliArguments.parse("-f", "xml", "scans"));
+        assertThrows(IllegalArgumentException.class, () -> CliArguments.parse("--bogus", "scans"));
+        assertThrows(IllegalArgumentException.class, () -> CliArguments.parse("scans", "--out"));
+    }
+}
@@ -0,0 +1,64 @@
+package cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputSelectorTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void directoriesListSupportedFilesSortedAndRecurseOnRequest() throws IOException {
+        touch("b.png", "a.PDF", "notes.txt", ".hidden.png", "sub/c.jpg");
+
+        assertEquals(List.of("a.PDF", "b.png"), names(List.of(root.toString()), false));
+        assertEquals(List.of("a.PDF", "b.png", "sub/c.jpg"), names(List.of(root.toString()), true));
+    }
+
+    @Test
+    void globsMatchRelativeToTheirFixedPrefix() throws IOException {
+        touch("a.png", "b.jpg", "sub/c.png", "sub/deep/d.png");
+
+        assertEquals(List.of("a.png"), names(List.of(root + "/*.png"), false));
+        assertEquals(List.of("c.png"), names(List.of(root + "/sub/*.png"), false));
+        assertEquals(List.of("sub/c.png", "sub/deep/d.png"), names(List.of(root + "/**/*.png"), false));
+        assertEquals(List.of(), names(List.of(root + "/missing/*.png"), false));
+    }
+
+    @Test
+    void filesAreAcceptedDirectlyAndDuplicatesDropped() throws IOException {
+        touch("a.png");
+        String file = root.resolve("a.png").toString();
+
+        assertEquals(List.of("a.png"), names(List.of(file, root.toString()), false));
+    }
+
+    @Test
+    void missingPathsAreAnError() {
+        assertThrows(IOException.class,
+                () -> InputSelector.select(List.of(root.resolve("nope").toString()), false));
+    }
+
+    private void touch(String... paths) throws IOException {
+        for (String path : paths) {
+            Path file = root.resolve(path);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "x");
+        }
+    }
+
+    private static List<String> names(List<String> specs, boolean recursive) throws IOException {
+        return InputSelector.select(specs, recursive).stream()
+                .map(input -> input.getRelativePath().toString().replace('\\', '/'))
+                .collect(Collectors.toList());
+    }
+}
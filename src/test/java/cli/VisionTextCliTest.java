@@ -0,0 +1,169 @@
+package cli;
+
+import application.HistoryService;
+import application.OCRUseCase;
+import domain.port.HistoryRepository;
+import domain.port.OCRProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import shared.JobJournal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class VisionTextCliTest {
+
+    @TempDir
+    Path root;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private OCRUseCase ocrUseCase;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(root.resolve("in/sub"));
+        Files.writeString(root.resolve("in/a.png"), "x");
+        Files.writeString(root.resolve("in/bad.png"), "x");
+        Files.writeString(root.resolve("in/sub/c.jpg"), "x");
+        OCRProcessor processor = imageFile -> {
+            if (imageFile.getName().startsWith("bad")) {
+                throw new IOException("unreadable");
+            }
+            return "text of " + imageFile.getName();
+        };
+        ocrUseCase = new OCRUseCase(processor);
+    }
+
+    @Test
+    void writesTextFilesMirroringInputsAndReportsFailures() throws IOException {
+        Path output = root.resolve("out");
+
+        int status = run("-r", "-p", "2", "-o", output.toString(), root.resolve("in").toString());
+
+        assertEquals(VisionTextCli.EXIT_FAILURES, status);
+        assertEquals("text of a.png", Files.readString(output.resolve("a.png.txt")));
+        assertEquals("text of c.jpg", Files.readString(output.resolve("sub/c.jpg.txt")));
+        assertFalse(Files.exists(output.resolve("bad.png.txt")));
+        String log = err.toString(StandardCharsets.UTF_8);
+        assertTrue(log.contains("Failed: bad.png: unreadable"), log);
+        assertTrue(log.contains("Files: 3  succeeded: 2  failed: 1"), log);
+        assertTrue(log.contains("Latency ms: p50"), log);
+    }
+
+    @Test
+    void streamsJsonLinesInInputOrderToStdout() {
+        int status = run("-f", "jsonl", "-p", "3", "--metrics", root.resolve("in") + "/*.png");
+
+        assertEquals(VisionTextCli.EXIT_FAILURES, status);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"source\":\"a.png\",\"ok\":true,\"text\":\"text of a.png\",\"elapsedMillis\":"),
+                lines[0]);
+        assertTrue(lines[1].startsWith("{\"source\":\"bad.png\",\"ok\":false,\"error\":\"unreadable\""), lines[1]);
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Metrics:"));
+    }
+
+    @Test
+    void savesSuccessfulResultsToTheUsersHistory() throws IOException {
+        HistoryRepository repository = mock(HistoryRepository.class);
+        Path output = root.resolve("out.jsonl");
+
+        int status = VisionTextCli.run(new String[] {"-f", "jsonl", "-o", output.toString(), "-u", "a@b.com",
+                root.resolve("in/a.png").toString()}, ocrUseCase, () -> new HistoryService(repository),
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        assertEquals(VisionTextCli.EXIT_OK, status);
+        assertEquals(1, Files.readAllLines(output).size());
+        verify(repository).saveHistory(eq("a@b.com"), eq("a.png"), eq("text of a.png"), anyLong());
+    }
+
+    @Test
+    void journalResumesUnfinishedFilesBeforeAnythingNew() throws IOException {
+        Path journalDir = root.resolve("journal");
+        Path output = root.resolve("out");
+        try (JobJournal journal = JobJournal.open(journalDir, false)) {
+            // An earlier run that died with c.jpg running and a.png still queued.
+            for (InputSelector.Input input : InputSelector.select(List.of(root.resolve("in/sub") + "/*.jpg",
+                    root.resolve("in/a.png").toString()), false)) {
+                journal.enqueue(input.toPayload());
+            }
+            journal.poll();
+        }
+
+        int status = run("-j", journalDir.toString(), "-o", output.toString());
+
+        assertEquals(VisionTextCli.EXIT_OK, status);
+        assertEquals("text of c.jpg", Files.readString(output.resolve("c.jpg.txt")));
+        assertEquals("text of a.png", Files.readString(output.resolve("a.png.txt")));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Resuming 2 unfinished file(s)"));
+        try (JobJournal journal = JobJournal.open(journalDir, false)) {
+            assertEquals(0, journal.queued());
+        }
+
+        assertEquals(VisionTextCli.EXIT_FAILURES, run("-j", journalDir.toString(), "-o", output.toString(),
+                root.resolve("in").toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Files: 2  succeeded: 1  failed: 1"));
+    }
+
+    @Test
+    void resumingAppendsToTheJsonLinesOutput() throws IOException {
+        Path journalDir = root.resolve("journal");
+        Path output = root.resolve("out.jsonl");
+        String finished = "{\"source\":\"done.png\",\"text\":\"finished before the crash\"}\n";
+        Files.writeString(output, finished + "{\"source\":\"torn");
+        try (JobJournal journal = JobJournal.open(journalDir, false)) {
+            journal.enqueue(InputSelector.select(List.of(root.resolve("in/a.png").toString()), false)
+                    .get(0).toPayload());
+        }
+
+        assertEquals(VisionTextCli.EXIT_OK, run("-j", journalDir.toString(), "-f", "jsonl", "-o", output.toString()));
+
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(3, lines.size());
+        assertEquals(finished.trim(), lines.get(0));
+        assertEquals("{\"source\":\"torn", lines.get(1));
+        assertTrue(lines.get(2).contains("text of a.png"));
+    }
+
+    @Test
+    void inputsAreRefusedWhileTheJournalHasUnfinishedFiles() throws IOException {
+        Path journalDir = root.resolve("journal");
+        try (JobJournal journal = JobJournal.open(journalDir, false)) {
+            journal.enqueue(InputSelector.select(List.of(root.resolve("in/a.png").toString()), false)
+                    .get(0).toPayload());
+        }
+
+        assertEquals(VisionTextCli.EXIT_USAGE, run("-j", journalDir.toString(), root.resolve("in").toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("1 unfinished file(s)"));
+        try (JobJournal journal = JobJournal.open(journalDir, false)) {
+            assertEquals(1, journal.queued());
+        }
+    }
+
+    @Test
+    void usageErrorsExitWithTwo() {
+        assertEquals(VisionTextCli.EXIT_USAGE, run("--bogus"));
+        assertEquals(VisionTextCli.EXIT_USAGE, run(root.resolve("in") + "/*.gif"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Usage:"));
+        assertEquals(VisionTextCli.EXIT_OK, run("--help"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("--parallelism"));
+    }
+
+    private int run(String... args) {
+        return VisionTextCli.run(args, ocrUseCase, () -> {
+            throw new AssertionError("history not requested");
+        }, new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+}
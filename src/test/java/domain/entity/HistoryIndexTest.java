@@ -0,0 +1,104 @@
+package domain.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryIndexTest {
+
+    private static List<HistoryEntry> listed(HistoryIndex index, HistorySort sort) {
+        List<HistoryEntry> entries = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            entries.add(index.get(sort, i));
+        }
+        return entries;
+    }
+
+    private static void assertListsLikeTheComparator(List<HistoryEntry> entries) {
+        HistoryIndex index = HistoryIndex.of(entries);
+        for (HistorySort sort : HistorySort.values()) {
+            List<HistoryEntry> expected = new ArrayList<>(entries);
+            expected.sort(sort.comparator());
+            assertEquals(expected, listed(index, sort), sort.name());
+        }
+    }
+
+    @Test
+    void namesOrderByCodeUnitsBeyondTheirKeys() {
+        String[] names = {"", "a", "a\0", "a\0\0\0b", "abcd", "abcde", "abcd\0", "abcdA", "B", "b",
+                "￿", "￿￿￿￿z", "é.png", "scan.png", "scan.PNG"};
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            entries.add(new HistoryEntry("-n" + (100 - i), names[i], i));
+            entries.add(new HistoryEntry("-m" + i, names[i], i));
+        }
+        assertListsLikeTheComparator(entries);
+
+        // Keys start after the shared "scan", which one name is all of.
+        List<HistoryEntry> shared = new ArrayList<>();
+        String[] scans = {"scan", "scan\0", "scanA", "scan1.png", "scan10.png", "scan1", "scan1.pnf", "scan"};
+        for (int i = 0; i < scans.length; i++) {
+            shared.add(new HistoryEntry("-s" + i, scans[i], 0));
+        }
+        assertListsLikeTheComparator(shared);
+    }
+
+    @Test
+    void namesIgnoreCaseAndTiesGoById() {
+        List<HistoryEntry> entries = List.of(
+                new HistoryEntry("-d", "beta.png", 1),
+                new HistoryEntry("-c", "Alpha.png", 2),
+                new HistoryEntry("-b", "alpha.png", 3),
+                new HistoryEntry("-a", "ZETA.png", 4),
+                new HistoryEntry("-e", "Ärger.png", 5));
+        HistoryIndex index = HistoryIndex.of(entries);
+        List<String> ids = new ArrayList<>();
+        for (HistoryEntry entry : listed(index, HistorySort.NAME_ASC)) {
+            ids.add(entry.getId());
+        }
+        assertEquals(List.of("-b", "-c", "-d", "-a", "-e"), ids);
+        assertListsLikeTheComparator(entries);
+    }
+
+    @Test
+    void largeIndexesWithTiesMatchTheComparator() {
+        Random random = new Random(11);
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            entries.add(new HistoryEntry(Integer.toString(random.nextInt(1 << 30), 36) + "-" + i,
+                    "scan" + random.nextInt(500) + ".png", 1_700_000_000_000L + random.nextInt(5000)));
+        }
+        assertListsLikeTheComparator(entries);
+    }
+
+    @Test
+    void timestampsTooLargeToPackStillSort() {
+        List<HistoryEntry> entries = List.of(
+                new HistoryEntry("-a", "a", Long.MAX_VALUE),
+                new HistoryEntry("-b", "b", -5),
+                new HistoryEntry("-c", "c", 0),
+                new HistoryEntry("-d", "d", -5),
+                new HistoryEntry("-e", "e", Long.MIN_VALUE));
+        assertListsLikeTheComparator(entries);
+        assertListsLikeTheComparator(List.of());
+        assertListsLikeTheComparator(List.of(new HistoryEntry("-x", "x", 1)));
+    }
+
+    @Test
+    void descendingListsTheSameOrderBackwards() {
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(new HistoryEntry("-" + (char) ('A' + i % 26) + i, "f" + i % 7, i % 5));
+        }
+        HistoryIndex index = HistoryIndex.of(entries);
+        int n = index.size();
+        for (int i = 0; i < n; i++) {
+            assertSame(index.get(HistorySort.OLDEST, i), index.get(HistorySort.NEWEST, n - 1 - i));
+            assertSame(index.get(HistorySort.NAME_ASC, i), index.get(HistorySort.NAME_DESC, n - 1 - i));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package domain.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryPageTest {
+
+    // Many shared timestamps and names, including a run longer than a page.
+    private static List<HistoryEntry> sample() {
+        List<HistoryEntry> entries = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            entries.add(new HistoryEntry(String.format("-k%03d", random.nextInt(1000)) + i,
+                    "scan" + random.nextInt(20) + ".png", 1000 + random.nextInt(40)));
+        }
+        for (int i = 0; i < 25; i++) {
+            entries.add(new HistoryEntry("-tie" + i, "same.png", 1020));
+        }
+        return entries;
+    }
+
+    private static List<HistoryEntry> sorted(List<HistoryEntry> entries, HistorySort sort) {
+        List<HistoryEntry> copy = new ArrayList<>(entries);
+        copy.sort(sort.comparator());
+        return copy;
+    }
+
+    @Test
+    void pagingInMemoryListsEveryEntryOnceInOrder() {
+        List<HistoryEntry> all = sample();
+        for (HistorySort sort : HistorySort.values()) {
+            List<HistoryEntry> seen = new ArrayList<>();
+            String cursor = null;
+            do {
+                HistoryPage page = HistoryPage.of(all, sort, cursor, 10);
+                assertTrue(page.getEntries().size() <= 10);
+                seen.addAll(page.getEntries());
+                cursor = page.getNextCursor();
+            }
+            while (cursor != null);
+            assertEquals(sorted(all, sort), seen, sort.name());
+        }
+    }
+
+    // What a Firebase query bounded at the cursor's value returns: orderBy the field, endAt or
+    // startAt the value (inclusive), limitToLast or limitToFirst, in no particular order.
+    private static List<HistoryEntry> serverWindow(List<HistoryEntry> all, HistorySort sort, String cursor,
+                                                   int count) {
+        String bound = HistoryPage.boundOf(cursor);
+        List<HistoryEntry> ascending = new ArrayList<>(all);
+        ascending.sort(sort.isDescending() ? sort.comparator().reversed() : sort.comparator());
+        List<HistoryEntry> inRange = new ArrayList<>();
+        for (HistoryEntry entry : ascending) {
+            int order = bound == null ? 0 : "timestamp".equals(sort.getField())
+                    ? Long.compare(entry.getTimestamp(), Long.parseLong(bound))
+                    : entry.getImageFilename().compareTo(bound);
+            if (sort.isDescending() ? order <= 0 : order >= 0) {
+                inRange.add(entry);
+            }
+        }
+        List<HistoryEntry> window = new ArrayList<>(sort.isDescending()
+                ? inRange.subList(Math.max(0, inRange.size() - count), inRange.size())
+                : inRange.subList(0, Math.min(count, inRange.size())));
+        Collections.shuffle(window, new Random(count));
+        return window;
+    }
+
+    @Test
+    void pagingOverBoundedServerWindowsSurvivesTies() {
+        List<HistoryEntry> all = sample();
+        for (HistorySort sort : HistorySort.values()) {
+            List<HistoryEntry> seen = new ArrayList<>();
+            String cursor = null;
+            do {
+                List<HistoryEntry> window = serverWindow(all, sort, cursor, 10 + 1 + HistoryPage.overlapOf(cursor));
+                window.sort(sort.comparator());
+                HistoryPage page = HistoryPage.following(window, sort, cursor, 10);
+                seen.addAll(page.getEntries());
+                cursor = page.getNextCursor();
+            }
+            while (cursor != null);
+            assertEquals(sorted(all, sort), seen, sort.name());
+        }
+    }
+
+    @Test
+    void lastPageHasNoCursorAndBadCursorsAreRejected() {
+        List<HistoryEntry> two = List.of(new HistoryEntry("-a", "a.png", 1), new HistoryEntry("-b", "b.png", 2));
+        HistoryPage page = HistoryPage.of(two, HistorySort.NEWEST, null, 2);
+        assertFalse(page.hasMore());
+        assertEquals("-b", page.getEntries().get(0).getId());
+        assertTrue(HistoryPage.of(List.of(), HistorySort.OLDEST, null, 5).getEntries().isEmpty());
+        assertNull(HistoryPage.boundOf(null));
+        assertEquals(0, HistoryPage.overlapOf(null));
+        assertThrows(IllegalArgumentException.class, () -> HistoryPage.of(two, HistorySort.NEWEST, "nonsense", 2));
+    }
+}
@@ -0,0 +1,191 @@
+package infrastructure;
+
+import com.google.gson.JsonParser;
+import domain.entity.HistoryEntry;
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shared.JsonCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FirebaseHistoryRepositoryTest {
+    private final Map<String, HistoryEntry> meta = new ConcurrentHashMap<>();
+    // The limit of every ordered query, in request order.
+    private final List<Integer> windows = new CopyOnWriteArrayList<>();
+    private MockWebServer server;
+    private FirebaseHistoryRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request.getRequestUrl());
+            }
+        });
+        server.start();
+        repository = new FirebaseHistoryRepository(server.url("/").toString(), 60);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    // A migrated user's historyMeta node, queried the way Firebase does: ordered by the child,
+    // ties by key, bounds inclusive.
+    private MockResponse respond(HttpUrl url) {
+        String path = url.encodedPath();
+        if (path.equals("/users/u/historySchema.json")) {
+            return new MockResponse().setBody("2");
+        }
+        if (!path.equals("/users/u/historyMeta.json")) {
+            return new MockResponse().setResponseCode(404);
+        }
+        List<HistoryEntry> entries = new ArrayList<>(meta.values());
+        String orderBy = url.queryParameter("orderBy");
+        if (orderBy == null) {
+            return new MockResponse().setBody(write(entries));
+        }
+        boolean byName = "nameKey".equals(JsonParser.parseString(orderBy).getAsString());
+        Comparator<HistoryEntry> order = byName
+                ? Comparator.comparing(FirebaseHistoryRepositoryTest::nameKey)
+                : HistorySort.OLDEST.comparator();
+        entries.sort(order);
+        String startAt = url.queryParameter("startAt");
+        String endAt = url.queryParameter("endAt");
+        entries.removeIf(entry -> startAt != null && compare(entry, byName, startAt) < 0
+                || endAt != null && compare(entry, byName, endAt) > 0);
+        String first = url.queryParameter("limitToFirst");
+        String last = url.queryParameter("limitToLast");
+        if (first == null && last == null) {
+            return new MockResponse().setBody(write(entries));
+        }
+        int limit = Integer.parseInt(first != null ? first : last);
+        windows.add(limit);
+        entries = first != null
+                ? entries.subList(0, Math.min(limit, entries.size()))
+                : entries.subList(Math.max(0, entries.size() - limit), entries.size());
+        return new MockResponse().setBody(write(entries));
+    }
+
+    private static int compare(HistoryEntry entry, boolean byName, String bound) {
+        return byName
+                ? nameKey(entry).compareTo(JsonParser.parseString(bound).getAsString())
+                : Long.compare(entry.getTimestamp(), Long.parseLong(bound));
+    }
+
+    private static String nameKey(HistoryEntry entry) {
+        return FirebaseHistoryRepository.nameKey(entry.getImageFilename(), entry.getId());
+    }
+
+    private static String write(List<HistoryEntry> entries) {
+        List<HistoryEntry> shuffled = new ArrayList<>(entries);
+        Collections.shuffle(shuffled);
+        Map<String, String> members = new LinkedHashMap<>();
+        for (HistoryEntry entry : shuffled) {
+            members.put(entry.getId(), JsonCodec.writeHistoryMeta(entry.getImageFilename(), entry.getTimestamp(),
+                    0, entry.getContentHash() == null ? "" : entry.getContentHash(), nameKey(entry)));
+        }
+        return JsonCodec.writeObject(members);
+    }
+
+    private void add(String id, String filename, long timestamp) {
+        meta.put(id, new HistoryEntry(id, filename, timestamp));
+    }
+
+    private List<HistoryEntry> listAll(HistorySort sort, int limit) throws IOException {
+        List<HistoryEntry> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            HistoryPage page = repository.getHistoryPage("u", sort, cursor, limit);
+            seen.addAll(page.getEntries());
+            cursor = page.getNextCursor();
+        }
+        while (cursor != null);
+        return seen;
+    }
+
+    @Test
+    void manyIdenticalNamesArePagedWithoutRefetchingTheRun() throws Exception {
+        for (int i = 0; i < 35; i++) {
+            add(String.format("-c%02d", i), "clipboard.png", 100 + i);
+        }
+        add("-a", "a.png", 1);
+        add("-z", "z.png", 2);
+        add("-B", "B.png", 3);
+        add("-C", "Clipboard.PNG", 4);
+        for (HistorySort sort : List.of(HistorySort.NAME_ASC, HistorySort.NAME_DESC)) {
+            windows.clear();
+            List<HistoryEntry> expected = new ArrayList<>(meta.values());
+            expected.sort(sort.comparator());
+            assertEquals(ids(expected), ids(listAll(sort, 10)), sort.name());
+            assertEquals(4, windows.size(), sort.name());
+            assertTrue(windows.stream().allMatch(size -> size <= 12), windows.toString());
+        }
+    }
+
+    @Test
+    void tieSavedBeforeTheCursorDoesNotEndTheListing() throws Exception {
+        add("-e1", "a.png", 5);
+        add("-e2", "b.png", 5);
+        add("-e3", "c.png", 5);
+        add("-e4", "d.png", 4);
+        add("-e5", "e.png", 3);
+        HistoryPage first = repository.getHistoryPage("u", HistorySort.NEWEST, null, 2);
+        assertEquals(List.of("-e3", "-e2"), ids(first.getEntries()));
+
+        // Listed before the cursor, so it pushes one more tie into the next query's window.
+        add("-e9", "f.png", 5);
+        List<HistoryEntry> rest = new ArrayList<>();
+        String cursor = first.getNextCursor();
+        while (cursor != null) {
+            HistoryPage page = repository.getHistoryPage("u", HistorySort.NEWEST, cursor, 2);
+            rest.addAll(page.getEntries());
+            cursor = page.getNextCursor();
+        }
+        assertEquals(List.of("-e1", "-e4", "-e5"), ids(rest));
+    }
+
+    @Test
+    void entriesSinceCarryTheContentHashOldestFirst() throws Exception {
+        meta.put("-b", new HistoryEntry("-b", "b.png", 30, "hash-b"));
+        meta.put("-a", new HistoryEntry("-a", "a.png", 20, "hash-a"));
+        meta.put("-c", new HistoryEntry("-c", "c.png", 10, "hash-c"));
+
+        List<HistoryEntry> since = repository.getHistoryEntriesSince("u", 20);
+        assertEquals(List.of("-a", "-b"), ids(since));
+        assertEquals("hash-a", since.get(0).getContentHash());
+        // Metadata only: nothing asked for the content node.
+        for (int i = server.getRequestCount(); i > 0; i--) {
+            assertFalse(server.takeRequest().getPath().contains("historyContent"));
+        }
+    }
+
+    private static List<String> ids(List<HistoryEntry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (HistoryEntry entry : entries) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,127 @@
+package infrastructure;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryMigrationTest {
+    private MockWebServer server;
+    private HistoryMigration migration;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        migration = new HistoryMigration(server.url("/").toString(), 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void copiesInKeyOrderedBatchesAndDeletesOldNodeLast() throws Exception {
+        ok(items("k1", "k2"));
+        ok("{}");
+        ok(items("k2", "k3", "k4"));
+        ok("{}");
+        ok(items("k4"));
+        ok("{}");
+        // k3 was deleted from the old node while copying.
+        ok("{\"k1\":true,\"k2\":true,\"k4\":true}");
+        ok("{}");
+        ok("null");
+
+        assertEquals(3, migration.migrate("u"));
+
+        List<RecordedRequest> requests = take(9);
+        assertEquals("GET", requests.get(0).getMethod());
+        assertEquals("2", requests.get(0).getRequestUrl().queryParameter("limitToFirst"));
+        assertNull(requests.get(0).getRequestUrl().queryParameter("startAt"));
+        String first = patchBody(requests.get(1));
+        assertTrue(first.contains("historyMeta/k1") && first.contains("historyContent/k2"), first);
+        assertEquals("\"k2\"", requests.get(2).getRequestUrl().queryParameter("startAt"));
+        assertEquals("3", requests.get(2).getRequestUrl().queryParameter("limitToFirst"));
+        String second = patchBody(requests.get(3));
+        assertFalse(second.contains("historyMeta/k2"), "the batch's first key was copied already");
+        assertTrue(second.contains("historyMeta/k3") && second.contains("historyMeta/k4"), second);
+        assertEquals("\"k4\"", requests.get(4).getRequestUrl().queryParameter("startAt"));
+        assertTrue(patchBody(requests.get(5)).contains("historySchema"));
+        assertEquals("true", requests.get(6).getRequestUrl().queryParameter("shallow"));
+        String reconcile = patchBody(requests.get(7));
+        assertTrue(reconcile.contains("historyMeta/k3") && !reconcile.contains("k4"), reconcile);
+        assertEquals("DELETE", requests.get(8).getMethod());
+        assertEquals("/users/u/history.json", requests.get(8).getRequestUrl().encodedPath());
+        assertEquals(9, server.getRequestCount());
+    }
+
+    @Test
+    void failedBatchLeavesOldNodeUnmarkedAndIsRedoneOnRetry() throws Exception {
+        ok(items("k1", "k2"));
+        ok("{}");
+        ok(items("k2", "k3"));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{\"error\":\"unavailable\"}"));
+
+        assertThrows(IOException.class, () -> migration.migrate("u"));
+        for (RecordedRequest request : take(4)) {
+            assertNotEquals("DELETE", request.getMethod());
+            assertFalse(request.getBody().readUtf8().contains("historySchema"));
+        }
+
+        ok(items("k1", "k2"));
+        ok("{}");
+        ok(items("k2", "k3"));
+        ok("{}");
+        ok("{}");
+        ok("{\"k1\":true,\"k2\":true,\"k3\":true}");
+        ok("null");
+
+        assertEquals(3, migration.migrate("u"));
+        List<RecordedRequest> retry = take(7);
+        assertTrue(patchBody(retry.get(1)).contains("historyMeta/k1"));
+        assertTrue(patchBody(retry.get(3)).contains("historyMeta/k3"));
+        assertTrue(patchBody(retry.get(4)).contains("historySchema"));
+        assertEquals("DELETE", retry.get(6).getMethod());
+        assertEquals(11, server.getRequestCount());
+    }
+
+    private void ok(String body) {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(body));
+    }
+
+    private List<RecordedRequest> take(int count) throws InterruptedException {
+        List<RecordedRequest> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(server.takeRequest());
+        }
+        return requests;
+    }
+
+    private static String patchBody(RecordedRequest request) {
+        assertEquals("PATCH", request.getMethod());
+        assertEquals("/users/u.json", request.getRequestUrl().encodedPath());
+        return request.getBody().readUtf8();
+    }
+
+    private static String items(String... keys) {
+        StringBuilder json = new StringBuilder("{");
+        for (String key : keys) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(key).append("\":{\"filename\":\"").append(key)
+                    .append(".png\",\"content\":\"text ").append(key).append("\",\"timestamp\":1}");
+        }
+        return json.append('}').toString();
+    }
+}
@@ -0,0 +1,278 @@
+package infrastructure;
+
+import domain.entity.HistoryEntry;
+import domain.entity.HistoryPage;
+import domain.entity.HistorySort;
+import domain.entity.TextRecord;
+import domain.port.HistorySyncRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import shared.ContentHash;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicatedHistoryRepositoryTest {
+    private static final long OVERLAP = 1000;
+
+    @TempDir
+    Path dir;
+
+    private final FakeRemote remote = new FakeRemote();
+
+    private ReplicatedHistoryRepository open(long syncIntervalMillis, long reconcileMillis) {
+        return new ReplicatedHistoryRepository(remote, dir, syncIntervalMillis, OVERLAP, reconcileMillis,
+                10, 0, 1, 2000);
+    }
+
+    private static List<String> ids(ReplicatedHistoryRepository repository) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (HistoryEntry entry : repository.getHistoryPage("u", HistorySort.OLDEST, null, 50).getEntries()) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void pullsStartAnOverlapBeforeTheWatermarkAndFetchOnlyChangedTexts() throws Exception {
+        remote.put("-a", "a.png", "alpha", 1000);
+        remote.put("-b", "b.png", "beta", 5000);
+        ReplicatedHistoryRepository repository = open(60_000, Long.MAX_VALUE);
+        try {
+            repository.sync("u");
+            // The first pull lists the whole history and leaves every text to be read.
+            assertEquals(List.of(-1L), remote.since);
+            assertTrue(remote.fetched.isEmpty());
+            assertEquals("alpha", repository.getHistoryItem("u", "-a"));
+            assertEquals("beta", repository.getHistoryItem("u", "-b"));
+            assertEquals(List.of("-a", "-b"), remote.fetched);
+
+            remote.put("-b", "b.png", "beta, edited", 5000);
+            remote.put("-c", "c.png", "gamma", 6000);
+            remote.fetched.clear();
+            repository.sync("u");
+            assertEquals(5000 - OVERLAP, (long) remote.since.get(1));
+            assertEquals(List.of("-b", "-c"), remote.fetched);
+            assertEquals("beta, edited", repository.getHistoryItem("u", "-b"));
+            assertEquals("gamma", repository.getHistoryItem("u", "-c"));
+            assertEquals(List.of("-b", "-c"), remote.fetched);
+
+            // Nothing changed: the overlap is listed again, but no text is.
+            repository.sync("u");
+            assertEquals(6000 - OVERLAP, (long) remote.since.get(2));
+            assertEquals(List.of("-b", "-c"), remote.fetched);
+        }
+        finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    void reconcileDropsWhatTheRemoteLostButNeverPendingIds() throws Exception {
+        remote.put("-a", "a.png", "alpha", 1);
+        remote.put("-b", "b.png", "beta", 2);
+        ReplicatedHistoryRepository repository = open(60_000, 0);
+        try {
+            repository.sync("u");
+            assertEquals(List.of("-a", "-b"), ids(repository));
+
+            remote.failing = true;
+            String local = repository.saveHistory("u", "x.png", "local", 3);
+            repository.deleteHistory("u", "-b");
+            remote.remove("-a");
+            repository.sync("u");
+
+            // -a is gone remotely; the unsent save is not there yet and the unsent delete still is.
+            assertEquals(List.of(local), ids(repository));
+            assertEquals("local", repository.getHistoryItem("u", local));
+        }
+        finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    void changesLeftInTheOutboxAreSentAfterReopening() throws Exception {
+        remote.failing = true;
+        ReplicatedHistoryRepository first = open(60_000, Long.MAX_VALUE);
+        String id = first.saveHistory("u", "x.png", "offline", 7);
+        first.close();
+        assertNull(remote.text(id));
+
+        remote.failing = false;
+        ReplicatedHistoryRepository second = open(60_000, Long.MAX_VALUE);
+        try {
+            // Opening the replica queues what it holds.
+            assertEquals("offline", second.getHistoryItem("u", id));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (remote.text(id) == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("offline", remote.text(id));
+        }
+        finally {
+            second.close();
+        }
+    }
+
+    @Test
+    void closeSendsTheOutboxAndWaitsForAPullBeforeClosingReplicas() throws Exception {
+        remote.put("-r", "r.png", "remote", 5);
+        ReplicatedHistoryRepository repository = open(0, Long.MAX_VALUE);
+        String id = repository.saveHistory("u", "y.png", "local", 6);
+        remote.pullStarted = new CountDownLatch(1);
+        remote.release = new CountDownLatch(1);
+        // Due at once: starts a pull in the background, which blocks in the remote.
+        repository.getHistoryPage("u", HistorySort.OLDEST, null, 10);
+        assertTrue(remote.pullStarted.await(5, TimeUnit.SECONDS));
+
+        Thread closer = new Thread(repository::close);
+        closer.start();
+        closer.join(200);
+        assertTrue(closer.isAlive());
+        remote.release.countDown();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+        assertEquals("local", remote.text(id));
+
+        ReplicatedHistoryRepository reopened = open(Long.MAX_VALUE, Long.MAX_VALUE);
+        try {
+            // The pull landed in the replica before it was closed.
+            assertEquals(List.of("-r", id), ids(reopened));
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    /** One user's history in memory; listings and fetches are recorded. */
+    private static final class FakeRemote implements HistorySyncRepository {
+        private final Map<String, TextRecord> records = new LinkedHashMap<>();
+        // -1 for a full listing, else the timestamp asked from.
+        private final List<Long> since = new ArrayList<>();
+        private final List<String> fetched = new ArrayList<>();
+        private volatile boolean failing;
+        private volatile CountDownLatch pullStarted;
+        private volatile CountDownLatch release;
+
+        synchronized void put(String id, String filename, String text, long timestamp) {
+            records.put(id, new TextRecord(id, filename, text, timestamp));
+        }
+
+        synchronized void remove(String id) {
+            records.remove(id);
+        }
+
+        synchronized String text(String id) {
+            TextRecord record = records.get(id);
+            return record == null ? null : record.getTextContent();
+        }
+
+        @Override
+        public String saveHistory(String username, String imageFilename, String textContent, long timestamp) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized void saveHistoryBatch(String username, List<TextRecord> batch) throws IOException {
+            if (failing) {
+                throw new IOException("offline");
+            }
+            for (TextRecord record : batch) {
+                records.put(record.getId(), record);
+            }
+        }
+
+        @Override
+        public HistoryPage getHistoryPage(String username, HistorySort sort, String cursor, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized String getHistoryItem(String username, String historyId) {
+            fetched.add(historyId);
+            return text(historyId);
+        }
+
+        @Override
+        public synchronized Map<String, String> getHistoryItems(String username, List<String> historyIds) {
+            Map<String, String> texts = new LinkedHashMap<>();
+            for (String id : historyIds) {
+                fetched.add(id);
+                if (records.containsKey(id)) {
+                    texts.put(id, text(id));
+                }
+            }
+            return texts;
+        }
+
+        @Override
+        public synchronized void deleteHistory(String username, String historyId) throws IOException {
+            if (failing) {
+                throw new IOException("offline");
+            }
+            records.remove(historyId);
+        }
+
+        @Override
+        public List<HistoryEntry> getHistoryEntries(String username) {
+            awaitRelease();
+            synchronized (this) {
+                since.add(-1L);
+                return entries(Long.MIN_VALUE);
+            }
+        }
+
+        @Override
+        public synchronized List<HistoryEntry> getHistoryEntriesSince(String username, long timestamp) {
+            since.add(timestamp);
+            return entries(timestamp);
+        }
+
+        @Override
+        public synchronized List<String> getHistoryIds(String username) {
+            return new ArrayList<>(records.keySet());
+        }
+
+        private List<HistoryEntry> entries(long from) {
+            List<HistoryEntry> entries = new ArrayList<>();
+            for (TextRecord record : records.values()) {
+                if (record.getTimestamp() >= from) {
+                    entries.add(new HistoryEntry(record.getId(), record.getImageFilename(), record.getTimestamp(),
+                            ContentHash.of(record.getTextContent().getBytes(StandardCharsets.UTF_8))));
+                }
+            }
+            entries.sort(Comparator.comparingLong(HistoryEntry::getTimestamp));
+            return entries;
+        }
+
+        // Like a response already on its way, the pull finishes even if its thread is interrupted.
+        private void awaitRelease() {
+            CountDownLatch started = pullStarted;
+            CountDownLatch released = release;
+            if (started == null) {
+                return;
+            }
+            started.countDown();
+            while (true) {
+                try {
+                    released.await();
+                    return;
+                }
+                catch (InterruptedException ex) {
+                    // Keep waiting.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package infrastructure;
+
+import org.junit.jupiter.api.Test;
+import shared.Backoff;
+import shared.PreparedImage;
+import shared.PriorityScheduler;
+import shared.PriorityScheduler.Priority;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientOCRProcessorTest {
+
+    @Test
+    void retriesUploadTheImagePreparedOnce() throws Exception {
+        FakeService service = new FakeService(new OCRHttpException(503), new OCRHttpException(429));
+        ResilientOCRProcessor processor = new ResilientOCRProcessor(service, 3, new Backoff(1, 1), 0);
+
+        assertEquals("text", processor.extractTextAsync(new File("a.png")).get(5, TimeUnit.SECONDS));
+        assertEquals(1, service.prepared.get());
+        assertEquals(3, service.uploads.size());
+        assertTrue(service.uploads.stream().allMatch(image -> image == service.uploads.get(0)));
+        assertEquals(2, processor.getRetries());
+    }
+
+    @Test
+    void backoffWaitsHoldNoSchedulerSlot() throws Exception {
+        FakeService service = new FakeService(new OCRHttpException(503));
+        PriorityScheduler scheduler = new PriorityScheduler(() -> 1, 0, 30_000);
+        ResilientOCRProcessor processor = new ResilientOCRProcessor(
+                new ScheduledOCRProcessor(service, scheduler, Priority.INTERACTIVE), 2, new Backoff(10_000, 10_000), 0);
+
+        CompletableFuture<String> backingOff = processor.extractTextAsync(new File("a.png"));
+        assertEquals("text", processor.extractTextAsync(new File("b.png")).get(5, TimeUnit.SECONDS));
+        assertFalse(backingOff.isDone());
+        assertEquals(0, scheduler.getInFlight(Priority.INTERACTIVE));
+        backingOff.cancel(true);
+    }
+
+    @Test
+    void apiErrorsAreNotRetried() {
+        FakeService service = new FakeService(new IllegalStateException("bad key"));
+        ResilientOCRProcessor processor = new ResilientOCRProcessor(service, 3, new Backoff(1, 1), 0);
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> processor.extractTextAsync(ByteBuffer.allocate(4), "a.png").get(5, TimeUnit.SECONDS));
+        assertEquals("bad key", error.getCause().getMessage());
+        assertEquals(1, service.uploads.size());
+        assertEquals(1, processor.getFatalFailures());
+    }
+
+    @Test
+    void cancellingWhilePreparingSendsNothing() {
+        FakeService service = new FakeService();
+        service.preparing = new CompletableFuture<>();
+        ResilientOCRProcessor processor = new ResilientOCRProcessor(service, 3, new Backoff(1, 1), 0);
+
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        CompletableFuture<String> result = processor.extractTextAsync(image, "a.png");
+        result.cancel(true);
+
+        assertTrue(service.preparing.isCancelled());
+        assertTrue(service.uploads.isEmpty());
+    }
+
+    @Test
+    void aRetryStartingAsTheCallIsCancelledIsCancelledToo() {
+        FakeService service = new FakeService(new OCRHttpException(503));
+        ResilientOCRProcessor processor = new ResilientOCRProcessor(service, 3, new Backoff(50, 50), 0);
+        AtomicReference<CompletableFuture<String>> result = new AtomicReference<>();
+        service.hanging = new CompletableFuture<>();
+        // Cancelled while the retry's upload is being started, before the call knows of it.
+        service.onHang = () -> result.get().cancel(true);
+
+        result.set(processor.extractTextAsync(ByteBuffer.allocate(4), "a.png"));
+
+        assertThrows(CancellationException.class, () -> service.hanging.get(5, TimeUnit.SECONDS));
+        assertEquals(2, service.uploads.size());
+    }
+
+    @Test
+    void timeoutsAreToldApartFromInterrupts() {
+        assertTrue(OCRSpaceService.isTimeout(new SocketTimeoutException("Read timed out")));
+        assertTrue(OCRSpaceService.isTimeout(new InterruptedIOException("timeout")));
+        assertFalse(OCRSpaceService.isTimeout(new InterruptedIOException()));
+        assertTrue(ResilientOCRProcessor.isRetryable(new InterruptedIOException("timeout")));
+        assertFalse(ResilientOCRProcessor.isRetryable(new InterruptedIOException("interrupted")));
+    }
+
+    /** Fails the first uploads with the given errors, then answers "text", or hangs if told to. */
+    private static final class FakeService implements PreparingOCRProcessor {
+        private final List<Exception> failures;
+        private final AtomicInteger prepared = new AtomicInteger();
+        private final List<PreparedImage> uploads = new ArrayList<>();
+        private CompletableFuture<PreparedImage> preparing;
+        private volatile CompletableFuture<String> hanging;
+        private volatile Runnable onHang;
+
+        private FakeService(Exception... failures) {
+            this.failures = new ArrayList<>(List.of(failures));
+        }
+
+        @Override
+        public String extractTextFromImage(File imageFile) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<PreparedImage> prepareAsync(File imageFile) {
+            return prepare(imageFile.getName());
+        }
+
+        @Override
+        public CompletableFuture<PreparedImage> prepareAsync(ByteBuffer imageData, String filename) {
+            return prepare(filename);
+        }
+
+        @Override
+        public CompletableFuture<PreparedImage> prepareAsync(BufferedImage image, String filename) {
+            return prepare(filename);
+        }
+
+        @Override
+        public synchronized CompletableFuture<String> extractTextAsync(PreparedImage image) {
+            uploads.add(image);
+            if (!failures.isEmpty()) {
+                return CompletableFuture.failedFuture(failures.remove(0));
+            }
+            if (hanging != null) {
+                onHang.run();
+                return hanging;
+            }
+            return CompletableFuture.completedFuture("text");
+        }
+
+        private CompletableFuture<PreparedImage> prepare(String filename) {
+            prepared.incrementAndGet();
+            if (preparing != null) {
+                return preparing;
+            }
+            return CompletableFuture.completedFuture(new PreparedImage(new byte[4], "image/png", filename, 4));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shared.AdaptiveConcurrencyLimiter.Permit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimiter(initial, min, max, 0.5, 1000, now::get);
+    }
+
+    @Test
+    void queuesCallersBeyondTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10);
+        Permit a = limiter.acquire().join();
+        limiter.acquire().join();
+        CompletableFuture<Permit> third = limiter.acquire();
+
+        assertFalse(third.isDone());
+        assertEquals(1, limiter.getQueued());
+        a.ignore();
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void growsWhileHealthyAndHalvesOncePerWindowOnOverload() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 8);
+        for (int round = 0; round < 20; round++) {
+            List<Permit> permits = new ArrayList<>();
+            for (int i = 0; i < limiter.getLimit(); i++) {
+                permits.add(limiter.acquire().join());
+            }
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+            permits.forEach(Permit::success);
+        }
+        assertEquals(8, limiter.getLimit());
+
+        List<Permit> window = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            window.add(limiter.acquire().join());
+        }
+        now.addAndGet(1);
+        window.forEach(Permit::dropped);
+        assertEquals(4, limiter.getLimit());
+        assertEquals(8, limiter.getDrops());
+
+        now.addAndGet(1);
+        Permit later = limiter.acquire().join();
+        now.addAndGet(1);
+        later.dropped();
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void slowCallsDoNotGrowTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 8);
+        for (int i = 0; i < 10; i++) {
+            Permit permit = limiter.acquire().join();
+            now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+            permit.success();
+        }
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void cancelledWaiterGivesUpItsPlaceAndReleaseIsIdempotent() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1);
+        Permit held = limiter.acquire().join();
+        CompletableFuture<Permit> waiter = limiter.acquire();
+        waiter.cancel(true);
+        assertEquals(0, limiter.getQueued());
+
+        held.ignore();
+        held.ignore();
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(limiter.acquire().isDone());
+    }
+
+    @Test
+    void rejectsBadBounds() {
+        assertThrows(IllegalArgumentException.class, () -> limiter(1, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveConcurrencyLimiter(1, 1, 1, 1.0, 10));
+    }
+}
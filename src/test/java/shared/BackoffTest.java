@@ -0,0 +1,30 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackoffTest {
+
+    @Test
+    void delaysGrowExponentiallyWithinJitterBoundsAndCap() {
+        Backoff backoff = new Backoff(100, 1000);
+        assertEquals(100, backoff.ceilingMillis(0));
+        assertEquals(400, backoff.ceilingMillis(2));
+        assertEquals(1000, backoff.ceilingMillis(10));
+        assertEquals(1000, backoff.ceilingMillis(Integer.MAX_VALUE));
+
+        for (int retry = 0; retry < 6; retry++) {
+            long ceiling = backoff.ceilingMillis(retry);
+            for (int i = 0; i < 50; i++) {
+                long delay = backoff.delayMillis(retry);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling, "retry " + retry + ": " + delay);
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvertedBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new Backoff(10, 5));
+    }
+}
@@ -24,4 +24,11 @@ class ConfigTest {
         assertNotNull(Config.getFirebaseApiKey());
         assertTrue(Config.getFirebaseRealTmeDBURL().contains("firebaseio.com"));
     }
+
+    @Test
+    void numericGettersFallBackWhenMissing() {
+        assertEquals(7, Config.getInt("non.existent.int", 7));
+        assertEquals(9L, Config.getLong("non.existent.long", 9L));
+        assertFalse(Config.getDataDir().isEmpty());
+    }
 }
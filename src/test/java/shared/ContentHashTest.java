@@ -0,0 +1,46 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentHashTest {
+
+    @Test
+    void knownDigestForBytes() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                ContentHash.of("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void fileBytesAndBufferAgree(@TempDir Path dir) throws Exception {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        Path file = dir.resolve("img.bin");
+        Files.write(file, data);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        assertEquals(ContentHash.of(data), ContentHash.of(file));
+        assertEquals(ContentHash.of(data), ContentHash.of(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void decodedImagesHashByPixels() {
+        BufferedImage a = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        BufferedImage b = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        assertEquals(ContentHash.of(a), ContentHash.of(b));
+        b.setRGB(1, 1, 0xFFFFFF);
+        assertNotEquals(ContentHash.of(a), ContentHash.of(b));
+        assertNotEquals(ContentHash.of(a), ContentHash.of(new BufferedImage(2, 3, BufferedImage.TYPE_INT_RGB)));
+    }
+}
@@ -2,6 +2,7 @@ package shared;
 
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -40,6 +41,24 @@ class FirebaseUtilTest {
         assertEquals("data", resp);
     }
 
+    @Test
+    void streamingGetHandsBodyToReader() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"content\":\"hi\"}"));
+        String url = server.url("/get").toString();
+        String content = FirebaseUtil.get(url, body -> JsonCodec.readStringField(body, "content"));
+        assertEquals("hi", content);
+    }
+
+    @Test
+    void patchSendsBodyWithPatchMethod() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"a\":1}"));
+        String url = server.url("/patch").toString();
+        assertEquals("{\"a\":1}", FirebaseUtil.patch(url, "{\"a\":1}"));
+        RecordedRequest request = server.takeRequest();
+        assertEquals("PATCH", request.getMethod());
+        assertEquals("{\"a\":1}", request.getBody().readUtf8());
+    }
+
     @Test
     void deleteReturnsBodyOn200() throws Exception {
         server.enqueue(new MockResponse().setResponseCode(200).setBody("bye"));
@@ -54,4 +73,17 @@ class FirebaseUtilTest {
         String url = server.url("/post").toString();
         assertThrows(IOException.class, () -> FirebaseUtil.post(url, "{}"));
     }
+
+    @Test
+    void failureCarriesStatusAndErrorBody() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"error\":\"Index not defined, add \\\".indexOn\\\": \\\"timestamp\\\"\"}"));
+        String url = server.url("/get").toString();
+        FirebaseHttpException ex = assertThrows(FirebaseHttpException.class, () -> FirebaseUtil.get(url));
+        assertEquals(400, ex.getStatusCode());
+        assertTrue(ex.isIndexNotDefined());
+
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"Invalid path\"}"));
+        assertFalse(assertThrows(FirebaseHttpException.class, () -> FirebaseUtil.get(url)).isIndexNotDefined());
+    }
 }
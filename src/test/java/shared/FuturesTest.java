@@ -0,0 +1,94 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuturesTest {
+
+    @Test
+    void supplyAsyncCompletesWithValueOrCheckedException() {
+        assertEquals("ok", Futures.supplyAsync(() -> "ok", Runnable::run).join());
+
+        CompletableFuture<String> failed = Futures.supplyAsync(() -> {
+            throw new IOException("io");
+        }, Runnable::run);
+        ExecutionException ex = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(ex.getCause() instanceof IOException);
+    }
+
+    @Test
+    void supplyAsyncReportsRejectedExecution() {
+        CompletableFuture<String> future = Futures.supplyAsync(() -> "x", task -> {
+            throw new IllegalStateException("rejected");
+        });
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    void cancellingOuterCancelsInner() {
+        CompletableFuture<String> outer = new CompletableFuture<>();
+        CompletableFuture<String> inner = new CompletableFuture<>();
+        Futures.propagateCancel(outer, inner);
+        outer.cancel(true);
+        assertTrue(inner.isCancelled());
+    }
+
+    @Test
+    void forwardCopiesValueAndUnwrappedError() {
+        CompletableFuture<String> target = new CompletableFuture<>();
+        Futures.forward(CompletableFuture.completedFuture("v"), target);
+        assertEquals("v", target.join());
+
+        CompletableFuture<String> failedTarget = new CompletableFuture<>();
+        Futures.forward(CompletableFuture.failedFuture(new CompletionException(new IOException("x"))), failedTarget);
+        ExecutionException ex = assertThrows(ExecutionException.class, failedTarget::get);
+        assertTrue(ex.getCause() instanceof IOException);
+    }
+
+    @Test
+    void asExceptionUnwrapsAndWrapsThrowables() {
+        IOException io = new IOException("x");
+        assertSame(io, Futures.asException(new CompletionException(io)));
+        assertThrows(AssertionError.class, () -> Futures.asException(new AssertionError("boom")));
+        assertNotNull(Futures.asException(new Throwable("odd")));
+    }
+
+    @Test
+    void cancellingSupplyAsyncInterruptsTheRunningTask() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch interrupted = new CountDownLatch(1);
+            CompletableFuture<String> future = Futures.supplyAsync(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                }
+                catch (InterruptedException ex) {
+                    interrupted.countDown();
+                    throw ex;
+                }
+                return "late";
+            }, pool);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            future.cancel(true);
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+            assertEquals("next", pool.submit(() -> Thread.currentThread().isInterrupted() ? "leaked" : "next")
+                    .get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+}
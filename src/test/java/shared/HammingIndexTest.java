@@ -0,0 +1,57 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HammingIndexTest {
+
+    @Test
+    void findsExactlyWhatALinearScanFinds() {
+        Random random = new Random(3);
+        HammingIndex<Integer> index = new HammingIndex<>();
+        long[] keys = new long[5000];
+        for (int i = 0; i < keys.length; i++) {
+            // Every fourth key is a near copy of an earlier one, like re-taken screenshots.
+            keys[i] = i % 4 == 3 ? keys[i - 1] ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64)) : random.nextLong();
+            index.add(keys[i], i);
+        }
+        assertEquals(5000, index.size());
+
+        for (int radius : new int[] {0, 2, 3, 9, 20}) {
+            for (int q = 0; q < 50; q++) {
+                long query = keys[random.nextInt(keys.length)] ^ (1L << random.nextInt(64));
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < keys.length; i++) {
+                    if (PerceptualHash.distance(keys[i], query) <= radius) {
+                        expected.add(i);
+                    }
+                }
+                List<HammingIndex.Match<Integer>> matches = index.search(query, radius);
+                List<Integer> found = new ArrayList<>();
+                for (int m = 0; m < matches.size(); m++) {
+                    found.add(matches.get(m).getValue());
+                    assertEquals(PerceptualHash.distance(matches.get(m).getKey(), query), matches.get(m).getDistance());
+                    assertTrue(m == 0 || matches.get(m - 1).getDistance() <= matches.get(m).getDistance());
+                }
+                found.sort(null);
+                assertEquals(expected, found, "radius " + radius);
+            }
+        }
+    }
+
+    @Test
+    void equalKeysAreKeptAndEmptyIndexFindsNothing() {
+        HammingIndex<String> index = new HammingIndex<>();
+        assertTrue(index.search(42, 64).isEmpty());
+        index.add(42, "a");
+        index.add(42, "b");
+
+        assertEquals(2, index.search(42, 0).size());
+        assertTrue(index.search(42, -1).isEmpty());
+    }
+}
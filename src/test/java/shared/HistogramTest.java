@@ -0,0 +1,62 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void smallValuesAreExactAndLargeOnesWithinABucket() {
+        Histogram histogram = new Histogram();
+        assertEquals(-1, histogram.percentile(50));
+        assertEquals(-1, histogram.getMax());
+
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getSum());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(1000, histogram.percentile(100));
+        assertWithinBucket(500, histogram.percentile(50));
+        assertWithinBucket(990, histogram.percentile(99));
+    }
+
+    @Test
+    void bucketsCoverTheWholeRange() {
+        for (long value : new long[] {0, 7, 8, 9, 1023, 1024, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucket(value);
+            assertTrue(Histogram.upperBound(bucket) >= value, "value " + value);
+            assertTrue(bucket == 0 || Histogram.upperBound(bucket - 1) < value, "value " + value);
+        }
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() {
+        Histogram histogram = new Histogram();
+        CompletableFuture<?>[] writers = new CompletableFuture<?>[4];
+        for (int w = 0; w < writers.length; w++) {
+            writers[w] = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        CompletableFuture.allOf(writers).join();
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(9_999, histogram.getMax());
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.125, "expected ~" + expected + " but was " + actual);
+    }
+}
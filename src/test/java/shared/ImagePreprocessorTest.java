@@ -0,0 +1,164 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePreprocessorTest {
+
+    @Test
+    void smallUprightImagePassesThroughUntouched() throws Exception {
+        byte[] png = ImagePreprocessor.encodePng(new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB));
+        PreparedImage prepared = new ImagePreprocessor(1_000_000, 300, 6000).prepare(png, "a.png");
+        assertEquals(ByteBuffer.wrap(png), prepared.getData());
+        assertEquals("a.png", prepared.getFilename());
+        assertEquals(prepared.getOriginalBytes(), prepared.getUploadBytes());
+    }
+
+    @Test
+    void noisyImageIsShrunkUnderBudgetAsGrayscale() throws Exception {
+        BufferedImage noisy = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < noisy.getHeight(); y++) {
+            for (int x = 0; x < noisy.getWidth(); x++) {
+                noisy.setRGB(x, y, random.nextInt());
+            }
+        }
+        byte[] png = ImagePreprocessor.encodePng(noisy);
+        long budget = 150_000;
+
+        PreparedImage prepared = new ImagePreprocessor(budget, 300, 6000).prepare(png, "scan.png");
+
+        assertTrue(prepared.getUploadBytes() <= budget, "upload " + prepared.getUploadBytes());
+        assertTrue(prepared.getOriginalBytes() > prepared.getUploadBytes());
+        BufferedImage decoded = decode(prepared);
+        assertEquals(1, decoded.getColorModel().getNumComponents());
+        assertEquals("image/jpeg", prepared.getMediaType());
+        assertEquals("scan.jpg", prepared.getFilename());
+    }
+
+    @Test
+    void longestEdgeIsCapped() throws Exception {
+        BufferedImage wide = new BufferedImage(3000, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = wide.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, 3000, 1000);
+        g2.dispose();
+
+        PreparedImage prepared = new ImagePreprocessor(10_000_000, 300, 1500)
+                .prepare(ImagePreprocessor.encodePng(wide), "wide.png");
+
+        BufferedImage decoded = decode(prepared);
+        assertEquals(1500, decoded.getWidth());
+        assertEquals(500, decoded.getHeight());
+    }
+
+    @Test
+    void disabledBudgetPassesThrough() throws Exception {
+        byte[] data = {1, 2, 3};
+        PreparedImage prepared = new ImagePreprocessor(0, 300, 6000).prepare(data, "x.bin");
+        assertEquals(ByteBuffer.wrap(data), prepared.getData());
+    }
+
+    @Test
+    void undecodableBytesPassThrough() throws Exception {
+        byte[] data = "%PDF-1.4 not an image".getBytes();
+        assertEquals(ByteBuffer.wrap(data), new ImagePreprocessor(5, 300, 6000).prepare(data, "doc.pdf").getData());
+    }
+
+    @Test
+    void readsExifOrientationFromBigAndLittleEndianApp1() {
+        assertEquals(6, ImagePreprocessor.readExifOrientation(jpegWithOrientation(6, false)));
+        assertEquals(8, ImagePreprocessor.readExifOrientation(jpegWithOrientation(8, true)));
+        assertEquals(1, ImagePreprocessor.readExifOrientation(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+    }
+
+    @Test
+    void orientationSixRotatesClockwise() {
+        BufferedImage source = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        source.setRGB(0, 0, Color.WHITE.getRGB());
+
+        BufferedImage upright = ImagePreprocessor.toGray(source, 6, 1.0);
+
+        assertEquals(2, upright.getWidth());
+        assertEquals(4, upright.getHeight());
+        // Top-left pixel of the stored image ends up top-right after a clockwise turn.
+        assertEquals(255, upright.getRaster().getSample(1, 0, 0));
+        assertEquals(0, upright.getRaster().getSample(0, 3, 0));
+    }
+
+    @Test
+    void jpegQualityChangesSize() throws Exception {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_BYTE_GRAY);
+        Random random = new Random(1);
+        for (int i = 0; i < 4000; i++) {
+            image.getRaster().setSample(random.nextInt(200), random.nextInt(200), 0, 255);
+        }
+        assertTrue(ImagePreprocessor.encodeJpeg(image, 0.9f).length
+                > ImagePreprocessor.encodeJpeg(image, 0.3f).length);
+    }
+
+    @Test
+    void directBufferIsReadWithoutMovingPosition() throws Exception {
+        byte[] png = ImagePreprocessor.encodePng(new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB));
+        ByteBuffer direct = ByteBuffer.allocateDirect(png.length);
+        direct.put(png).flip();
+
+        PreparedImage prepared = new ImagePreprocessor(10, 300, 200).prepare(direct, "d.png");
+
+        assertEquals(0, direct.position());
+        assertEquals(200, decode(prepared).getWidth());
+    }
+
+    @Test
+    void decodedImageIsEncodedOnceInGray() throws Exception {
+        BufferedImage clip = new BufferedImage(120, 80, BufferedImage.TYPE_INT_ARGB);
+
+        PreparedImage prepared = new ImagePreprocessor(1_000_000, 300, 6000).prepare(clip, "clipboard.png");
+
+        assertEquals("image/png", prepared.getMediaType());
+        assertEquals(120L * 80 * 3, prepared.getOriginalBytes());
+        assertEquals(1, decode(prepared).getColorModel().getNumComponents());
+
+        PreparedImage unbounded = new ImagePreprocessor(0, 300, 6000).prepare(clip, "clip");
+        assertEquals("clip.png", unbounded.getFilename());
+    }
+
+    private static BufferedImage decode(PreparedImage prepared) throws Exception {
+        ByteBuffer data = prepared.getData();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] jpegWithOrientation(int orientation, boolean littleEndian) {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        if (littleEndian) {
+            tiff.writeBytes(new byte[]{'I', 'I', 42, 0, 8, 0, 0, 0});
+            tiff.writeBytes(new byte[]{1, 0});
+            tiff.writeBytes(new byte[]{0x12, 0x01, 3, 0, 1, 0, 0, 0, (byte) orientation, 0, 0, 0});
+        }
+        else {
+            tiff.writeBytes(new byte[]{'M', 'M', 0, 42, 0, 0, 0, 8});
+            tiff.writeBytes(new byte[]{0, 1});
+            tiff.writeBytes(new byte[]{0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0});
+        }
+        byte[] body = tiff.toByteArray();
+        int length = 2 + 6 + body.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1,
+                (byte) (length >> 8), (byte) length, 'E', 'x', 'i', 'f', 0, 0});
+        out.writeBytes(body);
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2});
+        return out.toByteArray();
+    }
+}
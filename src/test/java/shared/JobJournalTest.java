@@ -0,0 +1,113 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resumesUnfinishedJobsWithInterruptedOnesFirst() throws IOException {
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            journal.enqueueAll(List.of("a", "b", "c", "d"));
+            journal.complete(journal.poll());
+            journal.poll();
+            assertEquals(2, journal.queued());
+            assertEquals(1, journal.inFlight());
+        }
+
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            assertEquals(List.of("b", "c", "d"), drain(journal));
+        }
+    }
+
+    @Test
+    void crashWithoutCloseLosesNothingAndTornTailIsCut() throws IOException {
+        JobJournal crashed = JobJournal.open(dir, true);
+        crashed.enqueueAll(List.of("a", "b", "c"));
+        crashed.complete(crashed.poll());
+        // Simulate dying halfway through the next record.
+        Files.write(dir.resolve(JobJournal.LOG_FILE), new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            assertEquals(2, journal.queued());
+            journal.enqueue("d");
+        }
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            assertEquals(List.of("b", "c", "d"), drain(journal));
+        }
+    }
+
+    @Test
+    void checkpointKeepsWhichJobsWereRunning() throws IOException {
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            journal.enqueueAll(List.of("a", "b", "c"));
+            JobJournal.Job a = journal.poll();
+            journal.poll();
+            journal.requeue(a);
+            journal.checkpoint();
+        }
+        assertEquals(0, Files.size(dir.resolve(JobJournal.LOG_FILE)));
+
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            assertEquals(List.of("b", "a", "c"), drain(journal));
+        }
+    }
+
+    @Test
+    void requeuedJobsRunNext() throws IOException {
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            journal.enqueueAll(List.of("a", "b"));
+            JobJournal.Job a = journal.poll();
+            journal.requeue(a);
+            journal.requeue(a);
+
+            assertEquals(2, journal.queued());
+            assertEquals("a", journal.poll().getPayload());
+        }
+    }
+
+    @Test
+    void compactsTheLogAndKeepsIdsIncreasing() throws IOException {
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            payloads.add("scan-" + i + ".png");
+        }
+        long lastId;
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            lastId = journal.enqueueAll(payloads).get(4999).getId();
+            for (int i = 0; i < 4990; i++) {
+                journal.complete(journal.poll());
+            }
+            assertTrue(Files.size(dir.resolve(JobJournal.LOG_FILE)) < 100_000,
+                    "log was not compacted: " + Files.size(dir.resolve(JobJournal.LOG_FILE)));
+        }
+        assertEquals(0, Files.size(dir.resolve(JobJournal.LOG_FILE)));
+
+        try (JobJournal journal = JobJournal.open(dir, false)) {
+            assertEquals(10, journal.queued());
+            assertEquals("scan-4990.png", journal.poll().getPayload());
+            assertTrue(journal.enqueue("new.png").getId() > lastId);
+        }
+    }
+
+    private static List<String> drain(JobJournal journal) throws IOException {
+        List<String> payloads = new ArrayList<>();
+        for (JobJournal.Job job = journal.poll(); job != null; job = journal.poll()) {
+            payloads.add(job.getPayload());
+            journal.complete(job);
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,174 @@
+package shared;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throughput and allocation of the streaming decoders in {@link JsonCodec} against the tree
+ * binding they replaced (the whole body as a String, then a {@link JsonObject}), on synthetic
+ * bodies shaped like the real ones. Not a unit test; run it with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=shared.JsonCodecBenchmark -Dexec.classpathScope=test}.
+ * Optional arguments: history entries, content bytes per entry, OCR overlay words, measured runs.
+ */
+public final class JsonCodecBenchmark {
+    private static final int WARMUP_RUNS = 20;
+
+    private JsonCodecBenchmark() {
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        long decode(String body) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int contentBytes = args.length > 1 ? Integer.parseInt(args[1]) : 5 * 1024;
+        int overlayWords = args.length > 2 ? Integer.parseInt(args[2]) : 12_000;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+
+        String history = historyBody(entries, contentBytes);
+        compare("history, " + entries + " entries x " + contentBytes + " B content", history, runs,
+                JsonCodecBenchmark::historyTree, JsonCodecBenchmark::historyStreaming);
+
+        String ocr = ocrBody(overlayWords);
+        compare("OCR response, " + overlayWords + "-word overlay", ocr, runs,
+                JsonCodecBenchmark::ocrTree, JsonCodecBenchmark::ocrStreaming);
+    }
+
+    private static void compare(String name, String body, int runs, Decoder tree, Decoder streaming)
+            throws IOException {
+        double megabytes = body.getBytes(StandardCharsets.UTF_8).length / 1e6;
+        System.out.printf(Locale.ROOT, "%s (%.2f MB):%n", name, megabytes);
+        report("  tree     ", body, megabytes, runs, tree);
+        report("  streaming", body, megabytes, runs, streaming);
+    }
+
+    private static void report(String label, String body, double megabytes, int runs, Decoder decoder)
+            throws IOException {
+        long check = 0;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            check += decoder.decode(body);
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            check += decoder.decode(body);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double allocated = (threads.getThreadAllocatedBytes(thread) - allocatedBefore) / 1e6 / runs;
+        System.out.printf(Locale.ROOT, "%s %7.1f MB/s %8.1f MB allocated per op  (check %d)%n",
+                label, megabytes * runs / seconds, allocated, check);
+    }
+
+    // Both paths start from a Reader over the body, as the response's charStream is; the old
+    // one buffered it into a String first, as body.string() did.
+    private static long historyTree(String body) throws IOException {
+        JsonObject root = JsonParser.parseString(readFully(new StringReader(body))).getAsJsonObject();
+        long sum = 0;
+        for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
+            JsonObject item = entry.getValue().getAsJsonObject();
+            sum += item.get("filename").getAsString().length() + item.get("timestamp").getAsLong();
+        }
+        return sum;
+    }
+
+    private static long historyStreaming(String body) throws IOException {
+        long[] sum = new long[1];
+        JsonCodec.readHistoryIndex(new StringReader(body),
+                (key, filename, timestamp) -> sum[0] += filename.length() + timestamp);
+        return sum[0];
+    }
+
+    private static long ocrTree(String body) throws IOException {
+        JsonObject root = JsonParser.parseString(readFully(new StringReader(body))).getAsJsonObject();
+        long sum = root.get("IsErroredOnProcessing").getAsBoolean() ? 1 : 0;
+        for (JsonElement result : root.getAsJsonArray("ParsedResults")) {
+            sum += result.getAsJsonObject().get("ParsedText").getAsString().length();
+        }
+        return sum;
+    }
+
+    private static long ocrStreaming(String body) throws IOException {
+        JsonCodec.OcrResponse response = JsonCodec.readOcrResponse(new StringReader(body));
+        return (response.isErrored() ? 1 : 0) + response.getParsedText().length();
+    }
+
+    private static String readFully(Reader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+
+    private static String historyBody(int entries, int contentBytes) {
+        StringBuilder content = new StringBuilder(contentBytes);
+        while (content.length() < contentBytes) {
+            content.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+        }
+        content.setLength(contentBytes);
+        JsonObject root = new JsonObject();
+        for (int i = 0; i < entries; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("filename", "scan-" + i + ".png");
+            item.addProperty("content", content.toString());
+            item.addProperty("timestamp", 1_700_000_000_000L + i);
+            root.add(String.format(Locale.ROOT, "-N%018d", i), item);
+        }
+        return root.toString();
+    }
+
+    private static String ocrBody(int overlayWords) {
+        JsonArray words = new JsonArray();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < overlayWords; i++) {
+            String word = "word" + i;
+            JsonObject overlay = new JsonObject();
+            overlay.addProperty("WordText", word);
+            overlay.addProperty("Left", i % 800);
+            overlay.addProperty("Top", i / 800 * 20);
+            overlay.addProperty("Height", 18);
+            overlay.addProperty("Width", 60);
+            words.add(overlay);
+            text.append(word).append(i % 12 == 11 ? "\n" : " ");
+        }
+        JsonObject line = new JsonObject();
+        line.add("Words", words);
+        line.addProperty("MaxHeight", 18);
+        line.addProperty("MinTop", 0);
+        JsonArray lines = new JsonArray();
+        lines.add(line);
+        JsonObject textOverlay = new JsonObject();
+        textOverlay.add("Lines", lines);
+        textOverlay.addProperty("HasOverlay", true);
+        JsonObject result = new JsonObject();
+        result.add("TextOverlay", textOverlay);
+        result.addProperty("FileParseExitCode", 1);
+        result.addProperty("ParsedText", text.toString());
+        result.addProperty("ErrorMessage", "");
+        JsonArray results = new JsonArray();
+        results.add(result);
+        JsonObject root = new JsonObject();
+        root.add("ParsedResults", results);
+        root.addProperty("OCRExitCode", 1);
+        root.addProperty("IsErroredOnProcessing", false);
+        root.addProperty("ProcessingTimeInMilliseconds", "1234");
+        return root.toString();
+    }
+}
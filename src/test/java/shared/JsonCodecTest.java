@@ -0,0 +1,153 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonCodecTest {
+
+    @Test
+    void ocrResponseJoinsPagesAndSkipsOverlay() throws Exception {
+        String json = "{\"ParsedResults\":["
+                + "{\"TextOverlay\":{\"Lines\":[{\"Words\":[{\"WordText\":\"x\",\"Left\":1}]}]},\"ParsedText\":\"page one\"},"
+                + "{\"FileParseExitCode\":1,\"ParsedText\":\"page two\"}],"
+                + "\"OCRExitCode\":1,\"IsErroredOnProcessing\":false,\"ProcessingTimeInMilliseconds\":\"312\"}";
+
+        JsonCodec.OcrResponse response = JsonCodec.readOcrResponse(new StringReader(json));
+
+        assertFalse(response.isErrored());
+        assertNull(response.getErrorMessage());
+        assertEquals("page one\npage two", response.getParsedText());
+        assertEquals(312, response.getProcessingTimeMillis());
+    }
+
+    @Test
+    void ocrErrorMessagesMayBeStringOrArray() throws Exception {
+        JsonCodec.OcrResponse array = JsonCodec.readOcrResponse(new StringReader(
+                "{\"IsErroredOnProcessing\":true,\"ErrorMessage\":[\"E101\",\"Timed out\"]}"));
+        assertTrue(array.isErrored());
+        assertEquals("E101; Timed out", array.getErrorMessage());
+        assertNull(array.getParsedText());
+
+        JsonCodec.OcrResponse single = JsonCodec.readOcrResponse(new StringReader(
+                "{\"IsErroredOnProcessing\":\"true\",\"ErrorMessage\":\"Invalid key\"}"));
+        assertTrue(single.isErrored());
+        assertEquals("Invalid key", single.getErrorMessage());
+        assertEquals(-1, single.getProcessingTimeMillis());
+    }
+
+    @Test
+    void historyIndexReadsMetadataAndToleratesOddValues() throws Exception {
+        String json = "{\"-a\":{\"filename\":\"scan.png\",\"content\":\"" + "z".repeat(10_000) + "\",\"timestamp\":1700000000000},"
+                + "\"-b\":{\"content\":\"c\",\"timestamp\":\"1700000000001\"},"
+                + "\"-c\":{\"filename\":null,\"timestamp\":1.7E12,\"extra\":{\"nested\":[1,2]}},"
+                + "\"-d\":\"not an entry\"}";
+        List<String> entries = new ArrayList<>();
+
+        JsonCodec.readHistoryIndex(new StringReader(json), (key, filename, timestamp) ->
+                entries.add(key + "|" + filename + "|" + timestamp));
+
+        assertEquals(List.of("-a|scan.png|1700000000000", "-b|unknown|1700000000001", "-c|unknown|1700000000000"),
+                entries);
+    }
+
+    @Test
+    void historyItemsIncludeContentAndKeysListNames() throws Exception {
+        String json = "{\"-a\":{\"filename\":\"scan.png\",\"content\":\"hello\\nworld\",\"timestamp\":5},"
+                + "\"-b\":{\"content\":7,\"timestamp\":6},\"-c\":true}";
+        List<String> entries = new ArrayList<>();
+
+        JsonCodec.readHistoryItems(new StringReader(json), (key, filename, content, timestamp) ->
+                entries.add(key + "|" + filename + "|" + content + "|" + timestamp));
+
+        assertEquals(List.of("-a|scan.png|hello\nworld|5", "-b|unknown||6"), entries);
+        assertEquals(List.of("-a", "-b", "-c"), JsonCodec.readKeys(new StringReader(json)));
+        assertEquals(List.of(), JsonCodec.readKeys(new StringReader("null")));
+    }
+
+    @Test
+    void emptyOrNullBodiesMeanNothing() throws Exception {
+        List<String> entries = new ArrayList<>();
+        JsonCodec.readHistoryIndex(new StringReader("null"), (k, f, t) -> entries.add(k));
+        JsonCodec.readHistoryIndex(new StringReader(""), (k, f, t) -> entries.add(k));
+        assertTrue(entries.isEmpty());
+        assertNull(JsonCodec.readStringField(new StringReader("null"), "content"));
+        assertNull(JsonCodec.readStringField(new StringReader(""), "content"));
+    }
+
+    @Test
+    void readsSingleFieldsAndAuthErrors() throws Exception {
+        assertEquals("-Nx1", JsonCodec.readStringField(new StringReader("{\"name\":\"-Nx1\"}"), "name"));
+        assertEquals("a@b.c", JsonCodec.readStringField(new StringReader(
+                "{\"kind\":\"k\",\"idToken\":\"t\",\"email\":\"a@b.c\",\"expiresIn\":\"3600\"}"), "email"));
+        assertEquals("INVALID_LOGIN_CREDENTIALS", JsonCodec.readAuthErrorMessage(new StringReader(
+                "{\"error\":{\"code\":400,\"message\":\"INVALID_LOGIN_CREDENTIALS\",\"errors\":[{\"reason\":\"invalid\"}]}}")));
+    }
+
+    @Test
+    void writersProduceEscapedJson() {
+        JsonObject item = JsonParser.parseString(
+                JsonCodec.writeHistoryItem(null, "line \"one\"\nline two", 42L)).getAsJsonObject();
+        assertEquals("", item.get("filename").getAsString());
+        assertEquals("line \"one\"\nline two", item.get("content").getAsString());
+        assertEquals(42L, item.get("timestamp").getAsLong());
+
+        JsonObject auth = JsonParser.parseString(JsonCodec.writeAuthRequest("a@b.c", "p\"w")).getAsJsonObject();
+        assertEquals("p\"w", auth.get("password").getAsString());
+        assertTrue(auth.get("returnSecureToken").getAsBoolean());
+    }
+
+    @Test
+    void writeObjectNestsMembersAsJson() {
+        Map<String, String> members = new LinkedHashMap<>();
+        members.put("-Nb", JsonCodec.writeHistoryItem("a.png", "one", 1L));
+        members.put("-Nc", JsonCodec.writeHistoryItem("b.png", "two", 2L));
+        JsonObject object = JsonParser.parseString(JsonCodec.writeObject(members)).getAsJsonObject();
+        assertEquals(2, object.size());
+        assertEquals("one", object.getAsJsonObject("-Nb").get("content").getAsString());
+        assertEquals(2L, object.getAsJsonObject("-Nc").get("timestamp").getAsLong());
+        assertEquals("{}", JsonCodec.writeObject(new LinkedHashMap<>()));
+        assertEquals("\"a \\\"b\\\" c\"", JsonCodec.writeString("a \"b\" c"));
+    }
+
+    @Test
+    void metadataAndContentNodesSplitAnItem() throws Exception {
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put("-Nb", JsonCodec.writeHistoryMeta("a.png", 1L, 3L, "abc123", "a.png\u0000-Nb"));
+        meta.put("-Nc", JsonCodec.writeHistoryMeta(null, 2L, 0L, "def456", "\u0000-Nc"));
+        List<String> entries = new ArrayList<>();
+        JsonCodec.readHistoryIndex(new StringReader(JsonCodec.writeObject(meta)), (key, filename, timestamp) ->
+                entries.add(key + "|" + filename + "|" + timestamp));
+        assertEquals(List.of("-Nb|a.png|1", "-Nc||2"), entries);
+        entries.clear();
+        JsonCodec.readHistoryMeta(new StringReader(JsonCodec.writeObject(meta)), (key, filename, timestamp, hash) ->
+                entries.add(key + "|" + hash));
+        assertEquals(List.of("-Nb|abc123", "-Nc|def456"), entries);
+        JsonObject node = JsonParser.parseString(meta.get("-Nb")).getAsJsonObject();
+        assertEquals(3L, node.get("size").getAsLong());
+        assertEquals("abc123", node.get("hash").getAsString());
+
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("-Nb", JsonCodec.writeHistoryContent("line \"one\"\nline two"));
+        content.put("-Nc", "{\"other\":1}");
+        content.put("-Nd", "7");
+        assertEquals(Map.of("-Nb", "line \"one\"\nline two"),
+                JsonCodec.readStringFields(new StringReader(JsonCodec.writeObject(content)), "content"));
+        assertEquals(Map.of(), JsonCodec.readStringFields(new StringReader("null"), "content"));
+    }
+
+    @Test
+    void malformedJsonIsAnIOException() {
+        assertThrows(IOException.class, () -> JsonCodec.readOcrResponse(new StringReader("{\"ParsedResults\":[")));
+    }
+}
@@ -0,0 +1,32 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyWindowTest {
+
+    @Test
+    void percentilesUseNearestRank() {
+        LatencyWindow window = new LatencyWindow(100);
+        assertEquals(-1, window.percentile(50));
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+        assertEquals(50, window.percentile(50));
+        assertEquals(99, window.percentile(99));
+        assertEquals(100, window.percentile(100));
+        assertEquals(1, window.percentile(0));
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentSamples() {
+        LatencyWindow window = new LatencyWindow(3);
+        window.record(1000);
+        window.record(1);
+        window.record(2);
+        window.record(3);
+        assertEquals(3, window.count());
+        assertEquals(3, window.percentile(100));
+    }
+}
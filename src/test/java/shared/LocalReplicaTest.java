@@ -0,0 +1,167 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalReplicaTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> ids(List<LocalReplica.Item> items) {
+        return items.stream().map(LocalReplica.Item::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> changes(LocalReplica replica) {
+        return replica.pending().stream()
+                .map(change -> (change.isDelete() ? "-" : "+") + change.getId())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void localChangesStayQueuedAcrossRestartsUntilAcknowledged() throws IOException {
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            replica.put("a", "a.png", "alpha", 1);
+            replica.put("b", "b.png", "beta ü", 2);
+            replica.delete("a");
+            assertEquals(List.of("b"), ids(replica.items()));
+        }
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertEquals(List.of("+a", "+b", "-a"), changes(replica));
+            assertEquals("beta ü", replica.text("b"));
+            assertEquals("alpha", replica.pending().get(0).getText());
+            assertNull(replica.text("a"));
+            replica.acknowledge(replica.pending().get(0));
+            replica.acknowledge(replica.pending().get(0));
+            assertTrue(replica.isPending("a"));
+            assertFalse(replica.isPending("b"));
+        }
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertEquals(List.of("-a"), changes(replica));
+            assertEquals("b.png", replica.item("b").getLabel());
+            assertEquals(2, replica.item("b").getTimestamp());
+        }
+    }
+
+    @Test
+    void remoteChangesNeverOverrulePendingOnes() throws IOException {
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            LocalReplica.Change mine = replica.put("x", "mine.png", "mine", 5);
+            assertFalse(replica.applyRemote("x", "theirs.png", "theirs", 4));
+            assertFalse(replica.removeRemote("x"));
+            assertEquals("mine", replica.text("x"));
+
+            long version = replica.version();
+            assertTrue(replica.applyRemote("y", "y.png", "why", 3));
+            assertFalse(replica.applyRemote("y", "y.png", "why", 3));
+            assertEquals(version + 1, replica.version());
+            assertTrue(replica.removeRemote("y"));
+            assertFalse(replica.removeRemote("y"));
+            assertEquals(version + 2, replica.version());
+
+            replica.acknowledge(mine);
+            assertTrue(replica.applyRemote("x", "theirs.png", "theirs", 6));
+            assertEquals("theirs", replica.text("x"));
+            assertTrue(replica.pending().isEmpty());
+        }
+    }
+
+    @Test
+    void marksSurviveReopening() throws IOException {
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertEquals(0, replica.mark("watermark"));
+            replica.setMark("watermark", 42);
+            replica.setMark("watermark", 43);
+        }
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertEquals(43, replica.mark("watermark"));
+        }
+    }
+
+    @Test
+    void mostlyDeadLogIsCompactedWhileOpen() throws IOException {
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            replica.applyRemote("gone", "g.png", "gone", 1);
+            replica.put("new", "n.png", "first", 1);
+            replica.put("new", "n.png", "second", 2);
+            replica.delete("gone");
+            replica.setMark("watermark", 3000);
+            for (int i = 1; i <= 3000; i++) {
+                replica.applyRemote("same", "s.png", "version " + i, i);
+            }
+            assertEquals(List.of("same", "new"), ids(replica.items()));
+            assertEquals("version 3000", replica.text("same"));
+            assertEquals(List.of("+new", "-gone"), changes(replica));
+            assertEquals(1, logFiles().size());
+            assertNotEquals("replica.0.log", logFiles().get(0));
+        }
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertEquals(1, logFiles().size());
+            assertEquals(List.of("same", "new"), ids(replica.items()));
+            assertEquals("version 3000", replica.text("same"));
+            assertEquals("second", replica.text("new"));
+            assertEquals(List.of("+new", "-gone"), changes(replica));
+            assertEquals(3000, replica.mark("watermark"));
+        }
+    }
+
+    @Test
+    void changesHeldAcrossCompactionCanStillBeAcknowledged() throws IOException {
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            LocalReplica.Change replaced = replica.put("a", "a.png", "first", 1);
+            LocalReplica.Change latest = replica.put("a", "a.png", "second", 2);
+            LocalReplica.Change other = replica.put("b", "b.png", "beta", 3);
+            for (int i = 1; i <= 3000; i++) {
+                replica.setMark("watermark", i);
+            }
+            // The first save of "a" was folded into the second; acknowledging it changes nothing.
+            replica.acknowledge(replaced);
+            assertEquals(List.of("+a", "+b"), changes(replica));
+            replica.acknowledge(latest);
+            assertFalse(replica.isPending("a"));
+            assertEquals(List.of("+b"), changes(replica));
+            assertSame(other, replica.pending().get(0));
+        }
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertEquals(List.of("+b"), changes(replica));
+            assertEquals("second", replica.text("a"));
+        }
+    }
+
+    @Test
+    void entriesStoredWithoutTextAreFilledInLater() throws IOException {
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertTrue(replica.applyRemoteEntry("a", "a.png", 1, null));
+            assertFalse(replica.applyRemoteEntry("a", "a.png", 1, null));
+            assertEquals("a.png", replica.item("a").getLabel());
+            assertNull(replica.text("a"));
+        }
+        try (LocalReplica replica = LocalReplica.open(dir)) {
+            assertNull(replica.text("a"));
+            assertTrue(replica.applyRemote("a", "a.png", "alpha", 1));
+            assertEquals("alpha", replica.text("a"));
+            assertFalse(replica.applyRemoteEntry("a", "a.png", 1, null));
+            assertFalse(replica.applyRemoteEntry("a", "a.png", 1, ContentHash.of("alpha".getBytes(StandardCharsets.UTF_8))));
+            assertEquals("alpha", replica.text("a"));
+            // Edited elsewhere: same name and time, other text.
+            assertTrue(replica.applyRemoteEntry("a", "a.png", 1, ContentHash.of("beta".getBytes(StandardCharsets.UTF_8))));
+            assertNull(replica.text("a"));
+        }
+    }
+
+    private List<String> logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).collect(Collectors.toList());
+        }
+    }
+}
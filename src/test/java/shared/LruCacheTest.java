@@ -0,0 +1,41 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, Integer> cache = new LruCache<>(2, (k, v) -> evicted.add(k));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(List.of("b"), evicted);
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.capacity());
+    }
+
+    @Test
+    void removeIsNotAnEviction() {
+        LruCache<String, Integer> cache = new LruCache<>(1);
+        cache.put("a", 1);
+        assertEquals(1, cache.remove("a"));
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    void rejectsZeroCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new LruCache<String, String>(0));
+    }
+}
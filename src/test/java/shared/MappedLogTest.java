@@ -0,0 +1,122 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLogTest {
+
+    @TempDir
+    Path dir;
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(ByteBuffer body) {
+        return StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+    }
+
+    private static List<String> all(MappedLog log) throws IOException {
+        List<String> records = new ArrayList<>();
+        log.forEach((offset, body) -> {
+            assertEquals(string(body), string(log.read(offset)));
+            records.add(string(body));
+        });
+        return records;
+    }
+
+    @Test
+    void recordsAreReadByOffsetAndSurviveReopening() throws IOException {
+        Path file = dir.resolve("sub").resolve("a.log");
+        long second;
+        try (MappedLog log = MappedLog.open(file)) {
+            assertEquals(0, log.append(bytes("one")));
+            second = log.append(bytes("two"));
+            assertEquals("two", string(log.read(second)));
+            assertEquals(2 * 8 + 6, log.size());
+        }
+        try (MappedLog log = MappedLog.open(file)) {
+            assertEquals(List.of("one", "two"), all(log));
+            assertEquals("two", string(log.read(second)));
+            log.append(bytes("three"));
+            assertEquals(List.of("one", "two", "three"), all(log));
+            assertThrows(IOException.class, () -> log.read(1));
+            assertThrows(IOException.class, () -> log.read(log.size()));
+            assertThrows(IllegalArgumentException.class, () -> log.append(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void growsPastItsFirstMapping() throws IOException {
+        Path file = dir.resolve("big.log");
+        String filler = "x".repeat(1000);
+        long last;
+        try (MappedLog log = MappedLog.open(file)) {
+            ByteBuffer first = log.read(log.append(bytes("first")));
+            for (int i = 0; i < 3000; i++) {
+                log.append(bytes(i + filler));
+            }
+            last = log.append(bytes("last"));
+            // Buffers handed out before the log grew still read the same bytes.
+            assertEquals("first", string(first));
+        }
+        try (MappedLog log = MappedLog.open(file)) {
+            List<String> records = all(log);
+            assertEquals(3002, records.size());
+            assertEquals("2999" + filler, records.get(3000));
+            assertEquals("last", string(log.read(last)));
+        }
+    }
+
+    @Test
+    void tornRecordIsCutOff() throws IOException {
+        Path file = dir.resolve("torn.log");
+        long end;
+        try (MappedLog log = MappedLog.open(file)) {
+            log.append(bytes("kept"));
+            end = log.size();
+        }
+        // A header whose body never made it: length set, checksum and body not.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(20).putInt(12).putInt(0).put(bytes("garbage")).flip();
+            channel.write(torn, end);
+        }
+        try (MappedLog log = MappedLog.open(file)) {
+            assertEquals(List.of("kept"), all(log));
+            assertEquals(end, log.append(bytes("new")));
+        }
+        try (MappedLog log = MappedLog.open(file)) {
+            assertEquals(List.of("kept", "new"), all(log));
+        }
+    }
+
+    @Test
+    void writeBuildsALogInOneGo() throws IOException {
+        Path file = dir.resolve("written.log");
+        MappedLog.write(file, List.of(bytes("a"), bytes("bc")));
+        try (MappedLog log = MappedLog.open(file)) {
+            assertEquals(List.of("a", "bc"), all(log));
+            log.append(bytes("d"));
+            assertEquals(List.of("a", "bc", "d"), all(log));
+        }
+    }
+
+    @Test
+    void closedLogRefusesWork() throws IOException {
+        MappedLog log = MappedLog.open(dir.resolve("closed.log"));
+        log.close();
+        log.close();
+        assertThrows(IOException.class, () -> log.append(bytes("late")));
+    }
+}
@@ -0,0 +1,42 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    void histogramsAreKeyedByNameAndTags() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.histogram("ocr.latency", "outcome", "success").record(10);
+        registry.histogram("ocr.latency", "outcome", "success").record(20);
+        registry.histogram("ocr.latency", "outcome", "timeout").record(30_000);
+
+        assertEquals(2, registry.getHistograms().get("ocr.latency{outcome=success}").getCount());
+        assertEquals(1, registry.getHistograms().get("ocr.latency{outcome=timeout}").getCount());
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("bad", "outcome"));
+    }
+
+    @Test
+    void gaugesAreReadOnDemandAndFormattedWithHistograms() {
+        MetricsRegistry registry = new MetricsRegistry();
+        AtomicLong hits = new AtomicLong();
+        registry.gauge("ocr.cache.hits", hits::get);
+        registry.gauge("other.value", () -> 1);
+        registry.histogram("ocr.idle");
+        registry.histogram("ocr.parse.micros", "outcome", "success").record(5);
+        hits.set(3);
+
+        assertEquals(3L, registry.readGauges().get("ocr.cache.hits"));
+        String report = registry.format("ocr.");
+        assertTrue(report.contains("ocr.cache.hits 3"), report);
+        assertTrue(report.contains("ocr.parse.micros{outcome=success} count=1 mean=5.0 p50=5 p95=5 p99=5 max=5"), report);
+        assertFalse(report.contains("other.value"), report);
+        assertFalse(report.contains("ocr.idle"), "empty histograms are left out");
+        assertSame(MetricsRegistry.getDefault(), MetricsRegistry.getDefault());
+    }
+}
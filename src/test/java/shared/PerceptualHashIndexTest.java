@@ -0,0 +1,65 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesAndRemovalsSurviveReopening() throws IOException {
+        Path file = dir.resolve("sub").resolve("user.idx");
+        try (PerceptualHashIndex index = PerceptualHashIndex.open(file)) {
+            index.add(0b1111L, "old", "a.png", 1);
+            index.add(0b1110L, "new", "b.png", 2);
+            index.add(-1L, "gone", "c.png", 3);
+            index.remove("gone");
+        }
+
+        try (PerceptualHashIndex index = PerceptualHashIndex.open(file)) {
+            assertEquals(2, index.size());
+            var matches = index.find(0b1111L, 1);
+            assertEquals("old", matches.get(0).getValue().getId());
+            assertEquals("new", matches.get(1).getValue().getId());
+            assertEquals("b.png", matches.get(1).getValue().getLabel());
+            assertTrue(index.find(-1L, 2).isEmpty());
+        }
+    }
+
+    @Test
+    void readdingAnIdReplacesItsEntry() throws IOException {
+        try (PerceptualHashIndex index = PerceptualHashIndex.open(dir.resolve("user.idx"))) {
+            index.add(0L, "id", "first.png", 1);
+            index.add(0L, "id", "second.png", 2);
+
+            assertEquals(1, index.size());
+            assertEquals("second.png", index.find(0L, 0).get(0).getValue().getLabel());
+        }
+    }
+
+    @Test
+    void damagedTailIsDropped() throws IOException {
+        Path file = dir.resolve("user.idx");
+        try (PerceptualHashIndex index = PerceptualHashIndex.open(file)) {
+            index.add(7L, "kept", "a.png", 1);
+        }
+        Files.write(file, new byte[] {1, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        try (PerceptualHashIndex index = PerceptualHashIndex.open(file)) {
+            assertEquals(1, index.size());
+            index.add(8L, "after", "b.png", 2);
+        }
+        try (PerceptualHashIndex index = PerceptualHashIndex.open(file)) {
+            assertEquals(2, index.size());
+        }
+    }
+}
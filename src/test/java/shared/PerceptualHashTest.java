@@ -0,0 +1,81 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashTest {
+
+    @Test
+    void recropsRescalesAndRecompressionsStayClose() throws Exception {
+        BufferedImage page = page(1, 1200, 900);
+        long hash = PerceptualHash.of(page);
+
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.of(page.getSubimage(18, 13, 1164, 873))) <= 10);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.of(jpeg(scale(page, 0.6)))) <= 10);
+        assertEquals(0, PerceptualHash.distance(hash, PerceptualHash.of(page)));
+    }
+
+    @Test
+    void differentPagesAreFarApart() {
+        long hash = PerceptualHash.of(page(1, 1200, 900));
+        for (int seed = 2; seed < 12; seed++) {
+            assertTrue(PerceptualHash.distance(hash, PerceptualHash.of(page(seed, 1200, 900))) > 10, "seed " + seed);
+        }
+    }
+
+    @Test
+    void tinyAndBlankImagesHash() {
+        assertEquals(PerceptualHash.of(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)),
+                PerceptualHash.of(new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB)));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+    }
+
+    // A page of "text": lines of word-sized dark blocks with ragged ends and paragraph gaps.
+    static BufferedImage page(long seed, int width, int height) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height);
+        g2.setColor(Color.BLACK);
+        for (int y = 40; y < height - 30; y += 24) {
+            if (random.nextInt(6) == 0) {
+                continue;
+            }
+            int end = 60 + random.nextInt(width - 120);
+            for (int x = random.nextInt(3) == 0 ? 70 : 30; x < end; ) {
+                int word = 20 + random.nextInt(60);
+                g2.fillRect(x, y, Math.min(word, end - x), 12);
+                x += word + 10;
+            }
+        }
+        g2.dispose();
+        return image;
+    }
+
+    private static BufferedImage scale(BufferedImage image, double factor) {
+        BufferedImage scaled = new BufferedImage((int) (image.getWidth() * factor), (int) (image.getHeight() * factor),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = scaled.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(image, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+        g2.dispose();
+        return scaled;
+    }
+
+    private static BufferedImage jpeg(BufferedImage image) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,112 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import shared.PriorityScheduler.Permit;
+import shared.PriorityScheduler.Priority;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrioritySchedulerTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private PriorityScheduler scheduler(AtomicInteger capacity, int reserved, long maxBulkWaitMillis) {
+        return new PriorityScheduler(capacity::get, reserved, maxBulkWaitMillis, now::get);
+    }
+
+    @Test
+    void bulkWorkLeavesTheReservedSlotsForInteractive() {
+        PriorityScheduler scheduler = scheduler(new AtomicInteger(3), 1, 60_000);
+
+        CompletableFuture<Permit> bulk1 = scheduler.acquire(Priority.BULK);
+        CompletableFuture<Permit> bulk2 = scheduler.acquire(Priority.BULK);
+        CompletableFuture<Permit> bulk3 = scheduler.acquire(Priority.BULK);
+        CompletableFuture<Permit> interactive = scheduler.acquire(Priority.INTERACTIVE);
+
+        assertTrue(bulk1.isDone() && bulk2.isDone());
+        assertFalse(bulk3.isDone());
+        assertTrue(interactive.isDone());
+        assertEquals(2, scheduler.getInFlight(Priority.BULK));
+        assertEquals(1, scheduler.getQueued(Priority.BULK));
+
+        interactive.join().release();
+        assertFalse(bulk3.isDone(), "the reserved slot stays free for interactive work");
+        bulk1.join().release();
+        assertTrue(bulk3.isDone());
+    }
+
+    @Test
+    void interactiveWaitersGoFirstAndWaitsAreMeasuredPerClass() {
+        PriorityScheduler scheduler = scheduler(new AtomicInteger(1), 0, 60_000);
+        Permit running = scheduler.acquire(Priority.BULK).join();
+        CompletableFuture<Permit> bulk = scheduler.acquire(Priority.BULK);
+        CompletableFuture<Permit> interactive = scheduler.acquire(Priority.INTERACTIVE);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(40, scheduler.getOldestWaitMillis(Priority.BULK));
+        running.release();
+
+        assertTrue(interactive.isDone());
+        assertFalse(bulk.isDone());
+        assertEquals(40, scheduler.getWaitMillis(Priority.INTERACTIVE, 50));
+        assertEquals(0, scheduler.getWaitMillis(Priority.BULK, 50));
+        assertEquals(1, scheduler.getGranted(Priority.INTERACTIVE));
+        assertEquals(2, scheduler.getGranted(Priority.BULK) + scheduler.getQueued(Priority.BULK));
+    }
+
+    @Test
+    void bulkThatWaitedTooLongOvertakesInteractive() {
+        PriorityScheduler scheduler = scheduler(new AtomicInteger(1), 0, 100);
+        Permit running = scheduler.acquire(Priority.INTERACTIVE).join();
+        CompletableFuture<Permit> bulk = scheduler.acquire(Priority.BULK);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+        CompletableFuture<Permit> interactive = scheduler.acquire(Priority.INTERACTIVE);
+
+        running.release();
+
+        assertTrue(bulk.isDone());
+        assertFalse(interactive.isDone());
+    }
+
+    @Test
+    void cancelledWaitersGiveUpTheirPlaceAndCapacityMayChange() {
+        AtomicInteger capacity = new AtomicInteger(1);
+        PriorityScheduler scheduler = scheduler(capacity, 0, 60_000);
+        Permit running = scheduler.acquire(Priority.BULK).join();
+        CompletableFuture<Permit> cancelled = scheduler.acquire(Priority.INTERACTIVE);
+        CompletableFuture<Permit> next = scheduler.acquire(Priority.INTERACTIVE);
+
+        cancelled.cancel(true);
+        assertEquals(1, scheduler.getQueued(Priority.INTERACTIVE));
+        running.release();
+        running.release();
+        assertTrue(next.isDone());
+        assertEquals(1, scheduler.getInFlight(Priority.INTERACTIVE));
+
+        capacity.set(2);
+        assertTrue(scheduler.acquire(Priority.BULK).isDone());
+    }
+
+    @Test
+    void blockingAcquireWaitsForASlot() throws Exception {
+        PriorityScheduler scheduler = scheduler(new AtomicInteger(1), 0, 60_000);
+        Permit running = scheduler.acquireBlocking(Priority.BULK);
+        CompletableFuture<Permit> blocked = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.acquireBlocking(Priority.INTERACTIVE);
+            }
+            catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+
+        running.release();
+
+        assertEquals(Priority.INTERACTIVE, blocked.get(5, TimeUnit.SECONDS).getPriority());
+    }
+}
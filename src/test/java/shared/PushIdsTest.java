@@ -0,0 +1,40 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PushIdsTest {
+
+    @Test
+    void idsSortByCreationEvenWithinAMillisecond() {
+        String previous = PushIds.next(1_700_000_000_000L);
+        Set<String> seen = new HashSet<>();
+        seen.add(previous);
+        for (int i = 0; i < 1000; i++) {
+            String id = PushIds.next(1_700_000_000_000L + i / 100);
+            assertEquals(20, id.length());
+            assertTrue(id.compareTo(previous) > 0, previous + " then " + id);
+            assertTrue(seen.add(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    void timeCanBeReadBack() {
+        assertEquals(1_700_000_123_456L, PushIds.timeOf(PushIds.next(1_700_000_123_456L)));
+        long before = System.currentTimeMillis();
+        long time = PushIds.timeOf(PushIds.next());
+        assertTrue(time >= before && time <= System.currentTimeMillis());
+    }
+
+    @Test
+    void rejectsForeignIds() {
+        assertThrows(IllegalArgumentException.class, () -> PushIds.timeOf("short"));
+        assertThrows(IllegalArgumentException.class, () -> PushIds.timeOf("!!!!!!!!000000000000"));
+        assertThrows(IllegalArgumentException.class, () -> PushIds.timeOf(null));
+    }
+}
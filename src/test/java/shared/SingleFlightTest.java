@@ -0,0 +1,86 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> calls = new ArrayList<>();
+            calls.add(pool.submit(() -> flights.run("k", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "text";
+            })));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                calls.add(pool.submit(() -> flights.run("k", () -> {
+                    executions.incrementAndGet();
+                    return "other";
+                })));
+            }
+            while (flights.coalesced() < 3) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<String> call : calls) {
+                assertEquals("text", call.get(5, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    void errorsAreSharedAndKeyIsFreedAfterwards() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> first = flights.runAsync("k", () -> work);
+        CompletableFuture<String> second = flights.runAsync("k", () -> CompletableFuture.completedFuture("no"));
+        work.completeExceptionally(new IOException("down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(1, flights.coalesced());
+        assertEquals("again", flights.run("k", () -> "again"));
+    }
+
+    @Test
+    void underlyingCallIsCancelledOnlyWhenEveryCallerCancels() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> first = flights.runAsync("k", () -> work);
+        CompletableFuture<String> second = flights.runAsync("k", () -> work);
+
+        first.cancel(true);
+        assertFalse(work.isCancelled());
+        second.cancel(true);
+        assertTrue(work.isCancelled());
+
+        CompletableFuture<String> fresh = flights.runAsync("k", () -> CompletableFuture.completedFuture("new"));
+        assertEquals("new", fresh.join());
+    }
+}
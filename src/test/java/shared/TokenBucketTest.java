@@ -0,0 +1,43 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenMakesCallersWaitForRefill() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 2, now::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), bucket.reserve());
+        assertFalse(bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(bucket.tryAcquire());
+        assertEquals(1, bucket.available(), 1e-9);
+    }
+
+    @Test
+    void refillIsCappedAtBurst() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 3, now::get);
+        now.addAndGet(TimeUnit.HOURS.toNanos(1));
+        assertEquals(3, bucket.available(), 1e-9);
+    }
+
+    @Test
+    void zeroRateIsUnlimited() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, bucket.reserve());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package shared;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindQueueTest {
+    private final List<String> writes = Collections.synchronizedList(new ArrayList<>());
+    private WriteBehindQueue<String, String> queue;
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.close(1000);
+        }
+    }
+
+    private WriteBehindQueue.BatchWriter<String, String> recording() {
+        return (key, values) -> writes.add(key + ":" + String.join(",", values));
+    }
+
+    @Test
+    void fullBatchesGoAtOnceAndEachKeyKeepsItsOrder() throws Exception {
+        queue = new WriteBehindQueue<>(recording(), v -> 1, 100, 3, 60_000, new Backoff(1, 1), ex -> true, 3, "test-writer");
+        queue.add("bob", "b1");
+        for (int i = 1; i <= 7; i++) {
+            queue.add("ann", "a" + i);
+        }
+        // Ann's full batches do not wait behind Bob's lingering value.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.getWritten() < 6 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("ann:a1,a2,a3", "ann:a4,a5,a6"), writes);
+        queue.flush("ann", 5000);
+        queue.flush("bob", 5000);
+        assertEquals(4, writes.size());
+        assertTrue(writes.containsAll(List.of("ann:a7", "bob:b1")), writes.toString());
+        assertEquals(8, queue.getWritten());
+        assertEquals(4, queue.getBatches());
+        assertEquals(0, queue.getPending());
+        assertEquals(0, queue.getPendingWeight());
+    }
+
+    @Test
+    void lingerLetsAValueWaitForCompany() throws Exception {
+        queue = new WriteBehindQueue<>(recording(), v -> 1, 100, 10, 200, new Backoff(1, 1), ex -> true, 3, "test-writer");
+        queue.add("ann", "a1");
+        queue.add("ann", "a2");
+        assertTrue(writes.isEmpty());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writes.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("ann:a1,a2"), writes);
+    }
+
+    @Test
+    void failedBatchesAreRetriedBeforeLaterValues() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        queue = new WriteBehindQueue<>((key, values) -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw new IOException("offline");
+            }
+            writes.add(String.join(",", values));
+        }, v -> 1, 100, 2, 0, new Backoff(1, 5), ex -> true, 3, "test-writer");
+        queue.add("ann", "a1");
+        queue.add("ann", "a2");
+        queue.add("ann", "a3");
+        queue.flush("ann", 5000);
+        assertEquals(List.of("a1,a2", "a3"), writes);
+        assertEquals(2, queue.getFailures());
+    }
+
+    @Test
+    void flushGivesUpWithTheLastError() throws Exception {
+        queue = new WriteBehindQueue<>((key, values) -> {
+            throw new IOException("offline");
+        }, v -> 1, 100, 2, 0, new Backoff(1, 5), ex -> true, 3, "test-writer");
+        queue.add("ann", "a1");
+        IOException ex = assertThrows(IOException.class, () -> queue.flush("ann", 100));
+        assertTrue(ex.getMessage().contains("offline"), ex.getMessage());
+        assertEquals(1, queue.getPending());
+        assertEquals(1, queue.close(50));
+        queue = null;
+    }
+
+    @Test
+    void addBlocksWhileTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new WriteBehindQueue<>((key, values) -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            writes.add(String.join(",", values));
+        }, String::length, 4, 10, 0, new Backoff(1, 1), ex -> true, 3, "test-writer");
+        queue.add("ann", "abc");
+        AtomicBoolean added = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.add("ann", "de");
+                added.set(true);
+            }
+            catch (InterruptedException ignored) {
+                // test ends
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertFalse(added.get());
+        assertEquals(3, queue.getPendingWeight());
+        release.countDown();
+        producer.join(5000);
+        assertTrue(added.get());
+        queue.flush("ann", 5000);
+        assertEquals(List.of("abc", "de"), writes);
+    }
+
+    @Test
+    void closeWritesWhatIsLeftAndRefusesMore() throws Exception {
+        queue = new WriteBehindQueue<>(recording(), v -> 1, 100, 10, 60_000, new Backoff(1, 1), ex -> true, 3, "test-writer");
+        queue.add("ann", "a1");
+        queue.add("bob", "b1");
+        assertEquals(0, queue.close(5000));
+        assertEquals(List.of("ann:a1", "bob:b1"), writes);
+        assertThrows(IllegalStateException.class, () -> queue.add("ann", "a2"));
+    }
+
+    @Test
+    void keyThatKeepsFailingDoesNotHoldUpOthers() throws Exception {
+        AtomicInteger badCalls = new AtomicInteger();
+        queue = new WriteBehindQueue<>((key, values) -> {
+            if (key.equals("bad")) {
+                badCalls.incrementAndGet();
+                throw new IOException("offline");
+            }
+            writes.add(key + ":" + String.join(",", values));
+        }, v -> 1, 100, 1, 0, new Backoff(400, 400), ex -> true, 3, "test-writer");
+        queue.add("bad", "x");
+        for (int i = 1; i <= 20; i++) {
+            queue.add("ann", "a" + i);
+            queue.flush("ann", 2000);
+        }
+        assertEquals(20, writes.size());
+        // The other key's signals do not cut the failing key's backoff short.
+        assertTrue(badCalls.get() <= 2, "bad key tried " + badCalls.get() + " times");
+        assertEquals(1, queue.getPending());
+        assertEquals(0, queue.getDropped());
+        assertEquals(1, queue.close(50));
+        queue = null;
+    }
+
+    @Test
+    void batchWithNonRetryableErrorIsDroppedAfterMaxAttempts() throws Exception {
+        queue = new WriteBehindQueue<>((key, values) -> {
+            if (values.contains("bad")) {
+                throw new IllegalArgumentException("rejected");
+            }
+            writes.add(String.join(",", values));
+        }, v -> 1, 100, 1, 0, new Backoff(1, 1), ex -> ex instanceof IOException, 3, "test-writer");
+        queue.add("ann", "bad");
+        queue.add("ann", "a2");
+        queue.flush("ann", 5000);
+        assertEquals(List.of("a2"), writes);
+        assertEquals(3, queue.getFailures());
+        assertEquals(1, queue.getDropped());
+        assertEquals(0, queue.getPending());
+    }
+
+    @Test
+    void queuedValuesCanBeReadBack() throws Exception {
+        queue = new WriteBehindQueue<>(recording(), v -> 1, 100, 10, 60_000, new Backoff(1, 1), ex -> true, 3,
+                "test-writer");
+        queue.add("ann", "a1");
+        queue.add("ann", "a2");
+        assertEquals("a2", queue.findPending("ann", value -> value.startsWith("a")));
+        assertNull(queue.findPending("bob", value -> true));
+        queue.flush("ann", 5000);
+        assertNull(queue.findPending("ann", value -> true));
+    }
+}